@@ -364,11 +364,7 @@ public class PeakListAttributes implements PeakListener, PublicPropertyContainer
         if ((peakList != null) && (peakList.peaks() != null)) {
             double[][] limits = getRegionLimits(dataAttr);
             int[] peakDim = getPeakDim();
-            List<Peak> peaks = peakList.peaks()
-                    .stream()
-                    .parallel()
-                    .filter(peak -> peak.inRegion(limits, foldLimits, foldAmount, peakDim))
-                    .collect(Collectors.toList());
+            List<Peak> peaks = peakList.findPeaksInRegion(limits, foldLimits, foldAmount, peakDim);
             peaksInRegion = Optional.of(peaks);
         }
     }
@@ -385,11 +381,7 @@ public class PeakListAttributes implements PeakListener, PublicPropertyContainer
                 limits[1][1] = crossLimits[1][1];
             }
             int[] peakDim = getPeakDim();
-            List<Peak> peaks = peakList.peaks()
-                    .stream()
-                    .parallel()
-                    .filter(peak -> peak.inRegion(limits, foldLimits, foldAmount, peakDim))
-                    .collect(Collectors.toList());
+            List<Peak> peaks = peakList.findPeaksInRegion(limits, foldLimits, foldAmount, peakDim);
             peaksInRegion = Optional.of(peaks);
         }
     }
@@ -405,11 +397,7 @@ public class PeakListAttributes implements PeakListener, PublicPropertyContainer
                 limits[1][1] = crossLimits[1][1];
             }
             int[] peakDim = getPeakDim();
-            List<Peak> peaks = peakList.peaks()
-                    .stream()
-                    .parallel()
-                    .filter(peak -> peak.inRegion(limits, foldLimits, foldAmount, peakDim))
-                    .collect(Collectors.toList());
+            List<Peak> peaks = peakList.findPeaksInRegion(limits, foldLimits, foldAmount, peakDim);
             selectedPeaks.addAll(peaks);
             return (peaks);
         }
@@ -22,6 +22,7 @@ import org.nmrfx.math.Interpolator;
 import org.nmrfx.processor.math.AmplitudeFitResult;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.math.VecUtil;
+import org.nmrfx.processor.optimization.Resampler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
 
@@ -799,6 +801,67 @@ public class CompoundFitter implements MultivariateFunction {
         }
     }
 
+    /**
+     * Make a copy of this fitter, with its own shifts and solution, that can
+     * be scored at the same time as this one. The spectrum, the compound data
+     * and the matrices from prepareAB aren't changed by scoring, so they are
+     * shared with the copy.
+     *
+     * @return the copy
+     */
+    public CompoundFitter copy() {
+        CompoundFitter copy = new CompoundFitter();
+        for (CompoundRegion cR : cList) {
+            copy.cList.add(new CompoundRegion(cR.cMatch, cR.regions, cR.shifts.clone(), cR.minShifts, cR.maxShifts));
+        }
+        copy.cMatches.addAll(cMatches);
+        copy.vec = vec;
+        copy.vData = vData;
+        copy.maskData = maskData;
+        copy.map = map;
+        copy.rmap = rmap;
+        copy.bcNum = bcNum;
+        copy.ppmDeltaToPoint = ppmDeltaToPoint;
+        copy.vecRef = vecRef;
+        copy.vecHzToPoint = vecHzToPoint;
+        copy.valueMode = valueMode;
+        copy.A = A;
+        copy.B = B;
+        return copy;
+    }
+
+    /**
+     * Fit bootstrap samples of the points in the compound regions by non
+     * negative least squares, drawn with the random generator of each
+     * replicate. The matrix of compound intensities is prepared once, at the
+     * current shifts, and each replicate scores its own copy of this fitter.
+     *
+     * @param resampler the resampler that runs the replicates
+     * @return the baseline coefficients and compound scales of each replicate, followed by the residual norm
+     */
+    public Resampler.Result bootstrap(Resampler resampler) {
+        prepareAB();
+        int nRows = A.getRowDimension();
+        int[] columns = new int[A.getColumnDimension()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        return resampler.run((iReplicate, random) -> {
+            CompoundFitter copy = copy();
+            int[] indices = Resampler.bootstrapIndices(random, nRows);
+            copy.A = A.getSubMatrix(indices, columns);
+            RealVector sampleB = new ArrayRealVector(nRows);
+            for (int i = 0; i < nRows; i++) {
+                sampleB.setEntry(i, B.getEntry(indices[i]));
+            }
+            copy.B = sampleB;
+            double norm = copy.score(null, true);
+            double[] values = Arrays.copyOf(copy.X.toArray(), columns.length + 1);
+            values[columns.length] = norm;
+            return Optional.of(values);
+        });
+    }
+
     /**
      * @param fileName
      */
@@ -13,10 +13,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.nmrfx.processor.datasets.peaks.PeakFitParameters.FITJ_MODE.JFIT;
 import static org.nmrfx.processor.datasets.peaks.PeakFitParameters.FITJ_MODE.LFIT;
@@ -34,6 +34,16 @@ public class PeakFitting {
     double rmsValue = 0.0;
     boolean anyFit = false;
     double bicValue = 0.0;
+    // values read ahead for the cluster of peaks being fit
+    double[] prefetched = null;
+    int prefetchStart = 0;
+
+    /**
+     * Fits one peak of a cluster.
+     */
+    private interface PeakFitTask {
+        double fit(PeakFitting peakFitting, Peak peak, PeakFitParameters fitParameters);
+    }
 
     public PeakFitting(Dataset dataset) {
         this.dataset = dataset;
@@ -117,59 +127,264 @@ public class PeakFitting {
         return value;
     }
 
+    /**
+     * Fit each peak of the list, in its dataset region. Peaks in the same
+     * region are fit one after another, and regions are fit in parallel.
+     *
+     * @param peakList      the peak list
+     * @param fitParameters the fit parameters
+     * @return the peaks that were fit
+     */
     public List<Peak> fitLinkedPeaks(PeakList peakList, PeakFitParameters fitParameters) {
-        List<Peak> fitRoots = new ArrayList<>();
+        return fitLinkedPeaks(peakList, fitParameters, true);
+    }
+
+    /**
+     * Fit each peak of the list, as {@link #fitLinkedPeaks(PeakList, PeakFitParameters)},
+     * optionally without reading each region ahead of its fits.
+     *
+     * @param peakList      the peak list
+     * @param fitParameters the fit parameters
+     * @param prefetch      whether to read each region ahead of its fits
+     * @return the peaks that were fit
+     */
+    List<Peak> fitLinkedPeaks(PeakList peakList, PeakFitParameters fitParameters, boolean prefetch) {
         List<Peak> peaks = peakList.peaks();
+        Map<Object, List<Peak>> clusterMap = new LinkedHashMap<>();
+        Map<Peak, double[]> peakBounds = new HashMap<>();
+        List<DatasetRegion> regions = dataset.getReadOnlyRegions();
         for (Peak peak : peaks) {
-            fitLinkedPeak(peak, fitParameters);
-            if (anyFit) {
-                fitRoots.add(peak);
-            }
+            Optional<DatasetRegion> region = Analyzer.getRegion(regions, 0, peak.peakDims[0].getChemShift());
+            region.ifPresent(r -> peakBounds.put(peak, Analyzer.getBounds(r, 0)));
+            // peaks outside any region are fit on their own
+            Object key = region.isPresent() ? region.get() : peak;
+            clusterMap.computeIfAbsent(key, k -> new ArrayList<>()).add(peak);
         }
-        return fitRoots;
+        return fitClusters(peaks, new ArrayList<>(clusterMap.values()), peakBounds, fitParameters, prefetch,
+                (peakFitting, peak, clusterParameters) -> peakFitting.fitLinkedPeak(peak, clusterParameters));
     }
 
+    /**
+     * Fit the couplings of the peaks of the list. Each peak is fit together
+     * with the other peaks in its region. Peaks whose regions share peaks form
+     * a cluster; clusters are fit in parallel and the peaks within a cluster one
+     * after another.
+     *
+     * @param peakList      the peak list
+     * @param fitParameters the fit parameters
+     * @return the peaks that were fit
+     */
     public List<Peak> jfitLinkedPeaks(PeakList peakList, PeakFitParameters fitParameters) {
         fitParameters.fitMode(ALL);
-        List<Peak> fitRoots = new ArrayList<>();
+        fitParameters.fitJMode(JFIT);
         List<Peak> peaks = peakList.peaks();
+        Map<Peak, Integer> peakIndices = new HashMap<>();
+        for (int i = 0; i < peaks.size(); i++) {
+            peakIndices.put(peaks.get(i), i);
+        }
+        int[] parents = new int[peaks.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        Map<Peak, double[]> peakBounds = new HashMap<>();
+        Map<Peak, List<Peak>> fitPeaks = new HashMap<>();
+        for (int i = 0; i < peaks.size(); i++) {
+            Peak peak = peaks.get(i);
+            double[] bounds;
+            try {
+                bounds = getJFitBounds(peak);
+            } catch (IllegalArgumentException e) {
+                bounds = null;
+            }
+            if (bounds != null) {
+                // the peaks are located once, so a fit can't reach into another cluster
+                List<Peak> regionPeaks = locatePeaks(peak, bounds);
+                peakBounds.put(peak, bounds);
+                fitPeaks.put(peak, regionPeaks);
+                for (Peak regionPeak : regionPeaks) {
+                    Integer j = peakIndices.get(regionPeak);
+                    if (j != null) {
+                        union(parents, i, j);
+                    }
+                }
+            }
+        }
+        Map<Integer, List<Peak>> clusterMap = new LinkedHashMap<>();
+        for (int i = 0; i < peaks.size(); i++) {
+            clusterMap.computeIfAbsent(find(parents, i), k -> new ArrayList<>()).add(peaks.get(i));
+        }
+        return fitClusters(peaks, new ArrayList<>(clusterMap.values()), peakBounds, fitParameters, true,
+                (peakFitting, peak, clusterParameters) -> {
+                    double[] bounds = peakBounds.get(peak);
+                    if (bounds == null) {
+                        log.warn("Unable to get bounds to fit peaks.");
+                        return 0.0;
+                    }
+                    return peakFitting.jfitPeaks(fitPeaks.get(peak), bounds, clusterParameters);
+                });
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j) {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+        if (rootI != rootJ) {
+            parents[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+        }
+    }
+
+    /**
+     * Fit clusters of peaks in parallel. The peaks of each cluster are fit in
+     * list order by one thread, with their own copy of the fit parameters and
+     * with the cluster's region of the dataset read once before its fits if
+     * prefetch is true. The largest clusters are started first. The clusters
+     * must not share peaks, as each fit updates the peaks it fits.
+     *
+     * @return the peaks that were fit, in list order
+     */
+    private List<Peak> fitClusters(List<Peak> peaks, List<List<Peak>> clusters, Map<Peak, double[]> peakBounds,
+                                   PeakFitParameters fitParameters, boolean prefetch, PeakFitTask fitTask) {
+        clusters.sort(Comparator.comparingInt(cluster -> -cluster.size()));
+        Map<Peak, Boolean> fitPeaks = new HashMap<>();
         for (Peak peak : peaks) {
-            jfitLinkedPeak(peak, fitParameters);
-            if (anyFit) {
+            fitPeaks.put(peak, false);
+        }
+        PeakFitting[] clusterFittings = new PeakFitting[clusters.size()];
+        AtomicInteger nextCluster = new AtomicInteger();
+        int nWorkers = Math.min(clusters.size(), ForkJoinPool.getCommonPoolParallelism() + 1);
+        IntStream.range(0, nWorkers).parallel().forEach(iWorker -> {
+            int iCluster;
+            while ((iCluster = nextCluster.getAndIncrement()) < clusters.size()) {
+                List<Peak> cluster = clusters.get(iCluster);
+                PeakFitting peakFitting = new PeakFitting(dataset);
+                if (prefetch) {
+                    peakFitting.prefetch(cluster, peakBounds);
+                }
+                PeakFitParameters clusterParameters = fitParameters.copy();
+                List<Peak> fitRoots = new ArrayList<>();
+                for (Peak peak : cluster) {
+                    fitTask.fit(peakFitting, peak, clusterParameters);
+                    if (peakFitting.anyFit) {
+                        fitRoots.add(peak);
+                    }
+                }
+                clusterFittings[iCluster] = peakFitting;
+                synchronized (fitPeaks) {
+                    for (Peak peak : fitRoots) {
+                        fitPeaks.put(peak, true);
+                    }
+                }
+            }
+        });
+        List<Peak> fitRoots = new ArrayList<>();
+        for (Peak peak : peaks) {
+            if (fitPeaks.get(peak)) {
                 fitRoots.add(peak);
             }
         }
+        // report the results of the last peak, as when the peaks are fit one after another
+        if (!peaks.isEmpty()) {
+            Peak lastPeak = peaks.get(peaks.size() - 1);
+            for (int iCluster = 0; iCluster < clusters.size(); iCluster++) {
+                if (clusters.get(iCluster).contains(lastPeak)) {
+                    PeakFitting last = clusterFittings[iCluster];
+                    success = last.success;
+                    anyFit = last.anyFit;
+                    rmsValue = last.rmsValue;
+                    bicValue = last.bicValue;
+                }
+            }
+        }
         return fitRoots;
     }
 
+    /**
+     * Read the dataset over the combined bounds of a cluster of peaks, to be
+     * used by the fits of those peaks.
+     */
+    void prefetch(List<Peak> cluster, Map<Peak, double[]> peakBounds) {
+        int start = Integer.MAX_VALUE;
+        int end = Integer.MIN_VALUE;
+        for (Peak peak : cluster) {
+            double[] bounds = peakBounds.get(peak);
+            if (bounds != null) {
+                int pt1 = dataset.ppmToPoint(0, bounds[0]);
+                int pt2 = dataset.ppmToPoint(0, bounds[1]);
+                start = Math.min(start, Math.min(pt1, pt2));
+                end = Math.max(end, Math.max(pt1, pt2));
+            }
+        }
+        start = Math.max(start, 0);
+        end = Math.min(end, dataset.getSizeTotal(0) - 1);
+        if (start <= end) {
+            try {
+                prefetched = PeakFitter.prefetch(dataset, start, end);
+                prefetchStart = start;
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn(e.getMessage());
+                prefetched = null;
+            }
+        }
+    }
+
     public double jfitLinkedPeak(Peak peak, PeakFitParameters fitParameters) {
         double value = 0.0;
         fitParameters.fitJMode(JFIT);
+        try {
+            double[] bounds = getJFitBounds(peak);
+            if (bounds != null) {
+                value = jfitPeaks(locatePeaks(peak, bounds), bounds, fitParameters);
+            } else {
+                log.warn("Unable to get bounds to fit peaks.");
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn(e.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * Get the bounds of the region to fit a peak, and the peaks near it, in.
+     *
+     * @param peak the peak
+     * @return the bounds or null if there is no region or multiplet to get them from
+     */
+    double[] getJFitBounds(Peak peak) {
         Multiplet multiplet = peak.getPeakDim(0).getMultiplet();
         double regionShift = peak.peakDims[0].getChemShift();
         if (multiplet != null) {
             regionShift = multiplet.getCenter();
         }
+        double[] bounds = Analyzer.getRegionBounds(dataset.getReadOnlyRegions(), 0, regionShift);
+        if ((bounds == null) && (multiplet != null)) {
+            bounds = Multiplets.getBoundsOfPeakDims(multiplet.getAbsComponentList(), 1.5, regionShift);
+        }
+        return bounds;
+    }
+
+    private static List<Peak> locatePeaks(Peak peak, double[] bounds) {
+        int[] dims = {0};
+        double[][] limits = new double[1][2];
+        limits[0][0] = bounds[0];
+        limits[0][1] = bounds[1];
+        return peak.peakList.locatePeaks(limits, dims);
+    }
 
+    double jfitPeaks(List<Peak> peaks, double[] bounds, PeakFitParameters fitParameters) {
+        double value = 0.0;
         try {
-            double[] bounds = Analyzer.getRegionBounds(dataset.getReadOnlyRegions(), 0, regionShift);
-            if ((bounds == null) && (multiplet != null)) {
-                bounds = Multiplets.getBoundsOfPeakDims(multiplet.getAbsComponentList(), 1.5, regionShift);
-            }
-            if (bounds != null) {
-                int[] dims = {0};
-                double[][] limits = new double[1][2];
-                limits[0][0] = bounds[0];
-                limits[0][1] = bounds[1];
-                List<Peak> peaks = peak.peakList.locatePeaks(limits, dims);
-                List<PeakDim> peakDims = new ArrayList<>();
-                for (Peak peakA : peaks) {
-                    peakDims.add(peakA.getPeakDim(0));
-                }
-                value = fitPeakDims(peakDims, bounds, fitParameters);
-            } else {
-                log.warn("Unable to get bounds to fit peaks.");
+            List<PeakDim> peakDims = new ArrayList<>();
+            for (Peak peakA : peaks) {
+                peakDims.add(peakA.getPeakDim(0));
             }
+            value = fitPeakDims(peakDims, bounds, fitParameters);
         } catch (PeakFitException | IOException | IllegalArgumentException e) {
             log.warn(e.getMessage());
         }
@@ -255,6 +470,9 @@ public class PeakFitting {
             fitParameters.fitJMode(LFIT);
         }
         PeakFitter peakFitter = new PeakFitter(dataset, false, fitParameters);
+        if (prefetched != null) {
+            peakFitter.setPrefetched(prefetchStart, prefetched);
+        }
         double value = 0.0;
         bicValue = 0.0;
         if ((fitParameters.fitMode() == RMS) || (fitParameters.fitMode() == MAXDEV)) {
@@ -17,9 +17,11 @@
  */
 package org.nmrfx.processor.datasets;
 
+import org.nmrfx.datasets.BlockStride;
 import org.nmrfx.datasets.DatasetHeaderIO;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.math.VecBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
@@ -231,6 +234,80 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
         }
     }
 
+    /**
+     * Read or write a vector as a series of runs, one for each block the
+     * vector passes through. Runs of consecutive floats that lie within one
+     * mapping are transferred with a single bulk operation on a FloatBuffer
+     * view of the mapping.
+     *
+     * @param first  index of the first point along dim
+     * @param last   index of the last point along dim
+     * @param point  indices of the vector in the other dimensions
+     * @param dim    the dimension the vector lies along
+     * @param values file values to write, or array in which to put values read
+     * @param write  true to write, false to read
+     * @throws IOException if an I/O error occurs
+     */
+    private void stridedIO(int first, int last, int[] point, int dim, float[] values, boolean write) throws IOException {
+        int n = last - first + 1;
+        BlockStride stride = new BlockStride(layout, point, dim, first);
+        int pointStep = stride.getPointStep();
+        long blockBytes = layout.blockPoints * BYTES + layout.blockHeaderSize;
+        long stepBytes = (long) pointStep * BYTES;
+        for (int k = 0; k < n; ) {
+            int nRun = Math.min(n - k, stride.getRunLength());
+            long p = stride.getBlock() * blockBytes + (long) stride.getOffset() * BYTES;
+            int mapN = (int) (p / mapSize);
+            int offN = (int) (p % mapSize);
+            boolean oneMapping = (p + (nRun - 1) * stepBytes) / mapSize == mapN;
+            if ((dataType == 0) && (pointStep == 1) && oneMapping) {
+                FloatBuffer floatBuffer = getMapping(mapN).asFloatBuffer();
+                if (write) {
+                    floatBuffer.put(offN / BYTES, values, k, nRun);
+                } else {
+                    floatBuffer.get(offN / BYTES, values, k, nRun);
+                }
+            } else {
+                MappedByteBuffer mapping = getMapping(mapN);
+                for (int i = 0; i < nRun; i++, p += stepBytes) {
+                    int iMap = (int) (p / mapSize);
+                    if (iMap != mapN) {
+                        mapN = iMap;
+                        mapping = getMapping(mapN);
+                    }
+                    offN = (int) (p % mapSize);
+                    if (write) {
+                        if (dataType == 0) {
+                            mapping.putFloat(offN, values[k + i]);
+                        } else {
+                            mapping.putInt(offN, (int) values[k + i]);
+                        }
+                    } else {
+                        values[k + i] = dataType == 0 ? mapping.getFloat(offN) : mapping.getInt(offN);
+                    }
+                }
+            }
+            stride.advance(nRun);
+            k += nRun;
+        }
+    }
+
+    @Override
+    public void writeVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        vector.getFileValues(values, first, n, scale);
+        stridedIO(first, last, point, dim, values, true);
+    }
+
+    @Override
+    public void readVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        stridedIO(first, last, point, dim, values, false);
+        vector.setFileValues(values, first, n, scale);
+    }
+
     @Override
     public void close() throws IOException {
         if (raFile != null) {
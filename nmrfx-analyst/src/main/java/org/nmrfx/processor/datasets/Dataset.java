@@ -473,6 +473,28 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
         }
     }
 
+    /**
+     * Rewrite the dataset file so that each vector along the specified
+     * dimension lies in a single block. Datasets in memory, and datasets whose
+     * vectors along the dimension already lie in one block, are left as they
+     * are.
+     *
+     * @param iDim the dataset dimension whose vectors will be processed next
+     * @throws DatasetException if the file can't be rewritten
+     */
+    public void reblock(int iDim) throws DatasetException {
+        if (memoryMode || (dataFile instanceof MemoryFile) || (file == null) || (layout.getNBlocks(iDim) == 1)) {
+            return;
+        }
+        try {
+            dataFile = StorageResizer.reblock(this, layout, dataFile, iDim);
+            layout = dataFile.getLayout();
+        } catch (IOException ioe) {
+            log.error(ioe.getMessage(), ioe);
+            throw new DatasetException("Can't reblock dataset " + ioe.getMessage());
+        }
+    }
+
     private void createDataFile(RandomAccessFile raFile, boolean writable) throws IOException {
         dataFile = createDataFile(this, raFile, file, layout, writable);
     }
@@ -557,6 +579,16 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
         useCacheFile = value;
     }
 
+    /**
+     * Return whether new data files are buffered through the Storage Cache
+     * rather than memory mapped.
+     *
+     * @return the cacheFile mode
+     */
+    public static boolean isUseCacheFile() {
+        return useCacheFile;
+    }
+
     public boolean isCacheFile() {
         return dataFile instanceof SubMatrixFile;
     }
@@ -1599,6 +1631,9 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
                 j++;
             }
 
+        } else if (!axisReversed[dim[0]] && (dataFile != null)) {
+            checkVectorRange(point, dim[0], pt[0][0], pt[0][1]);
+            dataFile.readVector(pt[0][0], pt[0][1], point, dim[0], scale, rwVector);
         } else {
             double dReal = 0.0;
             int j = 0;
@@ -1624,6 +1659,18 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
         }
     }
 
+    private void checkVectorRange(int[] point, int vecDim, int first, int last) throws IllegalArgumentException {
+        for (int i = 0; i < nDim; i++) {
+            int low = i == vecDim ? first : point[i];
+            int high = i == vecDim ? last : point[i];
+            if (low < 0) {
+                throw new IllegalArgumentException("point < 0 " + i + " " + low);
+            } else if (high >= getSizeTotal(i)) {
+                throw new IllegalArgumentException("point >= size " + i + " " + high + " " + getSizeTotal(i));
+            }
+        }
+    }
+
     public Optional<Dataset> getExtractSource() {
         int sliceNamePos = getName().indexOf("_slice");
         Dataset sourceDataset = null;
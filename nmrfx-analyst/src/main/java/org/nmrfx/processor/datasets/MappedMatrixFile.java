@@ -17,11 +17,10 @@
  */
 package org.nmrfx.processor.datasets;
 
-import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.datasets.DatasetHeaderIO;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
-import org.nmrfx.processor.math.Vec;
+import org.nmrfx.math.VecBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -51,6 +51,7 @@ public class MappedMatrixFile implements DatasetStorageInterface, Closeable {
     private MappedByteBuffer mappedBuffer;
     DatasetLayout layout;
     FloatBuffer floatBuffer;
+    IntBuffer intBuffer;
     private final long BYTES = 4;
 
     /**
@@ -98,6 +99,7 @@ public class MappedMatrixFile implements DatasetStorageInterface, Closeable {
             mappedBuffer = this.raFile.getChannel().map(mapMode, layout.getFileHeaderSize(), size2);
             mappedBuffer.order(dataset.getByteOrder());
             floatBuffer = mappedBuffer.asFloatBuffer();
+            intBuffer = mappedBuffer.asIntBuffer();
         } catch (IOException e) {
             this.raFile.close();
             throw e;
@@ -237,46 +239,49 @@ public class MappedMatrixFile implements DatasetStorageInterface, Closeable {
         MapInfo.closeDirectBuffer(mapping);
     }
 
-    public void writeVector(int first, int last, int[] point, int dim, double scale, Vec vector) throws IOException {
-        int j = 0;
+    @Override
+    public void writeVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        vector.getFileValues(values, first, n, scale);
         point[dim] = first;
         int position = (int) pointPosition(point);
         int stride = (int) strides[dim];
-        if (vector.isComplex()) {
-            for (int i = first; i <= last; i += 2) {
-                Complex c = vector.getComplex(j++);
-                floatBuffer.put(position, (float) (c.getReal() * scale));
-                position += stride;
-                floatBuffer.put(position, (float) (c.getImaginary() * scale));
-                position += stride;
+        if (dataType == 0) {
+            if (stride == 1) {
+                floatBuffer.put(position, values, 0, n);
+            } else {
+                for (int i = 0; i < n; i++, position += stride) {
+                    floatBuffer.put(position, values[i]);
+                }
             }
         } else {
-            for (int i = first; i <= last; i++) {
-                floatBuffer.put(position, (float) (vector.getReal(j++) * scale));
-                position += stride;
+            for (int i = 0; i < n; i++, position += stride) {
+                intBuffer.put(position, (int) values[i]);
             }
         }
     }
 
-    public void readVector(int first, int last, int[] point, int dim, double scale, Vec vector) throws IOException {
-        int j = 0;
+    @Override
+    public void readVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
+        int n = last - first + 1;
+        float[] values = new float[n];
         point[dim] = first;
         int position = (int) pointPosition(point);
         int stride = (int) strides[dim];
-        if (vector.isComplex()) {
-            for (int i = first; i <= last; i += 2) {
-                double real = floatBuffer.get(position) / scale;
-                position += stride;
-                double imag = floatBuffer.get(position) / scale;
-                position += stride;
-                vector.set(j++, new Complex(real, imag));
+        if (dataType == 0) {
+            if (stride == 1) {
+                floatBuffer.get(position, values, 0, n);
+            } else {
+                for (int i = 0; i < n; i++, position += stride) {
+                    values[i] = floatBuffer.get(position);
+                }
             }
         } else {
-            for (int i = first; i <= last; i++) {
-                double real = floatBuffer.get(position) / scale;
-                position += stride;
-                vector.set(j++, real);
+            for (int i = 0; i < n; i++, position += stride) {
+                values[i] = intBuffer.get(position);
             }
         }
+        vector.setFileValues(values, first, n, scale);
     }
 }
@@ -17,9 +17,11 @@
  */
 package org.nmrfx.processor.datasets;
 
+import org.nmrfx.datasets.BlockStride;
 import org.nmrfx.datasets.DatasetHeaderIO;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.math.VecBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -48,6 +51,7 @@ public class MappedSubMatrixFile implements DatasetStorageInterface, Closeable {
     private MappedByteBuffer mappedBuffer;
     DatasetLayout layout;
     FloatBuffer floatBuffer;
+    IntBuffer intBuffer;
     private final int BYTES = Float.BYTES;
 
     /**
@@ -85,6 +89,7 @@ public class MappedSubMatrixFile implements DatasetStorageInterface, Closeable {
             mappedBuffer = this.raFile.getChannel().map(mapMode, layout.getFileHeaderSize(), size2);
             mappedBuffer.order(dataset.getByteOrder());
             floatBuffer = mappedBuffer.asFloatBuffer();
+            intBuffer = mappedBuffer.asIntBuffer();
         } catch (IOException e) {
             this.raFile.close();
             throw e;
@@ -186,6 +191,72 @@ public class MappedSubMatrixFile implements DatasetStorageInterface, Closeable {
         }
     }
 
+    /**
+     * @return the number of points from the start of one block to the start of
+     * the next, including the block header
+     */
+    private long getBlockStride() {
+        return layout.blockPoints + layout.blockHeaderSize / BYTES;
+    }
+
+    @Override
+    public void writeVector(int first, int last, int[] point, int dim, double scale, VecBase vector) {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        vector.getFileValues(values, first, n, scale);
+        BlockStride stride = new BlockStride(layout, point, dim, first);
+        int pointStep = stride.getPointStep();
+        long blockStride = getBlockStride();
+        for (int k = 0; k < n; ) {
+            int nRun = Math.min(n - k, stride.getRunLength());
+            int p = (int) (stride.getBlock() * blockStride + stride.getOffset());
+            if (dataType == 0) {
+                if (pointStep == 1) {
+                    floatBuffer.put(p, values, k, nRun);
+                } else {
+                    for (int i = 0; i < nRun; i++, p += pointStep) {
+                        floatBuffer.put(p, values[k + i]);
+                    }
+                }
+            } else {
+                for (int i = 0; i < nRun; i++, p += pointStep) {
+                    intBuffer.put(p, (int) values[k + i]);
+                }
+            }
+            stride.advance(nRun);
+            k += nRun;
+        }
+    }
+
+    @Override
+    public void readVector(int first, int last, int[] point, int dim, double scale, VecBase vector) {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        BlockStride stride = new BlockStride(layout, point, dim, first);
+        int pointStep = stride.getPointStep();
+        long blockStride = getBlockStride();
+        for (int k = 0; k < n; ) {
+            int nRun = Math.min(n - k, stride.getRunLength());
+            int p = (int) (stride.getBlock() * blockStride + stride.getOffset());
+            if (dataType == 0) {
+                if (pointStep == 1) {
+                    floatBuffer.get(p, values, k, nRun);
+                } else {
+                    for (int i = 0; i < nRun; i++, p += pointStep) {
+                        values[k + i] = floatBuffer.get(p);
+                    }
+                }
+            } else {
+                for (int i = 0; i < nRun; i++, p += pointStep) {
+                    values[k + i] = intBuffer.get(p);
+                }
+            }
+            stride.advance(nRun);
+            k += nRun;
+        }
+        vector.setFileValues(values, first, n, scale);
+    }
+
     @Override
     public void close() throws IOException {
         if (raFile != null) {
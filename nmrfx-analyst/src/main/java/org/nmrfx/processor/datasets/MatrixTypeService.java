@@ -21,6 +21,7 @@ import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.processor.math.MatrixND;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.processing.Processor;
+import org.nmrfx.processor.processing.VecPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -154,8 +155,13 @@ public class MatrixTypeService {
                 throw new DatasetException("Dataset is null.");
             }
             checkDataset(dataset, vector);
+            long startWrite = System.nanoTime();
             dataset.writeMatrixType(vector);
+            processor.getStageTiming().addWrite(System.nanoTime() - startWrite, 1);
             nWritten.incrementAndGet();
+            if (vector instanceof Vec vec) {
+                VecPool.recycle(vec);
+            }
         }
         return true;
     }
@@ -1,7 +1,9 @@
 package org.nmrfx.processor.datasets;
 
+import org.nmrfx.datasets.BlockTransposer;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.datasets.SubMatrixFile;
 import org.nmrfx.processor.processing.Processor;
 
 import java.io.File;
@@ -43,20 +45,103 @@ public class StorageResizer {
             File file = new File(fullName);
             targetPath = file.toPath();
             RandomAccessFile raFile = new RandomAccessFile(fullName, "rw");
-            targetLayout = DatasetLayout.createBlockMatrix(dataset.getFileHeaderSize(file.getName()), newSizes);
-            target = Dataset.createDataFile(dataset, raFile, file, targetLayout, true);
-            target.zero();
-            target.force();
+            int headerSize = dataset.getFileHeaderSize(file.getName());
+            int vectorDim = sourceLayout.getVectorDim();
+            if (vectorDim >= 0) {
+                targetLayout = DatasetLayout.createVectorBlockMatrix(headerSize, newSizes, vectorDim);
+            } else {
+                targetLayout = DatasetLayout.createBlockMatrix(headerSize, newSizes);
+            }
+            if ((origFile != null) && !(source instanceof MemoryFile)) {
+                // both are files, so copy them a block at a time
+                source.force();
+                raFile.setLength(targetLayout.getTotalSize());
+                copyBlocks(origFile, sourceLayout, raFile, targetLayout);
+                raFile.close();
+            } else {
+                target = Dataset.createDataFile(dataset, raFile, file, targetLayout, true);
+                target.zero();
+                target.force();
+                copyTo(sourceLayout, source, target);
+            }
+        } else {
+            copyTo(sourceLayout, source, target);
         }
-        copyTo(sourceLayout, source, target);
         if ((targetPath != null) && (origFile != null)) {
-            source.close();
-            Files.move(targetPath, origFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            target.writeHeader(true);
+            if (target != null) {
+                target.close();
+            }
+            target = replaceFile(dataset, source, targetPath, origFile, targetLayout);
         }
         return target;
     }
 
+    /**
+     * Rewrite a dataset file with a layout in which each vector along the
+     * specified dimension lies in a single block, so that the vectors of that
+     * dimension can be read and written with one block access each.
+     *
+     * @param dataset      the dataset
+     * @param sourceLayout the current layout of the dataset file
+     * @param source       the current storage of the dataset
+     * @param vectorDim    the dimension to be processed next
+     * @return the storage of the rewritten file
+     * @throws IOException if an I/O error occurs
+     */
+    public static DatasetStorageInterface reblock(Dataset dataset, DatasetLayout sourceLayout, DatasetStorageInterface source, int vectorDim) throws IOException {
+        File origFile = dataset.getFile();
+        File file = new File(dataset.getCanonicalFile() + ".tmp");
+        DatasetLayout targetLayout = DatasetLayout.createVectorBlockMatrix(sourceLayout.getFileHeaderSize(),
+                sourceLayout.sizes.clone(), vectorDim);
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        source.force();
+        raFile.setLength(targetLayout.getTotalSize());
+        copyBlocks(origFile, sourceLayout, raFile, targetLayout);
+        raFile.close();
+        return replaceFile(dataset, source, file.toPath(), origFile, targetLayout);
+    }
+
+    /**
+     * Replace the original dataset file with the rewritten one and open it.
+     * Both files must be closed before the move, as an open file can't be
+     * replaced on Windows.
+     *
+     * @param dataset      the dataset
+     * @param source       the current storage of the dataset, which is closed
+     * @param targetPath   the path of the closed, rewritten file
+     * @param origFile     the original dataset file
+     * @param targetLayout the layout of the rewritten file
+     * @return the storage of the replaced file
+     * @throws IOException if an I/O error occurs
+     */
+    private static DatasetStorageInterface replaceFile(Dataset dataset, DatasetStorageInterface source, Path targetPath, File origFile, DatasetLayout targetLayout) throws IOException {
+        source.close();
+        Files.move(targetPath, origFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        RandomAccessFile raFile = new RandomAccessFile(origFile, "rw");
+        DatasetStorageInterface target = Dataset.createDataFile(dataset, raFile, origFile, targetLayout, true);
+        target.writeHeader(true);
+        return target;
+    }
+
+    /**
+     * Copy the values of a dataset file into a file with a different layout,
+     * reading and writing whole blocks. Source blocks are cached within the
+     * budget of the SubMatrixFile block cache.
+     *
+     * @param sourceFile   the file to copy from
+     * @param sourceLayout the layout of the file to copy from
+     * @param target       the file to copy to
+     * @param targetLayout the layout of the file to copy to
+     * @throws IOException if an I/O error occurs
+     */
+    static void copyBlocks(File sourceFile, DatasetLayout sourceLayout, RandomAccessFile target, DatasetLayout targetLayout) throws IOException {
+        try (RandomAccessFile sourceRA = new RandomAccessFile(sourceFile, "r")) {
+            BlockTransposer transposer = new BlockTransposer(sourceRA.getChannel(), sourceLayout,
+                    target.getChannel(), targetLayout, SubMatrixFile.getCache().getMaxBytes());
+            transposer.copy();
+        }
+    }
+
     public static void copyTo(DatasetLayout sourceLayout, DatasetStorageInterface source, DatasetStorageInterface target) throws IOException {
         int nDim = sourceLayout.nDim;
         int[] counterSizes = new int[nDim];
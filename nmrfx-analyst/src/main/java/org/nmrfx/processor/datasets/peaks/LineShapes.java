@@ -61,4 +61,32 @@ public enum LineShapes {
     public int nPars() {
         return nPars;
     }
+
+    /**
+     * Calculate the G_LORENTZIAN line shape, with unit amplitude, and its derivatives. With a shape factor of 0 this
+     * is the LORENTZIAN line shape.
+     *
+     * @param x           position
+     * @param freq        center of the line
+     * @param width       line width
+     * @param shapeFactor shape factor
+     * @param derivs      on return holds the value and its derivatives with respect to the frequency, width and shape
+     *                    factor
+     */
+    public static void gLorentzianDerivatives(double x, double freq, double width, double shapeFactor, double[] derivs) {
+        double b = width / 2.0;
+        double dXb = (x - freq) / b;
+        double dXb2 = dXb * dXb;
+        double lorentz = 1.0 / (1.0 + dXb2);
+        double denom = 1.0 + dXb2 + dXb2 * dXb2;
+        double gauss = (1.0 + (dXb2 / 2.0)) / denom;
+        double dLorentz = -lorentz * lorentz;
+        double dGauss = -(0.5 + 2.0 * dXb2 + 0.5 * dXb2 * dXb2) / (denom * denom);
+        // derivative with respect to dXb2
+        double dShape = (1.0 - shapeFactor) * dLorentz + shapeFactor * dGauss;
+        derivs[0] = (1.0 - shapeFactor) * lorentz + shapeFactor * gauss;
+        derivs[1] = dShape * (-2.0 * dXb / b);
+        derivs[2] = dShape * (-2.0 * dXb2 / width);
+        derivs[3] = gauss - lorentz;
+    }
 }
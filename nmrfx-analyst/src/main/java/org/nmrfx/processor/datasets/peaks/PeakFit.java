@@ -19,8 +19,13 @@ package org.nmrfx.processor.datasets.peaks;
 
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.exception.*;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
+import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.QRDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.optim.*;
@@ -32,9 +37,11 @@ import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.SynchronizedRandomGenerator;
 import org.apache.commons.math3.random.Well19937c;
 import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.Pair;
 import org.nmrfx.peaks.CouplingItem;
 import org.nmrfx.peaks.CouplingPattern;
 import org.nmrfx.processor.optimization.NNLSMat;
+import org.nmrfx.processor.optimization.Resampler;
 import org.nmrfx.processor.optimization.SineSignal;
 
 import java.util.*;
@@ -70,6 +77,8 @@ public class PeakFit implements MultivariateFunction {
     boolean reportFitness = false;
     int reportAt = 10;
     boolean fitAmps = false;
+    double[] lsBestPoint = null;
+    double lsBestValue = Double.MAX_VALUE;
 
     public class Checker extends SimpleValueChecker {
 
@@ -159,6 +168,242 @@ public class PeakFit implements MultivariateFunction {
         return result.getValue();
     }
 
+    /**
+     * Fit the model by least squares with the Levenberg-Marquardt optimizer.
+     * The derivatives with respect to the line widths, frequencies and shape
+     * factor are calculated analytically and those with respect to couplings
+     * (and amplitudes of coupled signals when they are fit directly) by
+     * forward differences. When the amplitudes aren't fit directly they are
+     * found by non-negative least squares at each step (variable projection)
+     * and the Jacobian uses the Kaufman approximation. This is a local
+     * method, so the starting point needs to be reasonably close.
+     *
+     * @param maxIterations maximum number of iterations
+     * @return the rms deviation at the best point
+     * @throws Exception if the fit fails
+     */
+    public double optimizeLM(int maxIterations) throws Exception {
+        best = null;
+        lsBestPoint = null;
+        lsBestValue = Double.MAX_VALUE;
+        LeastSquaresProblem problem = new LeastSquaresBuilder()
+                .start(newStart)
+                .model(this::lsValue)
+                .target(yv)
+                .parameterValidator(PeakFit::clampToBounds)
+                .maxIterations(maxIterations)
+                .maxEvaluations(maxIterations * 10)
+                .build();
+        double[] point;
+        try {
+            point = new LevenbergMarquardtOptimizer().optimize(problem).getPoint().toArray();
+        } catch (MathIllegalStateException e) {
+            if (lsBestPoint == null) {
+                throw new Exception("failure to fit data " + e.getMessage());
+            }
+            point = lsBestPoint;
+        }
+        best = null;
+        return valueWithUnScaled(unscalePar(point));
+    }
+
+    static RealVector clampToBounds(RealVector point) {
+        for (int i = 0; i < point.getDimension(); i++) {
+            point.setEntry(i, Math.min(100.0, Math.max(0.0, point.getEntry(i))));
+        }
+        return point;
+    }
+
+    /**
+     * Calculate the model values at the scaled parameters.
+     *
+     * @param a      the unscaled parameters
+     * @param coefs  if amplitudes aren't fit directly, and this isn't null, on
+     *               return holds the amplitude of each column of the matrix
+     * @return the model values
+     */
+    private double[] lsModel(double[] a, double[] coefs) {
+        if (fitAmps) {
+            return calcVec(a).toArray();
+        } else {
+            fillMatrix(a);
+            RealVector ampVector = fitSignalAmplitudesNN(A.copy());
+            if (coefs != null) {
+                for (int i = 0; i < coefs.length; i++) {
+                    coefs[i] = ampVector.getEntry(i);
+                }
+            }
+            return A.operate(ampVector).toArray();
+        }
+    }
+
+    Pair<RealVector, RealMatrix> lsValue(RealVector point) {
+        double[] scaled = point.toArray();
+        int nPars = scaled.length;
+        int nPoints = xv.length;
+        double[] a = unscalePar(scaled).clone();
+        double[] coefs = new double[nSigAmpsTotal];
+        double[] values = lsModel(a, coefs);
+
+        double sumSq = 0.0;
+        for (int i = 0; i < nPoints; i++) {
+            double delta = yv[i] - values[i];
+            sumSq += delta * delta;
+        }
+        if (sumSq < lsBestValue) {
+            lsBestValue = sumSq;
+            lsBestPoint = scaled.clone();
+        }
+
+        double[][] columns = new double[nPars][];
+        boolean[] analytic = new boolean[nPars];
+        lineShapeDerivatives(a, coefs, columns, analytic);
+        if (!fitAmps) {
+            projectColumns(coefs, columns);
+        }
+        double[][] jacobian = new double[nPoints][nPars];
+        for (int k = 0; k < nPars; k++) {
+            double[] column = columns[k];
+            double scale = (boundaries[1][k] - boundaries[0][k]) / 100.0;
+            if (!analytic[k]) {
+                double h = scaled[k] < 99.0 ? 1.0e-4 : -1.0e-4;
+                double[] trial = scaled.clone();
+                trial[k] += h;
+                double[] trialValues = lsModel(unscalePar(trial), null);
+                column = new double[nPoints];
+                for (int i = 0; i < nPoints; i++) {
+                    column[i] = (trialValues[i] - values[i]) / h;
+                }
+                scale = 1.0;
+            }
+            if (column != null) {
+                for (int i = 0; i < nPoints; i++) {
+                    jacobian[i][k] = column[i] * scale;
+                }
+            }
+        }
+        return new Pair<>(new ArrayRealVector(values, false), new Array2DRowRealMatrix(jacobian, false));
+    }
+
+    /**
+     * Calculate the derivatives of the model with respect to the line widths,
+     * frequencies, shape factor and (for generic multiplets) amplitudes. Must
+     * be called just after the model is calculated at the same parameters so
+     * the line frequencies and amplitudes of each signal are current.
+     */
+    private void lineShapeDerivatives(double[] a, double[] coefs, double[][] columns, boolean[] analytic) {
+        int nPoints = xv.length;
+        int startOffset = 0;
+        final double shapeFactor;
+        if (fitShape) {
+            startOffset = 1;
+            shapeFactor = a[0];
+            columns[0] = new double[nPoints];
+            analytic[0] = true;
+        } else if (constrainShape) {
+            shapeFactor = constrainValue;
+        } else {
+            shapeFactor = 0.0;
+        }
+        double[] derivs = new double[4];
+        int iCol = 0;
+        for (int iSig = 0; iSig < nSignals; iSig++) {
+            int start = sigStarts[iSig] + startOffset;
+            int lwIndex = start++;
+            double sigLw = a[lwIndex];
+            columns[lwIndex] = new double[nPoints];
+            analytic[lwIndex] = true;
+            boolean generic = (cplItems[iSig].length == 1) && (cplItems[iSig][0].nSplits() < 0);
+            int nLines = freqs[iSig].length;
+            int[] freqIndices = new int[nLines];
+            int[] ampIndices = new int[nLines];
+            double[] lineAmps = new double[nLines];
+            Arrays.fill(ampIndices, -1);
+            if (generic) {
+                for (int iLine = 0; iLine < nLines; iLine++) {
+                    if (fitAmps) {
+                        ampIndices[iLine] = start++;
+                        lineAmps[iLine] = amplitudes[iSig][iLine];
+                    } else {
+                        lineAmps[iLine] = (amplitudes[iSig][iLine] < 0 ? -1.0 : 1.0) * coefs[iCol + iLine];
+                    }
+                    freqIndices[iLine] = start++;
+                }
+                iCol += nLines;
+            } else {
+                if (fitAmps) {
+                    start++; // amplitude of coupled signal, by differences
+                }
+                Arrays.fill(freqIndices, start++);
+                for (int iLine = 0; iLine < nLines; iLine++) {
+                    lineAmps[iLine] = fitAmps ? amplitudes[iSig][iLine] : Math.abs(amplitudes[iSig][iLine]) * coefs[iCol];
+                }
+                iCol++;
+            }
+            for (int iLine = 0; iLine < nLines; iLine++) {
+                int freqIndex = freqIndices[iLine];
+                if (columns[freqIndex] == null) {
+                    columns[freqIndex] = new double[nPoints];
+                    analytic[freqIndex] = true;
+                }
+                if (ampIndices[iLine] >= 0) {
+                    columns[ampIndices[iLine]] = new double[nPoints];
+                    analytic[ampIndices[iLine]] = true;
+                }
+                double lineAmp = lineAmps[iLine];
+                for (int i = 0; i < nPoints; i++) {
+                    LineShapes.gLorentzianDerivatives(xv[i], freqs[iSig][iLine], sigLw, shapeFactor, derivs);
+                    columns[lwIndex][i] += lineAmp * derivs[2];
+                    columns[freqIndex][i] += lineAmp * derivs[1];
+                    if (fitShape) {
+                        columns[0][i] += lineAmp * derivs[3];
+                    }
+                    if (ampIndices[iLine] >= 0) {
+                        columns[ampIndices[iLine]][i] = derivs[0];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Project the derivative columns onto the space orthogonal to the active
+     * (non-zero amplitude) columns of the matrix, as in Kaufman's
+     * approximation to the variable projection Jacobian.
+     */
+    private void projectColumns(double[] coefs, double[][] columns) {
+        int nActive = 0;
+        for (double coef : coefs) {
+            if (coef > 0.0) {
+                nActive++;
+            }
+        }
+        if (nActive == 0) {
+            return;
+        }
+        int nPoints = xv.length;
+        RealMatrix active = new Array2DRowRealMatrix(nPoints, nActive);
+        int jActive = 0;
+        for (int j = 0; j < coefs.length; j++) {
+            if (coefs[j] > 0.0) {
+                active.setColumn(jActive++, A.getColumn(j));
+            }
+        }
+        DecompositionSolver solver = new QRDecomposition(active).getSolver();
+        if (!solver.isNonSingular()) {
+            return;
+        }
+        for (double[] column : columns) {
+            if (column != null) {
+                RealVector colVec = new ArrayRealVector(column, false);
+                RealVector projection = active.operate(solver.solve(colVec));
+                for (int i = 0; i < nPoints; i++) {
+                    column[i] -= projection.getEntry(i);
+                }
+            }
+        }
+    }
+
     void dumpMatrix(RealMatrix matrix) {
         for (int j = 0; j < matrix.getColumnDimension(); j++) {
             for (int i = 0; i < matrix.getRowDimension(); i++) {
@@ -168,6 +413,61 @@ public class PeakFit implements MultivariateFunction {
         }
     }
 
+    /**
+     * Make a copy of this fitter, with its own data, signals and parameters,
+     * that can be fit at the same time as this one.
+     *
+     * @return the copy
+     */
+    public PeakFit copy() {
+        PeakFit peakFit = new PeakFit(fitAmps, fitParameters);
+        CouplingItem[][] items = new CouplingItem[cplItems.length][];
+        for (int i = 0; i < cplItems.length; i++) {
+            items[i] = cplItems[i].clone();
+        }
+        peakFit.setSignals(items);
+        peakFit.setXY(xv, yv);
+        peakFit.newStart = newStart.clone();
+        peakFit.unscaledPars = unscaledPars.clone();
+        peakFit.scaledPars = scaledPars.clone();
+        peakFit.boundaries[0] = boundaries[0].clone();
+        peakFit.boundaries[1] = boundaries[1].clone();
+        peakFit.uniformBoundaries[0] = uniformBoundaries[0].clone();
+        peakFit.uniformBoundaries[1] = uniformBoundaries[1].clone();
+        return peakFit;
+    }
+
+    /**
+     * Fit bootstrap samples of the data, drawn with the random generator of
+     * each replicate. Each replicate fits its own copy of this fitter with
+     * the Levenberg-Marquardt optimizer, from the starting parameters given
+     * to setOffsets.
+     *
+     * @param resampler     the resampler that runs the replicates
+     * @param maxIterations maximum number of iterations of each fit
+     * @return the fitted parameters of each replicate, followed by the rms deviation
+     */
+    public Resampler.Result bootstrap(Resampler resampler, int maxIterations) {
+        int nPar = newStart.length;
+        return resampler.run((iReplicate, replicateRandom) -> {
+            PeakFit peakFit = copy();
+            int[] indices = Resampler.bootstrapIndices(replicateRandom, xv.length);
+            for (int i = 0; i < indices.length; i++) {
+                peakFit.xv[i] = xv[indices[i]];
+                peakFit.yv[i] = yv[indices[i]];
+            }
+            double rms;
+            try {
+                rms = peakFit.optimizeLM(maxIterations);
+            } catch (Exception e) {
+                return Optional.empty();
+            }
+            double[] values = Arrays.copyOf(peakFit.getBestPoint(), nPar + 1);
+            values[nPar] = rms;
+            return Optional.of(values);
+        });
+    }
+
     public void setXY(final double[] xv, final double[] yv) {
         this.xv = xv.clone();
         this.yv = yv.clone();
@@ -51,6 +51,7 @@ public class PeakFitParameters {
     double multiplier;
     ShapeParameters shapeParameters;
     boolean lsFit;
+    boolean lmFit = false;
     int constrainDim;
     ARRAYED_FIT_MODE arrayedFitMode;
 
@@ -95,6 +96,7 @@ public class PeakFitParameters {
         PeakFitParameters newFitParameters = new PeakFitParameters(this.doFit, this.fitMode, this.fitJMode, this.fitZMode,
                 this.updatePeaks, this.multiplier, this.lsFit, this.constrainDim, this.arrayedFitMode);
         newFitParameters.shapeParameters = this.shapeParameters;
+        newFitParameters.lmFit = this.lmFit;
         return newFitParameters;
     }
 
@@ -183,6 +185,20 @@ public class PeakFitParameters {
         return this;
     }
 
+    public boolean lmFit() {
+        return lmFit;
+    }
+
+    /**
+     * @param lmFit If true fit with the Levenberg-Marquardt optimizer, using
+     *              analytic derivatives, when the model supports it
+     * @return this
+     */
+    public PeakFitParameters lmFit(boolean lmFit) {
+        this.lmFit = lmFit;
+        return this;
+    }
+
     public int constrainDim() {
         return constrainDim;
     }
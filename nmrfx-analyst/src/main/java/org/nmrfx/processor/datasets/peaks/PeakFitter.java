@@ -58,6 +58,9 @@ public class PeakFitter {
     boolean fitAmps = true;
     final int[] pdim;
     double BIC;
+    // real values along the first dataset dimension (other dimensions at 0), read before the fit
+    double[] prefetched = null;
+    int prefetchStart = 0;
 
     public PeakFitter(final Dataset theFile, boolean rootedPeaks, PeakFitParameters fitParameters) {
         this.theFile = theFile;
@@ -85,6 +88,80 @@ public class PeakFitter {
         }
     }
 
+    /**
+     * Set values read ahead of the fit so that fits within their range don't
+     * need to read the dataset.
+     *
+     * @param start  first point of the values along the first dimension
+     * @param values real values along the first dimension, with the other
+     *               dimensions at 0, as returned by prefetch
+     */
+    public void setPrefetched(int start, double[] values) {
+        prefetchStart = start;
+        prefetched = values;
+    }
+
+    /**
+     * Read the real values of a range of points along the first dimension of
+     * a dataset, with the other dimensions at 0.
+     *
+     * @param dataset the dataset
+     * @param start   the first point
+     * @param end     the last point
+     * @return the values
+     * @throws IOException if an I/O error occurs
+     */
+    public static double[] prefetch(Dataset dataset, int start, int end) throws IOException {
+        int nDim = dataset.getNDim();
+        int[][] pt = new int[nDim][2];
+        int[] dims = new int[nDim];
+        for (int i = 0; i < nDim; i++) {
+            dims[i] = i;
+        }
+        pt[0][0] = start;
+        pt[0][1] = end;
+        Vec vec = new Vec(end - start + 1);
+        synchronized (dataset) {
+            dataset.readVectorFromDatasetFile(DatasetUtils.generateRawIndices(pt, dataset.getComplex(0)), dims, vec);
+        }
+        double[] values = new double[vec.getSize()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = vec.getReal(i);
+        }
+        return values;
+    }
+
+    private boolean isPrefetched(int[][] pt, int[] dims) {
+        if ((prefetched == null) || (dims[0] != 0)
+                || (pt[0][0] < prefetchStart) || (pt[0][1] >= prefetchStart + prefetched.length)) {
+            return false;
+        }
+        for (int i = 1; i < dims.length; i++) {
+            if ((dims[i] >= 0) && ((pt[i][0] != 0) || (pt[i][1] != 0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the values to fit, from the prefetched values if they cover the
+     * range. Dataset reads are synchronized so fits can run in parallel.
+     */
+    private void readFitVector(int[][] pt, boolean complex, int[] dims, Vec fitVec) throws IOException {
+        if (isPrefetched(pt, dims)) {
+            for (int j = 0; j < fitVec.getSize(); j++) {
+                fitVec.setReal(j, prefetched[pt[0][0] - prefetchStart + j]);
+            }
+        } else {
+            // The indices must be converted to raw indices to read the file, the real/complex indices are used later
+            // so pt should not be modified.
+            synchronized (theFile) {
+                theFile.readVectorFromDatasetFile(DatasetUtils.generateRawIndices(pt, complex), dims, fitVec);
+            }
+        }
+    }
+
     public void setPositionRestraint(Double value) {
         positionRestraint = value == null ? null : Math.max(value, 0.01);
     }
@@ -461,11 +538,9 @@ public class PeakFitter {
         if (size <= 0) {
             throw new IllegalArgumentException("Invalid point range in jfit");
         }
-        // The indices must be converted to raw indices to read the file, the real/complex indices are used later in
-        // the function so p2 should not be modified.
         Vec fitVec = new Vec(size);
         try {
-            theFile.readVectorFromDatasetFile(DatasetUtils.generateRawIndices(p2, theFile.getComplex(pdim[0])), pdim, fitVec);
+            readFitVector(p2, theFile.getComplex(pdim[0]), pdim, fitVec);
         } catch (IOException ioE) {
             throw new IllegalArgumentException(ioE.getMessage());
         }
@@ -523,7 +598,11 @@ public class PeakFitter {
                 }
                 long startTime = System.currentTimeMillis();
                 try {
-                    peakFit.optimizeCMAES(nSteps);
+                    if (fitParameters.lmFit()) {
+                        peakFit.optimizeLM(nSteps);
+                    } else {
+                        peakFit.optimizeCMAES(nSteps);
+                    }
                 } catch (TooManyEvaluationsException tmE) {
                     log.warn(tmE.getMessage(), tmE);
                     return Double.MAX_VALUE;
@@ -673,7 +752,9 @@ public class PeakFitter {
         double[] upper = new double[guesses.length];
         Vec fitVec = new Vec(size);
         try {
-            theFile.readVectorFromDatasetFile(p2, pdim, fitVec);
+            synchronized (theFile) {
+                theFile.readVectorFromDatasetFile(p2, pdim, fitVec);
+            }
         } catch (IOException ioE) {
             throw new IllegalArgumentException(ioE.getMessage());
         }
@@ -926,10 +1007,7 @@ public class PeakFitter {
 
         int size = pt[0][1] - pt[0][0] + 1;
         Vec fitVec = new Vec(size);
-
-        // The indices must be converted to raw indices to read the file, the real/complex indices are used later in
-        // the function so pt should not be modified.
-        theFile.readVectorFromDatasetFile(DatasetUtils.generateRawIndices(pt, theFile.getComplex(pdim[0])), fitDim, fitVec);
+        readFitVector(pt, theFile.getComplex(pdim[0]), fitDim, fitVec);
 
         Lmder_f77 lmdifTest = new Lmder_f77();
 
@@ -32,7 +32,7 @@ import org.nmrfx.chemistry.MoleculeBase;
 import org.nmrfx.chemistry.MoleculeFactory;
 import org.nmrfx.chemistry.Residue;
 import org.nmrfx.datasets.RegionData;
-import org.nmrfx.math.BipartiteMatcher;
+import org.nmrfx.math.SparseAssignment;
 import org.nmrfx.peaks.*;
 import org.nmrfx.processor.datasets.Dataset;
 import org.nmrfx.processor.optimization.*;
@@ -643,45 +643,46 @@ public class PeakListTools {
     private static MatchResult doBPMatch(PeakList peakList, List<MatchItem> iMList, final double[] iOffsets, List<MatchItem> jMList, final double[] jOffsets, double[] tol) {
         int iNPeaks = iMList.size();
         int jNPeaks = jMList.size();
-        int nPeaks = iNPeaks + jNPeaks;
-        BipartiteMatcher bpMatch = new BipartiteMatcher();
-        bpMatch.reset(nPeaks, true);
-        // fixme should we add reciprocol match
-        for (int iPeak = 0; iPeak < iNPeaks; iPeak++) {
-            bpMatch.setWeight(iPeak, jNPeaks + iPeak, -1.0);
-        }
+        double minDelta = 10.0;
+        SparseAssignment bpMatch = new SparseAssignment(iNPeaks, jNPeaks);
+        // only pairs closer than minDelta can be matched, so candidates are found with a grid of that size
+        Map<Long, List<Integer>> grid = new HashMap<>();
+        double cellSize = Math.sqrt(minDelta);
         for (int jPeak = 0; jPeak < jNPeaks; jPeak++) {
-            bpMatch.setWeight(iNPeaks + jPeak, jPeak, -1.0);
+            long[] cell = getMatchingCell(jMList.get(jPeak), jOffsets, tol, cellSize);
+            grid.computeIfAbsent(getMatchingCellKey(cell), k -> new ArrayList<>()).add(jPeak);
         }
-        double minDelta = 10.0;
-        int nMatches = 0;
+        int nDim = tol.length;
+        int nNeighbors = (int) Math.pow(3, nDim);
+        long[] neighbor = new long[nDim];
         for (int iPeak = 0; iPeak < iNPeaks; iPeak++) {
-            double minDeltaSq = Double.MAX_VALUE;
-            int minJ = -1;
-            for (int jPeak = 0; jPeak < jNPeaks; jPeak++) {
-                double weight = Double.NEGATIVE_INFINITY;
-                MatchItem matchI = iMList.get(iPeak);
-                MatchItem matchJ = jMList.get(jPeak);
-                double deltaSqSum = getMatchingDistanceSq(matchI, iOffsets, matchJ, jOffsets, tol);
-                if (deltaSqSum < minDeltaSq) {
-                    minDeltaSq = deltaSqSum;
-                    minJ = jPeak;
+            MatchItem matchI = iMList.get(iPeak);
+            long[] cell = getMatchingCell(matchI, iOffsets, tol, cellSize);
+            for (int iNeighbor = 0; iNeighbor < nNeighbors; iNeighbor++) {
+                int code = iNeighbor;
+                for (int iDim = 0; iDim < nDim; iDim++) {
+                    neighbor[iDim] = cell[iDim] + (code % 3) - 1;
+                    code /= 3;
                 }
-                if (deltaSqSum < minDelta) {
-                    weight = Math.exp(-deltaSqSum);
+                List<Integer> cellPeaks = grid.get(getMatchingCellKey(neighbor));
+                if (cellPeaks == null) {
+                    continue;
                 }
-                if (weight != Double.NEGATIVE_INFINITY) {
-                    bpMatch.setWeight(iPeak, jPeak, weight);
-                    nMatches++;
+                for (int jPeak : cellPeaks) {
+                    MatchItem matchJ = jMList.get(jPeak);
+                    double deltaSqSum = getMatchingDistanceSq(matchI, iOffsets, matchJ, jOffsets, tol);
+                    if (deltaSqSum < minDelta) {
+                        bpMatch.addEdge(iPeak, jPeak, Math.exp(-deltaSqSum));
+                    }
                 }
             }
         }
         int[] matching = bpMatch.getMatching();
         double score = 0.0;
-        nMatches = 0;
+        int nMatches = 0;
         for (int i = 0; i < iNPeaks; i++) {
             MatchItem matchI = iMList.get(i);
-            if ((matching[i] >= 0) && (matching[i] < jMList.size())) {
+            if (matching[i] >= 0) {
                 MatchItem matchJ = jMList.get(matching[i]);
                 double deltaSqSum = getMatchingDistanceSq(matchI, iOffsets, matchJ, jOffsets, tol);
                 if (deltaSqSum < minDelta) {
@@ -698,6 +699,23 @@ public class PeakListTools {
         return new MatchResult(iMList, jMList, matching, nMatches, score);
     }
 
+    private static long[] getMatchingCell(MatchItem item, double[] offsets, double[] tol, double cellSize) {
+        long[] cell = new long[tol.length];
+        for (int k = 0; k < tol.length; k++) {
+            cell[k] = (long) Math.floor((item.values[k] + offsets[k]) / tol[k] / cellSize);
+        }
+        return cell;
+    }
+
+    // distinct cells may share a key, which only adds candidates that fail the distance test
+    private static long getMatchingCellKey(long[] cell) {
+        long key = 0;
+        for (long index : cell) {
+            key = key * 1000003L + index;
+        }
+        return key;
+    }
+
     private static void optimizeMatch(PeakList peakList, final ArrayList<MatchItem> iMList, final double[] iOffsets, final ArrayList<MatchItem> jMList, final double[] jOffsets, final double[] tol, int minDim, double min, double max) {
         class MatchFunction implements UnivariateFunction {
 
@@ -1063,14 +1081,18 @@ public class PeakListTools {
      * @param mode
      */
     public static void quantifyPeaks(PeakList peakList, Dataset dataset, java.util.function.Function<RegionData, Double> f, String mode) {
+        if (dataset.getNDim() != peakList.getNDim()) {
+            throw new IllegalArgumentException("Number of peak list dimensions not equal to number of dataset dimensions");
+        }
         int[] pdim = peakList.getDimsForDataset(dataset, true);
-        peakList.peaks().stream().forEach(peak -> {
-            try {
-                peak.quantifyPeak(dataset, pdim, f, mode);
-            } catch (IOException ex) {
-                log.error(ex.getMessage(), ex);
+        List<Peak> peaks = peakList.peaks();
+        PeakQuantifier quantifier = new PeakQuantifier(dataset, pdim, 1);
+        RegionData[][] regionData = quantifier.analyze(peaks);
+        for (int i = 0; i < peaks.size(); i++) {
+            if (regionData[i][0] != null) {
+                peaks.get(i).quantifyPeak(regionData[i][0], dataset, f, mode);
             }
-        });
+        }
     }
 
     /**
@@ -1085,11 +1107,12 @@ public class PeakListTools {
             throw new IllegalArgumentException("Unknown measurment type: " + mode);
         }
 
-        peakList.peaks().forEach(peak -> {
-            double[][] values = new double[2][nPlanes];
-            measurePlanes(nPlanes, peak, dataset, f, mode, values, 0);
-            setValues(peak, values, mode);
-        });
+        List<Peak> peaks = peakList.peaks();
+        double[][][] values = new double[peaks.size()][2][nPlanes];
+        measurePlanes(nPlanes, peaks, dataset, f, mode, values, 0);
+        for (int i = 0; i < peaks.size(); i++) {
+            setValues(peaks.get(i), values[i], mode);
+        }
         setMeasureX(peakList, dataset, nPlanes);
     }
 
@@ -1105,16 +1128,16 @@ public class PeakListTools {
             throw new IllegalArgumentException("Unknown measurment type: " + mode);
         }
 
-        peakList.peaks().stream().forEach(peak -> {
-            double[][] values = new double[2][datasets.size() * nPlanes];
-            int j = 0;
-            for (Dataset dataset : datasets) {
-                measurePlanes(nPlanes, peak, dataset, f, mode, values, j);
-                j += nPlanes;
-            }
-            setValues(peak, values, mode);
-
-        });
+        List<Peak> peaks = peakList.peaks();
+        double[][][] values = new double[peaks.size()][2][datasets.size() * nPlanes];
+        int j = 0;
+        for (Dataset dataset : datasets) {
+            measurePlanes(nPlanes, peaks, dataset, f, mode, values, j);
+            j += nPlanes;
+        }
+        for (int i = 0; i < peaks.size(); i++) {
+            setValues(peaks.get(i), values[i], mode);
+        }
         setMeasureX(peakList, datasets, nPlanes);
     }
 
@@ -1130,23 +1153,22 @@ public class PeakListTools {
 
     }
 
-    private static void measurePlanes(int nPlanes, Peak peak, Dataset dataset,
+    private static void measurePlanes(int nPlanes, List<Peak> peaks, Dataset dataset,
                                       java.util.function.Function<RegionData, Double> f,
-                                      String mode, double[][] values, int iValue) {
-        int extraPlanes = Math.max(0, dataset.getNDim() - peak.getNDim());
-        int[] planes = new int[extraPlanes];
-        int[] pdim = peak.getPeakList().getDimsForDataset(dataset, true);
-        for (int i = 0; i < nPlanes; i++) {
-            if (planes.length > 0) {
-                planes[0] = i;
-            }
-            try {
-                double[] value = peak.measurePeak(dataset, pdim, planes, f, mode);
-                values[0][iValue] = value[0];
-                values[1][iValue] = value[1];
-                iValue++;
-            } catch (IOException ex) {
-                log.debug("Error measuring peak", ex);
+                                      String mode, double[][][] values, int iValue) {
+        if (peaks.isEmpty()) {
+            return;
+        }
+        int[] pdim = peaks.getFirst().getPeakList().getDimsForDataset(dataset, true);
+        PeakQuantifier quantifier = new PeakQuantifier(dataset, pdim, nPlanes);
+        RegionData[][] regionData = quantifier.analyze(peaks);
+        for (int iPeak = 0; iPeak < peaks.size(); iPeak++) {
+            for (int i = 0; i < nPlanes; i++) {
+                if (regionData[iPeak][i] != null) {
+                    double[] value = peaks.get(iPeak).measurePeak(regionData[iPeak][i], dataset, f, mode);
+                    values[iPeak][0][iValue + i] = value[0];
+                    values[iPeak][1][iValue + i] = value[1];
+                }
             }
         }
     }
@@ -1959,7 +1981,11 @@ public class PeakListTools {
         int nSteps = nInterpolationPoints * 10;
         PointValuePair result;
         try {
-            result = peakFit.optimizeBOBYQA(nSteps, nInterpolationPoints);
+            if (fitPars.lmFit() && peakFit.hasJacobian()) {
+                result = peakFit.optimizeLM(nSteps);
+            } else {
+                result = peakFit.optimizeBOBYQA(nSteps, nInterpolationPoints);
+            }
         } catch (TooManyEvaluationsException tmE) {
             throw new PeakFitException(tmE.getMessage());
         }
@@ -56,6 +56,7 @@ public class PeakPickParameters {
     public double noiseLimit = 0.0;
 
     public boolean useNoise = false;
+    public boolean tiled = false;
 
     public enum PickMode {
         NEW,
@@ -101,6 +102,11 @@ public class PeakPickParameters {
         return this;
     }
 
+    public PeakPickParameters tiled(boolean tiled) {
+        this.tiled = tiled;
+        return this;
+    }
+
     public PeakPickParameters level(int thickness) {
         this.thickness = thickness;
         return this;
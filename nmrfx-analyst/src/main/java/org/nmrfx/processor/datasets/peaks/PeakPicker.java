@@ -39,6 +39,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.DecimalFormat;
 import java.util.*;
 
@@ -56,9 +57,89 @@ public class PeakPicker {
     private final PeakPickParameters peakPickPar;
     private final int nDataDim;
     private static final String MSG_PEAK_LIST = "Peak List ";
+    private static final int N_STAT_POINTS = 1024;
+    private static final int MIN_TILE_POINTS = 4096;
+    private final ThreadLocal<Tile> currentTile = new ThreadLocal<>();
     Peak lastPeakPicked = null;
     int nPeaks;
 
+    private record Candidate(long index, int[] point, int sign, boolean measure) {
+    }
+
+    /**
+     * A block aligned part of the picking region. The values of the tile and
+     * a surrounding halo are read in bulk so that testing for maxima within
+     * the tile rarely needs to go back to the dataset.
+     */
+    private class Tile {
+        final int[][] core;
+        final int[][] bounds;
+        final int[] dim;
+        final List<Candidate> candidates = new ArrayList<>();
+        double[] values = null;
+        Double noiseLevel = null;
+
+        Tile(int[][] core, int[][] bounds, int[] dim) {
+            this.core = core;
+            this.bounds = bounds;
+            this.dim = dim;
+        }
+
+        int getIndex(int[] point) {
+            int index = 0;
+            int stride = 1;
+            for (int i = 0; i < bounds.length; i++) {
+                if ((point[i] < bounds[i][0]) || (point[i] > bounds[i][1])) {
+                    return -1;
+                }
+                index += (point[i] - bounds[i][0]) * stride;
+                stride *= bounds[i][1] - bounds[i][0] + 1;
+            }
+            return index;
+        }
+
+        void scan(int[][] pt, int[] counterSizes, boolean findMax) throws IOException {
+            int nValues = 1;
+            int[] coreSizes = new int[core.length];
+            for (int i = 0; i < core.length; i++) {
+                nValues *= bounds[i][1] - bounds[i][0] + 1;
+                coreSizes[i] = core[i][1] - core[i][0] + 1;
+            }
+            values = new double[nValues];
+            dataset.readRegion(bounds, dim, values);
+            currentTile.set(this);
+            try {
+                SummaryStatistics stats = new SummaryStatistics();
+                int[] points = new int[core.length];
+                for (int[] counts : new DimCounter(coreSizes)) {
+                    long index = 0;
+                    long stride = 1;
+                    for (int i = 0; i < core.length; i++) {
+                        points[i] = core[i][0] + counts[i];
+                        index += (points[i] - pt[i][0]) * stride;
+                        stride *= counterSizes[i];
+                    }
+                    double checkValue = values[getIndex(points)];
+                    stats.addValue(checkValue);
+                    if (stats.getN() == N_STAT_POINTS) {
+                        double stDev = stats.getStandardDeviation();
+                        if ((noiseLevel == null) || (stDev < noiseLevel)) {
+                            noiseLevel = stDev;
+                        }
+                        stats.clear();
+                    }
+                    Candidate candidate = testPoint(index, points, checkValue, dim, findMax);
+                    if (candidate != null) {
+                        candidates.add(candidate);
+                    }
+                }
+            } finally {
+                currentTile.remove();
+                values = null;
+            }
+        }
+    }
+
     public PeakPicker(PeakPickParameters peakPickPar) {
         this.peakPickPar = peakPickPar;
         this.dataset = peakPickPar.theFile;
@@ -67,6 +148,13 @@ public class PeakPicker {
     }
 
     double readPoint(int[] pt, int[] dim) throws IOException {
+        Tile tile = currentTile.get();
+        if ((tile != null) && (dim == tile.dim)) {
+            int index = tile.getIndex(pt);
+            if (index >= 0) {
+                return tile.values[index];
+            }
+        }
         return dataset.readPoint(pt, dim);
     }
 
@@ -82,12 +170,31 @@ public class PeakPicker {
         return dataset.getSizeReal(i);
     }
 
+    private int[] getRegionSizes(double regionSizeHz, int nPeakDim) {
+        int[] regionSize = new int[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            if (regionSizeHz > 0.1) {
+                regionSize[i] = (int) (regionSizeHz / dataset.getSw(i) * dataset.getSizeReal(i));
+            } else {
+                regionSize[i] = 2;
+            }
+
+            if (regionSize[i] < 1) {
+                regionSize[i] = 1;
+            }
+
+            if (i >= nPeakDim) {
+                regionSize[i] = 0;
+            }
+        }
+        return regionSize;
+    }
+
     public boolean checkForPeak(double centerValue, int[] pt,
                                 int[] dimOrder, boolean findMax, boolean fixedPick, double regionSizeHz, int nPeakDim, int sign) {
         int[] checkPoint = new int[nDataDim];
         int[] deltaPoint = new int[nDataDim];
         int[] testPoint = new int[nDataDim];
-        int[] regionSize = new int[nDataDim];
         boolean foundPeak = true;
         boolean ok;
         int i;
@@ -103,21 +210,8 @@ public class PeakPicker {
             return true;
         }
 
+        int[] regionSize = getRegionSizes(regionSizeHz, nPeakDim);
         for (i = 0; i < nDataDim; i++) {
-            if (regionSizeHz > 0.1) {
-                regionSize[i] = (int) (regionSizeHz / dataset.getSw(i) * dataset.getSizeReal(i));
-            } else {
-                regionSize[i] = 2;
-            }
-
-            if (regionSize[i] < 1) {
-                regionSize[i] = 1;
-            }
-
-            if (i >= nPeakDim) {
-                regionSize[i] = 0;
-            }
-
             testPoint[i] = pt[i];
         }
         do {
@@ -148,7 +242,7 @@ public class PeakPicker {
                 if (ok) {
                     double testValue = 0.0;
                     try {
-                        testValue = sign * dataset.readPoint(checkPoint, dimOrder);
+                        testValue = sign * readPoint(checkPoint, dimOrder);
                     } catch (IOException | IllegalArgumentException e) {
                         log.error("{} {} {}", dimOrder[0], dimOrder[1], dimOrder[2]);
                         log.error("{} {} {} {}", checkPoint[0], checkPoint[1], checkPoint[2], e.getMessage(), e);
@@ -538,8 +632,6 @@ public class PeakPicker {
         int[] dataToPeak = new int[nDataDim];
         int[] lastPoint = new int[nDataDim];
         nPeaks = 0;
-        int nMatch;
-        double checkValue;
         pt = peakPickPar.pt;
         Double noiseLevel = dataset.getNoiseLevel();
         lastPeakPicked = null;
@@ -631,122 +723,220 @@ public class PeakPicker {
             throw new IllegalArgumentException("nv_dataset peakPick: invalid mode");
         }
 
-        SummaryStatistics stats = new SummaryStatistics();
-        int nStatPoints = 1024;
-
         int[] counterSizes = new int[nDataDim];
         for (int i = 0; i < nDataDim; i++) {
             counterSizes[i] = pt[i][1] - pt[i][0] + 1;
         }
-        int[] checkPoint = new int[nDataDim];
-        Iterator<int[]> cIter;
         boolean filterMode = peakPickPar.filter && peakPickPar.filterList != null;
-        int[] filtPkToData = null;
-        if (filterMode) {
-            filtPkToData = peakPickPar.filterList.getDimsForDataset(dataset, true);
-            cIter =  (new PeakDimCounter(dataset, peakPickPar.filterList.peaks(), peakToData, filtPkToData, pt, peakPickPar.filterWidth)).iterator();
+        if (peakPickPar.tiled && !filterMode && (nDataDim > 1)) {
+            noiseLevel = pickTiles(peakList, pt, counterSizes, peakToData, dataToPeak, lastPoint, findMax, noiseLevel);
         } else {
-            cIter = (new DimCounter(counterSizes)).iterator();
-        }
-        while (cIter.hasNext()) {
-            int[] points = cIter.next();
-            for (int i = 0; i < nDataDim; i++) {
-                if (!filterMode) {
-                    points[i] += pt[i][0];
-                }
-                checkPoint[i] = points[i];
+            SummaryStatistics stats = new SummaryStatistics();
+            Iterator<int[]> cIter;
+            if (filterMode) {
+                int[] filtPkToData = peakPickPar.filterList.getDimsForDataset(dataset, true);
+                cIter = (new PeakDimCounter(dataset, peakPickPar.filterList.peaks(), peakToData, filtPkToData, pt, peakPickPar.filterWidth)).iterator();
+            } else {
+                cIter = (new DimCounter(counterSizes)).iterator();
             }
-            checkValue = readPoint(points, peakToData);
-            int sign = 1;
-            if (nDataDim > 1) {
-                stats.addValue(checkValue);
-                if (stats.getN() == nStatPoints) {
-                    double stDev = stats.getStandardDeviation();
-                    if ((noiseLevel == null) || (stDev < noiseLevel)) {
-                        noiseLevel = stDev;
+            while (cIter.hasNext()) {
+                int[] points = cIter.next();
+                if (!filterMode) {
+                    for (int i = 0; i < nDataDim; i++) {
+                        points[i] += pt[i][0];
                     }
-                    stats.clear();
                 }
-            }
-            boolean measurePeak = true;
-            if (!peakPickPar.fixedPick) {
-                if ((checkValue >= 0.0) && (checkValue < peakPickPar.level)) {
-                    continue;
+                double checkValue = readPoint(points, peakToData);
+                if (nDataDim > 1) {
+                    stats.addValue(checkValue);
+                    if (stats.getN() == N_STAT_POINTS) {
+                        double stDev = stats.getStandardDeviation();
+                        if ((noiseLevel == null) || (stDev < noiseLevel)) {
+                            noiseLevel = stDev;
+                        }
+                        stats.clear();
+                    }
                 }
-                if ((checkValue < 0.0) && (checkValue > -peakPickPar.level)) {
-                    continue;
+                Candidate candidate = testPoint(0, points, checkValue, peakToData, findMax);
+                if (candidate != null) {
+                    addPick(candidate, peakList, peakToData, dataToPeak, lastPoint, findMax);
                 }
+            }
+        }
 
-                if ((checkValue < 0.0) && ((peakPickPar.posNeg & 2) == 0)) {
-                    continue;
-                }
+        if ((noiseLevel != null) && (noiseLevel > 0.0)) {
+            peakList.setFOM(noiseLevel);
+        }
+        dataset.setNoiseLevel(noiseLevel);
+        peakList.reIndex();
+        return peakList;
+    }
 
-                if ((checkValue > 0.0) && ((peakPickPar.posNeg & 1) == 0)) {
-                    continue;
-                }
-            } else {
-                if ((checkValue >= 0.0) && (checkValue < peakPickPar.level)) {
-                    measurePeak = false;
-                }
-                if ((checkValue < 0.0) && (checkValue > -peakPickPar.level)) {
-                    measurePeak = false;
-                }
+    private Candidate testPoint(long index, int[] points, double checkValue, int[] peakToData, boolean findMax) throws IOException {
+        boolean measurePeak = true;
+        if (!peakPickPar.fixedPick) {
+            if ((checkValue >= 0.0) && (checkValue < peakPickPar.level)) {
+                return null;
+            }
+            if ((checkValue < 0.0) && (checkValue > -peakPickPar.level)) {
+                return null;
             }
 
-            if (checkValue < 0.0) {
-                sign = -1;
-                checkValue *= -1;
+            if ((checkValue < 0.0) && ((peakPickPar.posNeg & 2) == 0)) {
+                return null;
             }
-            if (checkForPeak(checkValue, checkPoint, peakToData, findMax, peakPickPar.fixedPick,
-                    peakPickPar.regionWidth, peakPickPar.nPeakDim, sign)) {
-                boolean aboveNoise = true;
-                if (peakPickPar.useNoise && (peakPickPar.noiseLimit > 0.001)) {
-                    double noiseRatio = dataset.checkNoiseLevel(checkValue, checkPoint, peakToData);
-                    if (noiseRatio < peakPickPar.noiseLimit) {
-                        aboveNoise = false;
-                    }
+
+            if ((checkValue > 0.0) && ((peakPickPar.posNeg & 1) == 0)) {
+                return null;
+            }
+        } else {
+            if ((checkValue >= 0.0) && (checkValue < peakPickPar.level)) {
+                measurePeak = false;
+            }
+            if ((checkValue < 0.0) && (checkValue > -peakPickPar.level)) {
+                measurePeak = false;
+            }
+        }
+
+        int sign = 1;
+        if (checkValue < 0.0) {
+            sign = -1;
+            checkValue *= -1;
+        }
+        int[] checkPoint = points.clone();
+        if (!checkForPeak(checkValue, checkPoint, peakToData, findMax, peakPickPar.fixedPick,
+                peakPickPar.regionWidth, peakPickPar.nPeakDim, sign)) {
+            return null;
+        }
+        if (peakPickPar.useNoise && (peakPickPar.noiseLimit > 0.001)) {
+            double noiseRatio = dataset.checkNoiseLevel(checkValue, checkPoint, peakToData);
+            if (noiseRatio < peakPickPar.noiseLimit) {
+                return null;
+            }
+        }
+        return new Candidate(index, checkPoint, sign, measurePeak);
+    }
+
+    private void addPick(Candidate candidate, PeakList peakList, int[] peakToData, int[] dataToPeak,
+                         int[] lastPoint, boolean findMax) throws IOException {
+        int[] checkPoint = candidate.point();
+        boolean samePeak = false;
+        if (findMax || peakPickPar.fixedPick) {
+            samePeak = Arrays.equals(lastPoint, checkPoint);
+        }
+        if (!samePeak) {
+            Peak peak = new Peak(peakList, peakPickPar.nPeakDim);
+            if (measurePeak(peakPickPar.level, checkPoint, peakPickPar.cpt, peakToData, dataToPeak,
+                    peakPickPar.fixedPick, peak,
+                    peakPickPar.nPeakDim, peakPickPar.sDevN, candidate.sign(), candidate.measure())) {
+                Peak pickedPeak = peakList.addPeak(peak);
+                if (pickedPeak != null) {
+                    nPeaks++;
+                    lastPeakPicked = pickedPeak;
+                } else {
+                    peakList.idLast--;
                 }
-                if (aboveNoise) {
-                    boolean samePeak = false;
-                    if (findMax || peakPickPar.fixedPick) {
-                        samePeak = true;
-                        for (int ii = 0; ii < checkPoint.length; ii++) {
-                            if (lastPoint[ii] != checkPoint[ii]) {
-                                samePeak = false;
-                                break;
-                            }
-                        }
-                    }
-                    if (!samePeak) {
-                        Peak peak = new Peak(peakList, peakPickPar.nPeakDim);
-                        if (measurePeak(peakPickPar.level, checkPoint, peakPickPar.cpt, peakToData, dataToPeak,
-                                peakPickPar.fixedPick, peak,
-                                peakPickPar.nPeakDim, peakPickPar.sDevN, sign, measurePeak)) {
-                            Peak pickedPeak = peakList.addPeak(peak);
-                            if (pickedPeak != null) {
-                                nPeaks++;
-                                lastPeakPicked = pickedPeak;
-                            } else {
-                                peakList.idLast--;
-                            }
-                        } else {
-                            peakList.idLast--;
-                        }
-                        if (findMax || peakPickPar.fixedPick) {
-                            System.arraycopy(checkPoint, 0, lastPoint, 0, checkPoint.length);
-                        }
+            } else {
+                peakList.idLast--;
+            }
+            if (findMax || peakPickPar.fixedPick) {
+                System.arraycopy(checkPoint, 0, lastPoint, 0, checkPoint.length);
+            }
+        }
+    }
 
-                    }
+    /**
+     * Pick peaks by scanning tiles of the region in parallel. Each tile is
+     * read in bulk, together with a halo wide enough for the neighbourhood
+     * tested by checkForPeak, and yields candidate peaks tagged with the
+     * position they would have in a serial scan. The candidates are then
+     * measured and added to the peak list in that order, so the peaks are the
+     * same as those found by the serial picker. The noise level is the
+     * smallest standard deviation found within any tile.
+     */
+    private Double pickTiles(PeakList peakList, int[][] pt, int[] counterSizes, int[] peakToData, int[] dataToPeak,
+                             int[] lastPoint, boolean findMax, Double noiseLevel) throws IOException {
+        List<Tile> tiles = getTiles(pt, peakToData);
+        try {
+            tiles.parallelStream().forEach(tile -> {
+                try {
+                    tile.scan(pt, counterSizes, findMax);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (Tile tile : tiles) {
+            candidates.addAll(tile.candidates);
+            if ((tile.noiseLevel != null) && ((noiseLevel == null) || (tile.noiseLevel < noiseLevel))) {
+                noiseLevel = tile.noiseLevel;
             }
         }
+        candidates.sort(Comparator.comparingLong(Candidate::index));
+        for (Candidate candidate : candidates) {
+            addPick(candidate, peakList, peakToData, dataToPeak, lastPoint, findMax);
+        }
+        return noiseLevel;
+    }
 
-        if ((noiseLevel != null) && (noiseLevel > 0.0)) {
-            peakList.setFOM(noiseLevel);
+    private List<Tile> getTiles(int[][] pt, int[] peakToData) {
+        // tiles are whole blocks of a submatrix file, or whole rows of a full matrix
+        boolean subMatrix = dataset.hasLayout() && dataset.getLayout().isSubMatrix();
+        int[] tileSize = new int[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            int iDim = peakToData[i];
+            if (subMatrix) {
+                tileSize[i] = dataset.getLayout().getBlockSize(iDim);
+                if (dataset.getComplex(iDim)) {
+                    tileSize[i] /= 2;
+                }
+            } else {
+                tileSize[i] = iDim == 0 ? getSize(iDim) : 1;
+            }
+            tileSize[i] = Math.max(1, Math.min(tileSize[i], pt[i][1] - pt[i][0] + 1));
         }
-        dataset.setNoiseLevel(noiseLevel);
-        peakList.reIndex();
-        return peakList;
+        // grow small tiles by whole blocks so the halo stays a modest fraction of each tile
+        long nTilePoints = 1;
+        for (int size : tileSize) {
+            nTilePoints *= size;
+        }
+        boolean grew = true;
+        while ((nTilePoints < MIN_TILE_POINTS) && grew) {
+            grew = false;
+            int smallest = -1;
+            for (int i = 0; i < nDataDim; i++) {
+                if ((tileSize[i] < (pt[i][1] - pt[i][0] + 1)) && ((smallest < 0) || (tileSize[i] < tileSize[smallest]))) {
+                    smallest = i;
+                }
+            }
+            if (smallest >= 0) {
+                tileSize[smallest] *= 2;
+                nTilePoints *= 2;
+                grew = true;
+            }
+        }
+        int[] halo = getRegionSizes(peakPickPar.regionWidth, peakPickPar.nPeakDim);
+        int[] nTiles = new int[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            nTiles[i] = pt[i][1] / tileSize[i] - pt[i][0] / tileSize[i] + 1;
+        }
+        List<Tile> tiles = new ArrayList<>();
+        for (int[] tileIndex : new DimCounter(nTiles)) {
+            int[][] core = new int[nDataDim][2];
+            int[][] bounds = new int[nDataDim][2];
+            for (int i = 0; i < nDataDim; i++) {
+                int start = (pt[i][0] / tileSize[i] + tileIndex[i]) * tileSize[i];
+                core[i][0] = Math.max(start, pt[i][0]);
+                core[i][1] = Math.min(start + tileSize[i] - 1, pt[i][1]);
+                bounds[i][0] = Math.max(0, core[i][0] - halo[i]);
+                bounds[i][1] = Math.min(getSize(peakToData[i]) - 1, core[i][1] + halo[i]);
+            }
+            tiles.add(new Tile(core, bounds, peakToData));
+        }
+        return tiles;
     }
 
     public boolean anyPeaksInRegion() {
@@ -768,11 +958,7 @@ public class PeakPicker {
                 limits[i][1] = peakPickPar.theFile.pointToPPM(j, peakPickPar.pt[i][0]);
                 limits[i][0] = peakPickPar.theFile.pointToPPM(j, peakPickPar.pt[i][1]);
             }
-            Optional<Peak> firstPeak = peakList.peaks()
-                    .stream()
-                    .parallel()
-                    .filter(peak -> peak.inRegion(limits, null, null, dimMap)).findFirst();
-            foundAny = firstPeak.isPresent();
+            foundAny = !peakList.findPeaksInRegion(limits, dimMap).isEmpty();
         }
         return foundAny;
     }
@@ -791,11 +977,10 @@ public class PeakPicker {
                 limits[i][1] = peakPickPar.theFile.pointToPPM(j, peakPickPar.pt[i][0]);
                 limits[i][0] = peakPickPar.theFile.pointToPPM(j, peakPickPar.pt[i][1]);
             }
-            peaks = peakList.peaks()
+            peaks = peakList.findPeaksInRegion(limits, peakPickPar.peakToData)
                     .stream()
-                    .parallel()
                     .filter(p -> !p.isDeleted())
-                    .filter(p -> p.inRegion(limits, null, null, peakPickPar.peakToData)).toList();
+                    .toList();
         }
         return peaks;
     }
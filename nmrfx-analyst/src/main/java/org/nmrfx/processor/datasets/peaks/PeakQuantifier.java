@@ -0,0 +1,336 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.datasets.peaks;
+
+import org.nmrfx.datasets.RegionData;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DimCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Analyzes the regions of many peaks, in all planes of a pseudo-ND dataset,
+ * with one bulk read per group of peaks. Peaks are grouped by the dataset
+ * block (or tile of a full matrix file) that their region starts in. The
+ * values covering the regions of a group, in every plane, are read with
+ * DatasetBase.readRegion and the groups are then analyzed in parallel. The
+ * RegionData for each peak and plane is the same as that from
+ * Peak.analyzePeakRegion.
+ */
+public class PeakQuantifier {
+    private static final Logger log = LoggerFactory.getLogger(PeakQuantifier.class);
+    private static final int DEFAULT_TILE_SIZE = 64;
+    private static final String DIM_MISMATCH = "Number of peak list dimensions not equal to number of dataset dimensions";
+
+    private final Dataset dataset;
+    private final int[] pdim;
+    private final int nPlanes;
+    private final int nDataDim;
+    private final int[] dim;
+    // dataset dimensions that are not peak dimensions, the first is the plane dimension
+    private final int[] planeDims;
+
+    private record PeakRegion(int iPeak, int[][] pt, int[] cpt, double[] width) {
+    }
+
+    /**
+     * Peaks whose regions start in the same tile, and the bounds of the
+     * values read for them.
+     */
+    private class Group {
+        final List<PeakRegion> regions = new ArrayList<>();
+        final int[][] bounds;
+        double[] values = null;
+
+        Group() {
+            bounds = new int[nDataDim][2];
+            for (int[] bound : bounds) {
+                bound[0] = Integer.MAX_VALUE;
+                bound[1] = Integer.MIN_VALUE;
+            }
+        }
+
+        void add(PeakRegion region) {
+            regions.add(region);
+            // include a one point halo for the interpolation of the maximum
+            for (int i = 0; i < nDataDim; i++) {
+                if (isPlaneDim(i)) {
+                    continue;
+                }
+                bounds[i][0] = Math.min(bounds[i][0], Math.max(0, region.pt[i][0] - 1));
+                bounds[i][1] = Math.max(bounds[i][1], Math.min(dataset.getSizeReal(i) - 1, region.pt[i][1] + 1));
+            }
+        }
+
+        int getIndex(int[] point) {
+            int index = 0;
+            int stride = 1;
+            for (int i = 0; i < nDataDim; i++) {
+                if ((point[i] < bounds[i][0]) || (point[i] > bounds[i][1])) {
+                    return -1;
+                }
+                index += (point[i] - bounds[i][0]) * stride;
+                stride *= bounds[i][1] - bounds[i][0] + 1;
+            }
+            return index;
+        }
+
+        double readPoint(int[] point) throws IOException {
+            int index = getIndex(point);
+            return index >= 0 ? values[index] : dataset.readPoint(point, dim);
+        }
+
+        void analyze(RegionData[][] result) throws IOException {
+            for (int i = 0; i < planeDims.length; i++) {
+                int iDim = planeDims[i];
+                bounds[iDim][0] = 0;
+                bounds[iDim][1] = i == 0 ? nPlanes - 1 : 0;
+            }
+            int nValues = 1;
+            for (int[] bound : bounds) {
+                nValues *= bound[1] - bound[0] + 1;
+            }
+            values = new double[nValues];
+            try {
+                dataset.readRegion(bounds, dim, values);
+                for (PeakRegion region : regions) {
+                    for (int iPlane = 0; iPlane < nPlanes; iPlane++) {
+                        if (planeDims.length > 0) {
+                            int iDim = planeDims[0];
+                            region.pt[iDim][0] = iPlane;
+                            region.pt[iDim][1] = iPlane;
+                            region.cpt[iDim] = iPlane;
+                        }
+                        result[region.iPeak][iPlane] = analyzeRegion(this, region.pt, region.cpt, region.width);
+                    }
+                }
+            } finally {
+                values = null;
+            }
+        }
+    }
+
+    /**
+     * Create a quantifier for a dataset.
+     *
+     * @param dataset the dataset
+     * @param pdim    the dataset dimension of each peak dimension
+     * @param nPlanes the number of planes along the first dataset dimension
+     *                that is not a peak dimension. Must be 1 if there is no such
+     *                dimension.
+     */
+    public PeakQuantifier(Dataset dataset, int[] pdim, int nPlanes) {
+        this.dataset = dataset;
+        this.pdim = pdim.clone();
+        this.nPlanes = nPlanes;
+        nDataDim = dataset.getNDim();
+        if (pdim.length > nDataDim) {
+            throw new IllegalArgumentException(DIM_MISMATCH);
+        }
+        dim = new int[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            dim[i] = i;
+        }
+        planeDims = new int[nDataDim - pdim.length];
+        for (int i = 0, j = 0; i < nDataDim; i++) {
+            if (!isPeakDim(i)) {
+                planeDims[j++] = i;
+            }
+        }
+        if ((planeDims.length == 0) && (nPlanes != 1)) {
+            throw new IllegalArgumentException("Dataset has no plane dimension");
+        }
+    }
+
+    private boolean isPeakDim(int iDim) {
+        for (int peakDim : pdim) {
+            if (peakDim == iDim) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPlaneDim(int iDim) {
+        for (int planeDim : planeDims) {
+            if (planeDim == iDim) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Analyze the region of each peak in each plane. Regions that wrap
+     * around the edge of the dataset, and all regions of a dataset that is
+     * stored in a vector, are analyzed one at a time with
+     * Peak.analyzePeakRegion. An entry is null if its region could not be
+     * read.
+     *
+     * @param peaks the peaks to analyze
+     * @return the region data, indexed by peak and plane
+     * @throws IllegalArgumentException if the number of dimensions of a peak
+     *                                  list plus the number of plane dimensions is not the number of dataset
+     *                                  dimensions, as in Peak.analyzePeakRegion
+     */
+    public RegionData[][] analyze(List<Peak> peaks) throws IllegalArgumentException {
+        RegionData[][] result = new RegionData[peaks.size()][nPlanes];
+        int[] tileSize = getTileSize();
+        Map<List<Integer>, Group> groups = new LinkedHashMap<>();
+        List<Integer> serialPeaks = new ArrayList<>();
+        for (int iPeak = 0; iPeak < peaks.size(); iPeak++) {
+            Peak peak = peaks.get(iPeak);
+            if (nDataDim != (peak.getPeakList().getNDim() + planeDims.length)) {
+                throw new IllegalArgumentException(DIM_MISMATCH);
+            }
+            int[][] pt = new int[nDataDim][2];
+            int[] cpt = new int[nDataDim];
+            double[] width = new double[nDataDim];
+            peak.getPeakRegion(dataset, pdim, pt, cpt, width, null, 1.0);
+            boolean wraps = dataset.getVec() != null;
+            List<Integer> key = new ArrayList<>();
+            for (int iDim : pdim) {
+                if (pt[iDim][1] < pt[iDim][0]) {
+                    wraps = true;
+                }
+                key.add(pt[iDim][0] / tileSize[iDim]);
+            }
+            if (wraps) {
+                serialPeaks.add(iPeak);
+            } else {
+                groups.computeIfAbsent(key, k -> new Group()).add(new PeakRegion(iPeak, pt, cpt, width));
+            }
+        }
+        groups.values().parallelStream().forEach(group -> {
+            try {
+                group.analyze(result);
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Error measuring peaks", e);
+            }
+        });
+        int[] planes = new int[planeDims.length];
+        for (int iPeak : serialPeaks) {
+            for (int iPlane = 0; iPlane < nPlanes; iPlane++) {
+                if (planes.length > 0) {
+                    planes[0] = iPlane;
+                }
+                try {
+                    result[iPeak][iPlane] = Peak.analyzePeakRegion(peaks.get(iPeak), dataset, planes, pdim);
+                } catch (IOException e) {
+                    log.debug("Error measuring peak", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int[] getTileSize() {
+        // tiles are whole blocks of a submatrix file
+        boolean subMatrix = dataset.hasLayout() && dataset.getLayout().isSubMatrix();
+        int[] tileSize = new int[nDataDim];
+        for (int iDim = 0; iDim < nDataDim; iDim++) {
+            tileSize[iDim] = DEFAULT_TILE_SIZE;
+            if (subMatrix) {
+                tileSize[iDim] = dataset.getLayout().getBlockSize(iDim);
+                if (dataset.getComplex(iDim)) {
+                    tileSize[iDim] /= 2;
+                }
+            }
+            tileSize[iDim] = Math.max(1, tileSize[iDim]);
+        }
+        return tileSize;
+    }
+
+    /**
+     * Analyze a region with the values of a group. This follows
+     * Dataset.analyzeRegion for a region that doesn't wrap.
+     */
+    private RegionData analyzeRegion(Group group, int[][] pt, int[] cpt, double[] width) throws IOException {
+        double fTol = 0.25;
+        double threshRatio = 0.25;
+        double threshold = 0.0;
+        int[] counterSizes = new int[nDataDim];
+        double[] iTol = new double[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            counterSizes[i] = pt[i][1] - pt[i][0] + 1;
+            iTol[i] = fTol * Math.abs(counterSizes[i]);
+        }
+        RegionData rData = new RegionData(dataset);
+        int[] points = new int[nDataDim];
+        for (int pass2 = 0; pass2 < 2; pass2++) {
+            if (pass2 == 1) {
+                rData.setSVar(0.0);
+                rData.setMean(rData.getVolume_r() / rData.getNpoints());
+                threshold = threshRatio * rData.getCenter();
+            }
+            for (int[] counts : new DimCounter(counterSizes)) {
+                for (int i = 0; i < nDataDim; i++) {
+                    points[i] = counts[i] + pt[i][0];
+                }
+                rData.setValue(group.values[group.getIndex(points)]);
+                if (rData.getValue() == Double.MAX_VALUE) {
+                    continue;
+                }
+                if (pass2 == 1) {
+                    rData.calcPass1(points, cpt, width, dim, threshold, iTol);
+                } else {
+                    rData.calcPass0(points, cpt, width, dim);
+                }
+            }
+        }
+        rData.setMaxDPoint(optCenter(group, rData.getMaxPoint()));
+        if (rData.getNpoints() == 1) {
+            rData.setRMS(0.0);
+        } else {
+            rData.setRMS(Math.sqrt(rData.getSumSq() / (rData.getNpoints() - 1)));
+        }
+        return rData;
+    }
+
+    private double[] optCenter(Group group, int[] maxPoint) throws IOException {
+        double[] dmaxPoint = new double[nDataDim];
+        int[] points = new int[nDataDim];
+        double[] f = new double[2];
+        double centerValue = group.readPoint(maxPoint);
+        for (int j = 0; j < nDataDim; j++) {
+            System.arraycopy(maxPoint, 0, points, 0, nDataDim);
+            points[j] = maxPoint[j] - 1;
+            if (points[j] < 0) {
+                points[j] = dataset.getSizeReal(j) - 1;
+            }
+            f[0] = group.readPoint(points);
+            points[j] = maxPoint[j] + 1;
+            if (points[j] >= dataset.getSizeReal(j)) {
+                points[j] = 0;
+            }
+            f[1] = group.readPoint(points);
+            double fPt = maxPoint[j];
+            double delta = ((f[1] - f[0]) / (2.0 * ((2.0 * centerValue) - f[1] - f[0])));
+            // Polynomial interpolated max should never be more than half a point from grid max
+            if (Math.abs(delta) < 0.5) {
+                fPt += delta;
+            }
+            dmaxPoint[j] = fPt;
+        }
+        return dmaxPoint;
+    }
+}
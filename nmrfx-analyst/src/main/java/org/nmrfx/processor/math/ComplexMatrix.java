@@ -0,0 +1,189 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.math;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.complex.ComplexField;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.apache.commons.math3.linear.FieldMatrix;
+
+/**
+ * Dense complex matrix stored as a single array of doubles, with the real
+ * and imaginary parts of each element interleaved and the elements in row
+ * major order. Used by the linear prediction code in place of
+ * FieldMatrix&lt;Complex&gt;, which stores each element as a separate object.
+ */
+public class ComplexMatrix {
+
+    final int nRows;
+    final int nCols;
+    final double[] data;
+
+    public ComplexMatrix(int nRows, int nCols) {
+        this.nRows = nRows;
+        this.nCols = nCols;
+        this.data = new double[2 * nRows * nCols];
+    }
+
+    /**
+     * Create a matrix with the values of a FieldMatrix.
+     *
+     * @param matrix the matrix to copy
+     * @return the new matrix
+     */
+    public static ComplexMatrix of(FieldMatrix<Complex> matrix) {
+        int nRows = matrix.getRowDimension();
+        int nCols = matrix.getColumnDimension();
+        ComplexMatrix result = new ComplexMatrix(nRows, nCols);
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                Complex value = matrix.getEntry(i, j);
+                result.set(i, j, value.getReal(), value.getImaginary());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create a FieldMatrix with the values of this matrix.
+     *
+     * @return the new FieldMatrix
+     */
+    public Array2DRowFieldMatrix<Complex> toFieldMatrix() {
+        Array2DRowFieldMatrix<Complex> result = new Array2DRowFieldMatrix<>(ComplexField.getInstance(), nRows, nCols);
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                result.setEntry(i, j, getEntry(i, j));
+            }
+        }
+        return result;
+    }
+
+    public int getRowDimension() {
+        return nRows;
+    }
+
+    public int getColumnDimension() {
+        return nCols;
+    }
+
+    int index(int i, int j) {
+        return 2 * (i * nCols + j);
+    }
+
+    public double getReal(int i, int j) {
+        return data[index(i, j)];
+    }
+
+    public double getImaginary(int i, int j) {
+        return data[index(i, j) + 1];
+    }
+
+    public Complex getEntry(int i, int j) {
+        int k = index(i, j);
+        return new Complex(data[k], data[k + 1]);
+    }
+
+    public void set(int i, int j, double real, double imag) {
+        int k = index(i, j);
+        data[k] = real;
+        data[k + 1] = imag;
+    }
+
+    public ComplexMatrix copy() {
+        ComplexMatrix result = new ComplexMatrix(nRows, nCols);
+        System.arraycopy(data, 0, result.data, 0, data.length);
+        return result;
+    }
+
+    /**
+     * Multiply this matrix by another one.
+     *
+     * @param b the matrix to multiply by
+     * @return the product of this and b
+     */
+    public ComplexMatrix multiply(ComplexMatrix b) {
+        if (nCols != b.nRows) {
+            throw new IllegalArgumentException("Inconsistent dimensions " + nCols + " " + b.nRows);
+        }
+        ComplexMatrix result = new ComplexMatrix(nRows, b.nCols);
+        double[] bData = b.data;
+        double[] rData = result.data;
+        for (int i = 0; i < nRows; i++) {
+            int rRow = 2 * i * b.nCols;
+            for (int k = 0; k < nCols; k++) {
+                int aIndex = index(i, k);
+                double aRe = data[aIndex];
+                double aIm = data[aIndex + 1];
+                if ((aRe == 0.0) && (aIm == 0.0)) {
+                    continue;
+                }
+                int bRow = 2 * k * b.nCols;
+                for (int j = 0; j < 2 * b.nCols; j += 2) {
+                    double bRe = bData[bRow + j];
+                    double bIm = bData[bRow + j + 1];
+                    rData[rRow + j] += aRe * bRe - aIm * bIm;
+                    rData[rRow + j + 1] += aRe * bIm + aIm * bRe;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the conjugate transpose of this matrix.
+     *
+     * @return the conjugate transpose
+     */
+    public ComplexMatrix conjugateTranspose() {
+        ComplexMatrix result = new ComplexMatrix(nCols, nRows);
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                int k = index(i, j);
+                result.set(j, i, data[k], -data[k + 1]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculate the pseudo-inverse of this matrix from its singular value
+     * decomposition. Singular values less than or equal to the threshold are
+     * treated as zero.
+     *
+     * @param threshold the singular value threshold
+     * @return the pseudo-inverse
+     */
+    public ComplexMatrix pseudoInverse(double threshold) {
+        ComplexSVD svd = new ComplexSVD(this);
+        double[] s = svd.getSingularValues();
+        ComplexMatrix u = svd.getU();
+        ComplexMatrix v = svd.getV();
+        int nS = s.length;
+        // scale columns of V by 1/s then multiply by U^H
+        ComplexMatrix vs = new ComplexMatrix(v.nRows, nS);
+        for (int i = 0; i < v.nRows; i++) {
+            for (int j = 0; j < nS; j++) {
+                if (s[j] > threshold) {
+                    vs.set(i, j, v.getReal(i, j) / s[j], v.getImaginary(i, j) / s[j]);
+                }
+            }
+        }
+        return vs.multiply(u.conjugateTranspose());
+    }
+}
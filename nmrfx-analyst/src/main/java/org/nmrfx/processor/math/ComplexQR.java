@@ -0,0 +1,169 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.math;
+
+/**
+ * Householder QR decomposition of a ComplexMatrix. The decomposition is
+ * thin: for an m x n matrix with m &gt; n, R is n x n and Q has n columns.
+ */
+public class ComplexQR {
+
+    private final int nRows;
+    private final int nCols;
+    private final int nTrans;
+    // unit Householder vectors, element i of vector k is for row k + i. null if no reflection was needed
+    private final double[][] reflectors;
+    private final ComplexMatrix r;
+
+    /**
+     * Compute the QR decomposition of a matrix. The matrix is not modified.
+     *
+     * @param a the matrix
+     */
+    public ComplexQR(ComplexMatrix a) {
+        nRows = a.nRows;
+        nCols = a.nCols;
+        nTrans = Math.min(nRows, nCols);
+        reflectors = new double[nTrans][];
+        double[][] cols = new double[nCols][2 * nRows];
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                int k = a.index(i, j);
+                cols[j][2 * i] = a.data[k];
+                cols[j][2 * i + 1] = a.data[k + 1];
+            }
+        }
+        for (int k = 0; k < nTrans; k++) {
+            double[] x = cols[k];
+            double xNorm2 = 0.0;
+            for (int i = 2 * k; i < 2 * nRows; i++) {
+                xNorm2 += x[i] * x[i];
+            }
+            if (xNorm2 == 0.0) {
+                continue;
+            }
+            double xNorm = Math.sqrt(xNorm2);
+            double x0Re = x[2 * k];
+            double x0Im = x[2 * k + 1];
+            double x0Abs = Math.hypot(x0Re, x0Im);
+            double phaseRe = x0Abs == 0.0 ? 1.0 : x0Re / x0Abs;
+            double phaseIm = x0Abs == 0.0 ? 0.0 : x0Im / x0Abs;
+            // alpha = -phase * |x|, chosen to avoid cancellation in x0 - alpha
+            double alphaRe = -phaseRe * xNorm;
+            double alphaIm = -phaseIm * xNorm;
+
+            int len = nRows - k;
+            double[] v = new double[2 * len];
+            System.arraycopy(x, 2 * k, v, 0, 2 * len);
+            v[0] -= alphaRe;
+            v[1] -= alphaIm;
+            double vNorm2 = 0.0;
+            for (double value : v) {
+                vNorm2 += value * value;
+            }
+            double scale = 1.0 / Math.sqrt(vNorm2);
+            for (int i = 0; i < v.length; i++) {
+                v[i] *= scale;
+            }
+            reflectors[k] = v;
+            x[2 * k] = alphaRe;
+            x[2 * k + 1] = alphaIm;
+            for (int i = 2 * (k + 1); i < 2 * nRows; i++) {
+                x[i] = 0.0;
+            }
+            for (int j = k + 1; j < nCols; j++) {
+                reflect(v, cols[j], k);
+            }
+        }
+        r = new ComplexMatrix(nTrans, nCols);
+        for (int i = 0; i < nTrans; i++) {
+            for (int j = i; j < nCols; j++) {
+                r.set(i, j, cols[j][2 * i], cols[j][2 * i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Apply the reflection I - 2 v v^H to the part of a column starting at
+     * row k.
+     */
+    private static void reflect(double[] v, double[] col, int k) {
+        double sRe = 0.0;
+        double sIm = 0.0;
+        int offset = 2 * k;
+        for (int i = 0; i < v.length; i += 2) {
+            double vRe = v[i];
+            double vIm = v[i + 1];
+            double cRe = col[offset + i];
+            double cIm = col[offset + i + 1];
+            sRe += vRe * cRe + vIm * cIm;
+            sIm += vRe * cIm - vIm * cRe;
+        }
+        sRe *= 2.0;
+        sIm *= 2.0;
+        for (int i = 0; i < v.length; i += 2) {
+            double vRe = v[i];
+            double vIm = v[i + 1];
+            col[offset + i] -= sRe * vRe - sIm * vIm;
+            col[offset + i + 1] -= sRe * vIm + sIm * vRe;
+        }
+    }
+
+    /**
+     * Get the upper triangular factor R.
+     *
+     * @return R
+     */
+    public ComplexMatrix getR() {
+        return r;
+    }
+
+    /**
+     * Compute the product QB, where Q is the thin orthogonal factor.
+     *
+     * @param b a matrix with as many rows as R
+     * @return QB, with as many rows as the decomposed matrix
+     */
+    public ComplexMatrix qb(ComplexMatrix b) {
+        if (b.nRows != nTrans) {
+            throw new IllegalArgumentException("Inconsistent dimensions " + b.nRows + " " + nTrans);
+        }
+        double[][] cols = new double[b.nCols][2 * nRows];
+        for (int i = 0; i < b.nRows; i++) {
+            for (int j = 0; j < b.nCols; j++) {
+                int k = b.index(i, j);
+                cols[j][2 * i] = b.data[k];
+                cols[j][2 * i + 1] = b.data[k + 1];
+            }
+        }
+        for (int k = nTrans - 1; k >= 0; k--) {
+            if (reflectors[k] != null) {
+                for (double[] col : cols) {
+                    reflect(reflectors[k], col, k);
+                }
+            }
+        }
+        ComplexMatrix result = new ComplexMatrix(nRows, b.nCols);
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < b.nCols; j++) {
+                result.set(i, j, cols[j][2 * i], cols[j][2 * i + 1]);
+            }
+        }
+        return result;
+    }
+}
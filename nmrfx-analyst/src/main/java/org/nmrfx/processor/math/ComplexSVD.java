@@ -0,0 +1,191 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.math;
+
+import org.nmrfx.math.VecException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Thin singular value decomposition A = U S V<sup>H</sup> of a ComplexMatrix
+ * using one-sided (Hestenes) Jacobi rotations. For an m x n matrix with
+ * m &gt;= n, U is m x n, S has n values and V is n x n. The singular values
+ * are sorted in decreasing order. One-sided Jacobi is accurate and simple,
+ * and fast for the small matrices (the R factor of a QR decomposition) it is
+ * used on in linear prediction.
+ */
+public class ComplexSVD {
+
+    private static final int MAX_SWEEPS = 60;
+    private static final double EPSILON = 2.0e-16;
+
+    private final double[] singularValues;
+    private final ComplexMatrix u;
+    private final ComplexMatrix v;
+
+    /**
+     * Compute the singular value decomposition of a matrix. The matrix is
+     * not modified.
+     *
+     * @param a the matrix
+     */
+    public ComplexSVD(ComplexMatrix a) {
+        if (a.nRows < a.nCols) {
+            ComplexSVD svd = new ComplexSVD(a.conjugateTranspose());
+            singularValues = svd.singularValues;
+            u = svd.v;
+            v = svd.u;
+            return;
+        }
+        int m = a.nRows;
+        int n = a.nCols;
+        double[][] w = new double[n][2 * m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                int k = a.index(i, j);
+                w[j][2 * i] = a.data[k];
+                w[j][2 * i + 1] = a.data[k + 1];
+            }
+        }
+        double[][] vCols = new double[n][2 * n];
+        for (int j = 0; j < n; j++) {
+            vCols[j][2 * j] = 1.0;
+        }
+
+        double[] norm2 = new double[n];
+        for (int j = 0; j < n; j++) {
+            norm2[j] = dotSelf(w[j]);
+        }
+        boolean converged = false;
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            boolean rotated = false;
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double alpha = norm2[p];
+                    double beta = norm2[q];
+                    // gamma = w_p^H w_q
+                    double gRe = 0.0;
+                    double gIm = 0.0;
+                    double[] wp = w[p];
+                    double[] wq = w[q];
+                    for (int i = 0; i < wp.length; i += 2) {
+                        gRe += wp[i] * wq[i] + wp[i + 1] * wq[i + 1];
+                        gIm += wp[i] * wq[i + 1] - wp[i + 1] * wq[i];
+                    }
+                    double g = Math.hypot(gRe, gIm);
+                    if ((g == 0.0) || (g <= EPSILON * Math.sqrt(alpha * beta))) {
+                        continue;
+                    }
+                    rotated = true;
+                    double zeta = (beta - alpha) / (2.0 * g);
+                    double t = (zeta >= 0.0 ? 1.0 : -1.0) / (Math.abs(zeta) + Math.sqrt(1.0 + zeta * zeta));
+                    double c = 1.0 / Math.sqrt(1.0 + t * t);
+                    double s = c * t;
+                    double phaseRe = gRe / g;
+                    double phaseIm = gIm / g;
+                    rotate(wp, wq, c, s, phaseRe, phaseIm);
+                    rotate(vCols[p], vCols[q], c, s, phaseRe, phaseIm);
+                    norm2[p] = dotSelf(wp);
+                    norm2[q] = dotSelf(wq);
+                }
+            }
+            if (!rotated) {
+                converged = true;
+                break;
+            }
+        }
+        if (!converged) {
+            throw new VecException("ComplexSVD: no convergence");
+        }
+
+        double[] values = new double[n];
+        for (int j = 0; j < n; j++) {
+            values[j] = Math.sqrt(dotSelf(w[j]));
+        }
+        Integer[] order = new Integer[n];
+        for (int j = 0; j < n; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer j) -> values[j]).reversed());
+
+        singularValues = new double[n];
+        u = new ComplexMatrix(m, n);
+        v = new ComplexMatrix(n, n);
+        for (int jNew = 0; jNew < n; jNew++) {
+            int j = order[jNew];
+            double sValue = values[j];
+            singularValues[jNew] = sValue;
+            double scale = sValue > 0.0 ? 1.0 / sValue : 0.0;
+            for (int i = 0; i < m; i++) {
+                u.set(i, jNew, w[j][2 * i] * scale, w[j][2 * i + 1] * scale);
+            }
+            for (int i = 0; i < n; i++) {
+                v.set(i, jNew, vCols[j][2 * i], vCols[j][2 * i + 1]);
+            }
+        }
+    }
+
+    private static double dotSelf(double[] x) {
+        double sum = 0.0;
+        for (double value : x) {
+            sum += value * value;
+        }
+        return sum;
+    }
+
+    /**
+     * Replace columns x and y with c x - s conj(phase) y and
+     * s phase x + c y.
+     */
+    private static void rotate(double[] x, double[] y, double c, double s, double phaseRe, double phaseIm) {
+        for (int i = 0; i < x.length; i += 2) {
+            double xRe = x[i];
+            double xIm = x[i + 1];
+            double yRe = y[i];
+            double yIm = y[i + 1];
+            // conj(phase) * y
+            double cyRe = phaseRe * yRe + phaseIm * yIm;
+            double cyIm = phaseRe * yIm - phaseIm * yRe;
+            // phase * x
+            double pxRe = phaseRe * xRe - phaseIm * xIm;
+            double pxIm = phaseRe * xIm + phaseIm * xRe;
+            x[i] = c * xRe - s * cyRe;
+            x[i + 1] = c * xIm - s * cyIm;
+            y[i] = s * pxRe + c * yRe;
+            y[i + 1] = s * pxIm + c * yIm;
+        }
+    }
+
+    /**
+     * Get the singular values in decreasing order.
+     *
+     * @return the singular values
+     */
+    public double[] getSingularValues() {
+        return singularValues;
+    }
+
+    public ComplexMatrix getU() {
+        return u;
+    }
+
+    public ComplexMatrix getV() {
+        return v;
+    }
+}
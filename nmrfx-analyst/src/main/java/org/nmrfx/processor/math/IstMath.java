@@ -19,15 +19,20 @@ package org.nmrfx.processor.math;
 
 import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.util.FastMath;
-import org.nmrfx.math.VecBase;
 import org.nmrfx.processor.processing.ProcessingException;
 import org.nmrfx.processor.processing.SampleSchedule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 /**
  * Math routines for Iterative Soft Thresholding (IST) on a 1D vector. This is separate from the Ist.java operation so
  * that it may be used with data weaving schemes for nD IST.
+ * <p>
+ * The calculation works on separate arrays of real and imaginary values, with SplitFFT for the transforms. Work
+ * arrays are kept per thread, so an IstMath shared by the processing threads does not allocate once each thread has
+ * seen a vector of the current size.
  *
  * @author bfetler
  */
@@ -92,6 +97,58 @@ public class IstMath {
      */
     private boolean timeDomain = true;
 
+    /**
+     * Optional listener that is told about each iteration.
+     */
+    private IterationListener iterationListener = null;
+
+    private final ThreadLocal<Work> work = ThreadLocal.withInitial(Work::new);
+
+    /**
+     * Receives the progress of each IST iteration, for monitoring timing and convergence.
+     */
+    public interface IterationListener {
+        /**
+         * Called after each iteration.
+         *
+         * @param vector   index of the vector within a batch (0 if not batched)
+         * @param loop     iteration number
+         * @param maxValue the largest residual value, that the cutoff threshold is a fraction of
+         * @param nCut     number of points that were above the threshold
+         * @param nanos    time taken by the iteration in nanoseconds
+         */
+        void iteration(int vector, int loop, double maxValue, int nCut, long nanos);
+    }
+
+    /**
+     * Per thread work arrays.
+     */
+    private static class Work {
+        double[] origRe = new double[0];
+        double[] origIm = new double[0];
+        double[] addRe = new double[0];
+        double[] addIm = new double[0];
+        double[] residual = new double[0];
+        double[] hRe = new double[0];
+        double[] hIm = new double[0];
+        double maxValue = 0.0;
+        int vector = 0;
+
+        void ensureSize(int n, int hSize) {
+            if (origRe.length < n) {
+                origRe = new double[n];
+                origIm = new double[n];
+                addRe = new double[n];
+                addIm = new double[n];
+                residual = new double[n];
+            }
+            if (hRe.length < hSize) {
+                hRe = new double[hSize];
+                hIm = new double[hSize];
+            }
+        }
+    }
+
     /**
      * Create calculation for Iterative Soft Threshold.
      *
@@ -131,99 +188,247 @@ public class IstMath {
         this.sampleSchedule = schedule;
     }
 
+    public void setIterationListener(IterationListener listener) {
+        this.iterationListener = listener;
+    }
+
     public void calculate(Complex[] input) throws ProcessingException {
+        int len = input.length;
+        double[] re = new double[len];
+        double[] im = new double[len];
+        toArrays(input, re, im);
+        calculate(re, im, len);
+        fromArrays(re, im, input);
+    }
+
+    /**
+     * Perform the IST calculation in place on the first n values of arrays of real and imaginary values.
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of values
+     * @throws ProcessingException if there is no sample schedule
+     */
+    public void calculate(double[] re, double[] im, int n) throws ProcessingException {
         if (sampleSchedule == null) {
             throw new ProcessingException("IST:no sample schedule");
         }
         if (alg.startsWith("std")) {
-            calculateWithHFT(input);
+            calculateWithHFT(re, im, n);
         } else {
-            calculateComplex(input);
+            calculateComplex(re, im, n);
+        }
+    }
+
+    /**
+     * Perform the IST calculation on a batch of vectors of the same size, one after the other on the calling thread
+     * so they share its work arrays and FFT plans.
+     *
+     * @param re real values of each vector
+     * @param im imaginary values of each vector
+     * @param n  number of values in each vector
+     * @throws ProcessingException if there is no sample schedule
+     */
+    public void calculate(double[][] re, double[][] im, int n) throws ProcessingException {
+        Work w = work.get();
+        try {
+            for (int i = 0; i < re.length; i++) {
+                w.vector = i;
+                calculate(re[i], im[i], n);
+            }
+        } finally {
+            w.vector = 0;
         }
     }
 
     public void calculateComplex(Complex[] input) {
         int len = input.length;
-        Complex[] orig = null;
+        double[] re = new double[len];
+        double[] im = new double[len];
+        toArrays(input, re, im);
+        calculateComplex(re, im, len);
+        fromArrays(re, im, input);
+    }
+
+    public void calculateComplex(double[] re, double[] im, int len) {
+        Work w = work.get();
+        w.ensureSize(len, 0);
+        double[] origRe = w.origRe;
+        double[] origIm = w.origIm;
+        double[] addRe = w.addRe;
+        double[] addIm = w.addIm;
         if (alg.startsWith("phase") || sampleSchedule.isDemo()) {
-            zeroSample(input);  // if "phase" FT-PHASE-IFT already performed
+            zeroSample(re, im, len);  // if "phase" FT-PHASE-IFT already performed
         }
         if (timeDomain) {
-            orig = new Complex[len];
-            VecBase.complexCopy(input, orig);
-        }
-
-        Complex[] add = new Complex[len];
-        for (int i = 0; i < len; i++) {
-            add[i] = Complex.ZERO;
+            System.arraycopy(re, 0, origRe, 0, len);
+            System.arraycopy(im, 0, origIm, 0, len);
         }
+        Arrays.fill(addRe, 0, len, 0.0);
+        Arrays.fill(addIm, 0, len, 0.0);
         for (int loop = 0; loop < loops; loop++) {
-            Vec.apache_fft(input);
-            cutAboveThreshold(input, add, loop);
+            long start = iterationListener != null ? System.nanoTime() : 0L;
+            SplitFFT.fft(re, im, len);
+            int nCut = cutAboveThreshold(re, im, addRe, addIm, len, loop, w);
             if (loop < loops - 1) {
-                Vec.apache_ift(input);
-                zeroSample(input);  // rezero initial schedule
+                SplitFFT.ift(re, im, len);
+                zeroSample(re, im, len);  // rezero initial schedule
+            }
+            if (iterationListener != null) {
+                iterationListener.iteration(w.vector, loop, w.maxValue, nCut, System.nanoTime() - start);
             }
         }
 
         if (timeDomain) {
-            Vec.apache_ift(add);
-            copyValues(orig, add);  // copy orig non-zero values
+            SplitFFT.ift(addRe, addIm, len);
+            copyValues(origRe, origIm, addRe, addIm);  // copy orig non-zero values
         }
-        VecBase.complexCopy(add, input);
+        System.arraycopy(addRe, 0, re, 0, len);
+        System.arraycopy(addIm, 0, im, 0, len);
     }
 
     public void calculateWithHFT(Complex[] input) {
         int len = input.length;
-        zeroSample(input); // might have done phase or could be demo
-        Complex[] orig = new Complex[len];
-        VecBase.complexCopy(input, orig);
+        double[] re = new double[len];
+        double[] im = new double[len];
+        toArrays(input, re, im);
+        calculateWithHFT(re, im, len);
+        fromArrays(re, im, input);
+    }
 
-        double[] add = new double[len];
-        double[] realResidual = new double[len];
+    public void calculateWithHFT(double[] re, double[] im, int len) {
+        Work w = work.get();
+        w.ensureSize(len, hilbertSize(len));
+        double[] origRe = w.origRe;
+        double[] origIm = w.origIm;
+        double[] add = w.addRe;
+        double[] realResidual = w.residual;
+        zeroSample(re, im, len); // might have done phase or could be demo
+        System.arraycopy(re, 0, origRe, 0, len);
+        System.arraycopy(im, 0, origIm, 0, len);
+
+        Arrays.fill(add, 0, len, 0.0);
         for (int loop = 0; loop < loops; loop++) {
-            Vec.apache_fft(input);
-            for (int i = 0; i < len; i++) {
-                realResidual[i] = input[i].getReal();
-            }
-            cutAboveThreshold(realResidual, add, loop);
+            long start = iterationListener != null ? System.nanoTime() : 0L;
+            SplitFFT.fft(re, im, len);
+            System.arraycopy(re, 0, realResidual, 0, len);
+            int nCut = cutAboveThreshold(realResidual, add, len, loop, w);
             if (loop < loops - 1) {
-                Complex[] cutFID = VecUtil.hift(realResidual, realResidual.length, 0.5f);
-                VecBase.complexCopy(cutFID, input);
-                zeroSample(input);  // rezero initial schedule
+                hift(realResidual, len, 0.5, re, im, w);
+                zeroSample(re, im, len);  // rezero initial schedule
+            }
+            if (iterationListener != null) {
+                iterationListener.iteration(w.vector, loop, w.maxValue, nCut, System.nanoTime() - start);
             }
         }
 
         if (timeDomain) {
-            Complex[] newFID = VecUtil.hift(add, realResidual.length, 0.5);
-            VecBase.complexCopy(newFID, input);
+            hift(add, len, 0.5, re, im, w);
             if (scaleValues) {
-                double scale = scale(orig, input, len / 2);
+                double scale = scale(origRe, origIm, re, im, len);
             }
             if (!allValues) {
-                copyValues(orig, input);  // copy orig non-zero values
+                copyValues(origRe, origIm, re, im);  // copy orig non-zero values
             }
         } else {
-            Complex[] complexAdd = VecUtil.hft(add, add.length);
-            VecBase.complexCopy(complexAdd, input);
+            hft(add, len, re, im, w);
+        }
+    }
+
+    private static void toArrays(Complex[] input, double[] re, double[] im) {
+        for (int i = 0; i < input.length; i++) {
+            re[i] = input[i].getReal();
+            im[i] = input[i].getImaginary();
+        }
+    }
+
+    private static void fromArrays(double[] re, double[] im, Complex[] output) {
+        for (int i = 0; i < output.length; i++) {
+            output[i] = new Complex(re[i], im[i]);
+        }
+    }
+
+    /**
+     * Size of the transform used by the Hilbert transforms, the smallest power of 2 not less than n.
+     */
+    private static int hilbertSize(int n) {
+        return (int) Math.round(Math.pow(2, Math.ceil(Math.log(n) / Math.log(2))));
+    }
+
+    /**
+     * Hilbert transform of a real spectrum to a complex time domain signal, as in VecUtil.hift. The first
+     * min(n, hilbertSize(n) / 2) values of re and im are replaced.
+     */
+    private static void hift(double[] x, int n, double fpMul, double[] re, double[] im, Work w) {
+        int newSize = hilbertTransform(x, n, fpMul, w);
+        int outSize = Math.min(newSize / 2, n);
+        System.arraycopy(w.hRe, 0, re, 0, outSize);
+        System.arraycopy(w.hIm, 0, im, 0, outSize);
+    }
+
+    /**
+     * Hilbert transform of a real spectrum to a complex spectrum, as in VecUtil.hft.
+     */
+    private static void hft(double[] x, int n, double[] re, double[] im, Work w) {
+        int newSize = hilbertTransform(x, n, 0.5, w);
+        SplitFFT.fft(w.hRe, w.hIm, newSize);
+        System.arraycopy(w.hRe, 0, re, 0, n);
+        System.arraycopy(w.hIm, 0, im, 0, n);
+    }
+
+    private static int hilbertTransform(double[] x, int n, double fpMul, Work w) {
+        int newSize = hilbertSize(n);
+        double[] hRe = w.hRe;
+        double[] hIm = w.hIm;
+        for (int i = 0; i < n; i++) {
+            hRe[i] = x[i] * 2.0;
         }
+        Arrays.fill(hRe, n, newSize, 0.0);
+        Arrays.fill(hIm, 0, newSize, 0.0);
+        SplitFFT.ift(hRe, hIm, newSize);
+        hRe[0] *= fpMul;
+        int outSize = newSize / 2;
+        Arrays.fill(hRe, outSize, newSize, 0.0);
+        Arrays.fill(hIm, outSize, newSize, 0.0);
+        return newSize;
     }
 
-    private double scale(Complex[] origFid, Complex[] newFid, int n) {
+    private double scale(double[] origRe, double[] origIm, double[] newRe, double[] newIm, int n) {
         double sum = 0.0;
         int[][] samples = sampleSchedule.getSamples();
         for (int[] sample : samples) {
             int j = sample[0];
-            sum += newFid[j].abs() / origFid[j].abs();
+            sum += abs(newRe[j], newIm[j]) / abs(origRe[j], origIm[j]);
         }
         double scale = sum / samples.length;
-        for (int i = 0; i < newFid.length; i++) {
-            newFid[i] = newFid[i].divide(scale);
+        for (int i = 0; i < n; i++) {
+            newRe[i] /= scale;
+            newIm[i] /= scale;
         }
 
         return scale;
     }
 
+    /**
+     * Absolute value of a complex number, calculated as in Complex.abs so that comparisons with the threshold give
+     * the same results.
+     */
+    private static double abs(double re, double im) {
+        if (FastMath.abs(re) < FastMath.abs(im)) {
+            if (im == 0.0) {
+                return FastMath.abs(re);
+            }
+            double q = re / im;
+            return FastMath.abs(im) * FastMath.sqrt(1 + q * q);
+        } else {
+            if (re == 0.0) {
+                return FastMath.abs(im);
+            }
+            double q = im / re;
+            return FastMath.abs(re) * FastMath.sqrt(1 + q * q);
+        }
+    }
+
     /**
      * Calculate inverse list of SampleSchedule. For 2D only.
      *
@@ -236,52 +441,52 @@ public class IstMath {
     private void calcZeroes(int vsize) {
         if (zero_samples == null) {
             int[][] samples = sampleSchedule.getSamples();
-            zero_samples = new int[vsize - samples.length];
-            for (int i = 0, k = 0; i < vsize; i++) {
-                boolean found = false;
-                for (int[] sample : samples) {
-                    if (i == sample[0]) {
-                        // 2D index only
-                        found = true;
-                        break;
-                    }
+            boolean[] sampled = new boolean[vsize];
+            for (int[] sample : samples) {
+                // 2D index only
+                if (sample[0] < vsize) {
+                    sampled[sample[0]] = true;
                 }
-                if (!found) {
-                    zero_samples[k++] = i;
+            }
+            int[] zeroes = new int[vsize - samples.length];
+            for (int i = 0, k = 0; i < vsize; i++) {
+                if (!sampled[i]) {
+                    zeroes[k++] = i;
                 }
             }
+            // only publish the array once it is filled, as the IstMath may be shared by threads
+            zero_samples = zeroes;
         }
     }
 
     /**
      * Zero (or rezero) a vector with inverse samples.
      *
-     * @param input
-     * @see Vec
+     * @param re real values
+     * @param im imaginary values
+     * @param n  size of the vector
      * @see #calcZeroes
      */
-    private void zeroSample(Complex[] input) {
+    private void zeroSample(double[] re, double[] im, int n) {
         if (sampleSchedule != null) {
-            calcZeroes(input.length);
-            int k;
-            for (k = 0; k < zero_samples.length; k++) {
-                input[zero_samples[k]] = Complex.ZERO;
+            calcZeroes(n);
+            for (int k : zero_samples) {
+                re[k] = 0.0;
+                im[k] = 0.0;
             }
         }
     }
 
     /**
      * Copy original non-zero values into add buffer.
-     *
-     * @param source
-     * @param target
      */
-    private void copyValues(Complex[] source, Complex[] target) {
+    private void copyValues(double[] sourceRe, double[] sourceIm, double[] targetRe, double[] targetIm) {
         if (sampleSchedule != null) {
             int[][] samples = sampleSchedule.getSamples();
             for (int[] sample : samples) {
                 int k = sample[0];
-                target[k] = source[k];
+                targetRe[k] = sourceRe[k];
+                targetIm[k] = sourceIm[k];
             }
         }
     }
@@ -306,240 +511,138 @@ public class IstMath {
      * different algorithms using the
      * <i>alg</i> parameter.
      *
-     * @param input  input buffer
-     * @param addbuf add buffer
+     * @return the number of points above the threshold
      * @see #alg
      */
-    private void cutAboveThreshold(Complex[] input, Complex[] add, int nIterations) {
-        switch (alg) {
-            case "phased":
-                cutAboveComplexPhasedThreshold(input, add, nIterations);
-                break;
-            case "phasedpos":
-                cutAboveComplexPhasedPosThreshold(input, add, nIterations);
-                break;
+    private int cutAboveThreshold(double[] re, double[] im, double[] addRe, double[] addIm, int n, int nIterations, Work w) {
+        return switch (alg) {
+            case "phased" -> cutAboveComplexPhasedThreshold(re, im, addRe, addIm, n, nIterations, w);
+            case "phasedpos" -> cutAboveComplexPhasedPosThreshold(re, im, addRe, addIm, n, nIterations, w);
             // if (alg.equals("abs"))
-            default:
-                cutAboveComplexAbsThreshold(input, add, nIterations);
-                break;
-        }
+            default -> cutAboveComplexAbsThreshold(re, im, addRe, addIm, n, nIterations, w);
+        };
     }
 
     /**
-     * Get maximum of absolute value of a vector.
-     *
-     * @param input
-     * @return position of maximum in input vector
-     * @see Vec
+     * Perform cutoff algorithm, comparing absolute values of a complex array.
      */
-    private int getAbsMax(double[] input) {
-        int pos = -1;
+    private int cutAboveComplexAbsThreshold(double[] re, double[] im, double[] addRe, double[] addIm, int n, int nIterations, Work w) {
+        int maxpos = -1;
         double max = Double.NEGATIVE_INFINITY;
-        for (int i = 0; i < input.length; i++) {
-            double val = input[i];
-            double aval = FastMath.abs(val);
-            if (aval > max) {
-                max = aval;
-                pos = i;
-            }
-        }
-        return pos;
-    }
-
-    /**
-     * Get maximum of absolute value of a vector.
-     *
-     * @param input
-     * @return position of maximum in input vector
-     * @see Vec
-     */
-    private int getAbsMax(Complex[] input) {
-        int i, pos = -1;
-        double val, max = Double.NEGATIVE_INFINITY;
-        for (i = 0; i < input.length; i++) {
-            val = input[i].abs();
+        for (int i = 0; i < n; i++) {
+            double val = abs(re[i], im[i]);
             if (val > max) {
                 max = val;
-                pos = i;
+                maxpos = i;
             }
         }
-        return pos;
-    }
-
-    /**
-     * Get maximum positive or negative value of a Complex array.
-     *
-     * @param input
-     * @return position of maximum in array
-     */
-    private int getPhMax(Complex[] input) {
-        int i, pos = -1;
-        double val, max = Double.NEGATIVE_INFINITY;
-        for (i = 0; i < input.length; i++) {
-            val = Math.abs((input[i]).getReal());
-            if (val > max) {
-                max = val;
-                pos = i;
+        w.maxValue = max;
+        double currentThreshold = getThreshold(nIterations);
+        double th = currentThreshold * max;
+        double cutRe = currentThreshold * re[maxpos];
+        double cutIm = currentThreshold * im[maxpos];
+        int nCut = 0;
+        for (int i = 0; i < n; i++) {
+            if (abs(re[i], im[i]) > th) {
+                addRe[i] += re[i] - cutRe;
+                addIm[i] += im[i] - cutIm;
+                re[i] = cutRe;
+                im[i] = cutIm;
+                nCut++;
             }
         }
-        return pos;
+        return nCut;
     }
 
     /**
-     * Get maximum positive value of a Complex array.
-     *
-     * @param vec
-     * @return position of maximum in array
+     * Perform cutoff algorithm, comparing positive and negative real values of a complex phased array.
      */
-    private int getPhPosMax(Complex[] vec) {
-        int i, pos = -1;
-        double val, max = Double.NEGATIVE_INFINITY;
-        for (i = 0; i < vec.length; i++) {
-            val = vec[i].getReal();
+    private int cutAboveComplexPhasedThreshold(double[] re, double[] im, double[] addRe, double[] addIm, int n, int nIterations, Work w) {
+        int maxpos = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double val = Math.abs(re[i]);
             if (val > max) {
                 max = val;
-                pos = i;
+                maxpos = i;
             }
         }
-        return pos;
-    }
-
-    /**
-     * Perform cutoff algorithm, comparing absolute values of a Complex array.
-     *
-     * @param input input vector
-     * @param add   add buffer
-     * @see #getAbsMax
-     * @see Complex
-     */
-    private void cutAboveComplexAbsThreshold(Complex[] input, Complex[] add, int nIterations) {
-        double dx, dy;
-        Complex v, pt;
-        int maxpos = getAbsMax(input);
-        Complex cutoff = input[maxpos];
+        w.maxValue = max;
         double currentThreshold = getThreshold(nIterations);
-        double th = currentThreshold * cutoff.abs();
-        cutoff = new Complex(
-                currentThreshold * cutoff.getReal(),
-                currentThreshold * cutoff.getImaginary()
-        );
-        for (int i = 0; i < input.length; i++) {
-            pt = input[i];
-            if (pt.abs() > th) {
-                v = add[i];
-                dx = pt.getReal() - cutoff.getReal();
-                dy = pt.getImaginary() - cutoff.getImaginary();
-                add[i] = new Complex(
-                        dx + v.getReal(),
-                        dy + v.getImaginary()
-                );
-                input[i] = new Complex(
-                        cutoff.getReal(),
-                        cutoff.getImaginary()
-                );
+        double th = Math.abs(currentThreshold * re[maxpos]); // compare real
+        // should work if real is big, imag is small
+        double cutRe = currentThreshold * re[maxpos];
+        double cutIm = currentThreshold * im[maxpos];
+        int nCut = 0;
+        for (int i = 0; i < n; i++) {
+            if (re[i] > th) {  // compare real pos
+                addRe[i] += re[i] - cutRe;
+                addIm[i] += im[i] - cutIm;
+                re[i] = cutRe;
+                im[i] = cutIm;
+                nCut++;
+            } else if (re[i] < -th) {  // compare real neg
+                addRe[i] += re[i] + cutRe;
+                addIm[i] += im[i] + cutIm;
+                re[i] = -cutRe;
+                im[i] = -cutIm;
+                nCut++;
             }
         }
+        return nCut;
     }
 
     /**
-     * Perform cutoff algorithm, comparing positive and negative real values of a Complex phased array.
-     *
-     * @param input input buffer
-     * @param add   add buffer
-     * @see #getPhMax
-     * @see Complex
+     * Perform cutoff algorithm, comparing positive real values of a phased complex array.
      */
-    private void cutAboveComplexPhasedThreshold(Complex[] input, Complex[] add, int nIterations) {
-        double dx, dy;
-        Complex v, pt;
-        int maxpos = getPhMax(input);
-        Complex cutoff = input[maxpos];
-        double currentThreshold = getThreshold(nIterations);
-        double th = Math.abs(currentThreshold * cutoff.getReal()); // compare real
-        cutoff = new Complex( // should work if real is big, imag is small
-                currentThreshold * cutoff.getReal(),
-                currentThreshold * cutoff.getImaginary()
-        );
-        for (int i = 0; i < input.length; i++) {
-            pt = input[i];
-            if (pt.getReal() > th) {  // compare real pos
-                v = add[i];
-                dx = pt.getReal() - cutoff.getReal();
-                dy = pt.getImaginary() - cutoff.getImaginary();
-                add[i] = new Complex(
-                        dx + v.getReal(),
-                        dy + v.getImaginary()
-                );
-                input[i] = new Complex(
-                        cutoff.getReal(),
-                        cutoff.getImaginary()
-                );
-            } else if (pt.getReal() < -th) {  // compare real neg
-                v = add[i];
-                dx = pt.getReal() + cutoff.getReal();
-                dy = pt.getImaginary() + cutoff.getImaginary();
-                add[i] = new Complex(
-                        dx + v.getReal(),
-                        dy + v.getImaginary()
-                );
-                input[i] = new Complex(
-                        -cutoff.getReal(),
-                        -cutoff.getImaginary()
-                );
+    private int cutAboveComplexPhasedPosThreshold(double[] re, double[] im, double[] addRe, double[] addIm, int n, int nIterations, Work w) {
+        int maxpos = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            if (re[i] > max) {
+                max = re[i];
+                maxpos = i;
             }
         }
-    }
-
-    /**
-     * Perform cutoff algorithm, comparing positive real values of a phased Complex array.
-     *
-     * @param input input buffer
-     * @param add   add buffer
-     * @see #getPhPosMax
-     * @see Complex
-     */
-    private void cutAboveComplexPhasedPosThreshold(Complex[] input, Complex[] add, int nIterations) {
-        double dx, dy;
-        Complex v, pt;
-        int maxpos = getPhPosMax(input);
-        Complex cutoff = input[maxpos];
-        double th = getThreshold(nIterations) * cutoff.getReal(); // compare real
-        cutoff = new Complex( // should work if real is big, imag is small
-                getThreshold(nIterations) * cutoff.getReal(),
-                getThreshold(nIterations) * cutoff.getImaginary()
-        );
-        for (int i = 0; i < input.length; i++) {
-            pt = input[i];
-            if (pt.getReal() > th) {  // compare real
-                v = add[i];
-                dx = pt.getReal() - cutoff.getReal();
-                dy = pt.getImaginary() - cutoff.getImaginary();
-                add[i] = new Complex(
-                        dx + v.getReal(),
-                        dy + v.getImaginary()
-                );
-                input[i] = new Complex(
-                        cutoff.getReal(),
-                        cutoff.getImaginary()
-                );
+        w.maxValue = max;
+        double currentThreshold = getThreshold(nIterations);
+        double th = currentThreshold * re[maxpos]; // compare real
+        // should work if real is big, imag is small
+        double cutRe = currentThreshold * re[maxpos];
+        double cutIm = currentThreshold * im[maxpos];
+        int nCut = 0;
+        for (int i = 0; i < n; i++) {
+            if (re[i] > th) {  // compare real
+                addRe[i] += re[i] - cutRe;
+                addIm[i] += im[i] - cutIm;
+                re[i] = cutRe;
+                im[i] = cutIm;
+                nCut++;
             }
         }
+        return nCut;
     }
 
     /**
      * Perform cutoff algorithm, comparing absolute values of a double array.
      *
-     * @param input input vector
-     * @param add   add buffer
+     * @return the number of points above the threshold
      */
-    private void cutAboveThreshold(double[] input, double[] add, int nIterations) {
-        int maxpos = getAbsMax(input);
+    private int cutAboveThreshold(double[] input, double[] add, int n, int nIterations, Work w) {
+        int maxpos = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double aval = FastMath.abs(input[i]);
+            if (aval > max) {
+                max = aval;
+                maxpos = i;
+            }
+        }
         double cutoff = FastMath.abs(input[maxpos]);
+        w.maxValue = cutoff;
         double th = getThreshold(nIterations) * cutoff;
-        if (nIterations == (loops - 1)) {
-            // fixme should th go to 0.0 at end?  th = 0.0;
-        }
-        for (int i = 0; i < input.length; i++) {
+        int nCut = 0;
+        for (int i = 0; i < n; i++) {
             double value = input[i];
             double avalue = FastMath.abs(value);
             if (avalue > th) {
@@ -550,8 +653,10 @@ public class IstMath {
                     add[i] -= (avalue - th);
                     input[i] = -th;
                 }
+                nCut++;
             }
         }
+        return nCut;
     }
 
 }
@@ -380,20 +380,17 @@ public class LinearPrediction {
      * @throws VecException if total least squares fails
      */
     public static Complex[] getCoefsByTLS(Complex[] cvec, int start, int m, int n, double threshold, boolean backward) throws VecException {
-        Complex[][] Ary = new Complex[m][n + 1];
+        ComplexMatrix A = new ComplexMatrix(m, n + 1);
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < (n); j++) {
-                Ary[i][j] = new Complex(cvec[j + i + start].getReal(), cvec[j + i + start].getImaginary());
+                Complex value = cvec[j + i + start];
+                A.set(i, j, value.getReal(), value.getImaginary());
             }
         }
         for (int i = 0; i < m; i++) {
-            if (backward) {
-                Ary[i][n] = new Complex(cvec[i + start - 1].getReal(), cvec[i + start - 1].getImaginary());
-            } else {
-                Ary[i][n] = new Complex(cvec[i + start + n].getReal(), cvec[i + start + n].getImaginary());
-            }
+            Complex value = backward ? cvec[i + start - 1] : cvec[i + start + n];
+            A.set(i, n, value.getReal(), value.getImaginary());
         }
-        Array2DRowFieldMatrix<Complex> A = new Array2DRowFieldMatrix<>(Ary);
         try {
             return tlsMat(A);
         } catch (Exception e) {
@@ -501,6 +498,60 @@ public class LinearPrediction {
         return ocoef;
     }
 
+    /**
+     * Generate linear prediction coefficients by total least squares of
+     * matrix. Equivalent to tlsMat(Array2DRowFieldMatrix), but uses the
+     * primitive ComplexMatrix QR and SVD.
+     *
+     * @param A the matrix
+     * @return the coefficients
+     */
+    public static Complex[] tlsMat(ComplexMatrix A) {
+        ComplexQR qr = new ComplexQR(A);
+        ComplexSVD csvd = new ComplexSVD(qr.getR());
+        ComplexMatrix V = csvd.getV();
+        double[] sValues = csvd.getSingularValues();
+        int m1 = sValues.length;
+        double sValMin = sValues[m1 - 1];
+        if (m1 == 1) {
+            sValMin = 0.0;
+        }
+        int p = m1 - 1;
+        double ratio = 1.5;
+        for (int k = 0; k < m1; k++) {
+            if (sValues[k] < ratio * sValMin) {  // fixme need better criteria (sVal < (sValMin + error) ??)
+                p = k;
+                break;
+            }
+        }
+        if (p < 2) {
+            p = 2;
+        }
+        double sum = 0.0;
+        for (int j = p; j < m1; j++) {
+            double re = V.getReal(m1 - 1, j);
+            double im = V.getImaginary(m1 - 1, j);
+            sum += re * re + im * im;
+        }
+        double norm = -1.0 / sum;
+        Complex[] ocoef = new Complex[m1 - 1];
+        for (int k = 0; k < (m1 - 1); k++) {
+            double zRe = 0.0;
+            double zIm = 0.0;
+            for (int i = p; i < m1; i++) {
+                // conj(V[m1-1][i]) * V[k][i]
+                double aRe = V.getReal(m1 - 1, i);
+                double aIm = -V.getImaginary(m1 - 1, i);
+                double bRe = V.getReal(k, i);
+                double bIm = V.getImaginary(k, i);
+                zRe += aRe * bRe - aIm * bIm;
+                zIm += aRe * bIm + aIm * bRe;
+            }
+            ocoef[k] = new Complex(zRe * norm, zIm * norm);
+        }
+        return ocoef;
+    }
+
     /**
      * Calculate the pseudo-inverse of a Complex matrix
      *
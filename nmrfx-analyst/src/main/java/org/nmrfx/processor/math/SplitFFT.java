@@ -0,0 +1,291 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.math;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fast Fourier Transform that works in place on separate arrays of real and
+ * imaginary values. Plans (twiddle factors and bit reversal tables) are cached
+ * per size and shared between threads. Power of two sizes use an iterative
+ * radix-2 transform, other sizes use Bluestein's chirp-z algorithm with
+ * per-thread work arrays, so a transform does not allocate once the plan for
+ * its size exists.
+ * <p>
+ * The sign and normalization conventions match the Apache Commons Math
+ * FastFourierTransformer with DftNormalization.STANDARD: the forward transform
+ * uses exp(-2 pi i jk/n) and is not scaled, the inverse uses exp(2 pi i jk/n)
+ * and is scaled by 1/n.
+ */
+public final class SplitFFT {
+
+    private static final Map<Integer, SplitFFT> PLANS = new ConcurrentHashMap<>();
+
+    private final int n;
+    private final boolean powerOf2;
+    private final double[] cosTable;
+    private final double[] sinTable;
+    private final int[] bitReverse;
+    // Bluestein state, only used when n is not a power of two
+    private final int m;
+    private final SplitFFT convPlan;
+    private final double[] chirpRe;
+    private final double[] chirpIm;
+    private final double[] kernelRe;
+    private final double[] kernelIm;
+    private final ThreadLocal<double[][]> work;
+
+    private SplitFFT(int n) {
+        this.n = n;
+        this.powerOf2 = (n & (n - 1)) == 0;
+        if (powerOf2) {
+            int half = Math.max(1, n / 2);
+            cosTable = new double[half];
+            sinTable = new double[half];
+            for (int i = 0; i < half; i++) {
+                double angle = 2.0 * Math.PI * i / n;
+                cosTable[i] = Math.cos(angle);
+                sinTable[i] = Math.sin(angle);
+            }
+            bitReverse = new int[n];
+            int bits = Integer.numberOfTrailingZeros(n);
+            for (int i = 0; i < n; i++) {
+                bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+            m = 0;
+            convPlan = null;
+            chirpRe = null;
+            chirpIm = null;
+            kernelRe = null;
+            kernelIm = null;
+            work = null;
+        } else {
+            cosTable = null;
+            sinTable = null;
+            bitReverse = null;
+            m = Integer.highestOneBit(2 * n - 1) << 1;
+            convPlan = getInstance(m);
+            chirpRe = new double[n];
+            chirpIm = new double[n];
+            long twoN = 2L * n;
+            for (int k = 0; k < n; k++) {
+                // reduce k*k modulo 2n so the angle stays accurate for large k
+                long kk = ((long) k * k) % twoN;
+                double angle = Math.PI * kk / n;
+                chirpRe[k] = Math.cos(angle);
+                chirpIm[k] = -Math.sin(angle);
+            }
+            kernelRe = new double[m];
+            kernelIm = new double[m];
+            kernelRe[0] = chirpRe[0];
+            kernelIm[0] = -chirpIm[0];
+            for (int k = 1; k < n; k++) {
+                kernelRe[k] = chirpRe[k];
+                kernelIm[k] = -chirpIm[k];
+                kernelRe[m - k] = chirpRe[k];
+                kernelIm[m - k] = -chirpIm[k];
+            }
+            convPlan.transform(kernelRe, kernelIm, false);
+            work = ThreadLocal.withInitial(() -> new double[2][m]);
+        }
+    }
+
+    /**
+     * Get the (cached) plan for transforms of the specified size.
+     *
+     * @param n number of complex points
+     * @return the plan
+     */
+    public static SplitFFT getInstance(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("FFT size must be positive " + n);
+        }
+        SplitFFT plan = PLANS.get(n);
+        if (plan == null) {
+            // plans are immutable so a duplicate created by a racing thread is harmless
+            plan = new SplitFFT(n);
+            PLANS.putIfAbsent(n, plan);
+        }
+        return plan;
+    }
+
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Transform the first n values of the arrays in place. The result is not
+     * scaled in either direction.
+     *
+     * @param re      real values
+     * @param im      imaginary values
+     * @param inverse if true use the positive exponent
+     */
+    public void transform(double[] re, double[] im, boolean inverse) {
+        if (n == 1) {
+            return;
+        }
+        if (powerOf2) {
+            radix2(re, im, inverse);
+        } else if (inverse) {
+            // inverse(x) = conj(forward(conj(x)))
+            for (int i = 0; i < n; i++) {
+                im[i] = -im[i];
+            }
+            bluestein(re, im);
+            for (int i = 0; i < n; i++) {
+                im[i] = -im[i];
+            }
+        } else {
+            bluestein(re, im);
+        }
+    }
+
+    private void radix2(double[] re, double[] im, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        double sign = inverse ? 1.0 : -1.0;
+        for (int len = 2; len <= n; len <<= 1) {
+            int halfLen = len >> 1;
+            int tableStep = n / len;
+            for (int start = 0; start < n; start += len) {
+                for (int k = 0, t = 0; k < halfLen; k++, t += tableStep) {
+                    double wr = cosTable[t];
+                    double wi = sign * sinTable[t];
+                    int a = start + k;
+                    int b = a + halfLen;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    private void bluestein(double[] re, double[] im) {
+        double[][] buffers = work.get();
+        double[] aRe = buffers[0];
+        double[] aIm = buffers[1];
+        for (int k = 0; k < n; k++) {
+            aRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+            aIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+        }
+        for (int k = n; k < m; k++) {
+            aRe[k] = 0.0;
+            aIm[k] = 0.0;
+        }
+        convPlan.transform(aRe, aIm, false);
+        for (int k = 0; k < m; k++) {
+            double r = aRe[k] * kernelRe[k] - aIm[k] * kernelIm[k];
+            double i = aRe[k] * kernelIm[k] + aIm[k] * kernelRe[k];
+            aRe[k] = r;
+            aIm[k] = i;
+        }
+        convPlan.transform(aRe, aIm, true);
+        double scale = 1.0 / m;
+        for (int k = 0; k < n; k++) {
+            double r = aRe[k] * scale;
+            double i = aIm[k] * scale;
+            re[k] = r * chirpRe[k] - i * chirpIm[k];
+            im[k] = r * chirpIm[k] + i * chirpRe[k];
+        }
+    }
+
+    /**
+     * Forward transform followed by swapping the two halves of the spectrum,
+     * equivalent to Vec.apache_fft(Complex[]).
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of points to transform
+     */
+    public static void fft(double[] re, double[] im, int n) {
+        getInstance(n).transform(re, im, false);
+        rotate(re, im, n, n / 2);
+    }
+
+    /**
+     * Swap the two halves of the spectrum followed by a scaled inverse
+     * transform, equivalent to Vec.apache_ift(Complex[]).
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of points to transform
+     */
+    public static void ift(double[] re, double[] im, int n) {
+        rotate(re, im, n, n - n / 2);
+        getInstance(n).transform(re, im, true);
+        double scale = 1.0 / n;
+        for (int i = 0; i < n; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    /**
+     * Rotate the first n values of both arrays to the right by the specified
+     * amount, in place.
+     */
+    static void rotate(double[] re, double[] im, int n, int shift) {
+        shift %= n;
+        if (shift == 0) {
+            return;
+        }
+        if (2 * shift == n) {
+            for (int i = 0; i < shift; i++) {
+                int j = i + shift;
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        } else {
+            reverse(re, im, 0, n - 1);
+            reverse(re, im, 0, shift - 1);
+            reverse(re, im, shift, n - 1);
+        }
+    }
+
+    private static void reverse(double[] re, double[] im, int first, int last) {
+        while (first < last) {
+            double t = re[first];
+            re[first] = re[last];
+            re[last] = t;
+            t = im[first];
+            im[first] = im[last];
+            im[last] = t;
+            first++;
+            last--;
+        }
+    }
+}
@@ -93,6 +93,11 @@ public class Vec extends VecBase {
      * used.
      */
     public SampleSchedule schedule = null;
+    /**
+     * Key of the VecPool this vector was taken from, or -1 if the vector was
+     * not allocated from a pool.
+     */
+    private long poolKey = -1;
 
     public Vec(int size) {
         super(size, VTYPE);
@@ -110,6 +115,21 @@ public class Vec extends VecBase {
         super(size, pt, dim, complex);
     }
 
+    @Override
+    public void reset(int newSize, int[][] pt, int[] dim, boolean complex) {
+        super.reset(newSize, pt, dim, complex);
+        annotationData = null;
+        schedule = null;
+    }
+
+    public long getPoolKey() {
+        return poolKey;
+    }
+
+    public void setPoolKey(long poolKey) {
+        this.poolKey = poolKey;
+    }
+
     /**
      * Create a real vector.
      *
@@ -1066,23 +1086,17 @@ public class Vec extends VecBase {
      */
     public void fft(boolean negatePairs, boolean negateImaginary, boolean fixGroupDelay) {
         if (isComplex()) {
-            if (!useApache()) {
-                makeApache();
+            if (useApache()) {
+                makeNotApache();
             }
             if (negatePairs) {
                 negatePairs();
             }
             checkPowerOf2();
-            Complex[] ftvector = new Complex[getSize()];
             if (negateImaginary) {
-                for (int i = 0; i < getSize(); i++) {
-                    ftvector[i] = new Complex(cvec[i].getReal(), -cvec[i].getImaginary());
-                }
-            } else {
-                System.arraycopy(cvec, 0, ftvector, 0, getSize());
+                negateImaginary();
             }
-            Complex[] ftResult = apache_fft(ftvector);
-            System.arraycopy(ftResult, 0, cvec, 0, getSize());
+            SplitFFT.fft(rvec, ivec, getSize());
             setFreqDomain(true);
             if (fixGroupDelay) {
                 fixGroupDelay();
@@ -1106,20 +1120,14 @@ public class Vec extends VecBase {
      */
     public void ifft(boolean negatePairs, boolean negateImaginary) {
         if (isComplex()) {
-            if (!useApache()) {
-                makeApache();
+            if (useApache()) {
+                makeNotApache();
             }
             checkPowerOf2();
-            Complex[] ftvector = new Complex[getSize()];
-            System.arraycopy(cvec, 0, ftvector, 0, getSize());
-            Complex[] ftResult = apache_ift(ftvector);
+            SplitFFT.ift(rvec, ivec, getSize());
 
             if (negateImaginary) {
-                for (int i = 0; i < getSize(); i++) {
-                    cvec[i] = new Complex(ftResult[i].getReal(), -ftResult[i].getImaginary());
-                }
-            } else {
-                System.arraycopy(ftResult, 0, cvec, 0, getSize());
+                negateImaginary();
             }
 
             setFreqDomain(false);
@@ -1166,29 +1174,18 @@ public class Vec extends VecBase {
     public void rft(boolean inverse, boolean negatePairs, boolean negateOdd) {
         if (!isComplex) {
             checkPowerOf2();
-            double[] ftvec = new double[size];
             if (negatePairs) {
                 negatePairs();
             }
             if (negateOdd) {
                 negateImaginary();
             }
-            System.arraycopy(rvec, 0, ftvec, 0, size);
-
-            Complex[] ftResult = apache_rfft(ftvec);
-
+            makeNotApache();
             makeComplex();
+            int ftSize = size;
+            SplitFFT.getInstance(ftSize).transform(rvec, ivec, false);
 
-            int newSize = ftResult.length / 2;
-            resize(newSize, true);
-            if (useApache) {
-                System.arraycopy(ftResult, 0, cvec, 0, newSize);
-            } else {
-                for (int i = 0; i < size; ++i) {
-                    rvec[i] = ftResult[i].getReal();
-                    ivec[i] = ftResult[i].getImaginary();
-                }
-            }
+            resize(ftSize / 2, true);
             freqDomain = true;
         }
     }
@@ -1223,16 +1220,17 @@ public class Vec extends VecBase {
         resize(newSize);
 
         scale(2.0);
+        makeNotApache();
         makeComplex();
-        makeApache();
 
         ifft();
-        set(0, new Complex(getReal(0) / 2, getImag(0)));
+        rvec[0] /= 2;
 
         int osize2 = size / 2;
 
         for (int i = osize2; i < size; i++) {
-            set(i, Complex.ZERO);
+            rvec[i] = 0.0;
+            ivec[i] = 0.0;
         }
 
         fft();
@@ -72,14 +72,16 @@ public class Bz extends Operation {
                 dspph(vector, groupDelay);
                 break;
             case "negate":
-                if (vector.isComplex() && vector.useApache()) {
+                if (vector.isComplex()) {
+                    vector.makeApache();
                     VecUtil.negate(vector.getCvec());
                 } else {
                     throw new IllegalArgumentException("BZ: negate not implemented on non-complex data");
                 }
                 break;
             case "conj":
-                if (vector.isComplex() && vector.useApache()) {
+                if (vector.isComplex()) {
+                    vector.makeApache();
                     VecUtil.conjugate(vector.getCvec());
                 } else {
                     throw new IllegalArgumentException("BZ: cannot conjugate non-complex data");
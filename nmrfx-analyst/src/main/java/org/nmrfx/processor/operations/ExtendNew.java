@@ -87,6 +87,7 @@ public class ExtendNew extends Operation {
     }
 
     private void svdPredLP(Vec vector, int start, int fitEnd, int ncoef, double threshold, int startPred, int endPred, boolean calculateBackward, boolean calculateForward) throws OperationException, Exception {
+        vector.makeApache();
         if (ncoef <= 0) {
             ncoef = vector.getSize() / 4;
         }
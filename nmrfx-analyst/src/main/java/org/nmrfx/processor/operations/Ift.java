@@ -17,13 +17,11 @@
  */
 package org.nmrfx.processor.operations;
 
-import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.annotations.PythonAPI;
+import org.nmrfx.processor.math.SplitFFT;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.processing.ProcessingException;
 
-import static org.nmrfx.processor.math.Vec.apache_ift;
-
 /**
  * Inverse Fourier Transform.
  *
@@ -49,15 +47,11 @@ public class Ift extends Operation {
 
     private void ift(Vec vector) throws ProcessingException {
         if (vector.isComplex()) {
-            if (!vector.useApache()) {
-                vector.makeApache();
+            if (vector.useApache()) {
+                vector.makeNotApache();
             }
             vector.checkPowerOf2();
-            Complex[] ftvector = new Complex[vector.getSize()];
-            Complex[] cvec = vector.getCvec();
-            System.arraycopy(cvec, 0, ftvector, 0, vector.getSize());
-            Complex[] ftResult = apache_ift(ftvector);
-            System.arraycopy(ftResult, 0, cvec, 0, vector.getSize());
+            SplitFFT.ift(vector.getRvec(), vector.getIvec(), vector.getSize());
             vector.setFreqDomain(false);
             vector.setGroupDelay(0.0);
         }
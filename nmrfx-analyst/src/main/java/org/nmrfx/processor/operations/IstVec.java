@@ -146,24 +146,13 @@ public class IstVec extends Operation {
             }
         }
 
-        // make sure it's apache mode before copying Complex array
-        vector.makeApache();
-
-        // Use care in sizes, vectors complex array could be longer than actual size
-        Complex[] cvec = new Complex[vector.getSize()];
-        System.arraycopy(vector.getCvec(), 0, cvec, 0, vector.getSize());
-
-        istMath.calculate(cvec);
+        // work in place on the separate real and imaginary arrays
+        vector.makeNotApache();
+        istMath.calculate(vector.getRvec(), vector.getIvec(), vector.getSize());
         if (istMath.isTimeDomain()) {
             vector.resize(oldSize);  // either non-power of two or resize flag is set
-            for (int i = 0; i < oldSize; i++) {
-                vector.setComplex(i, cvec[i]);
-            }
             vector.setFreqDomain(false);
         } else {
-            for (int i = 0; i < cvec.length; i++) {
-                vector.setComplex(i, cvec[i]);
-            }
             vector.setFreqDomain(true);
         }
     }
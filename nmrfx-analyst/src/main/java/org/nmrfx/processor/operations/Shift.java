@@ -48,6 +48,7 @@ public class Shift extends Operation {
 
         if ((shiftValue != 0) && (((int) Math.abs(shiftValue)) < size)) {
             if (vector.isComplex()) {
+                vector.makeApache();
                 Complex[] cvec = vector.cvec;
                 if (shiftValue > 0) {
                     System.arraycopy(cvec, 0, cvec, shiftValue, size - shiftValue);
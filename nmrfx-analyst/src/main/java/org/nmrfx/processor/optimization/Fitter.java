@@ -12,7 +12,6 @@ import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.CMAESOptimizer;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.SynchronizedRandomGenerator;
 import org.apache.commons.math3.random.Well19937c;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.util.FastMath;
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.janino.ExpressionEvaluator;
@@ -21,8 +20,8 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Optional;
 import java.util.function.BiFunction;
-import java.util.stream.IntStream;
 
 public class Fitter {
 
@@ -341,17 +340,33 @@ public class Fitter {
     }
 
     public double[] bootstrap(double[] guess, int nSim) {
-        reportFitness = false;
+        Resampler.Result result = bootstrap(guess, new Resampler(nSim));
+        parValues = result.values();
         int nPar = start.length;
-        parValues = new double[nPar + 1][nSim];
+        double[] parSDev = new double[nPar];
+        System.arraycopy(result.getStandardDeviations(), 0, parSDev, 0, Math.min(nPar, parValues.length));
+        return parSDev;
+    }
 
-        IntStream.range(0, nSim).parallel().forEach(iSim -> {
+    /**
+     * Fit bootstrap samples of the data, drawn with the random generator of
+     * each replicate.
+     *
+     * @param guess     starting parameters for each fit
+     * @param resampler the resampler that runs the replicates
+     * @return the fitted parameters of each replicate, followed by the fit value
+     */
+    public Resampler.Result bootstrap(double[] guess, Resampler resampler) {
+        reportFitness = false;
+        int nPar = start.length;
+        return resampler.run((iSim, simRandom) -> {
             double[][] newX = new double[xValues.length][yValues.length];
             double[] newY = new double[yValues.length];
             double[] newErr = new double[yValues.length];
             Optimizer optimizer = new Optimizer();
+            int[] indices = Resampler.bootstrapIndices(simRandom, yValues.length);
             for (int iValue = 0; iValue < yValues.length; iValue++) {
-                int rI = random.nextInt(yValues.length);
+                int rI = indices[iValue];
                 for (int xIndex = 0; xIndex < newX.length; xIndex++) {
                     newX[xIndex][iValue] = xValues[xIndex][rI];
                 }
@@ -366,20 +381,13 @@ public class Fitter {
             try {
                 result = optimizer.refineCMAES(guess, inputSigma);
             } catch (Exception ex) {
-                return;
+                return Optional.empty();
             }
             double[] rPoint = result.getPoint();
-            for (int j = 0; j < nPar; j++) {
-                parValues[j][iSim] = rPoint[j];
-            }
-            parValues[nPar][iSim] = result.getValue();
+            double[] simValues = new double[nPar + 1];
+            System.arraycopy(rPoint, 0, simValues, 0, nPar);
+            simValues[nPar] = result.getValue();
+            return Optional.of(simValues);
         });
-
-        double[] parSDev = new double[nPar];
-        for (int i = 0; i < nPar; i++) {
-            DescriptiveStatistics dStat = new DescriptiveStatistics(parValues[i]);
-            parSDev[i] = dStat.getStandardDeviation();
-        }
-        return parSDev;
     }
 }
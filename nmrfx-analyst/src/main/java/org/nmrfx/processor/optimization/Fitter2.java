@@ -12,7 +12,6 @@ import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.CMAESOptimizer;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.SynchronizedRandomGenerator;
 import org.apache.commons.math3.random.Well19937c;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.util.FastMath;
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.janino.ExpressionEvaluator;
@@ -21,16 +20,13 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
-import java.util.stream.IntStream;
 
 // Fitter2 allows multiple yValues per index (compared to Fitter, which allows only 1).
 // we may refactor so Fitter2 extends, or replaces Fitter
 
 public class Fitter2 {
     private static final Logger log = LoggerFactory.getLogger(Fitter2.class);
-    private static final RandomGenerator random = new SynchronizedRandomGenerator(new Well19937c());
 
     boolean reportFitness = false;
     int reportAt = 10;
@@ -271,17 +267,33 @@ public class Fitter2 {
     }
 
     public Optional<double[]> bootstrap(double[] guess, int nSim) {
+        Resampler.Result result = bootstrap(guess, new Resampler(nSim));
+        parValues = result.values();
+        if (result.nFailed() == 0) {
+            return Optional.of(Arrays.copyOf(result.getStandardDeviations(), start.length));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Fit bootstrap samples of the data, drawn with the random generator of
+     * each replicate.
+     *
+     * @param guess     starting parameters for each fit
+     * @param resampler the resampler that runs the replicates
+     * @return the fitted parameters of each replicate, followed by the fit value
+     */
+    public Resampler.Result bootstrap(double[] guess, Resampler resampler) {
         reportFitness = false;
         int nPar = start.length;
-        parValues = new double[nPar + 1][nSim];
-        AtomicInteger nCount = new AtomicInteger();
-        IntStream.range(0, nSim).parallel().forEach(iSim -> {
+        return resampler.run((iSim, simRandom) -> {
             double[][] newX = new double[xValues.length][yValues[0].length];
             double[][] newY = new double[yValues.length][yValues[0].length];
             double[][] newErr = new double[yValues.length][yValues[0].length];
             Optimizer optimizer = new Optimizer();
+            int[] indices = Resampler.bootstrapIndices(simRandom, yValues[0].length);
             for (int iValue = 0; iValue < yValues[0].length; iValue++) {
-                int rI = random.nextInt(yValues[0].length);
+                int rI = indices[iValue];
                 for (int xIndex = 0; xIndex < newX.length; xIndex++) {
                     newX[xIndex][iValue] = xValues[xIndex][rI];
                 }
@@ -293,28 +305,12 @@ public class Fitter2 {
 
             optimizer.setXYE(newX, newY, newErr);
 
-
-            var optResult = optimizer.refineCMAES(guess, inputSigma);
-            if (optResult.isPresent()) {
-                PointValuePair result = optResult.get();
-                double[] rPoint = result.getPoint();
-                for (int j = 0; j < nPar; j++) {
-                    parValues[j][iSim] = rPoint[j];
-                }
-                parValues[nPar][iSim] = result.getValue();
-                nCount.incrementAndGet();
-            } else {
-                return;
-            }
+            return optimizer.refineCMAES(guess, inputSigma).map(result -> {
+                double[] simValues = new double[nPar + 1];
+                System.arraycopy(result.getPoint(), 0, simValues, 0, nPar);
+                simValues[nPar] = result.getValue();
+                return simValues;
+            });
         });
-        if (nCount.get() == nSim) {
-            double[] parSDev = new double[nPar];
-            for (int i = 0; i < nPar; i++) {
-                DescriptiveStatistics dStat = new DescriptiveStatistics(parValues[i]);
-                parSDev[i] = dStat.getStandardDeviation();
-            }
-            return Optional.of(parSDev);
-        }
-        return Optional.empty();
     }
 }
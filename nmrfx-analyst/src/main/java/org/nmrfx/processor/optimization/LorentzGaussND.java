@@ -20,6 +20,13 @@ package org.nmrfx.processor.optimization;
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.exception.MathIllegalStateException;
 import org.apache.commons.math3.exception.TooManyEvaluationsException;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
+import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.optim.InitialGuess;
 import org.apache.commons.math3.optim.MaxEval;
 import org.apache.commons.math3.optim.PointValuePair;
@@ -29,11 +36,14 @@ import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
 import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.BOBYQAOptimizer;
 import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.MultidimensionalCounter;
+import org.apache.commons.math3.util.Pair;
 import org.nmrfx.processor.datasets.peaks.LineShapes;
 import org.nmrfx.processor.datasets.peaks.SyncPar;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 
 public class LorentzGaussND implements MultivariateFunction {
@@ -61,6 +71,19 @@ public class LorentzGaussND implements MultivariateFunction {
     boolean fitKAB;
     boolean fitR1AB;
     Random generator = null;
+    // column of the least squares Jacobian that each parameter contributes to, and the scale of each column
+    int[] fullToColumn;
+    double[] columnScale;
+    // line shape of each signal in each dimension, cached at each position along the dimension
+    int[] posMin;
+    double[][][] shapes;
+    double[][][] dShapeLw;
+    double[][][] dShapeFreq;
+    double[][][] dShapeFactor;
+    // width, frequency, shape factor and derivative flag that each cached line shape was calculated with
+    double[][][] shapePars;
+    double[] lsBestPoint = null;
+    double lsBestValue = Double.MAX_VALUE;
 
     public LorentzGaussND(final int[][] positions) {
         int nPoints = positions.length;
@@ -149,6 +172,236 @@ public class LorentzGaussND implements MultivariateFunction {
         return result;
     }
 
+    /**
+     * Return true if the model has analytic derivatives, so it can be fit
+     * with optimizeLM. The exchange (ZZ) model does not.
+     *
+     * @return true if optimizeLM can be used
+     */
+    public boolean hasJacobian() {
+        return !fitZZ;
+    }
+
+    /**
+     * Fit the model by least squares with the Levenberg-Marquardt optimizer
+     * and analytic derivatives. Parameters are kept within their bounds. The
+     * value of the returned result is the same mean absolute deviation as
+     * returned by optimizeBOBYQA.
+     *
+     * @param maxIterations maximum number of iterations
+     * @return the fitted parameters and the mean absolute deviation
+     */
+    public PointValuePair optimizeLM(final int maxIterations) {
+        if (!hasJacobian()) {
+            throw new IllegalStateException("No analytic derivatives for this model");
+        }
+        best = null;
+        lsBestPoint = null;
+        lsBestValue = Double.MAX_VALUE;
+        double[] target = new double[nDelays * positions.length];
+        for (int iDelay = 0; iDelay < nDelays; iDelay++) {
+            System.arraycopy(intensities[iDelay], 0, target, iDelay * positions.length, positions.length);
+        }
+        LeastSquaresProblem problem = new LeastSquaresBuilder()
+                .start(newStart)
+                .model(this::lsValue)
+                .target(target)
+                .parameterValidator(LorentzGaussND::clampToBounds)
+                .maxIterations(maxIterations)
+                .maxEvaluations(maxIterations * 10)
+                .build();
+        double[] point;
+        try {
+            point = new LevenbergMarquardtOptimizer().optimize(problem).getPoint().toArray();
+        } catch (MathIllegalStateException e) {
+            point = lsBestPoint;
+        }
+        if (point == null) {
+            return null;
+        }
+        double[] unscaled = unscalePar(point).clone();
+        return new PointValuePair(unscaled, valueWithUnScaled(unscaled));
+    }
+
+    static RealVector clampToBounds(RealVector point) {
+        for (int i = 0; i < point.getDimension(); i++) {
+            point.setEntry(i, Math.min(100.0, Math.max(0.0, point.getEntry(i))));
+        }
+        return point;
+    }
+
+    /**
+     * Calculate the model values, and their derivatives with respect to the
+     * scaled floating parameters, at all positions and delays.
+     */
+    Pair<RealVector, RealMatrix> lsValue(RealVector point) {
+        double[] scaled = point.toArray();
+        double[] a = unscalePar(scaled);
+        updateShapes(a, true);
+        int nPoints = positions.length;
+        int nZZ = nZZ();
+        double[] values = new double[nDelays * nPoints];
+        double[][] jacobian = new double[nDelays * nPoints][nFloating];
+        double[] grad = new double[nParDim];
+        double[] amplitudes = new double[nSignals];
+        double[] bases = new double[nSignals];
+        int[] dimStarts = new int[nSignals];
+        double[] ampBase = new double[2];
+        double[] dimShapes = new double[nDim];
+        double sumSq = 0.0;
+        for (int iDelay = 0; iDelay < nDelays; iDelay++) {
+            for (int iSig = 0; iSig < nSignals; iSig++) {
+                dimStarts[iSig] = signalAmplitude(a, iSig, iDelay, ampBase);
+                amplitudes[iSig] = ampBase[0];
+                bases[iSig] = ampBase[1];
+            }
+            for (int i = 0; i < nPoints; i++) {
+                int row = iDelay * nPoints + i;
+                Arrays.fill(grad, 0.0);
+                double y = a[0];
+                grad[0] = 1.0;
+                for (int iSig = 0; iSig < nSignals; iSig++) {
+                    double product = 1.0;
+                    for (int iDim = 0; iDim < nDim; iDim++) {
+                        dimShapes[iDim] = shapes[iSig][iDim][positions[i][iDim] - posMin[iDim]];
+                        product *= dimShapes[iDim];
+                    }
+                    y += product * amplitudes[iSig] + bases[iSig];
+                    amplitudeGradient(a, iSig, iDelay, product, amplitudes[iSig], grad);
+                    int iPar = dimStarts[iSig];
+                    for (int iDim = 0; iDim < nDim; iDim++) {
+                        double others = amplitudes[iSig];
+                        for (int jDim = 0; jDim < nDim; jDim++) {
+                            if (jDim != iDim) {
+                                others *= dimShapes[jDim];
+                            }
+                        }
+                        int j = positions[i][iDim] - posMin[iDim];
+                        grad[iPar++] += others * dShapeLw[iSig][iDim][j];
+                        grad[iPar++] += others * dShapeFreq[iSig][iDim][j];
+                        grad[a.length - nZZ - nDim + iDim] += others * dShapeFactor[iSig][iDim][j];
+                    }
+                }
+                values[row] = y;
+                double delta = intensities[iDelay][i] - y;
+                sumSq += delta * delta;
+                for (int k = 0; k < nParDim; k++) {
+                    int column = fullToColumn[k];
+                    if (column >= 0) {
+                        jacobian[row][column] += grad[k] * columnScale[column];
+                    }
+                }
+            }
+        }
+        if (sumSq < lsBestValue) {
+            lsBestValue = sumSq;
+            lsBestPoint = scaled.clone();
+        }
+        return new Pair<>(new ArrayRealVector(values, false), new Array2DRowRealMatrix(jacobian, false));
+    }
+
+    /**
+     * Add the derivatives of a signal's contribution with respect to its
+     * amplitude (and relaxation) parameters.
+     */
+    private void amplitudeGradient(double[] a, int iSig, int iDelay, double product, double amplitude, double[] grad) {
+        int iPar = sigStarts[iSig];
+        if (intensities.length > 1) {
+            if (delays != null) {
+                double delay = delays[iDelay];
+                grad[iPar] += product * Math.exp(-a[iPar + 1] * delay);
+                grad[iPar + 1] -= delay * amplitude * product;
+                if (fitC) {
+                    grad[iPar + 2] += 1.0;
+                }
+            } else {
+                grad[iPar + iDelay] += product;
+            }
+        } else {
+            grad[iPar] += product;
+        }
+    }
+
+    /**
+     * Make a copy of this fitter, with its own intensities, parameters and
+     * line shape cache, that can be fit at the same time as this one.
+     *
+     * @return the copy
+     */
+    public LorentzGaussND copy() {
+        LorentzGaussND copy = new LorentzGaussND(positions);
+        copyFitState(copy);
+        return copy;
+    }
+
+    /**
+     * Copy the data and fit setup to another fitter. The bounds and parameter
+     * maps aren't changed by a fit, so they are shared with the copy.
+     */
+    void copyFitState(LorentzGaussND copy) {
+        copy.intensities = new double[intensities.length][];
+        for (int i = 0; i < intensities.length; i++) {
+            copy.intensities[i] = intensities[i].clone();
+        }
+        copy.nDelays = nDelays;
+        copy.delays = delays;
+        copy.fitC = fitC;
+        copy.fitZZ = fitZZ;
+        copy.fitKAB = fitKAB;
+        copy.fitR1AB = fitR1AB;
+        copy.nParDim = nParDim;
+        copy.nFloating = nFloating;
+        copy.nSignals = nSignals;
+        copy.sigStarts = sigStarts;
+        copy.boundaries = boundaries;
+        copy.uniformBoundaries = uniformBoundaries;
+        copy.mapToAll = mapToAll;
+        copy.mapFromAll = mapFromAll;
+        copy.fullToColumn = fullToColumn;
+        copy.columnScale = columnScale;
+        copy.syncPars.addAll(syncPars);
+        copy.newStart = newStart.clone();
+        copy.unscaledPars = unscaledPars.clone();
+        copy.scaledPars = scaledPars.clone();
+        copy.initShapeCache();
+    }
+
+    /**
+     * Fit bootstrap samples of the positions, drawn with the random generator
+     * of each replicate. Each replicate fits its own copy of this fitter,
+     * from the starting parameters given to setOffsets, with optimizeLM if
+     * the model has analytic derivatives and optimizeBOBYQA if not.
+     *
+     * @param resampler the resampler that runs the replicates
+     * @param nSteps    maximum number of iterations (or evaluations) of each fit
+     * @return the fitted parameters of each replicate, followed by the mean absolute deviation
+     */
+    public Resampler.Result bootstrap(Resampler resampler, int nSteps) {
+        return resampler.run((iReplicate, random) -> {
+            LorentzGaussND copy = copy();
+            int[] indices = Resampler.bootstrapIndices(random, positions.length);
+            for (int i = 0; i < indices.length; i++) {
+                copy.positions[i] = positions[indices[i]];
+                for (int iDelay = 0; iDelay < nDelays; iDelay++) {
+                    copy.intensities[iDelay][i] = intensities[iDelay][indices[i]];
+                }
+            }
+            copy.initShapeCache();
+            PointValuePair result;
+            if (copy.hasJacobian()) {
+                result = copy.optimizeLM(nSteps);
+            } else {
+                result = copy.optimizeBOBYQA(nSteps, 2 * nFloating + 1);
+            }
+            if (result == null) {
+                return Optional.empty();
+            }
+            double[] values = Arrays.copyOf(result.getPoint(), nParDim + 1);
+            values[nParDim] = result.getValue();
+            return Optional.of(values);
+        });
+    }
+
     public void simulate(final double[] parameters, final double sdev) {
         if (generator == null) {
             initRandom(0);
@@ -174,10 +427,28 @@ public class LorentzGaussND implements MultivariateFunction {
     }
 
     public double valueWithUnScaled(final double[] parameters) {
+        updateShapes(parameters, false);
+        double[] amplitudes = new double[nSignals];
+        double[] bases = new double[nSignals];
+        double[] ampBase = new double[2];
         double sum = 0.0;
         for (int iDelay = 0; iDelay < nDelays; iDelay++) {
+            for (int iSig = 0; iSig < nSignals; iSig++) {
+                signalAmplitude(parameters, iSig, iDelay, ampBase);
+                amplitudes[iSig] = ampBase[0];
+                bases[iSig] = ampBase[1];
+            }
             for (int i = 0; i < positions.length; i++) {
-                double y = calculate(parameters, positions[i], iDelay);
+                double y = fitZZ ? 0.0 : parameters[0];
+                for (int iSig = 0; iSig < nSignals; iSig++) {
+                    double ySig = 1.0;
+                    for (int iDim = 0; iDim < nDim; iDim++) {
+                        ySig *= shapes[iSig][iDim][positions[i][iDim] - posMin[iDim]];
+                    }
+                    ySig *= amplitudes[iSig];
+                    ySig += bases[iSig];
+                    y += ySig;
+                }
                 double delta = intensities[iDelay][i] - y;
                 sum += FastMath.abs(delta);
             }
@@ -225,15 +496,57 @@ public class LorentzGaussND implements MultivariateFunction {
     }
 
     public double calculateOneSig(double[] a, int iSig, int[] x, int iDelay) {
+        double[] ampBase = new double[2];
+        int iPar = signalAmplitude(a, iSig, iDelay, ampBase);
+        int nZZ = nZZ();
         double y = 1.0;
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            double lw = a[iPar++];
+            double freq = a[iPar++];
+            double shapeFactor = a[a.length - nZZ - nDim + iDim];
+            double f = lShape(x[iDim], lw, freq, shapeFactor);
+            y *= f;
+        }
+        y *= ampBase[0];
+        y += ampBase[1];
+        return y;
+    }
+
+    /**
+     * Number of exchange parameters at the end of the parameter array.
+     */
+    int nZZ() {
+        int nZZ = 0;
+        if ((intensities.length > 1) && (delays != null) && fitZZ) {
+            nZZ = 3;
+            if (fitKAB) {
+                nZZ++;
+            }
+            if (fitR1AB) {
+                nZZ++;
+            }
+        }
+        return nZZ;
+    }
+
+    /**
+     * Calculate the amplitude and baseline offset of a signal at a delay.
+     *
+     * @param a       the parameters
+     * @param iSig    the signal
+     * @param iDelay  the delay (or plane)
+     * @param ampBase on return holds the amplitude and the baseline offset
+     * @return the index of the width parameter of the first dimension of the signal
+     */
+    int signalAmplitude(double[] a, int iSig, int iDelay, double[] ampBase) {
         int iPar = sigStarts[iSig];
         double amplitude;
         double base = 0.0;
         int last = a.length - 1;
-        int nZZ = 0;
         if (intensities.length > 1) {
             if (delays != null) {
                 int nR = 1;
+                int nZZ = 0;
                 if (fitZZ) {
                     amplitude = a[0];
                     nZZ = 3;
@@ -278,16 +591,78 @@ public class LorentzGaussND implements MultivariateFunction {
         } else {
             amplitude = a[iPar++];
         }
-        for (int iDim = 0; iDim < nDim; iDim++) {
-            double lw = a[iPar++];
-            double freq = a[iPar++];
-            double shapeFactor = a[a.length - nZZ - nDim + iDim];
-            double f = lShape(x[iDim], lw, freq, shapeFactor);
-            y *= f;
+        ampBase[0] = amplitude;
+        ampBase[1] = base;
+        return iPar;
+    }
+
+    /**
+     * Update the cached line shapes of each signal in each dimension for any
+     * signal whose width, frequency or shape factor has changed.
+     *
+     * @param a           the parameters
+     * @param derivatives true if the derivatives of the shapes are needed
+     */
+    void updateShapes(double[] a, boolean derivatives) {
+        int nZZ = nZZ();
+        double[] ampBase = new double[2];
+        double[] derivs = new double[4];
+        for (int iSig = 0; iSig < nSignals; iSig++) {
+            int iPar = signalAmplitude(a, iSig, 0, ampBase);
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                double lw = a[iPar++];
+                double freq = a[iPar++];
+                double shapeFactor = a[a.length - nZZ - nDim + iDim];
+                double[] pars = shapePars[iSig][iDim];
+                boolean hasDerivs = pars[3] != 0.0;
+                if ((lw == pars[0]) && (freq == pars[1]) && (shapeFactor == pars[2]) && (hasDerivs || !derivatives)) {
+                    continue;
+                }
+                double[] shape = shapes[iSig][iDim];
+                for (int j = 0; j < shape.length; j++) {
+                    int x = posMin[iDim] + j;
+                    shape[j] = lShape(x, lw, freq, shapeFactor);
+                    if (derivatives) {
+                        LineShapes.gLorentzianDerivatives(x, freq, lw, shapeFactor, derivs);
+                        dShapeFreq[iSig][iDim][j] = derivs[1];
+                        dShapeLw[iSig][iDim][j] = derivs[2];
+                        dShapeFactor[iSig][iDim][j] = derivs[3];
+                    }
+                }
+                pars[0] = lw;
+                pars[1] = freq;
+                pars[2] = shapeFactor;
+                pars[3] = derivatives ? 1.0 : 0.0;
+            }
+        }
+    }
+
+    void initShapeCache() {
+        posMin = new int[nDim];
+        int[] posMax = new int[nDim];
+        Arrays.fill(posMin, Integer.MAX_VALUE);
+        Arrays.fill(posMax, Integer.MIN_VALUE);
+        for (int[] position : positions) {
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                posMin[iDim] = Math.min(posMin[iDim], position[iDim]);
+                posMax[iDim] = Math.max(posMax[iDim], position[iDim]);
+            }
+        }
+        shapes = new double[nSignals][nDim][];
+        dShapeLw = new double[nSignals][nDim][];
+        dShapeFreq = new double[nSignals][nDim][];
+        dShapeFactor = new double[nSignals][nDim][];
+        shapePars = new double[nSignals][nDim][4];
+        for (int iSig = 0; iSig < nSignals; iSig++) {
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                int size = posMax[iDim] - posMin[iDim] + 1;
+                shapes[iSig][iDim] = new double[size];
+                dShapeLw[iSig][iDim] = new double[size];
+                dShapeFreq[iSig][iDim] = new double[size];
+                dShapeFactor[iSig][iDim] = new double[size];
+                Arrays.fill(shapePars[iSig][iDim], Double.NaN);
+            }
         }
-        y *= amplitude;
-        y += base;
-        return y;
     }
 
     public double lShape(double x, double b, double freq, double shapeFactor) {
@@ -427,6 +802,18 @@ public class LorentzGaussND implements MultivariateFunction {
             }
             unscaledPars[i] = start[i];
         }
+        columnScale = new double[nFloating];
+        fullToColumn = new int[nParDim];
+        Arrays.fill(fullToColumn, -1);
+        for (int k = 0; k < nFloating; k++) {
+            fullToColumn[mapToAll[k]] = k;
+            columnScale[k] = (boundaries[1][k] - boundaries[0][k]) / 100.0;
+        }
+        // a synchronized parameter takes its value, and so its derivative, from another parameter
+        for (SyncPar syncPar : this.syncPars) {
+            fullToColumn[syncPar.to()] = fullToColumn[syncPar.from()];
+        }
+        initShapeCache();
     }
 
     public static void main(String[] args) {
@@ -26,6 +26,20 @@ public class LorentzGaussNDWithCatalog extends LorentzGaussND {
         this.lsCatalog = lsCatalog;
     }
 
+    @Override
+    public LorentzGaussND copy() {
+        LorentzGaussNDWithCatalog copy = new LorentzGaussNDWithCatalog(positions, lsCatalog);
+        copyFitState(copy);
+        copy.catValues = new double[nSignals][nDim][];
+        copy.offsets = new int[nSignals][nDim];
+        return copy;
+    }
+
+    @Override
+    public boolean hasJacobian() {
+        return false;
+    }
+
     @Override
     public double valueWithUnScaled(final double[] pars) {
         double sum = 0.0;
@@ -0,0 +1,223 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.optimization;
+
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Runs bootstrap or Monte Carlo replicates of a fit in parallel, for estimating parameter errors.
+ * <p>
+ * Each replicate gets its own random generator, seeded from the resampler seed and the replicate index, so the
+ * results don't depend on the number of threads or the order in which the replicates run. Replicates are run in
+ * batches. If a convergence tolerance is set, the confidence interval of each value is checked after each batch and
+ * the run stops once no interval bound has moved by more than the tolerance (as a fraction of the interval width).
+ */
+public class Resampler {
+
+    /**
+     * A single replicate, such as a fit to resampled data.
+     */
+    public interface Replicate {
+        /**
+         * Run the replicate.
+         *
+         * @param iReplicate index of the replicate
+         * @param random     random generator for this replicate
+         * @return the values from the replicate (such as the fitted parameters), or empty if it failed
+         */
+        Optional<double[]> apply(int iReplicate, RandomGenerator random);
+    }
+
+    /**
+     * The values from the successful replicates, indexed by value and then replicate, in replicate order.
+     *
+     * @param values    the values
+     * @param nFailed   number of replicates that failed
+     * @param converged true if the run stopped early because the confidence intervals converged
+     */
+    public record Result(double[][] values, int nFailed, boolean converged) {
+
+        public int nReplicates() {
+            return values.length == 0 ? 0 : values[0].length;
+        }
+
+        public double[] getStandardDeviations() {
+            double[] sDevs = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                sDevs[i] = new DescriptiveStatistics(values[i]).getStandardDeviation();
+            }
+            return sDevs;
+        }
+
+        /**
+         * Get the percentile confidence interval of each value.
+         *
+         * @param confidence the confidence level, for example 0.95
+         * @return array of the lower and upper bounds, indexed by value
+         */
+        public double[][] getConfidenceIntervals(double confidence) {
+            return Resampler.getConfidenceIntervals(values, values.length == 0 ? 0 : values[0].length, confidence);
+        }
+    }
+
+    private final int maxReplicates;
+    private long seed = 1;
+    private int batchSize = 50;
+    private double confidence = 0.95;
+    private double tolerance = 0.0;
+    private int minReplicates = 100;
+
+    /**
+     * Create a resampler.
+     *
+     * @param maxReplicates the number of replicates to run if there is no early stopping
+     */
+    public Resampler(int maxReplicates) {
+        if (maxReplicates < 1) {
+            throw new IllegalArgumentException("Number of replicates must be at least 1");
+        }
+        this.maxReplicates = maxReplicates;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Enable stopping when the confidence intervals converge.
+     *
+     * @param confidence    the confidence level of the intervals that are checked, for example 0.95
+     * @param tolerance     the largest change of an interval bound between batches, as a fraction of the interval
+     *                      width, for the run to be converged
+     * @param minReplicates the smallest number of successful replicates before the run can stop
+     */
+    public void setConvergence(double confidence, double tolerance, int minReplicates) {
+        if ((confidence <= 0.0) || (confidence >= 1.0)) {
+            throw new IllegalArgumentException("Confidence must be between 0 and 1");
+        }
+        this.confidence = confidence;
+        this.tolerance = tolerance;
+        this.minReplicates = minReplicates;
+    }
+
+    /**
+     * Create the random generator for a replicate.
+     *
+     * @param iReplicate the replicate index
+     * @return the random generator
+     */
+    public RandomGenerator getRandom(int iReplicate) {
+        return new Well19937c(new int[]{(int) (seed >>> 32), (int) seed, iReplicate});
+    }
+
+    /**
+     * Run the replicates.
+     *
+     * @param replicate the replicate to run. It is called from several threads at once.
+     * @return the result
+     */
+    public Result run(Replicate replicate) {
+        double[][] allValues = new double[maxReplicates][];
+        int nDone = 0;
+        int nGood = 0;
+        double[][] values = null;
+        double[][] lastIntervals = null;
+        boolean converged = false;
+        int size = tolerance > 0.0 ? batchSize : maxReplicates;
+        while ((nDone < maxReplicates) && !converged) {
+            int start = nDone;
+            int end = Math.min(maxReplicates, start + size);
+            IntStream.range(start, end).parallel().forEach(iReplicate ->
+                    allValues[iReplicate] = replicate.apply(iReplicate, getRandom(iReplicate)).orElse(null));
+            for (int i = start; i < end; i++) {
+                if (allValues[i] != null) {
+                    if (values == null) {
+                        values = new double[allValues[i].length][maxReplicates];
+                    }
+                    for (int j = 0; j < values.length; j++) {
+                        values[j][nGood] = allValues[i][j];
+                    }
+                    nGood++;
+                }
+            }
+            nDone = end;
+            if ((tolerance > 0.0) && (values != null)) {
+                double[][] intervals = getConfidenceIntervals(values, nGood, confidence);
+                converged = (nGood >= minReplicates) && (lastIntervals != null)
+                        && intervalsConverged(lastIntervals, intervals);
+                lastIntervals = intervals;
+            }
+        }
+        if (values == null) {
+            values = new double[0][];
+        }
+        for (int j = 0; j < values.length; j++) {
+            values[j] = Arrays.copyOf(values[j], nGood);
+        }
+        return new Result(values, nDone - nGood, converged);
+    }
+
+    private boolean intervalsConverged(double[][] lastIntervals, double[][] intervals) {
+        for (int j = 0; j < intervals.length; j++) {
+            double width = intervals[j][1] - intervals[j][0];
+            double delta = Math.max(Math.abs(intervals[j][0] - lastIntervals[j][0]),
+                    Math.abs(intervals[j][1] - lastIntervals[j][1]));
+            if (delta > tolerance * width) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static double[][] getConfidenceIntervals(double[][] values, int n, double confidence) {
+        double bottomPercentile = (100.0 - 100.0 * confidence) / 2.0;
+        double topPercentile = 100.0 - bottomPercentile;
+        double[][] intervals = new double[values.length][2];
+        for (int j = 0; j < values.length; j++) {
+            DescriptiveStatistics dStat = new DescriptiveStatistics(Arrays.copyOf(values[j], n));
+            intervals[j][0] = dStat.getPercentile(bottomPercentile);
+            intervals[j][1] = dStat.getPercentile(topPercentile);
+        }
+        return intervals;
+    }
+
+    /**
+     * Choose indices for a bootstrap sample, drawn with replacement.
+     *
+     * @param random the random generator
+     * @param n      number of data points
+     * @return the indices
+     */
+    public static int[] bootstrapIndices(RandomGenerator random, int n) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = random.nextInt(n);
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.processing;
+
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.datasets.ScanRegion;
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.processing.processes.ProcessOps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Processes two consecutive indirect dimensions without a barrier between
+ * them. The dataset is split into planes, one for each combination of indices
+ * in the dimensions that are not being processed. A worker processes all
+ * vectors of the first dimension within a plane, after which the plane is
+ * queued for the second dimension. Workers take queued planes before starting
+ * new ones, so processing of the second dimension runs concurrently with the
+ * first instead of waiting for the whole dataset to be written.
+ * <p>
+ * Reads share a lock, writes (and any resizing of the dataset file they need)
+ * hold it exclusively.
+ * <p>
+ * The direct dimension is not pipelined with the first indirect dimension.
+ * Its vectors are read from the FID through NMRData, in the order set by the
+ * acquisition and sampling schedules rather than plane by plane, and before
+ * it finishes the dataset sizes the indirect stage would read are not yet
+ * final.
+ */
+class DimPipeline {
+    private static final Logger log = LoggerFactory.getLogger(DimPipeline.class);
+
+    private final Processor processor;
+    private final Dataset dataset;
+    private final Stage first;
+    private final Stage second;
+    private final int[] keyDims;
+    private final int[] keySizes;
+    private final int nKeys;
+    private final int batchSize;
+    private final AtomicInteger nextKey = new AtomicInteger(0);
+    private final AtomicInteger keysDone = new AtomicInteger(0);
+    private final LinkedBlockingQueue<Integer> readyKeys = new LinkedBlockingQueue<>();
+    private final AtomicReference<Exception> error = new AtomicReference<>();
+    private final ReentrantReadWriteLock ioLock = new ReentrantReadWriteLock();
+
+    class Stage {
+        final ProcessOps process;
+        final int[] dim;
+        final int otherDim;
+        final StageTiming timing;
+        final ThreadLocal<ProcessOps> localProcess;
+
+        Stage(ProcessOps process, int iDim, int otherDim, String name) {
+            this.process = process;
+            this.otherDim = otherDim;
+            int nDim = dataset.getNDim();
+            dim = new int[nDim];
+            dim[0] = iDim;
+            for (int i = 1, jDim = 0; i < nDim; ++i, ++jDim) {
+                if (jDim == iDim) {
+                    jDim++;
+                }
+                dim[i] = jDim;
+            }
+            timing = new StageTiming(name);
+            localProcess = ThreadLocal.withInitial(() -> {
+                ProcessOps p = process.cloneProcess(processor.createProcess());
+                p.addWriteOperation();
+                return p;
+            });
+        }
+
+        int[][] getRegion(int[] keyPoint) {
+            int[][] pt = new int[dim.length][2];
+            pt[0][1] = getExtent(dim[0]) - 1;
+            for (int i = 1; i < dim.length; i++) {
+                if (dim[i] == otherDim) {
+                    pt[i][1] = getExtent(dim[i]) - 1;
+                } else {
+                    pt[i][0] = keyPoint[dim[i]];
+                    pt[i][1] = keyPoint[dim[i]];
+                }
+            }
+            return pt;
+        }
+
+        void processPlane(int key) throws IOException {
+            int[] keyPoint = getKeyPoint(key);
+            int[][] region = getRegion(keyPoint);
+            boolean complex = dataset.getComplex_r(dim[0]);
+            int vectorSize = region[0][1] + 1;
+            if (complex) {
+                vectorSize /= 2;
+            }
+            ScanRegion scanRegion = new ScanRegion(region, dim, dataset);
+            ProcessOps p = localProcess.get();
+            List<Vec> vectors = new ArrayList<>(batchSize);
+            while (error.get() == null) {
+                vectors.clear();
+                long startRead = System.nanoTime();
+                ioLock.readLock().lock();
+                try {
+                    for (int i = 0; i < batchSize; i++) {
+                        int[][] pt = scanRegion.nextPoint2();
+                        if (pt.length == 0) {
+                            break;
+                        }
+                        Vec vec = new Vec(vectorSize, pt, dim, complex);
+                        dataset.readVectorFromDatasetFile(pt, dim, vec);
+                        vectors.add(vec);
+                    }
+                } finally {
+                    ioLock.readLock().unlock();
+                }
+                timing.addRead(System.nanoTime() - startRead, vectors.size());
+                if (vectors.isEmpty()) {
+                    break;
+                }
+                p.eval(vectors, timing);
+            }
+        }
+    }
+
+    /**
+     * Get the number of points processed along a dimension, using the same
+     * rule as the Processor uses for serial processing: the full size for the
+     * direct dimension and the valid size for the others.
+     *
+     * @param iDim the dataset dimension
+     * @return the number of points
+     */
+    private int getExtent(int iDim) {
+        return iDim == 0 ? dataset.getSizeTotal(iDim) : dataset.getVSize(iDim);
+    }
+
+    DimPipeline(Processor processor, Dataset dataset, ProcessOps firstProcess, int firstDim,
+                ProcessOps secondProcess, int secondDim, int batchSize) {
+        this.processor = processor;
+        this.dataset = dataset;
+        this.batchSize = Math.max(1, batchSize);
+        first = new Stage(firstProcess, firstDim, secondDim, "dim " + (firstDim + 1));
+        second = new Stage(secondProcess, secondDim, firstDim, "dim " + (secondDim + 1));
+        int nDim = dataset.getNDim();
+        keyDims = new int[nDim - 2];
+        keySizes = new int[nDim - 2];
+        int nPlanes = 1;
+        for (int i = 0, j = 0; i < nDim; i++) {
+            if ((i != firstDim) && (i != secondDim)) {
+                keyDims[j] = i;
+                keySizes[j] = getExtent(i);
+                nPlanes *= keySizes[j];
+                j++;
+            }
+        }
+        nKeys = nPlanes;
+    }
+
+    /**
+     * Check whether two processes can be run with a DimPipeline.
+     *
+     * @param dataset  the dataset being processed
+     * @param p1       process for the first dimension
+     * @param firstDim dataset dimension of the first process
+     * @param p2       process for the second dimension
+     * @param secondDim dataset dimension of the second process
+     * @return true if the processes can be pipelined
+     */
+    static boolean canPipeline(Dataset dataset, ProcessOps p1, int firstDim, ProcessOps p2, int secondDim) {
+        if ((dataset == null) || !dataset.hasLayout() || (dataset.getNDim() < 3)) {
+            return false;
+        }
+        if ((firstDim < 1) || (secondDim < 1) || (firstDim == secondDim)) {
+            return false;
+        }
+        for (ProcessOps p : List.of(p1, p2)) {
+            if (p.isMatrix() || p.isDataset() || p.isUndo() || !p.hasOperations()) {
+                return false;
+            }
+        }
+        return !dataset.getAxisReversed(firstDim) && !dataset.getAxisReversed(secondDim);
+    }
+
+    int getNVectors() {
+        int nFirst = dataset.getVSize(second.dim[0]);
+        int nSecond = dataset.getVSize(first.dim[0]);
+        return nKeys * (nFirst + nSecond);
+    }
+
+    StageTiming getFirstTiming() {
+        return first.timing;
+    }
+
+    StageTiming getSecondTiming() {
+        return second.timing;
+    }
+
+    int[] getKeyPoint(int key) {
+        int[] point = new int[dataset.getNDim()];
+        for (int i = 0; i < keyDims.length; i++) {
+            point[keyDims[i]] = key % keySizes[i];
+            key /= keySizes[i];
+        }
+        return point;
+    }
+
+    /**
+     * Write a vector produced by either stage.
+     *
+     * @param vector the vector to write
+     * @throws IOException if an I/O error occurs
+     */
+    void writeVector(Vec vector) throws IOException {
+        int dim0 = vector.getDim()[0];
+        StageTiming timing = dim0 == first.dim[0] ? first.timing : second.timing;
+        long start = System.nanoTime();
+        ioLock.writeLock().lock();
+        try {
+            int[][] pt = vector.getPt();
+            int[] dim = vector.getDim();
+            if ((pt[0][1] + 1) > dataset.getFileDimSize(dim[0])) {
+                dataset.resizeDim(dim[0], pt[0][1] + 1);
+            }
+            dataset.writeVector(vector);
+        } catch (DatasetException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            ioLock.writeLock().unlock();
+        }
+        timing.addWrite(System.nanoTime() - start, 1);
+    }
+
+    private void work() {
+        try {
+            while (error.get() == null) {
+                Integer key = readyKeys.poll();
+                if (key != null) {
+                    second.processPlane(key);
+                    keysDone.incrementAndGet();
+                    continue;
+                }
+                int firstKey = nextKey.getAndIncrement();
+                if (firstKey < nKeys) {
+                    first.processPlane(firstKey);
+                    readyKeys.add(firstKey);
+                    continue;
+                }
+                if (keysDone.get() >= nKeys) {
+                    break;
+                }
+                key = readyKeys.poll(50, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    second.processPlane(key);
+                    keysDone.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error.compareAndSet(null, e);
+        } catch (Exception e) {
+            error.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Run both stages using the specified pool and wait for them to finish.
+     *
+     * @param pool     executor that runs the workers
+     * @param nWorkers number of workers to submit
+     */
+    void run(ExecutorService pool, int nWorkers) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < nWorkers; i++) {
+            futures.add(pool.submit(this::work));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error.compareAndSet(null, e);
+            } catch (ExecutionException e) {
+                error.compareAndSet(null, e);
+            }
+        }
+        first.timing.finish();
+        second.timing.finish();
+        Exception e = error.get();
+        if (e != null) {
+            log.warn(e.getMessage(), e);
+            throw new ProcessingException(e.getMessage(), e);
+        }
+    }
+}
@@ -46,6 +46,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -154,6 +155,32 @@ public class Processor {
      */
     private static ArrayList<Runnable> processes = null;
     private ExecutorService pool;
+    /**
+     * Number of threads in the pool, used to decide if an existing pool can be reused.
+     */
+    private int poolSize = 0;
+    /**
+     * True while runProcesses keeps the pool alive across dimensions.
+     */
+    private boolean keepPool = false;
+    /**
+     * If true, consecutive indirect dimensions are processed plane by plane
+     * without waiting for the whole first dimension to finish.
+     */
+    private boolean pipelined = false;
+    /**
+     * If true, vectors read from the FID or dataset are taken from a VecPool
+     * and recycled once they have been written.
+     */
+    private boolean vecPooling = false;
+    /**
+     * If true, the dataset file is rewritten before each indirect dimension
+     * so that the vectors of that dimension each lie in one block.
+     */
+    private boolean reblocking = false;
+    private volatile DimPipeline activePipeline = null;
+    private volatile StageTiming stageTiming = new StageTiming("");
+    private final List<StageTiming> stageTimings = new ArrayList<>();
     /**
      * List of processes, one for each dimension. Used with runProcesses().
      */
@@ -1081,8 +1108,10 @@ public class Processor {
             writePt[2][0] = matrixCount;
             pt[2][0] = matrixCount;
             try {
+                long startRead = System.nanoTime();
                 matrix = new Matrix(nPlanes, nRows, writePt);
                 dataset.readMatrix(pt, dim, matrix.getMatrix());
+                stageTiming.addRead(System.nanoTime() - startRead, 1);
             } catch (IOException ex) {
                 log.warn(ex.getMessage(), ex);
             }
@@ -1126,7 +1155,9 @@ public class Processor {
             try {
                 matrix = new MatrixND(writePt, dim, matrixSizes);
                 matrix.setVSizes(vSizes);
+                long startRead = System.nanoTime();
                 dataset.readMatrixND(pt, dim, matrix);
+                stageTiming.addRead(System.nanoTime() - startRead, 1);
             } catch (IOException ex) {
                 log.warn(ex.getMessage(), ex);
             }
@@ -1201,6 +1232,7 @@ public class Processor {
     public synchronized List<Vec> getVectorsFromFile() {
         Vec temp;
         ArrayList<Vec> vectors = new ArrayList<>();
+        long startRead = System.nanoTime();
 
 // pt[][] : coordinates in data matrix
 // pt[0][0] to pt[0][1] is start/end coords for vec column
@@ -1217,7 +1249,7 @@ public class Processor {
                     break;
                 }
                 try {
-                    temp = new Vec(vectorSize, pt, dim, nvComplex);
+                    temp = vecPooling ? VecPool.get(vectorSize, pt, dim, nvComplex) : new Vec(vectorSize, pt, dim, nvComplex);
                     dataset.readVectorFromDatasetFile(pt, dim, temp);
                     if (temp.checkExtreme(1.0e16)) {
                         log.warn("extreme read");
@@ -1249,30 +1281,41 @@ public class Processor {
 
                 if (vecIndex != null) {
                     iStep++;
+                    // read each group of FIDs with one call so the NMRData can batch the reads
+                    int[] inVecs = Arrays.copyOf(vecIndex.inVecs, vectorsPerGroup);
+                    Vec[][] groupVecs = new Vec[nmrDataSets.size()][vectorsPerGroup];
+                    try {
+                        for (int iData = 0; iData < nmrDataSets.size(); iData++) {
+                            NMRData nmrData = nmrDataSets.get(iData);
+                            boolean complex = nmrData.isComplex(dim[0]);
+                            for (int j = 0; j < vectorsPerGroup; j++) {
+                                groupVecs[iData][j] = vecPooling ? VecPool.get(vectorSize, null, null, complex) : new Vec(vectorSize, complex);
+                            }
+                            nmrData.readVectors(inVecs, groupVecs[iData]);
+                        }
+                    } catch (Exception e) {
+                        setProcessorAvailableStatus(true);
+                        throw new ProcessingException(e.getMessage(), e);
+                    }
                     for (int j = 0; j < vectorsPerGroup; j++) {
-                        try {
-                            for (NMRData nmrData : nmrDataSets) {
-                                temp = new Vec(vectorSize, nmrData.isComplex(dim[0]));
-                                nmrData.readVector(vecIndex.inVecs[j], temp);
-                                if (testCorruptionMode) {
-                                    for (int[] rowSkip : nmrData.getSkipIndices()) {
-                                        if (rowSkip[0] == vecIndex.getOutVec(j)[1][0]) {
-                                            temp.rand();
-                                        }
+                        for (int iData = 0; iData < nmrDataSets.size(); iData++) {
+                            temp = groupVecs[iData][j];
+                            if (testCorruptionMode) {
+                                for (int[] rowSkip : nmrDataSets.get(iData).getSkipIndices()) {
+                                    if (rowSkip[0] == vecIndex.getOutVec(j)[1][0]) {
+                                        temp.rand();
                                     }
                                 }
-                                temp.setPt(vecIndex.outVecs[j], dim);
-                                vectors.add(temp);
                             }
-                        } catch (Exception e) {
-                            setProcessorAvailableStatus(true);
-                            throw new ProcessingException(e.getMessage(), e);
+                            temp.setPt(vecIndex.outVecs[j], dim);
+                            vectors.add(temp);
                         }
                         vecReadCount.incrementAndGet();
                     }
                 }
             }
         }
+        stageTiming.addRead(System.nanoTime() - startRead, vectors.size());
         return vectors;
     }
 
@@ -1318,12 +1361,16 @@ public class Processor {
             }
         }
         try {
-            if (useIOController) {
+            if (activePipeline != null) {
+                activePipeline.writeVector(vector);
+            } else if (useIOController) {
                 List<MatrixType> writeVectors = new ArrayList<>();
                 writeVectors.add(vector);
                 datasetWriter.addItemsToWriteList(writeVectors);
             } else {
+                long startWrite = System.nanoTime();
                 dataset.writeVector(vector);
+                stageTiming.addWrite(System.nanoTime() - startWrite, 1);
             }
         } catch (IOException ex) {
             setProcessorAvailableStatus(true);
@@ -1464,48 +1511,24 @@ public class Processor {
             runSimVecProcessor(simVecProcessor, dimProcesses);
         }
         long startTime = System.currentTimeMillis();
-        long startTimeDim, finishTimeDim;
-        double runTimeDim;
+        StageTiming runTiming = new StageTiming("run");
         clearProcessorError();
+        stageTimings.clear();
         int nDimsProcessed = 0;
-        for (ProcessOps p : dimProcesses) {
-            startTimeDim = System.currentTimeMillis();
-            p.firstProcess(!nvDataset);
-            // check if this process corresponds to dimension that should be skipped
-            if (mapToDataset(p.getDim()) == -1) {
-                log.warn("Skip dim {}", (p.getDim() + 1));
-                continue;
-            }
-            if (p.hasOperations()) {
-                mathObjectsWritten.set(0);
-                if (progressUpdater != null) {
-                    int[] dims = p.getDims();
-                    String dimString = "dim ";
-                    if (p.isDataset()) {
-                        dimString = "dataset";
-                    } else {
-                        dimString = String.valueOf(dims[0] + 1);
-                        for (int iDim = 1; iDim < dims.length; iDim++) {
-                            dimString = dimString + "," + String.valueOf(dims[iDim] + 1);
-                        }
-                    }
-                    progressUpdater.updateStatus("Process " + dimString);
-                }
-                if (p.isMatrix()) {
-                    setMatDims(p.getDims());
-                } else if (p.isDataset()) {
-                } else {
-                    setDim(p.getDim());
-                }
-                run(p);
-                nDimsProcessed = Math.max(nDimsProcessed, p.getDim() + 1);
-                nvDataset = true;
-            }
-            finishTimeDim = System.currentTimeMillis();
-            runTimeDim = (finishTimeDim - startTimeDim) / 1000.0;
+        keepPool = true;
+        try {
+            nDimsProcessed = runDimProcesses();
+        } finally {
+            keepPool = false;
+            shutdownPool();
         }
         dimProcesses.clear();
         elapsedTime = (System.currentTimeMillis() - startTime) / 1000.0;
+        runTiming.finish();
+        log.info("Processing run: elapsed {} s, allocated {} MB ({} MB/s), {} GCs ({} s)",
+                String.format("%.2f", runTiming.getElapsedTime()), String.format("%.1f", runTiming.getAllocatedMB()),
+                String.format("%.1f", runTiming.getAllocationRate()), runTiming.getGCCount(),
+                String.format("%.2f", runTiming.getGCTime()));
         if (progressUpdater != null) {
             progressUpdater.updateProgress(1.0);
             progressUpdater.updateStatus("Done in " + String.format("%.1f", elapsedTime) + "s");
@@ -1536,6 +1559,124 @@ public class Processor {
         setProcessorAvailableStatus(true);
     }
 
+    private int runDimProcesses() {
+        int nDimsProcessed = 0;
+        for (int iProcess = 0; iProcess < dimProcesses.size(); iProcess++) {
+            ProcessOps p = dimProcesses.get(iProcess);
+            p.firstProcess(!nvDataset);
+            // check if this process corresponds to dimension that should be skipped
+            if (mapToDataset(p.getDim()) == -1) {
+                log.warn("Skip dim {}", (p.getDim() + 1));
+                continue;
+            }
+            if (p.hasOperations()) {
+                mathObjectsWritten.set(0);
+                ProcessOps nextProcess = iProcess < dimProcesses.size() - 1 ? dimProcesses.get(iProcess + 1) : null;
+                if (pipelined && nvDataset && (nextProcess != null) && (mapToDataset(nextProcess.getDim()) != -1)
+                        && DimPipeline.canPipeline(dataset, p, mapToDataset(p.getDim()),
+                        nextProcess, mapToDataset(nextProcess.getDim()))) {
+                    updateProcessStatus(p, nextProcess);
+                    nextProcess.firstProcess(false);
+                    runPipelined(p, nextProcess);
+                    nDimsProcessed = Math.max(nDimsProcessed, Math.max(p.getDim(), nextProcess.getDim()) + 1);
+                    iProcess++;
+                    continue;
+                }
+                updateProcessStatus(p);
+                if (p.isMatrix()) {
+                    setMatDims(p.getDims());
+                } else if (p.isDataset()) {
+                } else {
+                    if (reblocking && nvDataset) {
+                        reblockDataset(mapToDataset(p.getDim()));
+                    }
+                    setDim(p.getDim());
+                }
+                run(p);
+                nDimsProcessed = Math.max(nDimsProcessed, p.getDim() + 1);
+                nvDataset = true;
+            }
+        }
+        return nDimsProcessed;
+    }
+
+    private void updateProcessStatus(ProcessOps... processOps) {
+        if (progressUpdater != null) {
+            StringBuilder dimString = new StringBuilder();
+            for (ProcessOps p : processOps) {
+                if (!dimString.isEmpty()) {
+                    dimString.append(",");
+                }
+                if (p.isDataset()) {
+                    dimString.append("dataset");
+                } else {
+                    int[] dims = p.getDims();
+                    dimString.append(dims[0] + 1);
+                    for (int iDim = 1; iDim < dims.length; iDim++) {
+                        dimString.append(",").append(dims[iDim] + 1);
+                    }
+                }
+            }
+            progressUpdater.updateStatus("Process " + dimString);
+        }
+    }
+
+    /**
+     * Process two consecutive indirect dimensions with a DimPipeline, so that
+     * processing of the second dimension starts on each plane as soon as the
+     * first dimension has been written for that plane.
+     *
+     * @param p1 process for the first dimension
+     * @param p2 process for the second dimension
+     */
+    private void runPipelined(ProcessOps p1, ProcessOps p2) {
+        if (processor.getProcessorError()) {
+            setProcessorAvailableStatus(true);
+            return;
+        }
+        synchronized (isRunning) {
+            isRunning = true;
+            doneWriting.set(false);
+            int dim1 = mapToDataset(p1.getDim());
+            int dim2 = mapToDataset(p2.getDim());
+            DimPipeline pipeline = new DimPipeline(this, dataset, p1, dim1, p2, dim2, maxVectorsPerProcess);
+            itemsToWrite = pipeline.getNVectors();
+            stageTiming = pipeline.getFirstTiming();
+            activePipeline = pipeline;
+            try {
+                pipeline.run(getWorkerPool(), numProcessors);
+            } catch (ProcessingException e) {
+                setProcessorError();
+                setProcessorErrorMessage(e.getMessage());
+            } finally {
+                activePipeline = null;
+                isRunning = false;
+                doneWriting.set(true);
+            }
+            stageTimings.add(pipeline.getFirstTiming());
+            stageTimings.add(pipeline.getSecondTiming());
+            log.info("{}", pipeline.getFirstTiming());
+            log.info("{}", pipeline.getSecondTiming());
+            if (!getProcessorError()) {
+                for (int i = 0; i < dataset.getNDim(); ++i) {
+                    dataset.syncPars(i);
+                }
+                dataset.syncSize(dim1);
+                dataset.syncSize(dim2);
+                dataset.writeHeader();
+            }
+            processes.clear();
+            ProcessOps.resetNumProcessesCreated();
+            p1.getOperations().clear();
+            p2.getOperations().clear();
+            if (getProcessorError()) {
+                setProcessorAvailableStatus(true);
+                closeDataset(false);
+                throw new ProcessingException(errorMessage.get());
+            }
+        }
+    }
+
     public void runSimVecProcessor(LineShapeCatalog simVecProcessor, ArrayList<ProcessOps> dimProcesses) {
         for (ProcessOps p : dimProcesses) {
             int iDim = p.getDim();
@@ -1615,6 +1756,7 @@ public class Processor {
             isRunning = true;
 
             setupPool(p);
+            stageTiming = new StageTiming(getStageName(p));
             vecGroupsRead.set(0);
             vectorsRead.set(0);
             endOfFile.set(false);
@@ -1628,8 +1770,9 @@ public class Processor {
                 datasetWriter = new MatrixTypeService(this, queueLimit, itemsToRead, itemsToWrite);
             }
 
+            ExecutorService runPool = getWorkerPool();
             for (Runnable process : processes) {
-                completedProcesses.add(pool.submit(process));
+                completedProcesses.add(runPool.submit(process));
             }
 
             for (Future future : completedProcesses) {
@@ -1662,7 +1805,12 @@ public class Processor {
                 dataset.writeHeader();
             }
             printVecReadCount();
-            pool.shutdown();
+            stageTiming.finish();
+            stageTimings.add(stageTiming);
+            log.info("{}", stageTiming);
+            if (!keepPool) {
+                shutdownPool();
+            }
             if (useIOController && !p.isDataset()) {
                 datasetWriter.shutdown();
                 datasetWriter = null;
@@ -1702,14 +1850,140 @@ public class Processor {
                     } catch (ProcessingException e) {
                         setProcessorAvailableStatus(true);
                         log.warn(e.getMessage(), e);
-                        if (!pool.isShutdown()) {
-                            pool.shutdown();
-                        }
+                        shutdownPool();
                     }
                 }
             });
         }
-        pool = Executors.newFixedThreadPool(useProcessors);
+    }
+
+    /**
+     * Get the worker pool, creating it if necessary. While runProcesses is
+     * active the same pool is used for all dimensions.
+     *
+     * @return the pool
+     */
+    private synchronized ExecutorService getWorkerPool() {
+        if ((pool == null) || pool.isShutdown() || (poolSize != numProcessors)) {
+            if ((pool != null) && !pool.isShutdown()) {
+                pool.shutdown();
+            }
+            poolSize = numProcessors;
+            pool = Executors.newFixedThreadPool(poolSize);
+        }
+        return pool;
+    }
+
+    private synchronized void shutdownPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private String getStageName(ProcessOps p) {
+        if (p.isDataset()) {
+            return "dataset";
+        }
+        int[] dims = p.getDims();
+        StringBuilder sBuilder = new StringBuilder(dims.length > 1 ? "dims " : "dim ");
+        for (int i = 0; i < dims.length; i++) {
+            if (i > 0) {
+                sBuilder.append(",");
+            }
+            sBuilder.append(dims[i] + 1);
+        }
+        return sBuilder.toString();
+    }
+
+    /**
+     * Timing of the stage that is running, or that ran most recently.
+     *
+     * @return the stage timing
+     */
+    public StageTiming getStageTiming() {
+        return stageTiming;
+    }
+
+    /**
+     * Timings of each stage of the most recent call to runProcesses.
+     *
+     * @return list of stage timings
+     */
+    public List<StageTiming> getStageTimings() {
+        return new ArrayList<>(stageTimings);
+    }
+
+    /**
+     * Set whether consecutive indirect dimensions are processed as a
+     * pipeline. In pipelined mode each plane of the second dimension is
+     * processed as soon as the first dimension has been written for that plane,
+     * instead of after the whole first dimension is finished.
+     *
+     * @param state true to use pipelined processing
+     */
+    public void setPipelined(boolean state) {
+        pipelined = state;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Set whether vectors read during processing are taken from a per-thread
+     * VecPool and recycled after they are written, which reduces allocation
+     * and garbage collection when processing large datasets.
+     *
+     * @param state true to pool vectors
+     */
+    public void setVecPooling(boolean state) {
+        vecPooling = state;
+    }
+
+    public boolean isVecPooling() {
+        return vecPooling;
+    }
+
+    /**
+     * Set whether the dataset file is rewritten before each indirect dimension
+     * is processed, so that every vector of that dimension lies in a single
+     * block and is read and written with one block access. The file is
+     * rewritten a block at a time, so this works for datasets much larger
+     * than memory.
+     *
+     * @param state true to reblock the dataset before each dimension
+     */
+    public void setReblocking(boolean state) {
+        reblocking = state;
+    }
+
+    public boolean isReblocking() {
+        return reblocking;
+    }
+
+    private void reblockDataset(int iDim) {
+        if ((dataset == null) || (iDim < 0)) {
+            return;
+        }
+        try {
+            dataset.reblock(iDim);
+        } catch (DatasetException e) {
+            throw new ProcessingException(e.getMessage());
+        }
+    }
+
+    /**
+     * Whether ProcessOps should recycle its vectors after the write operation.
+     * This is only safe when vectors are written synchronously by the thread
+     * that read them. With the IOController the MatrixTypeService recycles the
+     * vectors after writing them, and a DimPipeline keeps the vectors it is
+     * given.
+     *
+     * @return true if vectors should be recycled after processing
+     */
+    public boolean recycleAfterWrite() {
+        return vecPooling && !useIOController && (activePipeline == null);
     }
 
     public ArrayList<Runnable> getProcesses() {
@@ -0,0 +1,192 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.processing;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the time spent reading, processing and writing during one stage
+ * (usually one dimension) of a processing run. Read, process and write times
+ * are summed over all threads, so they can exceed the elapsed wall time of the
+ * stage. The memory allocated and the garbage collections during the stage are
+ * also recorded. These are measured for the whole JVM, so they include any
+ * other activity while the stage runs.
+ */
+public class StageTiming {
+    private static final double NANOS_PER_SECOND = 1.0e9;
+
+    private final String name;
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder processNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder nRead = new LongAdder();
+    private final LongAdder nWritten = new LongAdder();
+    private final long startTime;
+    private volatile long endTime = 0;
+    private final long startAllocated;
+    private final long startGCCount;
+    private final long startGCTime;
+    private volatile long endAllocated = -1;
+    private volatile long endGCCount = 0;
+    private volatile long endGCTime = 0;
+
+    public StageTiming(String name) {
+        this.name = name;
+        startTime = System.nanoTime();
+        startAllocated = getAllocatedBytes();
+        long[] gcStats = getGCStats();
+        startGCCount = gcStats[0];
+        startGCTime = gcStats[1];
+    }
+
+    /**
+     * Total bytes allocated by all live threads, or -1 if the JVM doesn't
+     * support measuring allocation.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean sunBean
+                && sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+            return sunBean.getTotalThreadAllocatedMemory();
+        }
+        return -1;
+    }
+
+    /**
+     * Number of garbage collections and total collection time (ms) summed over
+     * all collectors.
+     */
+    private static long[] getGCStats() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gcBean.getCollectionCount());
+            time += Math.max(0, gcBean.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addRead(long nanos, int nItems) {
+        readNanos.add(nanos);
+        nRead.add(nItems);
+    }
+
+    public void addProcess(long nanos) {
+        processNanos.add(nanos);
+    }
+
+    public void addWrite(long nanos, int nItems) {
+        writeNanos.add(nanos);
+        nWritten.add(nItems);
+    }
+
+    public void finish() {
+        endTime = System.nanoTime();
+        long allocated = getAllocatedBytes();
+        endAllocated = (allocated < 0) || (startAllocated < 0) ? -1 : allocated;
+        long[] gcStats = getGCStats();
+        endGCCount = gcStats[0];
+        endGCTime = gcStats[1];
+    }
+
+    public double getReadTime() {
+        return readNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    public double getProcessTime() {
+        return processNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    public double getWriteTime() {
+        return writeNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    public long getItemsRead() {
+        return nRead.sum();
+    }
+
+    public long getItemsWritten() {
+        return nWritten.sum();
+    }
+
+    /**
+     * Elapsed wall time of the stage, up to now if the stage has not finished.
+     *
+     * @return the time in seconds
+     */
+    public double getElapsedTime() {
+        long end = endTime == 0 ? System.nanoTime() : endTime;
+        return (end - startTime) / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Megabytes allocated during the stage. Only available after the stage
+     * has finished.
+     *
+     * @return the allocation in MB, or -1 if it couldn't be measured
+     */
+    public double getAllocatedMB() {
+        return endAllocated < 0 ? -1.0 : (endAllocated - startAllocated) / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Allocation rate during the stage. Only available after the stage has
+     * finished.
+     *
+     * @return the rate in MB/s, or -1 if it couldn't be measured
+     */
+    public double getAllocationRate() {
+        double elapsed = getElapsedTime();
+        return (endAllocated < 0) || (elapsed <= 0.0) ? -1.0 : getAllocatedMB() / elapsed;
+    }
+
+    public long getGCCount() {
+        return endTime == 0 ? 0 : endGCCount - startGCCount;
+    }
+
+    /**
+     * Total garbage collection time during the stage. Only available after the
+     * stage has finished.
+     *
+     * @return the time in seconds
+     */
+    public double getGCTime() {
+        return endTime == 0 ? 0.0 : (endGCTime - startGCTime) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        String result = String.format("%s: elapsed %.2fs read %.2fs (%d) process %.2fs write %.2fs (%d)",
+                name, getElapsedTime(), getReadTime(), getItemsRead(), getProcessTime(),
+                getWriteTime(), getItemsWritten());
+        if (endTime != 0) {
+            if (endAllocated >= 0) {
+                result += String.format(" alloc %.1fMB (%.1fMB/s)", getAllocatedMB(), getAllocationRate());
+            }
+            result += String.format(" gc %d (%.2fs)", getGCCount(), getGCTime());
+        }
+        return result;
+    }
+}
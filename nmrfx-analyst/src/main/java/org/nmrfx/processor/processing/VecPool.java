@@ -0,0 +1,105 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.processing;
+
+import org.nmrfx.processor.math.Vec;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-thread pool of Vec objects used by the Processor when reading vectors.
+ * Vectors are keyed by the size and complex mode they were requested with.
+ * A vector is only returned to the pool of the thread that recycles it, so
+ * vectors should be recycled by the thread that reads them (the
+ * MatrixTypeService thread, or the worker thread when writes are synchronous).
+ */
+public class VecPool {
+    private static final int MAX_POOLED = 256;
+    private static final ThreadLocal<Map<Long, ArrayDeque<Vec>>> POOLS = ThreadLocal.withInitial(HashMap::new);
+
+    private VecPool() {
+    }
+
+    private static long getKey(int size, boolean complex) {
+        return ((long) size << 1) | (complex ? 1 : 0);
+    }
+
+    /**
+     * Get a vector from the current thread's pool, or create a new one if the
+     * pool is empty. The vector is in the same state as one created with
+     * new Vec(size, pt, dim, complex).
+     *
+     * @param size    size of the vector
+     * @param pt      dataset location, may be null
+     * @param dim     dataset dimensions, may be null
+     * @param complex true if the vector is complex
+     * @return the vector
+     */
+    public static Vec get(int size, int[][] pt, int[] dim, boolean complex) {
+        long key = getKey(size, complex);
+        ArrayDeque<Vec> pool = POOLS.get().get(key);
+        Vec vec = pool == null ? null : pool.pollLast();
+        if (vec == null) {
+            vec = new Vec(size, pt, dim, complex);
+        } else {
+            vec.reset(size, pt, dim, complex);
+        }
+        vec.setPoolKey(key);
+        return vec;
+    }
+
+    /**
+     * Return a vector to the current thread's pool. Vectors that were not
+     * allocated with get are ignored. The caller must not use the vector
+     * after recycling it.
+     *
+     * @param vec the vector to recycle
+     */
+    public static void recycle(Vec vec) {
+        long key = vec.getPoolKey();
+        if (key < 0) {
+            return;
+        }
+        vec.setPoolKey(-1);
+        ArrayDeque<Vec> pool = POOLS.get().computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (pool.size() < MAX_POOLED) {
+            pool.addLast(vec);
+        }
+    }
+
+    /**
+     * Return each of a list of vectors to the current thread's pool.
+     *
+     * @param vecs the vectors to recycle
+     */
+    public static void recycle(List<Vec> vecs) {
+        for (Vec vec : vecs) {
+            recycle(vec);
+        }
+    }
+
+    /**
+     * Remove all vectors from the current thread's pool.
+     */
+    public static void clear() {
+        POOLS.get().clear();
+    }
+}
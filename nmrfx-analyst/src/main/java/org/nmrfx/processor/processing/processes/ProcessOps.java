@@ -26,6 +26,8 @@ import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.operations.*;
 import org.nmrfx.processor.processing.ProcessingException;
 import org.nmrfx.processor.processing.Processor;
+import org.nmrfx.processor.processing.StageTiming;
+import org.nmrfx.processor.processing.VecPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -259,14 +261,7 @@ public class ProcessOps implements Callable<Object> {
         Processor processor = Processor.getProcessor();
         vectors = new ArrayList<>();
         addTDCombine();
-        // fixme  should we have don't write flag so write op doesn't get added
-        if (!hasOperation(WriteVector.class)) {
-            if (isUndo) {
-                operations.add(new WriteVector(false));
-            } else {
-                operations.add(new WriteVector(true));
-            }
-        }
+        addWriteOperation();
         while (true) {
             if (processor.getProcessorError()) {
                 return this;
@@ -286,12 +281,17 @@ public class ProcessOps implements Callable<Object> {
                 break;
             }
 
+            StageTiming timing = processor.getStageTiming();
             for (Operation op : operations) {
                 if (processor.getProcessorError()) {
                     return this;
                 }
                 try {
+                    long start = System.nanoTime();
                     op.eval(vectors);
+                    if (!(op instanceof WriteVector)) {
+                        timing.addProcess(System.nanoTime() - start);
+                    }
                 } catch (Exception e) {
                     if (!processor.setProcessorError()) {
                         processor.setProcessorErrorMessage(e.getMessage());
@@ -304,6 +304,9 @@ public class ProcessOps implements Callable<Object> {
             }
 
             vectorsProcessed += vectors.size();
+            if (processor.recycleAfterWrite()) {
+                VecPool.recycle(vectors);
+            }
             vectors.clear();
 
         }
@@ -314,6 +317,46 @@ public class ProcessOps implements Callable<Object> {
         return vectors;
     }
 
+    /**
+     * Add a WriteVector operation at the end of the operation list if the
+     * process doesn't already have one.
+     */
+    public void addWriteOperation() {
+        // fixme  should we have don't write flag so write op doesn't get added
+        if (!hasOperation(WriteVector.class)) {
+            if (isUndo) {
+                operations.add(new WriteVector(false));
+            } else {
+                operations.add(new WriteVector(true));
+            }
+        }
+    }
+
+    /**
+     * Apply the operations of this process to vectors supplied by the caller,
+     * rather than vectors obtained from the Processor.
+     *
+     * @param vecs   the vectors to process
+     * @param timing accumulates the time spent in non-write operations
+     * @throws ProcessingException if an operation fails
+     */
+    public void eval(List<Vec> vecs, StageTiming timing) throws ProcessingException {
+        for (Operation op : operations) {
+            try {
+                long start = System.nanoTime();
+                op.eval(vecs);
+                if (!(op instanceof WriteVector)) {
+                    timing.addProcess(System.nanoTime() - start);
+                }
+            } catch (ProcessingException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ProcessingException(e.getMessage(), e);
+            }
+        }
+        vectorsProcessed += vecs.size();
+    }
+
     /**
      * Execute all of the matrix operations in the pool.
      */
@@ -343,12 +386,17 @@ public class ProcessOps implements Callable<Object> {
                 break;
             }
 
+            StageTiming timing = processor.getStageTiming();
             for (Operation op : operations) {
                 if (processor.getProcessorError()) {
                     return this;
                 }
                 try {
+                    long start = System.nanoTime();
                     ((MatrixOperation) op).evalMatrix(matrix);
+                    if (!(op instanceof WriteMatrix)) {
+                        timing.addProcess(System.nanoTime() - start);
+                    }
                 } catch (Exception e) {
                     if (!processor.setProcessorError()) {
                         processor.setProcessorErrorMessage(e.getMessage());
@@ -120,12 +120,12 @@ class NMRFxDatasetScripting:
         values = [f(v) for v in values]
         d.setValues(iDim, values)
 
-    def pick(self, dataset, listName=None, level=1.0, mode="new", region="box",pos=True, neg=False, **kwargs):
+    def pick(self, dataset, listName=None, level=1.0, mode="new", region="box",pos=True, neg=False, tiled=False, **kwargs):
         if isinstance(dataset,basestring):
             dataset = self.get(dataset)
         if listName == None:
            listName = PeakList.getNameForDataset(dataset.getName())
-        peakPickPar = PeakPickParameters(dataset, listName).mode(mode).region(region).pos(pos).neg(neg).level(level)
+        peakPickPar = PeakPickParameters(dataset, listName).mode(mode).region(region).pos(pos).neg(neg).level(level).tiled(tiled)
         peakPickPar.calcRange()
         for dim in kwargs:
             (lim1,lim2) = kwargs[dim]
@@ -3748,7 +3748,7 @@ def status(process=None):
     process = process or getCurrentProcess()
     return process.getStatus()
 
-def procOpts(nprocess=None,nvectors=None):
+def procOpts(nprocess=None,nvectors=None,pipelined=None,pooled=None,reblocked=None):
     ''' Set and get various options in the Processor
     Parameters
     ---------
@@ -3756,12 +3756,24 @@ def procOpts(nprocess=None,nvectors=None):
         The number of processes to run simultaneously.  Defaults to number of cpu cores (x2 with hyper-threaded)
     nvectors : int
         The number of vectors each process should grab at one time.
+    pipelined : bool
+        If True, consecutive indirect dimensions of 3D and higher datasets are processed plane by plane without waiting for the first dimension to finish.
+    pooled : bool
+        If True, vectors read from the FID or dataset are reused from a pool after they are written, instead of being allocated for each read.
+    reblocked : bool
+        If True, the dataset file is rewritten before each indirect dimension so that each vector of that dimension lies in a single block.
     '''
     if (nprocess != None):
         processor.setNumProcessors(nprocess)
     if (nvectors != None):
         processor.setVectorsPerProcess(nvectors)
-    return {'nprocess':processor.getNumProcessors(),'nvectors':processor.getVectorsPerProcess()}
+    if (pipelined != None):
+        processor.setPipelined(pipelined)
+    if (pooled != None):
+        processor.setVecPooling(pooled)
+    if (reblocked != None):
+        processor.setReblocking(reblocked)
+    return {'nprocess':processor.getNumProcessors(),'nvectors':processor.getVectorsPerProcess(),'pipelined':processor.isPipelined(),'pooled':processor.isVecPooling(),'reblocked':processor.isReblocking()}
 
 def writeVec(vector,fileName):
     f = open(fileName,'w')
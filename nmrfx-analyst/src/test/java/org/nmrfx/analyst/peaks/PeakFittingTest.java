@@ -0,0 +1,151 @@
+package org.nmrfx.analyst.peaks;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.datasets.DatasetRegion;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.peaks.PeakFitParameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PeakFittingTest {
+
+    // point, half width in points, amplitude
+    double[][] signals = {
+            {500.0, 3.0, 10.0},
+            {509.0, 4.0, 6.0},
+            {1000.0, 3.0, 8.0},
+            {1008.0, 3.0, 8.0},
+            {1017.0, 2.5, 5.0},
+            {1500.0, 4.0, 7.0}
+    };
+    // first and last point of the regions, each holding a cluster of overlapping peaks
+    int[][] regionPoints = {{470, 540}, {970, 1045}, {1470, 1530}};
+    List<String> listNames = new ArrayList<>();
+
+    Dataset makeDataset() throws Exception {
+        int[] sizes = {2048};
+        Dataset dataset = new Dataset("fittest", null, sizes, false);
+        dataset.setSf(0, 600.0);
+        dataset.setSw(0, 6000.0);
+        dataset.setRefValue(0, 5.0);
+        dataset.setFreqDomain(0, true);
+        dataset.setLabel(0, "1H");
+        int[] pt = new int[1];
+        for (pt[0] = 0; pt[0] < sizes[0]; pt[0]++) {
+            double value = 0.0;
+            for (double[] signal : signals) {
+                double d = (pt[0] - signal[0]) / signal[1];
+                value += signal[2] / (1.0 + d * d);
+            }
+            dataset.writePoint(pt, value);
+        }
+        for (int[] points : regionPoints) {
+            dataset.addRegion(new DatasetRegion(dataset.pointToPPM(0, points[0]), dataset.pointToPPM(0, points[1])));
+        }
+        return dataset;
+    }
+
+    /**
+     * Make a peak for each signal, starting away from the signal's position,
+     * width and amplitude.
+     */
+    PeakList makePeakList(Dataset dataset, String listName) {
+        PeakList peakList = new PeakList(listName, 1);
+        listNames.add(listName);
+        peakList.getSpectralDim(0).setDimName("1H");
+        peakList.getSpectralDim(0).setSf(600.0);
+        peakList.getSpectralDim(0).setSw(6000.0);
+        for (double[] signal : signals) {
+            Peak peak = new Peak(peakList, 1);
+            peakList.addPeak(peak);
+            peak.setStatus(1);
+            double ppm = dataset.pointToPPM(0, signal[0] + 1.0);
+            double width = Math.abs(dataset.pointToPPM(0, signal[0]) - dataset.pointToPPM(0, signal[0] + 1.2 * signal[1]));
+            peak.getPeakDim(0).setChemShift((float) ppm);
+            peak.getPeakDim(0).setLineWidthValue((float) width);
+            peak.setIntensity((float) (0.8 * signal[2]));
+        }
+        return peakList;
+    }
+
+    /**
+     * Fit the peaks one after another, as fitLinkedPeaks did before clusters
+     * were fit in parallel, optionally reading each region ahead of its fits.
+     */
+    void fitSerial(Dataset dataset, PeakList peakList, boolean prefetch) {
+        PeakFitting peakFitting = new PeakFitting(dataset);
+        PeakFitParameters fitParameters = new PeakFitParameters();
+        List<DatasetRegion> regions = dataset.getReadOnlyRegions();
+        for (Peak peak : peakList.peaks()) {
+            if (prefetch) {
+                DatasetRegion region = Analyzer.getRegion(regions, 0, peak.peakDims[0].getChemShift()).orElseThrow();
+                Map<Peak, double[]> peakBounds = new HashMap<>();
+                peakBounds.put(peak, Analyzer.getBounds(region, 0));
+                peakFitting.prefetch(List.of(peak), peakBounds);
+                Assert.assertNotNull(peakFitting.prefetched);
+            }
+            peakFitting.fitLinkedPeak(peak, fitParameters);
+        }
+    }
+
+    List<Peak> fitParallel(Dataset dataset, PeakList peakList, boolean prefetch) {
+        PeakFitting peakFitting = new PeakFitting(dataset);
+        return peakFitting.fitLinkedPeaks(peakList, new PeakFitParameters(), prefetch);
+    }
+
+    void assertSameFits(PeakList expected, PeakList actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Peak expectedPeak = expected.getPeak(i);
+            Peak actualPeak = actual.getPeak(i);
+            Assert.assertEquals(expectedPeak.getPeakDim(0).getChemShiftValue(),
+                    actualPeak.getPeakDim(0).getChemShiftValue(), 1.0e-6);
+            Assert.assertEquals(expectedPeak.getPeakDim(0).getLineWidthValue(),
+                    actualPeak.getPeakDim(0).getLineWidthValue(), 1.0e-6);
+            Assert.assertEquals(expectedPeak.getIntensity(), actualPeak.getIntensity(),
+                    1.0e-5 * Math.abs(expectedPeak.getIntensity()));
+        }
+    }
+
+    @After
+    public void removeLists() {
+        for (String listName : listNames) {
+            PeakList.remove(listName);
+        }
+        listNames.clear();
+    }
+
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        Dataset dataset = makeDataset();
+        PeakList serial = makePeakList(dataset, "serial");
+        fitSerial(dataset, serial, false);
+        PeakList start = makePeakList(dataset, "start");
+        boolean moved = false;
+        for (int i = 0; i < serial.size(); i++) {
+            moved |= Math.abs(serial.getPeak(i).getPeakDim(0).getChemShiftValue()
+                    - start.getPeak(i).getPeakDim(0).getChemShiftValue()) > 1.0e-4;
+        }
+        Assert.assertTrue(moved);
+
+        PeakList serialPrefetched = makePeakList(dataset, "serialPrefetched");
+        fitSerial(dataset, serialPrefetched, true);
+        assertSameFits(serial, serialPrefetched);
+
+        PeakList parallel = makePeakList(dataset, "parallel");
+        List<Peak> fitPeaks = fitParallel(dataset, parallel, false);
+        Assert.assertEquals(signals.length, fitPeaks.size());
+        assertSameFits(serial, parallel);
+
+        PeakList parallelPrefetched = makePeakList(dataset, "parallelPrefetched");
+        fitParallel(dataset, parallelPrefetched, true);
+        assertSameFits(serial, parallelPrefetched);
+    }
+}
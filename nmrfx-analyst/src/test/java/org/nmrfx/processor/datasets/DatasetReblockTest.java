@@ -0,0 +1,140 @@
+package org.nmrfx.processor.datasets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that rewriting a dataset file with a new layout, or with a new size,
+ * keeps every value, and that the rewritten file can be opened again.
+ */
+public class DatasetReblockTest {
+
+    static final int[] SIZES = {128, 64, 32};
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    boolean saveUseCacheFile;
+
+    @Before
+    public void saveCacheMode() {
+        saveUseCacheFile = Dataset.isUseCacheFile();
+    }
+
+    @After
+    public void restoreCacheMode() {
+        Dataset.useCacheFile(saveUseCacheFile);
+    }
+
+    static double value(int[] pt) {
+        return 0.5 * pt[0] - 3.0 * pt[1] + 7.0 * pt[2] + ((pt[0] % 3) == 0 ? -1.25 : 2.5);
+    }
+
+    Dataset createDataset(String name, boolean cacheFile) throws IOException, DatasetException {
+        Dataset.useCacheFile(cacheFile);
+        File file = new File(tmpFolder.getRoot(), name);
+        Dataset dataset = Dataset.createDataset(file.toString(), file.getName(), name, SIZES, false, true);
+        int[] pt = new int[3];
+        for (pt[2] = 0; pt[2] < SIZES[2]; pt[2]++) {
+            for (pt[1] = 0; pt[1] < SIZES[1]; pt[1]++) {
+                for (pt[0] = 0; pt[0] < SIZES[0]; pt[0]++) {
+                    dataset.writePoint(pt, value(pt));
+                }
+            }
+        }
+        return dataset;
+    }
+
+    /**
+     * Compare every point of the dataset with the written values. Points
+     * beyond the original sizes must be zero.
+     */
+    static void checkValues(Dataset dataset, int[] sizes) throws IOException {
+        int[] pt = new int[3];
+        for (pt[2] = 0; pt[2] < sizes[2]; pt[2]++) {
+            for (pt[1] = 0; pt[1] < sizes[1]; pt[1]++) {
+                for (pt[0] = 0; pt[0] < sizes[0]; pt[0]++) {
+                    boolean inside = (pt[0] < SIZES[0]) && (pt[1] < SIZES[1]) && (pt[2] < SIZES[2]);
+                    double expected = inside ? value(pt) : 0.0;
+                    assertEquals(expected, dataset.readPointRaw(pt), 1.0e-5);
+                }
+            }
+        }
+    }
+
+    static void checkReopened(File file, int[] sizes) throws IOException, DatasetException {
+        Dataset dataset = new Dataset(file.toString(), file.getName(), false, Dataset.isUseCacheFile(), false);
+        try {
+            for (int i = 0; i < sizes.length; i++) {
+                assertEquals(sizes[i], dataset.getSizeTotal(i));
+            }
+            checkValues(dataset, sizes);
+        } finally {
+            dataset.close();
+        }
+    }
+
+    void checkReblock(boolean cacheFile) throws IOException, DatasetException {
+        Dataset dataset = createDataset("reblock.nv", cacheFile);
+        File file = dataset.getFile();
+        try {
+            assertTrue(dataset.getLayout().getNBlocks(1) > 1);
+            dataset.reblock(1);
+            assertEquals(1, dataset.getLayout().getNBlocks(1));
+            assertEquals(file, dataset.getFile());
+            assertTrue(file.exists());
+            assertTrue(!new File(file + ".tmp").exists());
+            checkValues(dataset, SIZES);
+            dataset.reblock(2);
+            assertEquals(1, dataset.getLayout().getNBlocks(2));
+            checkValues(dataset, SIZES);
+        } finally {
+            dataset.close();
+        }
+        checkReopened(file, SIZES);
+    }
+
+    void checkResize(boolean cacheFile) throws IOException, DatasetException {
+        Dataset dataset = createDataset("resize.nv", cacheFile);
+        File file = dataset.getFile();
+        int[] newSizes = {SIZES[0], SIZES[1] + 16, SIZES[2]};
+        try {
+            dataset.resizeDim(1, newSizes[1]);
+            assertEquals(newSizes[1], dataset.getSizeTotal(1));
+            assertTrue(!new File(file + ".tmp").exists());
+            checkValues(dataset, newSizes);
+        } finally {
+            dataset.close();
+        }
+        checkReopened(file, newSizes);
+    }
+
+    @Test
+    public void testReblockSubMatrixFile() throws IOException, DatasetException {
+        checkReblock(true);
+    }
+
+    @Test
+    public void testReblockMappedFile() throws IOException, DatasetException {
+        checkReblock(false);
+    }
+
+    @Test
+    public void testResizeSubMatrixFile() throws IOException, DatasetException {
+        checkResize(true);
+    }
+
+    @Test
+    public void testResizeMappedFile() throws IOException, DatasetException {
+        checkResize(false);
+    }
+}
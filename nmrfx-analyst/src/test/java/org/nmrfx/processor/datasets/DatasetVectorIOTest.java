@@ -0,0 +1,206 @@
+package org.nmrfx.processor.datasets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.datasets.DatasetLayout;
+import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.processor.math.Vec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that reading and writing whole vectors gives the same values as
+ * reading and writing the points one at a time, with the dataset scale
+ * applied and real/imaginary values picked by their index along the
+ * dimension.
+ */
+public class DatasetVectorIOTest {
+
+    static final int[] SIZES = {64, 8};
+    static final double SCALE = 2.5;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    boolean saveUseCacheFile;
+
+    @Before
+    public void saveCacheMode() {
+        saveUseCacheFile = Dataset.isUseCacheFile();
+    }
+
+    @After
+    public void restoreCacheMode() {
+        Dataset.useCacheFile(saveUseCacheFile);
+    }
+
+    static double value(int i, int j) {
+        return 0.5 * (i + 1) - 3.0 * j + ((i % 3) == 0 ? -7.25 : 1.5);
+    }
+
+    void fill(Dataset dataset) throws IOException {
+        int[] pt = new int[2];
+        for (pt[1] = 0; pt[1] < SIZES[1]; pt[1]++) {
+            for (pt[0] = 0; pt[0] < SIZES[0]; pt[0]++) {
+                dataset.writePoint(pt, value(pt[0], pt[1]));
+            }
+        }
+    }
+
+    /**
+     * Read the vector from first to last along the first dimension of the
+     * specified row, both as a vector and point by point with readPointRaw.
+     */
+    void checkVector(Dataset dataset, int first, int last, int row) throws IOException {
+        boolean complex = dataset.getComplex(0);
+        int n = last - first + 1;
+        int nPoints = complex ? ((first % 2) + n) / 2 : n;
+        Vec vec = new Vec(nPoints, complex);
+        dataset.readVectorFromDatasetFile(new int[][]{{first, last}, {row, row}}, new int[]{0, 1}, vec);
+        int[] point = {0, row};
+        int j = 0;
+        double real = 0.0;
+        for (int i = first; i <= last; i++) {
+            point[0] = i;
+            double pointValue = dataset.readPointRaw(point);
+            if (!complex) {
+                assertEquals(pointValue, vec.getReal(j++), 1.0e-6);
+            } else if ((i % 2) != 0) {
+                assertEquals(real, vec.getReal(j), 1.0e-6);
+                assertEquals(pointValue, vec.getImag(j), 1.0e-6);
+                j++;
+            } else {
+                real = pointValue;
+            }
+        }
+        assertEquals(nPoints, j);
+    }
+
+    void checkDataset(Dataset dataset) throws IOException {
+        dataset.setScale(SCALE);
+        fill(dataset);
+        int[] point = {9, 3};
+        assertEquals(value(9, 3), dataset.readPointRaw(point), 1.0e-5);
+        dataset.setComplex(0, true);
+        checkVector(dataset, 0, SIZES[0] - 1, 2);
+        checkVector(dataset, 4, 37, 3);
+        checkVector(dataset, 5, 37, 5);
+        checkVector(dataset, 5, 36, 7);
+        dataset.setComplex(0, false);
+        checkVector(dataset, 0, SIZES[0] - 1, 1);
+        checkVector(dataset, 5, 36, 6);
+    }
+
+    @Test
+    public void testMemoryFile() throws IOException, DatasetException {
+        Dataset dataset = new Dataset("vecio", null, SIZES, false);
+        checkDataset(dataset);
+    }
+
+    @Test
+    public void testSubMatrixFile() throws IOException, DatasetException {
+        Dataset.useCacheFile(true);
+        File file = new File(tmpFolder.getRoot(), "vecio.nv");
+        Dataset dataset = Dataset.createDataset(file.toString(), file.getName(), "vecio", SIZES, false, true);
+        try {
+            checkDataset(dataset);
+        } finally {
+            dataset.close();
+        }
+    }
+
+    /**
+     * Read odd-start complex vectors directly from the storage, and write one
+     * back to another row, comparing against the stored floats.
+     */
+    void checkStorage(DatasetStorageInterface storage) throws IOException {
+        for (int j = 0; j < SIZES[1]; j++) {
+            for (int i = 0; i < SIZES[0]; i++) {
+                storage.setFloat((float) value(i, j), i, j);
+            }
+        }
+        int first = 5;
+        int row = 3;
+        // the last point is a real value without its imaginary partner so is not read
+        int last = 36;
+        Vec vec = new Vec((1 + last - first + 1) / 2, true);
+        storage.readVector(first, last, new int[]{0, row}, 0, SCALE, vec);
+        assertEquals(0.0, vec.getReal(0), 1.0e-6);
+        assertEquals(storage.getFloat(first, row) / SCALE, vec.getImag(0), 1.0e-6);
+        int j = 1;
+        for (int i = first + 1; i < last; i += 2, j++) {
+            assertEquals(storage.getFloat(i, row) / SCALE, vec.getReal(j), 1.0e-6);
+            assertEquals(storage.getFloat(i + 1, row) / SCALE, vec.getImag(j), 1.0e-6);
+        }
+        assertEquals(vec.getSize(), j);
+
+        last = 37;
+        vec = new Vec((1 + last - first + 1) / 2, true);
+        storage.readVector(first, last, new int[]{0, row}, 0, SCALE, vec);
+        int otherRow = 6;
+        storage.writeVector(first, last, new int[]{0, otherRow}, 0, SCALE, vec);
+        for (int i = first; i <= last; i++) {
+            assertEquals(storage.getFloat(i, row), storage.getFloat(i, otherRow), 1.0e-5);
+        }
+        assertEquals((float) value(first - 1, otherRow), storage.getFloat(first - 1, otherRow), 1.0e-6);
+        assertEquals((float) value(last + 1, otherRow), storage.getFloat(last + 1, otherRow), 1.0e-6);
+    }
+
+    RandomAccessFile newRAFile(String name, DatasetLayout layout) throws IOException {
+        RandomAccessFile raFile = new RandomAccessFile(tmpFolder.newFile(name), "rw");
+        raFile.setLength(layout.getFileHeaderSize() + layout.getNDataBytes());
+        return raFile;
+    }
+
+    @Test
+    public void testMemoryFileStorage() throws IOException, DatasetException {
+        Dataset dataset = new Dataset("vecio", null, SIZES, false);
+        checkStorage(new MemoryFile(dataset, DatasetLayout.createFullMatrix(0, SIZES), true));
+    }
+
+    @Test
+    public void testMappedMatrixFileStorage() throws IOException, DatasetException {
+        Dataset dataset = new Dataset("vecio", null, SIZES, false);
+        DatasetLayout layout = DatasetLayout.createFullMatrix(0, SIZES);
+        RandomAccessFile raFile = newRAFile("mapped.nv", layout);
+        MappedMatrixFile storage = new MappedMatrixFile(dataset, null, layout, raFile, true);
+        try {
+            checkStorage(storage);
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void testMappedSubMatrixFileStorage() throws IOException, DatasetException {
+        Dataset dataset = new Dataset("vecio", null, SIZES, false);
+        DatasetLayout layout = DatasetLayout.createBlockMatrix(0, SIZES);
+        RandomAccessFile raFile = newRAFile("mappedsub.nv", layout);
+        MappedSubMatrixFile storage = new MappedSubMatrixFile(dataset, null, layout, raFile, true);
+        try {
+            checkStorage(storage);
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void testBigMappedMatrixFileStorage() throws IOException, DatasetException {
+        Dataset dataset = new Dataset("vecio", null, SIZES, false);
+        DatasetLayout layout = DatasetLayout.createFullMatrix(0, SIZES);
+        RandomAccessFile raFile = newRAFile("bigmapped.nv", layout);
+        BigMappedMatrixFile storage = new BigMappedMatrixFile(dataset, null, layout, raFile, true);
+        try {
+            checkStorage(storage);
+        } finally {
+            storage.close();
+        }
+    }
+}
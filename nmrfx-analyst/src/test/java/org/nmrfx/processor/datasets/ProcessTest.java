@@ -4,6 +4,7 @@ import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.nmrfx.processor.processing.Processor;
 import org.nmrfx.utils.FormatUtils;
 import org.python.util.PythonInterpreter;
 
@@ -173,6 +174,54 @@ public class ProcessTest {
         assertArrayEquals(ARRAYED_RESULT, result);
     }
 
+    @Test
+    public void test_ubiq_hnco_pipelined() throws IOException {
+        File fidFile = Path.of(fidHome, "agilent", "hnco3d.fid").toFile();
+        assumeFalse(ERR_MSG + fidFile, testFilesMissing(fidFile));
+        executeScript("ubiq_hnco");
+        try {
+            executeScript("ubiq_hnco_pipelined");
+        } finally {
+            Processor.getProcessor().setPipelined(false);
+        }
+        File serialFile = Path.of(tmpHome, "tst_ubiq_hnco.nv").toFile();
+        File pipelinedFile = Path.of(tmpHome, "tst_ubiq_hnco_pipelined.nv").toFile();
+        long[] result = DatasetCompare.compareDetailed(serialFile, pipelinedFile);
+        assertArrayEquals(ARRAYED_RESULT, result);
+    }
+
+    @Test
+    public void test_ubiq_hnco_reblocked() throws IOException {
+        File fidFile = Path.of(fidHome, "agilent", "hnco3d.fid").toFile();
+        assumeFalse(ERR_MSG + fidFile, testFilesMissing(fidFile));
+        executeScript("ubiq_hnco");
+        try {
+            executeScript("ubiq_hnco_reblocked");
+        } finally {
+            Processor.getProcessor().setReblocking(false);
+        }
+        File serialFile = Path.of(tmpHome, "tst_ubiq_hnco.nv").toFile();
+        File reblockedFile = Path.of(tmpHome, "tst_ubiq_hnco_reblocked.nv").toFile();
+        // the reblocked file has a different block layout, so compare the values rather than the bytes
+        Dataset serial = new Dataset(serialFile.toString(), serialFile.getName(), false, false, false);
+        Dataset reblocked = new Dataset(reblockedFile.toString(), reblockedFile.getName(), false, false, false);
+        try {
+            int nDim = serial.getNDim();
+            assertEquals(nDim, reblocked.getNDim());
+            int[] sizes = new int[nDim];
+            for (int i = 0; i < nDim; i++) {
+                sizes[i] = serial.getSizeTotal(i);
+                assertEquals(sizes[i], reblocked.getSizeTotal(i));
+            }
+            for (int[] pt : new DimCounter(sizes)) {
+                assertEquals(serial.readPointRaw(pt), reblocked.readPointRaw(pt), 0.0);
+            }
+        } finally {
+            serial.close();
+            reblocked.close();
+        }
+    }
+
     @Test
     public void test_ubiq_hnco_nesta_extend() throws IOException {
         long[] result = runAndCompareDetailed("ubiq_hnco_nesta_extend");
@@ -10,6 +10,9 @@ import org.apache.commons.math3.linear.RealVector;
 import org.junit.Assert;
 import org.junit.Test;
 import org.nmrfx.peaks.CouplingItem;
+import org.nmrfx.processor.optimization.Resampler;
+
+import java.util.concurrent.ForkJoinPool;
 
 public class PeakFitTest {
 
@@ -131,4 +134,59 @@ public class PeakFitTest {
             Assert.assertEquals(aaf[i], best[i], atolf[i]);
         }
     }
+
+    @Test
+    public void testFitWithLinearAmpsLM() throws Exception {
+        PeakFitParameters fitParameters = new PeakFitParameters();
+        PeakFit peakFit = new PeakFit(false, fitParameters);
+        setupTwoSigsAmp(peakFit);
+        peakFit.optimizeLM(200);
+        double[] best = peakFit.getBestPoint();
+        for (int i = 0; i < best.length; i++) {
+            Assert.assertEquals(a[i], best[i], tol[i]);
+        }
+    }
+
+    static Resampler.Result bootstrapInPool(PeakFit peakFit, Resampler resampler, int nThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try {
+            return pool.submit(() -> peakFit.bootstrap(resampler, 200)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBootstrap() throws Exception {
+        PeakFitParameters fitParameters = new PeakFitParameters();
+        PeakFit peakFit = new PeakFit(false, fitParameters);
+        setupTwoSigsAmp(peakFit);
+        Resampler resampler = new Resampler(20);
+        resampler.setSeed(5);
+        Resampler.Result result1 = bootstrapInPool(peakFit, resampler, 1);
+        Resampler.Result result4 = bootstrapInPool(peakFit, resampler, 4);
+        Assert.assertEquals(20, result1.nReplicates());
+        Assert.assertEquals(a.length + 1, result1.values().length);
+        for (int i = 0; i < result1.values().length; i++) {
+            Assert.assertArrayEquals(result1.values()[i], result4.values()[i], 0.0);
+        }
+        double[] sDevs = result1.getStandardDeviations();
+        for (int i = 0; i < a.length; i++) {
+            double mean = 0.0;
+            for (double value : result1.values()[i]) {
+                mean += value;
+            }
+            mean /= result1.nReplicates();
+            Assert.assertEquals(a[i], mean, tol[i]);
+            Assert.assertTrue(sDevs[i] > 0.0);
+            Assert.assertTrue(sDevs[i] < tol[i]);
+        }
+
+        // the replicates fit copies, so this fitter still fits the full data
+        peakFit.optimizeLM(200);
+        double[] best = peakFit.getBestPoint();
+        for (int i = 0; i < best.length; i++) {
+            Assert.assertEquals(a[i], best[i], tol[i]);
+        }
+    }
 }
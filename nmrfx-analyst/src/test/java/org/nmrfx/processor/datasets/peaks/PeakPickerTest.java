@@ -0,0 +1,148 @@
+package org.nmrfx.processor.datasets.peaks;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+import org.nmrfx.processor.datasets.Dataset;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+public class PeakPickerTest {
+
+    double[][] signals = {
+            {40.0, 30.0, 5.0},
+            {60.0, 33.0, 2.0},
+            {150.0, 100.0, 8.0},
+            {300.0, 7.0, 3.0},
+            {310.0, 200.0, 1.5},
+            {500.0, 250.0, 4.0},
+            {255.5, 127.5, 6.0}
+    };
+
+    static final int[] SIZES = {512, 256};
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    Dataset makeDataset() throws Exception {
+        return fillDataset(new Dataset("picktest", null, SIZES, false));
+    }
+
+    /**
+     * Make a dataset stored in a file read through the StorageCache, with a
+     * scale other than 1 so that values read in bulk and point by point must
+     * both be divided by it.
+     */
+    Dataset makeFileDataset() throws Exception {
+        boolean saveUseCacheFile = Dataset.isUseCacheFile();
+        Dataset.useCacheFile(true);
+        try {
+            File file = new File(tmpFolder.getRoot(), "picktest.nv");
+            Dataset dataset = Dataset.createDataset(file.toString(), file.getName(), "picktest", SIZES, false, true);
+            dataset.setScale(4.0);
+            return fillDataset(dataset);
+        } finally {
+            Dataset.useCacheFile(saveUseCacheFile);
+        }
+    }
+
+    Dataset fillDataset(Dataset dataset) throws Exception {
+        for (int i = 0; i < SIZES.length; i++) {
+            dataset.setSf(i, 600.0);
+            dataset.setSw(i, 6000.0);
+            dataset.setRefValue(i, 5.0);
+            dataset.setFreqDomain(i, true);
+        }
+        Random random = new Random(7);
+        int[] pt = new int[2];
+        for (pt[1] = 0; pt[1] < SIZES[1]; pt[1]++) {
+            for (pt[0] = 0; pt[0] < SIZES[0]; pt[0]++) {
+                double value = 0.02 * random.nextGaussian();
+                for (double[] signal : signals) {
+                    double d0 = (pt[0] - signal[0]) / 2.0;
+                    double d1 = (pt[1] - signal[1]) / 2.0;
+                    value += signal[2] / (1.0 + d0 * d0) / (1.0 + d1 * d1);
+                }
+                dataset.writePoint(pt, value);
+            }
+        }
+        return dataset;
+    }
+
+    PeakList pick(Dataset dataset, String listName, boolean tiled) throws Exception {
+        PeakPickParameters peakPickPar = (new PeakPickParameters(dataset, listName)).level(0.5).tiled(tiled);
+        peakPickPar.region("point");
+        peakPickPar.pos(true).neg(false);
+        peakPickPar.calcRange();
+        PeakPicker picker = new PeakPicker(peakPickPar);
+        return picker.peakPick();
+    }
+
+    @After
+    public void removeLists() {
+        PeakList.remove("serial");
+        PeakList.remove("tiled");
+        PeakList.remove("expected");
+    }
+
+    void comparePeaks(List<Peak> expected, List<Peak> peaks) {
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.size(), peaks.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < 2; j++) {
+                Assert.assertEquals(expected.get(i).getPeakDim(j).getChemShiftValue(),
+                        peaks.get(i).getPeakDim(j).getChemShiftValue(), 1.0e-6);
+            }
+            Assert.assertEquals(expected.get(i).getIntensity(), peaks.get(i).getIntensity(), 1.0e-5);
+        }
+    }
+
+    @Test
+    public void testTiledMatchesSerial() throws Exception {
+        Dataset dataset = makeDataset();
+        List<Peak> serial = pick(dataset, "serial", false).peaks();
+        List<Peak> tiled = pick(dataset, "tiled", true).peaks();
+        comparePeaks(serial, tiled);
+    }
+
+    @Test
+    public void testReadRegionScaled() throws Exception {
+        Dataset dataset = makeFileDataset();
+        try {
+            int[][] pt = {{35, 70}, {20, 40}};
+            int[] dim = {0, 1};
+            double[] values = new double[36 * 21];
+            dataset.readRegion(pt, dim, values);
+            int[] point = new int[2];
+            int k = 0;
+            for (point[1] = pt[1][0]; point[1] <= pt[1][1]; point[1]++) {
+                for (point[0] = pt[0][0]; point[0] <= pt[0][1]; point[0]++) {
+                    Assert.assertEquals(dataset.readPoint(point, dim), values[k++], 1.0e-6);
+                }
+            }
+        } finally {
+            dataset.close();
+        }
+    }
+
+    @Test
+    public void testTiledMatchesSerialScaledFile() throws Exception {
+        Dataset memDataset = makeDataset();
+        List<Peak> expected = pick(memDataset, "expected", false).peaks();
+        Dataset dataset = makeFileDataset();
+        try {
+            List<Peak> serial = pick(dataset, "serial", false).peaks();
+            List<Peak> tiled = pick(dataset, "tiled", true).peaks();
+            comparePeaks(expected, serial);
+            comparePeaks(serial, tiled);
+        } finally {
+            dataset.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.nmrfx.processor.datasets.peaks;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.datasets.RegionData;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+import org.nmrfx.processor.datasets.Dataset;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+public class PeakQuantifierTest {
+
+    // the last peak is close enough to the edge for its region to wrap
+    double[][] signals = {
+            {20.0, 30.0, 5.0},
+            {24.0, 33.0, 2.0},
+            {70.5, 10.0, 8.0},
+            {100.0, 50.0, 3.0},
+            {1.0, 40.0, 4.0}
+    };
+
+    static final int[] SIZES = {128, 64, 5};
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    Dataset makeDataset() throws Exception {
+        return fillDataset(new Dataset("quanttest", null, SIZES, false));
+    }
+
+    /**
+     * Make a dataset stored in a file read through the StorageCache, with a
+     * scale other than 1.
+     */
+    Dataset makeFileDataset() throws Exception {
+        boolean saveUseCacheFile = Dataset.isUseCacheFile();
+        Dataset.useCacheFile(true);
+        try {
+            File file = new File(tmpFolder.getRoot(), "quanttest.nv");
+            Dataset dataset = Dataset.createDataset(file.toString(), file.getName(), "quanttest", SIZES, false, true);
+            dataset.setScale(3.0);
+            return fillDataset(dataset);
+        } finally {
+            Dataset.useCacheFile(saveUseCacheFile);
+        }
+    }
+
+    Dataset fillDataset(Dataset dataset) throws Exception {
+        for (int i = 0; i < SIZES.length; i++) {
+            dataset.setSf(i, 600.0);
+            dataset.setSw(i, 6000.0);
+            dataset.setRefValue(i, 5.0);
+            dataset.setFreqDomain(i, i < 2);
+        }
+        Random random = new Random(11);
+        int[] pt = new int[3];
+        for (pt[2] = 0; pt[2] < SIZES[2]; pt[2]++) {
+            for (pt[1] = 0; pt[1] < SIZES[1]; pt[1]++) {
+                for (pt[0] = 0; pt[0] < SIZES[0]; pt[0]++) {
+                    double value = 0.02 * random.nextGaussian();
+                    for (double[] signal : signals) {
+                        double d0 = (pt[0] - signal[0]) / 2.0;
+                        double d1 = (pt[1] - signal[1]) / 2.0;
+                        value += signal[2] * Math.exp(-0.3 * pt[2]) / (1.0 + d0 * d0) / (1.0 + d1 * d1);
+                    }
+                    dataset.writePoint(pt, value);
+                }
+            }
+        }
+        return dataset;
+    }
+
+    PeakList makePeakList(Dataset dataset) {
+        return makePeakList(dataset, "quanttest");
+    }
+
+    PeakList makePeakList(Dataset dataset, String listName) {
+        PeakList peakList = new PeakList(listName, 2);
+        for (double[] signal : signals) {
+            Peak peak = peakList.getNewPeak();
+            for (int i = 0; i < 2; i++) {
+                double ppm = dataset.pointToPPM(i, signal[i]);
+                double bounds = 8.0 * dataset.getSw(i) / dataset.getSf(i) / dataset.getSizeReal(i);
+                peak.getPeakDim(i).setChemShiftValue((float) ppm);
+                peak.getPeakDim(i).setBoundsValue((float) bounds);
+                peak.getPeakDim(i).setLineWidthValue((float) (bounds / 2.0));
+            }
+        }
+        return peakList;
+    }
+
+    @After
+    public void removeLists() {
+        PeakList.remove("quanttest");
+    }
+
+    void checkMatchesAnalyzePeakRegion(Dataset dataset, double tol) throws Exception {
+        PeakList peakList = makePeakList(dataset);
+        List<Peak> peaks = peakList.peaks();
+        int[] pdim = {0, 1};
+        int nPlanes = dataset.getSizeReal(2);
+        RegionData[][] regionData = new PeakQuantifier(dataset, pdim, nPlanes).analyze(peaks);
+        int[] planes = new int[1];
+        for (int iPeak = 0; iPeak < peaks.size(); iPeak++) {
+            for (int iPlane = 0; iPlane < nPlanes; iPlane++) {
+                planes[0] = iPlane;
+                RegionData expected = Peak.analyzePeakRegion(peaks.get(iPeak), dataset, planes, pdim);
+                RegionData actual = regionData[iPeak][iPlane];
+                Assert.assertNotNull(actual);
+                Assert.assertEquals(expected.getNpoints(), actual.getNpoints());
+                Assert.assertEquals(expected.getNEllipticalPoints(), actual.getNEllipticalPoints());
+                Assert.assertEquals(expected.getVolume_e(), actual.getVolume_e(), tol);
+                Assert.assertEquals(expected.getVolume_r(), actual.getVolume_r(), tol);
+                Assert.assertEquals(expected.getCenter(), actual.getCenter(), tol);
+                Assert.assertEquals(expected.getJitter(), actual.getJitter(), tol);
+                Assert.assertEquals(expected.getRMS(), actual.getRMS(), tol);
+                Assert.assertArrayEquals(expected.getMaxDPoint(), actual.getMaxDPoint(), tol);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesAnalyzePeakRegion() throws Exception {
+        checkMatchesAnalyzePeakRegion(makeDataset(), 1.0e-9);
+    }
+
+    @Test
+    public void testScaledFileMatchesAnalyzePeakRegion() throws Exception {
+        Dataset dataset = makeFileDataset();
+        try {
+            checkMatchesAnalyzePeakRegion(dataset, 1.0e-9);
+        } finally {
+            dataset.close();
+        }
+    }
+
+    /**
+     * The intensities measured from a scaled file dataset must be those of
+     * the same data in memory with a scale of 1, as they were when each peak
+     * was measured with Peak.measurePeak.
+     */
+    @Test
+    public void testScaledFileMatchesMemory() throws Exception {
+        Dataset memDataset = makeDataset();
+        PeakList memList = makePeakList(memDataset);
+        int nPlanes = SIZES[2];
+        PeakListTools.quantifyPeaks(memList, memDataset, RegionData::getCenter, "center", nPlanes);
+        Dataset dataset = makeFileDataset();
+        try {
+            PeakList peakList = makePeakList(dataset, "quanttest2");
+            PeakListTools.quantifyPeaks(peakList, dataset, RegionData::getCenter, "center", nPlanes);
+            int[] pdim = {0, 1};
+            int[] planes = new int[1];
+            for (int iPeak = 0; iPeak < memList.size(); iPeak++) {
+                double[][] expected = memList.getPeak(iPeak).getMeasures().orElseThrow();
+                double[][] actual = peakList.getPeak(iPeak).getMeasures().orElseThrow();
+                for (int iPlane = 0; iPlane < nPlanes; iPlane++) {
+                    planes[0] = iPlane;
+                    double[] old = peakList.getPeak(iPeak).measurePeak(dataset, pdim, planes, RegionData::getCenter, "center");
+                    Assert.assertEquals(old[0], actual[0][iPlane], 1.0e-9);
+                    Assert.assertEquals(expected[0][iPlane], actual[0][iPlane], 1.0e-5);
+                }
+            }
+        } finally {
+            PeakList.remove("quanttest2");
+            dataset.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDimensionMismatch() throws Exception {
+        Dataset dataset = makeDataset();
+        PeakList peakList = makePeakList(dataset);
+        PeakListTools.quantifyPeaks(peakList, dataset, RegionData::getCenter, "center");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlaneDimensionMismatch() throws Exception {
+        Dataset dataset = makeDataset();
+        PeakList peakList = new PeakList("quanttest3", 3);
+        try {
+            peakList.getNewPeak();
+            new PeakQuantifier(dataset, new int[]{0, 1}, SIZES[2]).analyze(peakList.peaks());
+        } finally {
+            PeakList.remove("quanttest3");
+        }
+    }
+}
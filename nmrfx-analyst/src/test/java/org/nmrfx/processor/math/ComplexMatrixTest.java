@@ -0,0 +1,158 @@
+package org.nmrfx.processor.math;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.processor.math.apache.ComplexSingularValueDecomposition;
+
+import java.util.Random;
+
+/**
+ * Checks the primitive complex QR, SVD and TLS code against the
+ * FieldMatrix&lt;Complex&gt; implementations used before.
+ */
+public class ComplexMatrixTest {
+
+    private static final double TOL = 1.0e-10;
+
+    static ComplexMatrix randomMatrix(int nRows, int nCols, long seed) {
+        Random random = new Random(seed);
+        ComplexMatrix a = new ComplexMatrix(nRows, nCols);
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                a.set(i, j, random.nextGaussian(), random.nextGaussian());
+            }
+        }
+        return a;
+    }
+
+    static Complex[] makeFID(int size, double noise, long seed) {
+        double[] freqs = {0.11, -0.23, 0.31};
+        double[] decays = {0.98, 0.97, 0.99};
+        double[] amps = {1.0, 0.5, 0.8};
+        Random random = new Random(seed);
+        Complex[] fid = new Complex[size];
+        for (int i = 0; i < size; i++) {
+            double re = 0.0;
+            double im = 0.0;
+            for (int k = 0; k < freqs.length; k++) {
+                double amp = amps[k] * Math.pow(decays[k], i);
+                re += amp * Math.cos(2.0 * Math.PI * freqs[k] * i);
+                im += amp * Math.sin(2.0 * Math.PI * freqs[k] * i);
+            }
+            fid[i] = new Complex(re + noise * random.nextGaussian(), im + noise * random.nextGaussian());
+        }
+        return fid;
+    }
+
+    static void assertMatrixEquals(ComplexMatrix expected, ComplexMatrix actual, double tol) {
+        Assert.assertEquals(expected.getRowDimension(), actual.getRowDimension());
+        Assert.assertEquals(expected.getColumnDimension(), actual.getColumnDimension());
+        for (int i = 0; i < expected.getRowDimension(); i++) {
+            for (int j = 0; j < expected.getColumnDimension(); j++) {
+                Assert.assertEquals(expected.getReal(i, j), actual.getReal(i, j), tol);
+                Assert.assertEquals(expected.getImaginary(i, j), actual.getImaginary(i, j), tol);
+            }
+        }
+    }
+
+    @Test
+    public void testQR() {
+        ComplexMatrix a = randomMatrix(40, 9, 1);
+        ComplexQR qr = new ComplexQR(a);
+        ComplexMatrix r = qr.getR();
+        Assert.assertEquals(9, r.getRowDimension());
+        for (int i = 1; i < r.getRowDimension(); i++) {
+            for (int j = 0; j < i; j++) {
+                Assert.assertEquals(0.0, r.getReal(i, j), 0.0);
+                Assert.assertEquals(0.0, r.getImaginary(i, j), 0.0);
+            }
+        }
+        assertMatrixEquals(a, qr.qb(r), TOL);
+    }
+
+    @Test
+    public void testSVD() throws Exception {
+        for (int[] dims : new int[][]{{30, 8}, {8, 8}, {5, 12}}) {
+            ComplexMatrix a = randomMatrix(dims[0], dims[1], dims[0] * 100L + dims[1]);
+            ComplexSVD svd = new ComplexSVD(a);
+            double[] s = svd.getSingularValues();
+            ComplexMatrix us = svd.getU().copy();
+            for (int i = 0; i < us.getRowDimension(); i++) {
+                for (int j = 0; j < us.getColumnDimension(); j++) {
+                    us.set(i, j, us.getReal(i, j) * s[j], us.getImaginary(i, j) * s[j]);
+                }
+            }
+            assertMatrixEquals(a, us.multiply(svd.getV().conjugateTranspose()), TOL);
+            for (int i = 1; i < s.length; i++) {
+                Assert.assertTrue(s[i] <= s[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testSingularValuesAgree() throws Exception {
+        ComplexMatrix a = randomMatrix(12, 12, 7);
+        double[] s = new ComplexSVD(a).getSingularValues();
+        ComplexSingularValueDecomposition csvd = new ComplexSingularValueDecomposition(a.toFieldMatrix());
+        for (int i = 0; i < s.length; i++) {
+            Assert.assertEquals(csvd.S.getEntry(i, i).getReal(), s[i], TOL);
+        }
+    }
+
+    @Test
+    public void testPseudoInverse() {
+        ComplexMatrix a = randomMatrix(10, 10, 11);
+        ComplexMatrix identity = new ComplexMatrix(10, 10);
+        for (int i = 0; i < 10; i++) {
+            identity.set(i, i, 1.0, 0.0);
+        }
+        assertMatrixEquals(identity, a.multiply(a.pseudoInverse(1.0e-12)), TOL);
+
+        ComplexMatrix b = randomMatrix(25, 6, 12);
+        ComplexMatrix bInv = b.pseudoInverse(1.0e-12);
+        assertMatrixEquals(b, b.multiply(bInv).multiply(b), TOL);
+        assertMatrixEquals(bInv, bInv.multiply(b).multiply(bInv), TOL);
+    }
+
+    @Test
+    public void testTLSAgrees() throws Exception {
+        Complex[] fid = makeFID(256, 0.01, 3);
+        for (boolean backward : new boolean[]{false, true}) {
+            int n = 8;
+            int m = 200;
+            int start = backward ? 1 : 0;
+            Complex[][] ary = new Complex[m][n + 1];
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < n; j++) {
+                    ary[i][j] = fid[j + i + start];
+                }
+                ary[i][n] = backward ? fid[i + start - 1] : fid[i + start + n];
+            }
+            Complex[] expected = LinearPrediction.tlsMat(new Array2DRowFieldMatrix<>(ary));
+            Complex[] coefs = LinearPrediction.getCoefsByTLS(fid, start, m, n, 0.0, backward);
+            Assert.assertEquals(expected.length, coefs.length);
+            for (int i = 0; i < coefs.length; i++) {
+                Assert.assertEquals(expected[i].getReal(), coefs[i].getReal(), 1.0e-8);
+                Assert.assertEquals(expected[i].getImaginary(), coefs[i].getImaginary(), 1.0e-8);
+            }
+        }
+    }
+
+    @Test
+    public void testForwardPrediction() {
+        int size = 128;
+        Complex[] full = makeFID(2 * size, 0.0, 5);
+        Vec vec = new Vec(size, true);
+        vec.makeApache();
+        System.arraycopy(full, 0, vec.getCvec(), 0, size);
+        LinearPrediction lp = new LinearPrediction(vec);
+        lp.svdPredLP(0, 0, 8, 0.0, 0, 0, 32, false, true, false, 0);
+        Assert.assertEquals(size + 32, vec.getSize());
+        for (int i = size; i < size + 32; i++) {
+            Assert.assertEquals(full[i].getReal(), vec.getCvec()[i].getReal(), 1.0e-4);
+            Assert.assertEquals(full[i].getImaginary(), vec.getCvec()[i].getImaginary(), 1.0e-4);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.nmrfx.processor.math;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.processor.processing.SampleSchedule;
+
+import java.util.Random;
+
+public class IstMathTest {
+
+    private static final int SIZE = 128;
+    private static final int LOOPS = 60;
+    private static final double THRESHOLD = 0.9;
+
+    static Complex[] makeFID(long seed) {
+        Random random = new Random(seed);
+        Complex[] fid = new Complex[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            double decay = Math.exp(-0.02 * i);
+            double re = decay * (Math.cos(0.7 * i) + 0.5 * Math.cos(-1.9 * i)) + 0.01 * random.nextGaussian();
+            double im = decay * (Math.sin(0.7 * i) + 0.5 * Math.sin(-1.9 * i)) + 0.01 * random.nextGaussian();
+            fid[i] = new Complex(re, im);
+        }
+        return fid;
+    }
+
+    static void zero(Complex[] values, boolean[] sampled) {
+        for (int i = 0; i < values.length; i++) {
+            if (!sampled[i]) {
+                values[i] = Complex.ZERO;
+            }
+        }
+    }
+
+    /**
+     * The "std" algorithm as it was done with Complex arrays and the Apache
+     * Commons FFT, with a fixed threshold.
+     */
+    static Complex[] referenceStd(Complex[] fid, SampleSchedule schedule, boolean timeDomain) {
+        int len = fid.length;
+        boolean[] sampled = new boolean[len];
+        for (int[] sample : schedule.getSamples()) {
+            sampled[sample[0]] = true;
+        }
+        Complex[] input = fid.clone();
+        zero(input, sampled);
+        Complex[] orig = input.clone();
+        double[] add = new double[len];
+        double[] residual = new double[len];
+        for (int loop = 0; loop < LOOPS; loop++) {
+            Vec.apache_fft(input);
+            double max = 0.0;
+            for (int i = 0; i < len; i++) {
+                residual[i] = input[i].getReal();
+                max = Math.max(max, Math.abs(residual[i]));
+            }
+            double th = THRESHOLD * max;
+            for (int i = 0; i < len; i++) {
+                double aValue = Math.abs(residual[i]);
+                if (aValue > th) {
+                    add[i] += Math.signum(residual[i]) * (aValue - th);
+                    residual[i] = Math.signum(residual[i]) * th;
+                }
+            }
+            if (loop < LOOPS - 1) {
+                Complex[] cutFID = VecUtil.hift(residual, len, 0.5);
+                System.arraycopy(cutFID, 0, input, 0, cutFID.length);
+                zero(input, sampled);
+            }
+        }
+        if (timeDomain) {
+            Complex[] newFID = VecUtil.hift(add, len, 0.5);
+            System.arraycopy(newFID, 0, input, 0, newFID.length);
+            for (int i = 0; i < len; i++) {
+                if (sampled[i]) {
+                    input[i] = orig[i];
+                }
+            }
+        } else {
+            input = VecUtil.hft(add, len);
+        }
+        return input;
+    }
+
+    static void assertAgrees(Complex[] expected, double[] re, double[] im) {
+        double max = 0.0;
+        for (Complex value : expected) {
+            max = Math.max(max, value.abs());
+        }
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].getReal(), re[i], 1.0e-8 * max);
+            Assert.assertEquals(expected[i].getImaginary(), im[i], 1.0e-8 * max);
+        }
+    }
+
+    @Test
+    public void testStdAgrees() throws Exception {
+        SampleSchedule schedule = new SampleSchedule(48, SIZE);
+        for (boolean timeDomain : new boolean[]{true, false}) {
+            Complex[] fid = makeFID(5);
+            Complex[] expected = referenceStd(fid, schedule, timeDomain);
+            double[] re = new double[SIZE];
+            double[] im = new double[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                re[i] = fid[i].getReal();
+                im[i] = fid[i].getImaginary();
+            }
+            IstMath istMath = new IstMath(THRESHOLD, LOOPS, schedule, "std", timeDomain, false, false);
+            istMath.calculate(re, im, SIZE);
+            assertAgrees(expected, re, im);
+
+            Complex[] values = fid.clone();
+            istMath.calculate(values);
+            for (int i = 0; i < SIZE; i++) {
+                Assert.assertEquals(re[i], values[i].getReal(), 0.0);
+                Assert.assertEquals(im[i], values[i].getImaginary(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        SampleSchedule schedule = new SampleSchedule(48, SIZE);
+        int nVectors = 3;
+        double[][] re = new double[nVectors][SIZE];
+        double[][] im = new double[nVectors][SIZE];
+        double[][] singleRe = new double[nVectors][SIZE];
+        double[][] singleIm = new double[nVectors][SIZE];
+        for (int j = 0; j < nVectors; j++) {
+            Complex[] fid = makeFID(j);
+            for (int i = 0; i < SIZE; i++) {
+                re[j][i] = fid[i].getReal();
+                im[j][i] = fid[i].getImaginary();
+            }
+            System.arraycopy(re[j], 0, singleRe[j], 0, SIZE);
+            System.arraycopy(im[j], 0, singleIm[j], 0, SIZE);
+        }
+        IstMath istMath = new IstMath(THRESHOLD, LOOPS, schedule, "abs", true, false, false);
+        int[] nCalls = new int[nVectors];
+        istMath.setIterationListener((vector, loop, maxValue, nCut, nanos) -> {
+            Assert.assertEquals(nCalls[vector], loop);
+            Assert.assertTrue(nCut > 0);
+            nCalls[vector]++;
+        });
+        istMath.calculate(re, im, SIZE);
+        istMath.setIterationListener(null);
+        for (int j = 0; j < nVectors; j++) {
+            Assert.assertEquals(LOOPS, nCalls[j]);
+            istMath.calculate(singleRe[j], singleIm[j], SIZE);
+            Assert.assertArrayEquals(singleRe[j], re[j], 0.0);
+            Assert.assertArrayEquals(singleIm[j], im[j], 0.0);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.nmrfx.processor.math;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SplitFFTTest {
+    private static final double TOL = 1.0e-9;
+
+    double[][] getRIVec(int n, long seed) {
+        Random random = new Random(seed);
+        double[][] riVec = new double[2][n];
+        for (int i = 0; i < n; i++) {
+            riVec[0][i] = random.nextGaussian();
+            riVec[1][i] = random.nextGaussian();
+        }
+        return riVec;
+    }
+
+    double[][] dft(double[][] riVec, boolean inverse) {
+        int n = riVec[0].length;
+        double sign = inverse ? 1.0 : -1.0;
+        double[][] result = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            for (int j = 0; j < n; j++) {
+                double angle = sign * 2.0 * Math.PI * (((long) j * k) % n) / n;
+                double c = Math.cos(angle);
+                double s = Math.sin(angle);
+                result[0][k] += riVec[0][j] * c - riVec[1][j] * s;
+                result[1][k] += riVec[0][j] * s + riVec[1][j] * c;
+            }
+        }
+        return result;
+    }
+
+    void checkTransform(int n) {
+        double[][] riVec = getRIVec(n, n);
+        double[][] expected = dft(riVec, false);
+        SplitFFT.getInstance(n).transform(riVec[0], riVec[1], false);
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(expected[0][i], riVec[0][i], TOL);
+            Assert.assertEquals(expected[1][i], riVec[1][i], TOL);
+        }
+    }
+
+    @Test
+    public void testPowerOf2() {
+        for (int n : new int[]{1, 2, 4, 64, 512}) {
+            checkTransform(n);
+        }
+    }
+
+    @Test
+    public void testBluestein() {
+        for (int n : new int[]{3, 5, 12, 100, 127, 384}) {
+            checkTransform(n);
+        }
+    }
+
+    @Test
+    public void testInverse() {
+        for (int n : new int[]{256, 150}) {
+            double[][] riVec = getRIVec(n, 7);
+            double[][] expected = dft(riVec, true);
+            SplitFFT.getInstance(n).transform(riVec[0], riVec[1], true);
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(expected[0][i], riVec[0][i], TOL);
+                Assert.assertEquals(expected[1][i], riVec[1][i], TOL);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesApacheFFT() {
+        int n = 256;
+        double[][] riVec = getRIVec(n, 11);
+        Complex[] cvec = new Complex[n];
+        for (int i = 0; i < n; i++) {
+            cvec[i] = new Complex(riVec[0][i], riVec[1][i]);
+        }
+        Vec.apache_fft(cvec);
+        SplitFFT.fft(riVec[0], riVec[1], n);
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(cvec[i].getReal(), riVec[0][i], TOL);
+            Assert.assertEquals(cvec[i].getImaginary(), riVec[1][i], TOL);
+        }
+        Vec.apache_ift(cvec);
+        SplitFFT.ift(riVec[0], riVec[1], n);
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(cvec[i].getReal(), riVec[0][i], TOL);
+            Assert.assertEquals(cvec[i].getImaginary(), riVec[1][i], TOL);
+        }
+    }
+
+    @Test
+    public void testVecRoundTrip() {
+        int n = 128;
+        Vec vec = new Vec(n, true);
+        vec.genSignal(15, 0.97, 100, 0);
+        vec.genSignal(50, 0.97, 20, 0);
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = vec.getReal(i);
+            im[i] = vec.getImag(i);
+        }
+        vec.fft();
+        Assert.assertFalse(vec.useApache());
+        vec.ifft();
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(re[i], vec.getReal(i), TOL);
+            Assert.assertEquals(im[i], vec.getImag(i), TOL);
+        }
+    }
+}
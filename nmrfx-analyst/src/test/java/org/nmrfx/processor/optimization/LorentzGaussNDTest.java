@@ -0,0 +1,116 @@
+package org.nmrfx.processor.optimization;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.optim.PointValuePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+public class LorentzGaussNDTest {
+    // base, then amplitude, width and position in each dimension for each peak, then the shape factors
+    static final double[] TRUTH = {
+            0.0,
+            10.0, 2.5, 8.0, 2.5, 10.0,
+            6.0, 2.0, 12.0, 3.0, 11.0,
+            8.0, 3.0, 15.0, 2.0, 16.0,
+            0.4, 0.4};
+    static final double[] START = {
+            0.1,
+            9.0, 3.0, 8.4, 2.2, 9.7,
+            7.0, 2.4, 11.6, 2.6, 11.4,
+            7.0, 2.6, 15.5, 2.4, 15.6,
+            0.5, 0.5};
+
+    LorentzGaussND makeFitter() {
+        int size = 24;
+        LorentzGaussND fitter = new LorentzGaussND(new int[]{size, size});
+        int nPar = TRUTH.length;
+        double[] lower = new double[nPar];
+        double[] upper = new double[nPar];
+        boolean[] floating = new boolean[nPar];
+        for (int i = 0; i < nPar; i++) {
+            lower[i] = START[i] - Math.max(1.0, Math.abs(START[i]) * 0.5);
+            upper[i] = START[i] + Math.max(1.0, Math.abs(START[i]) * 0.5);
+            floating[i] = true;
+        }
+        lower[nPar - 2] = 0.0;
+        lower[nPar - 1] = 0.0;
+        upper[nPar - 2] = 1.0;
+        upper[nPar - 1] = 1.0;
+        fitter.setIntensities(new double[1][size * size]);
+        fitter.setOffsets(START, lower, upper, floating, new ArrayList<>());
+        fitter.initRandom(37);
+        fitter.simulate(TRUTH, 0.01);
+        return fitter;
+    }
+
+    @Test
+    public void testJacobian() {
+        LorentzGaussND fitter = makeFitter();
+        double[] point = fitter.scalePar(START).clone();
+        RealMatrix jacobian = fitter.lsValue(new ArrayRealVector(point)).getSecond();
+        double h = 1.0e-5;
+        for (int k = 0; k < point.length; k++) {
+            double[] point1 = point.clone();
+            double[] point2 = point.clone();
+            point1[k] += h;
+            point2[k] -= h;
+            RealVector values1 = fitter.lsValue(new ArrayRealVector(point1)).getFirst();
+            RealVector values2 = fitter.lsValue(new ArrayRealVector(point2)).getFirst();
+            for (int i = 0; i < values1.getDimension(); i++) {
+                double numeric = (values1.getEntry(i) - values2.getEntry(i)) / (2.0 * h);
+                Assert.assertEquals(numeric, jacobian.getEntry(i, k), 1.0e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testFitLM() {
+        LorentzGaussND fitter = makeFitter();
+        PointValuePair result = fitter.optimizeLM(200);
+        double[] point = result.getPoint();
+        for (int i = 0; i < TRUTH.length; i++) {
+            Assert.assertEquals(TRUTH[i], point[i], 0.05);
+        }
+        Assert.assertEquals(result.getValue(), fitter.valueWithUnScaled(point), 1.0e-12);
+    }
+
+    static Resampler.Result bootstrapInPool(LorentzGaussND fitter, Resampler resampler, int nThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try {
+            return pool.submit(() -> fitter.bootstrap(resampler, 200)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBootstrap() throws Exception {
+        LorentzGaussND fitter = makeFitter();
+        Resampler resampler = new Resampler(12);
+        resampler.setSeed(9);
+        Resampler.Result result1 = bootstrapInPool(fitter, resampler, 1);
+        Resampler.Result result4 = bootstrapInPool(fitter, resampler, 4);
+        Assert.assertEquals(12, result1.nReplicates());
+        Assert.assertEquals(TRUTH.length + 1, result1.values().length);
+        for (int i = 0; i < result1.values().length; i++) {
+            Assert.assertArrayEquals(result1.values()[i], result4.values()[i], 0.0);
+        }
+        double[] sDevs = result1.getStandardDeviations();
+        for (int i = 0; i < TRUTH.length; i++) {
+            Assert.assertTrue(sDevs[i] > 0.0);
+            Assert.assertTrue(sDevs[i] < 0.05);
+        }
+
+        // the replicates fit copies, so this fitter still fits the full data
+        PointValuePair result = fitter.optimizeLM(200);
+        double[] point = result.getPoint();
+        for (int i = 0; i < TRUTH.length; i++) {
+            Assert.assertEquals(TRUTH[i], point[i], 0.05);
+        }
+    }
+}
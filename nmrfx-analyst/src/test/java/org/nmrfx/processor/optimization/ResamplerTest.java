@@ -0,0 +1,89 @@
+package org.nmrfx.processor.optimization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ResamplerTest {
+
+    static double[] makeData(int n) {
+        Random random = new Random(7);
+        double[] data = new double[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = 5.0 + random.nextGaussian();
+        }
+        return data;
+    }
+
+    static Resampler.Replicate bootstrapMean(double[] data) {
+        return (iReplicate, random) -> {
+            int[] indices = Resampler.bootstrapIndices(random, data.length);
+            double sum = 0.0;
+            for (int index : indices) {
+                sum += data[index];
+            }
+            return Optional.of(new double[]{sum / data.length});
+        };
+    }
+
+    static Resampler.Result runInPool(Resampler resampler, Resampler.Replicate replicate, int nThreads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try {
+            return pool.submit(() -> resampler.run(replicate)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testReproducible() throws Exception {
+        double[] data = makeData(50);
+        Resampler resampler = new Resampler(200);
+        resampler.setSeed(3);
+        Resampler.Result result1 = runInPool(resampler, bootstrapMean(data), 1);
+        Resampler.Result result4 = runInPool(resampler, bootstrapMean(data), 4);
+        Assert.assertEquals(200, result1.nReplicates());
+        Assert.assertArrayEquals(result1.values()[0], result4.values()[0], 0.0);
+
+        // standard error of the mean is about 1 / sqrt(50)
+        Assert.assertEquals(1.0 / Math.sqrt(50.0), result1.getStandardDeviations()[0], 0.05);
+    }
+
+    @Test
+    public void testFailures() {
+        Resampler resampler = new Resampler(40);
+        Resampler.Result result = resampler.run((iReplicate, random) ->
+                iReplicate % 4 == 0 ? Optional.empty() : Optional.of(new double[]{iReplicate, 2.0 * iReplicate}));
+        Assert.assertEquals(10, result.nFailed());
+        Assert.assertEquals(30, result.nReplicates());
+        Assert.assertEquals(2, result.values().length);
+        Assert.assertEquals(1.0, result.values()[0][0], 0.0);
+        Assert.assertEquals(39.0, result.values()[0][29], 0.0);
+        Assert.assertEquals(78.0, result.values()[1][29], 0.0);
+    }
+
+    @Test
+    public void testEarlyStopping() {
+        double[] data = makeData(50);
+        Resampler resampler = new Resampler(20000);
+        resampler.setBatchSize(200);
+        resampler.setConvergence(0.9, 0.05, 400);
+        Resampler.Result result = resampler.run(bootstrapMean(data));
+        Assert.assertTrue(result.converged());
+        Assert.assertTrue(result.nReplicates() >= 400);
+        Assert.assertTrue(result.nReplicates() < 20000);
+        Assert.assertEquals(0, result.nReplicates() % 200);
+
+        double[][] intervals = result.getConfidenceIntervals(0.9);
+        double mean = 0.0;
+        for (double value : data) {
+            mean += value;
+        }
+        mean /= data.length;
+        Assert.assertTrue(intervals[0][0] < mean);
+        Assert.assertTrue(intervals[0][1] > mean);
+    }
+}
@@ -0,0 +1,53 @@
+package org.nmrfx.processor.processing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.processor.math.Vec;
+
+public class VecPoolTest {
+
+    @After
+    public void clearPool() {
+        VecPool.clear();
+    }
+
+    @Test
+    public void testRecycledVecIsReset() {
+        int[][] pt = {{0, 127}, {3, 3}};
+        int[] dim = {0, 1};
+        Vec vec = VecPool.get(64, pt, dim, true);
+        vec.genSignal(10.0, 0.97, 100.0, 0.0);
+        vec.setFreqDomain(true);
+        vec.resize(128);
+        VecPool.recycle(vec);
+
+        int[][] pt2 = {{0, 127}, {5, 5}};
+        Vec reused = VecPool.get(64, pt2, dim, true);
+        Assert.assertSame(vec, reused);
+        Assert.assertEquals(64, reused.getSize());
+        Assert.assertTrue(reused.isComplex());
+        Assert.assertFalse(reused.getFreqDomain());
+        Assert.assertEquals(5, reused.getPt()[1][0]);
+        for (int i = 0; i < reused.getSize(); i++) {
+            Assert.assertEquals(0.0, reused.getReal(i), 0.0);
+            Assert.assertEquals(0.0, reused.getImag(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testKeyedBySizeAndComplex() {
+        Vec vec = VecPool.get(64, null, null, true);
+        VecPool.recycle(vec);
+        Assert.assertNotSame(vec, VecPool.get(64, null, null, false));
+        Assert.assertNotSame(vec, VecPool.get(32, null, null, true));
+        Assert.assertSame(vec, VecPool.get(64, null, null, true));
+    }
+
+    @Test
+    public void testUnpooledVecIgnored() {
+        Vec vec = new Vec(64, true);
+        VecPool.recycle(vec);
+        Assert.assertNotSame(vec, VecPool.get(64, null, null, true));
+    }
+}
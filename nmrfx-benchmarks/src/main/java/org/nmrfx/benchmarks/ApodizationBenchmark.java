@@ -0,0 +1,69 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.operations.Apodization;
+import org.nmrfx.processor.operations.Expd;
+import org.nmrfx.processor.operations.Gm;
+import org.nmrfx.processor.operations.SinebellApod;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures applying apodization windows to a synthetic FID. The window is
+ * created once per trial, as it is when the same operation is applied to each
+ * vector of a dataset, so the measurement is dominated by applying the window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApodizationBenchmark {
+
+    @Param({"1024", "16384"})
+    int size;
+
+    @Param({"expd", "gm", "sb"})
+    String window;
+
+    Vec fid;
+    Vec work;
+    Apodization apodization;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fid = BenchmarkData.makeFID(size, 8, 23);
+        work = new Vec(size, true);
+        apodization = switch (window) {
+            case "gm" -> new Gm(1.0, 1.0, 0.0, 0.5, false);
+            case "sb" -> new SinebellApod(0.5, 1.0, 2.0, 0.5, 0, 0);
+            default -> new Expd(2.0, 0.5, false);
+        };
+    }
+
+    @Benchmark
+    public Vec apodize() {
+        fid.copy(work);
+        apodization.eval(work);
+        return work;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.operations.AutoPhase;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures automatic phasing of a synthetic spectrum that has zero and first
+ * order phase errors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutoPhaseBenchmark {
+
+    @Param({"4096", "32768"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean firstOrder;
+
+    Vec spectrum;
+    Vec work;
+    AutoPhase autoPhase;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        spectrum = BenchmarkData.makeFID(size, 12, 29);
+        spectrum.fft();
+        spectrum.phase(35.0, firstOrder ? -40.0 : 0.0, false, false);
+        work = new Vec(size, true);
+        autoPhase = new AutoPhase(firstOrder, false, 2, 25.0, 0, 90.0, 1.0, false, 0.07, -0.07);
+    }
+
+    @Benchmark
+    public Vec autoPhase() {
+        spectrum.copy(work);
+        autoPhase.eval(work);
+        return work;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.math.Vec;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Synthetic data shared by the benchmarks. All data is generated from a fixed
+ * seed so that runs of different releases measure the same input.
+ */
+public class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Create a complex FID that is the sum of decaying signals at random
+     * frequencies, plus a little noise.
+     *
+     * @param size     number of complex points
+     * @param nSignals number of signals
+     * @param seed     seed for the signal parameters
+     * @return the FID, stored with separate real and imaginary arrays
+     */
+    public static Vec makeFID(int size, int nSignals, long seed) {
+        Random random = new Random(seed);
+        Vec fid = new Vec(size, true);
+        fid.dwellTime = 1.0 / 6000.0;
+        fid.centerFreq = 600.0;
+        double decay = Math.exp(-5.0 / size);
+        for (int i = 0; i < nSignals; i++) {
+            double freq = 340.0 * random.nextDouble() - 170.0;
+            double amp = 10.0 + 90.0 * random.nextDouble();
+            fid.genSignal(freq, decay, amp, 0.0);
+        }
+        fid.genNoise(0.1);
+        fid.makeNotApache();
+        return fid;
+    }
+
+    /**
+     * Create an in-memory 2D frequency domain dataset containing Lorentzian
+     * peaks on a noisy baseline.
+     *
+     * @param name   name of the dataset
+     * @param sizes  size of each dimension
+     * @param nPeaks number of peaks
+     * @param seed   seed for the peak positions and noise
+     * @return the dataset
+     * @throws DatasetException if the dataset can't be created
+     * @throws IOException      if the values can't be written
+     */
+    public static Dataset makeSpectrum2D(String name, int[] sizes, int nPeaks, long seed) throws DatasetException, IOException {
+        Dataset dataset = new Dataset(name, null, sizes, false);
+        for (int i = 0; i < sizes.length; i++) {
+            dataset.setSf(i, 600.0);
+            dataset.setSw(i, 6000.0);
+            dataset.setRefValue(i, 5.0);
+            dataset.setFreqDomain(i, true);
+        }
+        Random random = new Random(seed);
+        double[][] peaks = new double[nPeaks][3];
+        for (double[] peak : peaks) {
+            peak[0] = 4.0 + (sizes[0] - 8.0) * random.nextDouble();
+            peak[1] = 4.0 + (sizes[1] - 8.0) * random.nextDouble();
+            peak[2] = 1.0 + 9.0 * random.nextDouble();
+        }
+        Vec vec = new Vec(sizes[0], false);
+        int[][] pt = {{0, sizes[0] - 1}, {0, 0}};
+        int[] dim = {0, 1};
+        for (int row = 0; row < sizes[1]; row++) {
+            for (int i = 0; i < sizes[0]; i++) {
+                double value = 0.02 * random.nextGaussian();
+                for (double[] peak : peaks) {
+                    double d0 = (i - peak[0]) / 1.5;
+                    double d1 = (row - peak[1]) / 1.5;
+                    value += peak[2] / (1.0 + d0 * d0) / (1.0 + d1 * d1);
+                }
+                vec.set(i, value);
+            }
+            pt[1][0] = row;
+            pt[1][1] = row;
+            dataset.writeVecToDatasetFile(pt, dim, vec);
+        }
+        return dataset;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.chemistry.utilities.NvUtil;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the NMRFx benchmarks and writes the results in a machine-readable
+ * format, so that results from different releases can be compared. By default
+ * the results are written as JSON to a file whose name includes the NMRFx
+ * version and the time of the run. The version is also passed to the forked
+ * JVMs as the nmrfx.version property, so it is recorded in the results.
+ * <p>
+ * Usage: java -jar benchmarks.jar [-o file] [-f json|csv|scsv|text|latex] [-quick] [regex ...]
+ * <p>
+ * The regular expressions select the benchmarks to run (all are run if none
+ * are given). The -quick option uses fewer iterations, for a rough check.
+ * The standard JMH command line is still available with
+ * java -cp benchmarks.jar org.openjdk.jmh.Main
+ */
+public class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String outputFile = null;
+        ResultFormatType format = ResultFormatType.JSON;
+        boolean quick = false;
+        List<String> includes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o" -> outputFile = nextArg(args, ++i);
+                case "-f" -> format = ResultFormatType.valueOf(nextArg(args, ++i).toUpperCase(Locale.ROOT));
+                case "-quick" -> quick = true;
+                default -> includes.add(args[i]);
+            }
+        }
+        String version = NvUtil.getVersion();
+        if (outputFile == null) {
+            String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            outputFile = "nmrfx-benchmarks-" + version + "-" + time + "." + format.name().toLowerCase(Locale.ROOT);
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .resultFormat(format)
+                .result(outputFile)
+                .jvmArgsAppend("-Dnmrfx.version=" + version);
+        if (includes.isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+        } else {
+            includes.forEach(options::include);
+        }
+        if (quick) {
+            options.warmupIterations(1).measurementIterations(2).forks(1);
+        }
+        new Runner(options.build()).run();
+        System.out.println("Results written to " + new File(outputFile).getAbsolutePath());
+    }
+
+    private static String nextArg(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.math.Vec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Dataset.readVectorFromDatasetFile, the call the Processor uses to
+ * read each vector of the indirect dimensions, on a file backed 3D dataset.
+ * Successive invocations step through the rows of the dataset, so reads along
+ * the indirect dimensions touch a different set of blocks each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatasetReadVectorBenchmark {
+    private static final int[] SIZES = {512, 128, 64};
+
+    @Param({"0", "1", "2"})
+    int dim;
+
+    File file;
+    Dataset dataset;
+    Vec vector;
+    int[][] pt;
+    int[] dims;
+    int[][] rows;
+    int iRow = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, DatasetException {
+        file = Files.createTempFile("nmrfxbench", ".nv").toFile();
+        dataset = Dataset.createDataset(file.getPath(), file.getName(), file.getName(), SIZES, false, true);
+        for (int i = 0; i < SIZES.length; i++) {
+            dataset.setSf(i, 600.0);
+            dataset.setSw(i, 6000.0);
+        }
+        dims = new int[SIZES.length];
+        dims[0] = dim;
+        int j = 1;
+        for (int i = 0; i < SIZES.length; i++) {
+            if (i != dim) {
+                dims[j++] = i;
+            }
+        }
+        pt = new int[SIZES.length][2];
+        pt[0][1] = SIZES[dim] - 1;
+        int nRows = 64;
+        rows = new int[nRows][SIZES.length - 1];
+        for (int r = 0; r < nRows; r++) {
+            for (int i = 1; i < SIZES.length; i++) {
+                rows[r][i - 1] = (r * (2 * i + 5)) % SIZES[dims[i]];
+            }
+        }
+        vector = new Vec(SIZES[dim], false);
+        vector.genSignal(SIZES[dim] / 5.0, 0.97, 100.0, 0.0);
+        for (int[] row : rows) {
+            setRow(row);
+            dataset.writeVecToDatasetFile(pt, dims, vector);
+        }
+    }
+
+    private void setRow(int[] row) {
+        for (int i = 1; i < pt.length; i++) {
+            pt[i][0] = row[i - 1];
+            pt[i][1] = row[i - 1];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataset.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public Vec readVector() throws IOException {
+        setRow(rows[iRow]);
+        iRow = (iRow + 1) % rows.length;
+        dataset.readVectorFromDatasetFile(pt, dims, vector);
+        return vector;
+    }
+}
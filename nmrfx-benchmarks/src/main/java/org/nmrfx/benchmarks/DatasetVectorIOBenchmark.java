@@ -0,0 +1,144 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.apache.commons.math3.complex.Complex;
+import org.nmrfx.datasets.DatasetLayout;
+import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.datasets.SubMatrixFile;
+import org.nmrfx.processor.datasets.BigMappedMatrixFile;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.datasets.MappedSubMatrixFile;
+import org.nmrfx.processor.math.Vec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bulk strided readVector and writeVector of the file storage
+ * classes with reading and writing the same vectors one point at a time, as
+ * the default DatasetStorageInterface methods used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatasetVectorIOBenchmark {
+    private static final int[] SIZES = {512, 128, 64};
+
+    @Param({"submatrix", "mapped", "bigmapped"})
+    String storage;
+
+    @Param({"0", "1", "2"})
+    int dim;
+
+    @Param({"true", "false"})
+    boolean complex;
+
+    File file;
+    Dataset dataset;
+    RandomAccessFile raFile;
+    DatasetStorageInterface dataFile;
+    Vec vector;
+    int[] point;
+    int last;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, DatasetException {
+        file = Files.createTempFile("nmrfxbench", ".nv").toFile();
+        Dataset.useCacheFile(false);
+        dataset = Dataset.createDataset(file.getPath(), file.getName(), file.getName(), SIZES, false, true);
+        DatasetLayout layout = dataset.getLayout();
+        raFile = new RandomAccessFile(file, "rw");
+        dataFile = switch (storage) {
+            case "submatrix" -> new SubMatrixFile(dataset, file, layout, raFile, true);
+            case "bigmapped" -> new BigMappedMatrixFile(dataset, file, layout, raFile, true);
+            default -> new MappedSubMatrixFile(dataset, file, layout, raFile, true);
+        };
+        last = SIZES[dim] - 1;
+        int vecSize = complex ? SIZES[dim] / 2 : SIZES[dim];
+        vector = new Vec(vecSize, complex);
+        vector.genSignal(vecSize / 5.0, 0.97, 100.0, 0.0);
+        point = new int[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            point[i] = i == dim ? 0 : SIZES[i] / 3;
+        }
+        dataFile.writeVector(0, last, point, dim, 1.0, vector);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataFile.close();
+        dataset.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public Vec readBulk() throws IOException {
+        dataFile.readVector(0, last, point, dim, 1.0, vector);
+        return vector;
+    }
+
+    @Benchmark
+    public Vec readPointwise() throws IOException {
+        double dReal = 0.0;
+        int j = 0;
+        for (int i = 0; i <= last; i++) {
+            point[dim] = i;
+            if (complex) {
+                if ((i % 2) != 0) {
+                    vector.set(j++, new Complex(dReal, dataFile.getFloat(point)));
+                } else {
+                    dReal = dataFile.getFloat(point);
+                }
+            } else {
+                vector.set(j++, dataFile.getFloat(point));
+            }
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public void writeBulk() throws IOException {
+        dataFile.writeVector(0, last, point, dim, 1.0, vector);
+    }
+
+    @Benchmark
+    public void writePointwise() throws IOException {
+        int j = 0;
+        for (int i = 0; i <= last; i++) {
+            point[dim] = i;
+            if (complex) {
+                if ((i % 2) != 0) {
+                    dataFile.setFloat((float) vector.getImag(j++), point);
+                } else {
+                    dataFile.setFloat((float) vector.getReal(j), point);
+                }
+            } else {
+                dataFile.setFloat((float) vector.getReal(j++), point);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.linear.Array2DRowFieldMatrix;
+import org.nmrfx.processor.math.LinearPrediction;
+import org.nmrfx.processor.math.Vec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares total least squares linear prediction coefficients calculated
+ * with FieldMatrix&lt;Complex&gt; (field) and with the primitive complex
+ * matrix code (primitive), for FIDs of the size typical of indirect
+ * dimensions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearPredictionBenchmark {
+
+    @Param({"64", "256"})
+    int size;
+
+    @Param({"8", "16"})
+    int nCoef;
+
+    @Param({"field", "primitive"})
+    String impl;
+
+    Complex[] cvec;
+    int m;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Vec fid = BenchmarkData.makeFID(size, 4, 41);
+        fid.makeApache();
+        cvec = fid.getCvec();
+        m = size - nCoef - 1;
+    }
+
+    @Benchmark
+    public Complex[] tlsCoefficients() throws Exception {
+        if (impl.equals("field")) {
+            Complex[][] ary = new Complex[m][nCoef + 1];
+            for (int i = 0; i < m; i++) {
+                System.arraycopy(cvec, i, ary[i], 0, nCoef);
+                ary[i][nCoef] = cvec[i + nCoef];
+            }
+            return LinearPrediction.tlsMat(new Array2DRowFieldMatrix<>(ary, false));
+        } else {
+            return LinearPrediction.getCoefsByTLS(cvec, 0, m, nCoef, 0.0, false);
+        }
+    }
+
+}
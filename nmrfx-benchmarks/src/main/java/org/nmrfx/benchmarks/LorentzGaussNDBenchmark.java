@@ -0,0 +1,97 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.apache.commons.math3.optim.PointValuePair;
+import org.nmrfx.processor.optimization.LorentzGaussND;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures fitting a cluster of overlapping 2D peaks with LorentzGaussND, and
+ * a single evaluation of its objective function. The data are simulated from
+ * known parameters and the fit starts from perturbed values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LorentzGaussNDBenchmark {
+    // base, then amplitude, width and position in each dimension for each peak, then the shape factors
+    private static final double[] TRUTH = {
+            0.0,
+            10.0, 2.5, 8.0, 2.5, 10.0,
+            6.0, 2.0, 12.0, 3.0, 11.0,
+            8.0, 3.0, 15.0, 2.0, 16.0,
+            0.4, 0.4};
+    private static final double[] START = {
+            0.1,
+            9.0, 3.0, 8.4, 2.2, 9.7,
+            7.0, 2.4, 11.6, 2.6, 11.4,
+            7.0, 2.6, 15.5, 2.4, 15.6,
+            0.5, 0.5};
+
+    @Param({"24"})
+    int size;
+
+    @Param({"2000"})
+    int nSteps;
+
+    LorentzGaussND fitter;
+    double[] scaledStart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] sizes = {size, size};
+        fitter = new LorentzGaussND(sizes);
+        int nPar = TRUTH.length;
+        double[] lower = new double[nPar];
+        double[] upper = new double[nPar];
+        boolean[] floating = new boolean[nPar];
+        for (int i = 0; i < nPar; i++) {
+            lower[i] = START[i] - Math.max(1.0, Math.abs(START[i]) * 0.5);
+            upper[i] = START[i] + Math.max(1.0, Math.abs(START[i]) * 0.5);
+            floating[i] = true;
+        }
+        lower[nPar - 2] = 0.0;
+        lower[nPar - 1] = 0.0;
+        upper[nPar - 2] = 1.0;
+        upper[nPar - 1] = 1.0;
+        fitter.setIntensities(new double[1][size * size]);
+        fitter.setOffsets(START, lower, upper, floating, new ArrayList<>());
+        fitter.initRandom(37);
+        fitter.simulate(TRUTH, 0.01);
+        scaledStart = fitter.scalePar(START).clone();
+    }
+
+    @Benchmark
+    public double value() {
+        return fitter.value(scaledStart);
+    }
+
+    @Benchmark
+    public PointValuePair fit() {
+        int nFloating = scaledStart.length;
+        int nInterpolationPoints = (nFloating + 1) * (nFloating + 2) / 2;
+        return fitter.optimizeBOBYQA(nSteps, nInterpolationPoints);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.peaks.PeakList;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.datasets.peaks.PeakPickParameters;
+import org.nmrfx.processor.datasets.peaks.PeakPicker;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures PeakPicker.peakPick on an in-memory 2D spectrum of synthetic
+ * Lorentzian peaks, picking serially and in tiled mode. The peak list is
+ * replaced by each invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeakPickerBenchmark {
+    private static final String LIST_NAME = "benchpick";
+
+    @Param({"1024"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean tiled;
+
+    Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, DatasetException {
+        int[] sizes = {size, size / 2};
+        dataset = BenchmarkData.makeSpectrum2D("benchpick", sizes, 400, 31);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PeakList.remove(LIST_NAME);
+        dataset.close();
+    }
+
+    @Benchmark
+    public PeakList peakPick() throws IOException {
+        PeakPickParameters peakPickPar = (new PeakPickParameters(dataset, LIST_NAME)).level(0.5).tiled(tiled);
+        peakPickPar.mode(PeakPickParameters.PickMode.REPLACEIF);
+        peakPickPar.region("point");
+        peakPickPar.pos(true).neg(false);
+        peakPickPar.calcRange();
+        PeakPicker picker = new PeakPicker(peakPickPar);
+        return picker.peakPick();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.datasets.DatasetLayout;
+import org.nmrfx.datasets.StorageCache;
+import org.nmrfx.datasets.StorageCache.DatasetKey;
+import org.nmrfx.datasets.SubMatrixFile;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the StorageCache used by SubMatrixFile: reading and writing a
+ * vector of values through StorageCache.io, and reading the same vector one
+ * value at a time. With the default cache size all blocks stay resident, so
+ * these measure the cost of lookups and locking. The "small" cache only holds
+ * a few blocks, so reads along the indirect dimensions also load and evict
+ * blocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageCacheBenchmark {
+    private static final int[] SIZES = {512, 128, 64};
+
+    @Param({"0", "1", "2"})
+    int dim;
+
+    @Param({"default", "small"})
+    String cacheSize;
+
+    File file;
+    Dataset dataset;
+    RandomAccessFile raFile;
+    SubMatrixFile dataFile;
+    StorageCache cache;
+    long savedMaxBytes;
+    boolean savedUseCacheFile;
+    DatasetKey[] vecKeys;
+    int[] offsets;
+    double[] values;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, DatasetException {
+        file = Files.createTempFile("nmrfxbench", ".nv").toFile();
+        savedUseCacheFile = Dataset.isUseCacheFile();
+        Dataset.useCacheFile(false);
+        dataset = Dataset.createDataset(file.getPath(), file.getName(), file.getName(), SIZES, false, true);
+        DatasetLayout layout = dataset.getLayout();
+        raFile = new RandomAccessFile(file, "rw");
+        dataFile = new SubMatrixFile(dataset, file, layout, raFile, true);
+        cache = SubMatrixFile.getCache();
+        savedMaxBytes = cache.getMaxBytes();
+        if (cacheSize.equals("small")) {
+            cache.setMaxBytes(8 * layout.getBlockPoints() * Float.BYTES);
+        }
+
+        int n = SIZES[dim];
+        vecKeys = new DatasetKey[n];
+        offsets = new int[n];
+        values = new double[n];
+        DatasetKey[] blockKeys = new DatasetKey[layout.totalBlocks];
+        int[] point = new int[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            point[i] = i == dim ? 0 : SIZES[i] / 3;
+        }
+        for (int i = 0; i < n; i++) {
+            point[dim] = i;
+            int blockNum = 0;
+            for (int iDim = 0; iDim < point.length; iDim++) {
+                blockNum += (point[iDim] / layout.blockSize[iDim]) * layout.offsetBlocks[iDim];
+            }
+            if (blockKeys[blockNum] == null) {
+                blockKeys[blockNum] = new DatasetKey(dataFile, blockNum);
+            }
+            vecKeys[i] = blockKeys[blockNum];
+            offsets[i] = dataFile.getOffsetInBlock(point);
+            values[i] = Math.sin(i * 0.1);
+        }
+        cache.io(vecKeys, offsets, values, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.flush(dataFile);
+        cache.setMaxBytes(savedMaxBytes);
+        Dataset.useCacheFile(savedUseCacheFile);
+        dataFile.close();
+        dataset.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public double[] readVector() throws IOException {
+        cache.io(vecKeys, offsets, values, 1);
+        return values;
+    }
+
+    @Benchmark
+    public void writeVector() throws IOException {
+        cache.io(vecKeys, offsets, values, 0);
+    }
+
+    @Benchmark
+    public double readPointwise() throws IOException {
+        double sum = 0.0;
+        for (int i = 0; i < offsets.length; i++) {
+            sum += cache.io(vecKeys[i], offsets[i], 0.0f, 0);
+        }
+        return sum;
+    }
+}
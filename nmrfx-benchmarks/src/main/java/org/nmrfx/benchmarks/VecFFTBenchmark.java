@@ -0,0 +1,70 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.benchmarks;
+
+import org.nmrfx.processor.math.Vec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Vec.fft on synthetic FIDs generated with Vec.genSignal. The FID is
+ * copied into the work vector before each transform, so copyOnly gives the
+ * baseline to subtract.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VecFFTBenchmark {
+
+    @Param({"1024", "8192", "65536"})
+    int size;
+
+    Vec fid;
+    Vec work;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fid = BenchmarkData.makeFID(size, 8, 17);
+        work = new Vec(size, true);
+    }
+
+    @Benchmark
+    public Vec copyOnly() {
+        fid.copy(work);
+        return work;
+    }
+
+    @Benchmark
+    public Vec fft() {
+        fid.copy(work);
+        work.fft();
+        return work;
+    }
+
+    @Benchmark
+    public Vec fftRoundTrip() {
+        fid.copy(work);
+        work.fft();
+        work.ifft();
+        return work;
+    }
+}
@@ -515,6 +515,9 @@ public class Atom implements IAtom, Comparable<Atom>, TableItem {
 
     public void setName(String name) {
         this.name = name;
+        if ((entity != null) && (entity.molecule != null)) {
+            entity.molecule.invalidateAtomArray();
+        }
     }
 
     @Override
@@ -0,0 +1,196 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.chemistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An atom selection expression (in the syntax of MolFilter) that is parsed
+ * once and can then be evaluated many times. Atom name patterns are prepared
+ * when the selection is made, with names that have no wildcards compared
+ * directly. The atoms selected in a molecule are kept until the topology of
+ * the molecule changes, so evaluating the same selection again is cheap.
+ */
+public class AtomSelection {
+
+    private static final Logger log = LoggerFactory.getLogger(AtomSelection.class);
+
+    private final MolFilter molFilter;
+    private final String[] patterns;
+    private final boolean[] negated;
+    private final boolean[] literal;
+    private final boolean checkAll;
+    private MoleculeBase lastMolecule = null;
+    private int lastVersion = -1;
+    private List<SpatialSet> lastSelected = Collections.emptyList();
+
+    public AtomSelection(MolFilter molFilter) {
+        this.molFilter = molFilter;
+        int nPatterns = molFilter.atomNames.size();
+        patterns = new String[nPatterns];
+        negated = new boolean[nPatterns];
+        literal = new boolean[nPatterns];
+        boolean anyNegated = false;
+        for (int i = 0; i < nPatterns; i++) {
+            String atomName = ((String) molFilter.atomNames.elementAt(i)).toLowerCase();
+            if (atomName.charAt(0) == '!') {
+                negated[i] = true;
+                anyNegated = true;
+                atomName = atomName.substring(1);
+            }
+            patterns[i] = atomName;
+            literal[i] = isLiteral(atomName);
+        }
+        checkAll = anyNegated;
+    }
+
+    /**
+     * Parse a selection expression.
+     *
+     * @param expression the expression, for example "A:2-10.CA,CB"
+     * @return the selection
+     */
+    public static AtomSelection compile(String expression) {
+        return new AtomSelection(new MolFilter(expression));
+    }
+
+    public MolFilter getMolFilter() {
+        return molFilter;
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if ((ch == '*') || (ch == '?') || (ch == '[') || (ch == '\\')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchName(String atomName, int iPattern) {
+        if (literal[iPattern]) {
+            return atomName.equalsIgnoreCase(patterns[iPattern]);
+        } else {
+            return Util.stringMatch(atomName.toLowerCase(), patterns[iPattern]);
+        }
+    }
+
+    /**
+     * Get the spatial sets of the atoms of a molecule that match the
+     * selection.
+     *
+     * @param molecule the molecule
+     * @return a new list of the matching spatial sets
+     */
+    public List<SpatialSet> select(MoleculeBase molecule) {
+        if (molecule == null) {
+            return new ArrayList<>();
+        }
+        List<SpatialSet> selected;
+        synchronized (this) {
+            if ((molecule != lastMolecule) || (molecule.getTopologyVersion() != lastVersion)) {
+                int version = molecule.getTopologyVersion();
+                lastSelected = evaluate(molecule);
+                lastMolecule = molecule;
+                lastVersion = version;
+            }
+            selected = lastSelected;
+        }
+        return new ArrayList<>(selected);
+    }
+
+    private List<SpatialSet> evaluate(MoleculeBase molecule) {
+        List<SpatialSet> selected = new ArrayList<>(32);
+        for (CoordSet coordSet : molecule.coordSets.values()) {
+            for (Entity entity : coordSet.getEntities().values()) {
+                if (!molFilter.matchCoordSetAndEntity(coordSet, entity)) {
+                    continue;
+                }
+                Compound compound;
+                Residue lastResidue = null;
+                if (entity instanceof Polymer polymer) {
+                    if (molFilter.firstRes.equals("*")) {
+                        compound = polymer.getFirstResidue();
+                    } else {
+                        compound = polymer.getResidue(molFilter.firstRes);
+                    }
+                    if (molFilter.lastRes.equals("*")) {
+                        lastResidue = polymer.getLastResidue();
+                    } else {
+                        lastResidue = polymer.getResidue(molFilter.lastRes);
+                    }
+                } else {
+                    compound = (Compound) entity;
+                    if (!molFilter.firstRes.equals("*") && !molFilter.firstRes.equals(compound.number)) {
+                        continue;
+                    }
+                }
+                while (compound != null) {
+                    if (matchResidueType(compound)) {
+                        addAtoms(coordSet, compound, selected);
+                    }
+                    if (!(entity instanceof Polymer) || (compound == lastResidue)) {
+                        break;
+                    }
+                    compound = ((Residue) compound).next;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private boolean matchResidueType(Compound compound) {
+        if (!molFilter.firstResType.equals("*") && (compound instanceof Residue residue)) {
+            return String.valueOf(residue.getOneLetter()).equals(molFilter.firstResType);
+        }
+        return true;
+    }
+
+    private void addAtoms(CoordSet coordSet, Compound compound, List<SpatialSet> selected) {
+        for (Atom atom : compound.atoms) {
+            boolean validAtom = false;
+            for (int i = 0; i < patterns.length; i++) {
+                boolean match = matchName(atom.name, i);
+                if (negated[i]) {
+                    if (match) {
+                        validAtom = false;
+                        break;
+                    }
+                    validAtom = atom.getSpatialSet() != null;
+                } else if (match) {
+                    validAtom = atom.getSpatialSet() != null;
+                    if (!validAtom) {
+                        log.warn("null spatialset while matching atom {} in coordset {}", patterns[i], coordSet.getName());
+                    }
+                    if (!checkAll) {
+                        break;
+                    }
+                }
+            }
+            if (validAtom) {
+                selected.add(atom.getSpatialSet());
+            }
+        }
+    }
+}
@@ -180,6 +180,9 @@ public class Compound extends Entity implements AtomIterable {
             atom.name = newName;
             atomMap.remove(oldName.toLowerCase());
             atomMap.put(atom.name.toLowerCase(), atom);
+            if (molecule != null) {
+                molecule.invalidateAtomArray();
+            }
 
             return (0);
         }
@@ -191,6 +194,9 @@ public class Compound extends Entity implements AtomIterable {
             newMap.put(atom.name.toLowerCase(), atom);
         });
         atomMap = newMap;
+        if (molecule != null) {
+            molecule.invalidateAtomArray();
+        }
     }
 
     public String toNEFSequenceString(int idx, String link) {
@@ -0,0 +1,352 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.chemistry;
+
+import java.util.Arrays;
+
+/**
+ * Coordinates of the atoms of a molecule for each structure, kept in
+ * primitive arrays. Each atom with coordinates has a slot, and for each
+ * structure the x, y and z values of slot i are at positions 3i, 3i+1 and 3i+2
+ * of one array, so an ensemble can be processed a structure at a time without
+ * visiting a Point3 per atom. SpatialSet reads and writes its coordinates
+ * through a slot in the store of its molecule.
+ * <p>
+ * Adding a slot or a structure replaces the arrays with larger copies and
+ * publishes them through a volatile field, so reads from other threads always
+ * see complete arrays. A write made while the arrays are being replaced can go
+ * to the old copy and be lost, so slots and structures should be added before
+ * coordinates are written from several threads at once.
+ * <p>
+ * Slots released with freeSlot, as when an atom is removed from its molecule
+ * or moves to another one, are reused by later calls to addSlot, so the arrays
+ * only grow to the largest number of slots in use at one time.
+ */
+public class CoordinateStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static class StructureCoords {
+
+        final double[] xyz;
+        final float[] occupancy;
+        final float[] bfactor;
+        final float[] order;
+        final boolean[] valid;
+
+        StructureCoords(int capacity) {
+            xyz = new double[capacity * 3];
+            occupancy = new float[capacity];
+            bfactor = new float[capacity];
+            order = new float[capacity];
+            valid = new boolean[capacity];
+        }
+
+        StructureCoords(StructureCoords source, int capacity) {
+            xyz = Arrays.copyOf(source.xyz, capacity * 3);
+            occupancy = Arrays.copyOf(source.occupancy, capacity);
+            bfactor = Arrays.copyOf(source.bfactor, capacity);
+            order = Arrays.copyOf(source.order, capacity);
+            valid = Arrays.copyOf(source.valid, capacity);
+        }
+
+        void reset(int slot) {
+            int i = slot * 3;
+            xyz[i] = 0.0;
+            xyz[i + 1] = 0.0;
+            xyz[i + 2] = 0.0;
+            occupancy[slot] = 1.0f;
+            bfactor[slot] = 1.0f;
+            order[slot] = 1.0f;
+        }
+    }
+
+    private volatile StructureCoords[] structures = new StructureCoords[0];
+    private int capacity = INITIAL_CAPACITY;
+    private int nSlots = 0;
+    private int[] freeSlots = new int[0];
+    private int nFree = 0;
+
+    /**
+     * Add a slot for the coordinates of one atom, reusing a freed slot if
+     * there is one.
+     *
+     * @return the index of the slot
+     */
+    public synchronized int addSlot() {
+        if (nFree > 0) {
+            return freeSlots[--nFree];
+        }
+        if (nSlots == capacity) {
+            capacity *= 2;
+            StructureCoords[] current = structures;
+            StructureCoords[] resized = new StructureCoords[current.length];
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != null) {
+                    resized[i] = new StructureCoords(current[i], capacity);
+                }
+            }
+            structures = resized;
+        }
+        return nSlots++;
+    }
+
+    /**
+     * Free a slot so that it can be returned by a later call to addSlot. The
+     * slot is made invalid in every structure and must not be used after this
+     * by whoever added it.
+     *
+     * @param slot the slot
+     */
+    public synchronized void freeSlot(int slot) {
+        for (StructureCoords structure : structures) {
+            if (structure != null) {
+                structure.valid[slot] = false;
+            }
+        }
+        if (nFree == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, nFree * 2));
+        }
+        freeSlots[nFree++] = slot;
+    }
+
+    /**
+     * Get the number of slots that have been added, including freed slots
+     * that have not yet been reused.
+     *
+     * @return the number of slots
+     */
+    public synchronized int getSlotCount() {
+        return nSlots;
+    }
+
+    /**
+     * Get the number of freed slots waiting to be reused.
+     *
+     * @return the number of free slots
+     */
+    public synchronized int getFreeSlotCount() {
+        return nFree;
+    }
+
+    /**
+     * Get the number of structures, which is one more than the highest
+     * structure number that has been written.
+     *
+     * @return the number of structures
+     */
+    public int getStructureCount() {
+        return structures.length;
+    }
+
+    private StructureCoords get(int iStruct) {
+        StructureCoords[] current = structures;
+        return (iStruct >= 0) && (iStruct < current.length) ? current[iStruct] : null;
+    }
+
+    private StructureCoords getOrAdd(int iStruct) {
+        StructureCoords structure = get(iStruct);
+        if (structure == null) {
+            structure = addStructure(iStruct);
+        }
+        return structure;
+    }
+
+    private synchronized StructureCoords addStructure(int iStruct) {
+        StructureCoords[] current = structures;
+        if ((iStruct < current.length) && (current[iStruct] != null)) {
+            return current[iStruct];
+        }
+        StructureCoords[] added = Arrays.copyOf(current, Math.max(current.length, iStruct + 1));
+        added[iStruct] = new StructureCoords(capacity);
+        structures = added;
+        return added[iStruct];
+    }
+
+    public boolean isValid(int iStruct, int slot) {
+        StructureCoords structure = get(iStruct);
+        return (structure != null) && structure.valid[slot];
+    }
+
+    /**
+     * Set whether a slot has coordinates in a structure. A slot that becomes
+     * valid starts at the origin with occupancy, B factor and order of 1.0.
+     *
+     * @param iStruct the structure number
+     * @param slot    the slot
+     * @param valid   true if the slot has coordinates
+     */
+    public void setValid(int iStruct, int slot, boolean valid) {
+        StructureCoords structure = valid ? getOrAdd(iStruct) : get(iStruct);
+        if (structure != null) {
+            if (valid && !structure.valid[slot]) {
+                structure.reset(slot);
+            }
+            structure.valid[slot] = valid;
+        }
+    }
+
+    public double getX(int iStruct, int slot) {
+        return get(iStruct).xyz[slot * 3];
+    }
+
+    public double getY(int iStruct, int slot) {
+        return get(iStruct).xyz[slot * 3 + 1];
+    }
+
+    public double getZ(int iStruct, int slot) {
+        return get(iStruct).xyz[slot * 3 + 2];
+    }
+
+    /**
+     * Copy the coordinates of a slot into an array.
+     *
+     * @param iStruct the structure number
+     * @param slot    the slot
+     * @param xyz     the array to copy into
+     * @param offset  position of the x value in the array
+     * @return true if the slot has coordinates in the structure
+     */
+    public boolean getXYZ(int iStruct, int slot, double[] xyz, int offset) {
+        StructureCoords structure = get(iStruct);
+        if ((structure == null) || !structure.valid[slot]) {
+            return false;
+        }
+        System.arraycopy(structure.xyz, slot * 3, xyz, offset, 3);
+        return true;
+    }
+
+    /**
+     * Set the coordinates of a slot, making it valid.
+     *
+     * @param iStruct the structure number
+     * @param slot    the slot
+     * @param x       the x coordinate
+     * @param y       the y coordinate
+     * @param z       the z coordinate
+     */
+    public void setXYZ(int iStruct, int slot, double x, double y, double z) {
+        setValid(iStruct, slot, true);
+        double[] xyz = get(iStruct).xyz;
+        int i = slot * 3;
+        xyz[i] = x;
+        xyz[i + 1] = y;
+        xyz[i + 2] = z;
+    }
+
+    public float getOccupancy(int iStruct, int slot) {
+        return get(iStruct).occupancy[slot];
+    }
+
+    public void setOccupancy(int iStruct, int slot, float value) {
+        get(iStruct).occupancy[slot] = value;
+    }
+
+    public float getBFactor(int iStruct, int slot) {
+        return get(iStruct).bfactor[slot];
+    }
+
+    public void setBFactor(int iStruct, int slot, float value) {
+        get(iStruct).bfactor[slot] = value;
+    }
+
+    public float getOrder(int iStruct, int slot) {
+        return get(iStruct).order[slot];
+    }
+
+    public void setOrder(int iStruct, int slot, float value) {
+        get(iStruct).order[slot] = value;
+    }
+
+    /**
+     * Copy the values of a slot of another store into a slot of this one.
+     *
+     * @param source      the store to copy from
+     * @param sourceSlot  the slot to copy from
+     * @param targetSlot  the slot to copy to
+     * @param nStructures the number of structures to copy
+     */
+    public void copySlot(CoordinateStore source, int sourceSlot, int targetSlot, int nStructures) {
+        for (int iStruct = 0; iStruct < nStructures; iStruct++) {
+            StructureCoords from = source.get(iStruct);
+            if ((from != null) && from.valid[sourceSlot]) {
+                StructureCoords to = getOrAdd(iStruct);
+                System.arraycopy(from.xyz, sourceSlot * 3, to.xyz, targetSlot * 3, 3);
+                to.occupancy[targetSlot] = from.occupancy[sourceSlot];
+                to.bfactor[targetSlot] = from.bfactor[sourceSlot];
+                to.order[targetSlot] = from.order[sourceSlot];
+                to.valid[targetSlot] = true;
+            } else {
+                setValid(iStruct, targetSlot, false);
+            }
+        }
+    }
+
+    /**
+     * Copy the coordinates of a list of slots in one structure into an array.
+     * The coordinates of slots[i] are copied to positions 3i to 3i+2, and
+     * slots without coordinates are copied as zeros.
+     *
+     * @param iStruct the structure number
+     * @param slots   the slots to copy
+     * @param xyz     the array to copy into, of length at least 3 * slots.length
+     * @param valid   array set to whether each slot has coordinates, may be null
+     * @return the number of slots with coordinates
+     */
+    public int copyOut(int iStruct, int[] slots, double[] xyz, boolean[] valid) {
+        StructureCoords structure = get(iStruct);
+        int nValid = 0;
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            boolean isValid = (structure != null) && structure.valid[slot];
+            if (isValid) {
+                System.arraycopy(structure.xyz, slot * 3, xyz, i * 3, 3);
+                nValid++;
+            } else {
+                xyz[i * 3] = 0.0;
+                xyz[i * 3 + 1] = 0.0;
+                xyz[i * 3 + 2] = 0.0;
+            }
+            if (valid != null) {
+                valid[i] = isValid;
+            }
+        }
+        return nValid;
+    }
+
+    /**
+     * Copy coordinates from an array into a list of slots in one structure,
+     * making the slots valid. The coordinates for slots[i] are taken from
+     * positions 3i to 3i+2.
+     *
+     * @param iStruct the structure number
+     * @param slots   the slots to copy into
+     * @param xyz     the coordinates
+     */
+    public void copyIn(int iStruct, int[] slots, double[] xyz) {
+        StructureCoords structure = getOrAdd(iStruct);
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (!structure.valid[slot]) {
+                structure.reset(slot);
+                structure.valid[slot] = true;
+            }
+            System.arraycopy(xyz, i * 3, structure.xyz, slot * 3, 3);
+        }
+    }
+}
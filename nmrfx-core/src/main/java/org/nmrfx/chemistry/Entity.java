@@ -245,6 +245,7 @@ public class Entity implements AtomContainer, ITree {
     public void removeAtom(final Atom atom) {
         atom.removeBonds();
         atoms.remove(atom);
+        atom.spatialSet.detachStore();
         molecule.invalidateAtomArray();
     }
 
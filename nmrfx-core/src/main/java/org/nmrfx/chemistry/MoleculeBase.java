@@ -16,6 +16,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -52,6 +53,7 @@ public class MoleculeBase implements Serializable, ITree {
     public static final int LABEL_HPPM = 17;
     public static final int LABEL_PPM = 18;
     public static final int LABEL_NONHC = 19;
+    private static final int MAX_ATOM_LOOKUPS = 100000;
     private static final String ATOM_MATCH_WARN_MSG_TEMPLATE = "null spatialset while matching atom {} in coordset {}";
     public AtomicBoolean atomUpdated = new AtomicBoolean(false);
     Updater atomUpdater = null;
@@ -337,12 +339,15 @@ public class MoleculeBase implements Serializable, ITree {
     protected List<Atom> atoms = new ArrayList<>();
     protected List<Bond> bonds = new ArrayList<Bond>();
     private boolean atomArrayValid = false;
+    private volatile int topologyVersion = 0;
+    private final Map<String, AtomLookup> atomLookupCache = new ConcurrentHashMap<>();
     protected HashMap<String, String> propertyMap = new HashMap<String, String>();
     MolecularConstraints molecularConstraints = new MolecularConstraints(this);
     List<SecondaryStructure> secondaryStructure = new ArrayList<>();
     Map<String, RelaxationSet> relaxationSetMap = new HashMap<>();
     Map<String, OrderParSet> orderParSetMap = new HashMap<>();
     Map<String, Compound> compoundMap = new HashMap<>();
+    private final CoordinateStore coordinateStore = new CoordinateStore();
     public MoleculeBase(String name) {
         this.name = name;
         coordSets = new LinkedHashMap<>();
@@ -619,133 +624,7 @@ public class MoleculeBase implements Serializable, ITree {
     }
 
     public static List<SpatialSet> matchAtoms(MolFilter molFilter, MoleculeBase molecule) {
-
-        List<SpatialSet> selected = new ArrayList<>(32);
-        if (molecule == null) {
-            return selected;
-        }
-
-        Residue firstResidue;
-        Residue lastResidue = null;
-        CoordSet coordSet;
-
-        boolean checkAll = false;
-
-        for (int iAtom = 0; iAtom < molFilter.atomNames.size(); iAtom++) {
-            String atomName = ((String) molFilter.atomNames.elementAt(iAtom));
-
-            if (atomName.charAt(0) == '!') {
-                checkAll = true;
-            }
-        }
-
-        Iterator e = molecule.coordSets.values().iterator();
-
-        while (e.hasNext()) {
-            coordSet = (CoordSet) e.next();
-            Iterator entIterator = coordSet.getEntities().values().iterator();
-
-            while (entIterator.hasNext()) {
-                Entity entity = (Entity) entIterator.next();
-                Compound compound;
-                if (!molFilter.matchCoordSetAndEntity(coordSet, entity)) {
-                    continue;
-                }
-                if (entity instanceof Polymer polymer) {
-                    if (molFilter.firstRes.equals("*")) {
-                        firstResidue = polymer.getFirstResidue();
-                    } else {
-                        firstResidue = polymer.getResidue(molFilter.firstRes);
-                    }
-
-                    if (molFilter.lastRes.equals("*")) {
-                        lastResidue = polymer.getLastResidue();
-                    } else {
-                        lastResidue = polymer.getResidue(molFilter.lastRes);
-                    }
-
-                    compound = firstResidue;
-                } else {
-                    compound = (Compound) entity;
-                }
-
-                if (compound == null) {
-                    continue;
-                }
-
-                String atomName;
-
-                while (compound != null) {
-                    for (Atom atom : compound.atoms) {
-                        boolean validRes = true;
-
-                        if (!(entity instanceof Polymer)) {
-                            if (!molFilter.firstRes.equals("*") && (!molFilter.firstRes.equals(compound.number))) {
-                                validRes = false;
-                            }
-                        }
-                        if (!molFilter.firstResType.equals("*")) {
-                            if (compound instanceof Residue residue) {
-                                String snglChar = String.valueOf(residue.getOneLetter());
-                                String resType = molFilter.firstResType;
-                                if (!snglChar.equals(resType)) {
-                                    validRes = false;
-                                }
-                            }
-                        }
-                        if (validRes) {
-                            boolean validAtom = false;
-
-                            for (int iAtom = 0; iAtom < molFilter.atomNames.size(); iAtom++) {
-                                atomName = ((String) molFilter.atomNames.elementAt(iAtom)).toLowerCase();
-
-                                if (atomName.charAt(0) == '!') {
-                                    if (!Util.stringMatch(atom.name.toLowerCase(), atomName.substring(1))) {
-                                        SpatialSet spatialSet = atom.getSpatialSet();
-
-                                        validAtom = spatialSet != null;
-                                    } else {
-                                        validAtom = false;
-
-                                        break;
-                                    }
-                                } else if (Util.stringMatch(atom.name.toLowerCase(), atomName)) {
-                                    SpatialSet spatialSet = atom.getSpatialSet();
-
-                                    if (spatialSet != null) {
-                                        validAtom = true;
-                                    } else {
-                                        validAtom = false;
-                                        log.warn(ATOM_MATCH_WARN_MSG_TEMPLATE, atomName, coordSet.getName());
-                                    }
-
-                                    if (!checkAll) {
-                                        break;
-                                    }
-                                }
-                            }
-
-                            if (validAtom) {
-                                SpatialSet spatialSet = atom.getSpatialSet();
-                                selected.add(spatialSet);
-                            }
-                        }
-                    }
-
-                    if (entity instanceof Polymer) {
-                        if (compound == lastResidue) {
-                            break;
-                        }
-
-                        compound = ((Residue) compound).next;
-                    } else {
-                        break;
-                    }
-                }
-            }
-        }
-
-        return (selected);
+        return new AtomSelection(molFilter).select(molecule);
     }
 
     public static Atom getAtom(MolFilter molFilter) throws InvalidMoleculeException {
@@ -948,8 +827,24 @@ public class MoleculeBase implements Serializable, ITree {
         return structs;
     }
 
+    private record AtomLookup(int version, Atom atom) {
+    }
+
     public void invalidateAtomArray() {
         atomArrayValid = false;
+        topologyVersion++;
+        atomLookupCache.clear();
+    }
+
+    /**
+     * Get a number that changes whenever atoms, residues or entities are
+     * added, removed or renamed, so that results derived from the topology
+     * can be reused until it changes.
+     *
+     * @return the topology version
+     */
+    public int getTopologyVersion() {
+        return topologyVersion;
     }
 
     public void updateAtomArray() {
@@ -1046,6 +941,67 @@ public class MoleculeBase implements Serializable, ITree {
 
     }
 
+    /**
+     * Get the store holding the coordinates of the atoms of this molecule.
+     *
+     * @return the coordinate store
+     */
+    public CoordinateStore getCoordinateStore() {
+        return coordinateStore;
+    }
+
+    /**
+     * Get the slots in the coordinate store of a list of spatial sets. The
+     * slots can be used with CoordinateStore.copyOut and copyIn to read or
+     * write the coordinates of the sets one structure at a time.
+     *
+     * @param spatialSets the spatial sets, which must be in this molecule
+     * @return the slots
+     */
+    public int[] getCoordinateSlots(List<SpatialSet> spatialSets) {
+        int[] slots = new int[spatialSets.size()];
+        int i = 0;
+        for (SpatialSet spatialSet : spatialSets) {
+            if (spatialSet.attachStore() != coordinateStore) {
+                throw new IllegalArgumentException("Atom " + spatialSet.getFullName() + " is not in molecule " + name);
+            }
+            slots[i++] = spatialSet.slot;
+        }
+        return slots;
+    }
+
+    /**
+     * Copy the coordinates of a structure for a list of spatial sets into an
+     * array, with the x, y and z values of set i at positions 3i to 3i+2.
+     *
+     * @param iStruct     the structure number
+     * @param spatialSets the spatial sets, which must be in this molecule
+     * @param xyz         the array to copy into
+     * @param valid       array set to whether each set has coordinates, may be
+     *                    null
+     * @return the number of sets with coordinates
+     */
+    public int getCoordinates(int iStruct, List<SpatialSet> spatialSets, double[] xyz, boolean[] valid) {
+        return coordinateStore.copyOut(iStruct, getCoordinateSlots(spatialSets), xyz, valid);
+    }
+
+    /**
+     * Set the coordinates of a structure for a list of spatial sets from an
+     * array, with the x, y and z values of set i at positions 3i to 3i+2. The
+     * registered updater is notified of each atom.
+     *
+     * @param iStruct     the structure number
+     * @param spatialSets the spatial sets, which must be in this molecule
+     * @param xyz         the coordinates
+     */
+    public void setCoordinates(int iStruct, List<SpatialSet> spatialSets, double[] xyz) {
+        coordinateStore.copyIn(iStruct, getCoordinateSlots(spatialSets), xyz);
+        for (SpatialSet spatialSet : spatialSets) {
+            spatialSet.nCoords = Math.max(spatialSet.nCoords, iStruct + 1);
+            changed(spatialSet.atom);
+        }
+    }
+
     public void calcBonds() {
         Atom atom1;
         Atom atom2;
@@ -1226,15 +1182,33 @@ public class MoleculeBase implements Serializable, ITree {
 
     }
 
+    /**
+     * Find an atom by name. Results, including names with no matching atom,
+     * are kept in an index from name to atom. Each entry holds the topology
+     * version it was found with and is only used while the version is
+     * unchanged, so a lookup that overlaps a change to the topology is never
+     * reused after it.
+     *
+     * @param name the atom specifier, for example "A:12.HA"
+     * @return the atom or null if there is no matching atom
+     */
     public Atom findAtom(String name) {
-        MolFilter molFilter;
-        molFilter = new MolFilter(name);
-        Atom atom = null;
-        SpatialSet spSet = findSpatialSet(molFilter);
-        if (spSet != null) {
-            atom = spSet.atom;
+        int version = topologyVersion;
+        AtomLookup lookup = atomLookupCache.get(name);
+        if ((lookup == null) || (lookup.version() != version)) {
+            MolFilter molFilter = new MolFilter(name);
+            Atom atom = null;
+            SpatialSet spSet = findSpatialSet(molFilter);
+            if (spSet != null) {
+                atom = spSet.atom;
+            }
+            lookup = new AtomLookup(version, atom);
+            if (atomLookupCache.size() >= MAX_ATOM_LOOKUPS) {
+                atomLookupCache.clear();
+            }
+            atomLookupCache.put(name, lookup);
         }
-        return atom;
+        return lookup.atom();
     }
 
     public SpatialSet findSpatialSet(MolFilter molFilter) throws IllegalArgumentException {
@@ -1363,6 +1337,7 @@ public class MoleculeBase implements Serializable, ITree {
         entity.molecule = this;
         addCoordSet(coordSetName, coordID, entity);
         chains.put(entity.getPDBChain(), entity);
+        invalidateAtomArray();
     }
 
     public void addEntity(Entity entity, String coordSetName) {
@@ -1374,6 +1349,7 @@ public class MoleculeBase implements Serializable, ITree {
         entity.molecule = this;
         addCoordSet(coordSetName, entity);
         chains.put(entity.getPDBChain(), entity);
+        invalidateAtomArray();
     }
 
     public void removeEntity(Entity entity) {
@@ -1389,6 +1365,7 @@ public class MoleculeBase implements Serializable, ITree {
         for (CoordSet coordSet : removeList) {
             coordSets.remove(coordSet.getName());
         }
+        invalidateAtomArray();
     }
 
     public Entity getEntity(String name) {
@@ -150,6 +150,13 @@ public class Polymer extends Entity {
         residues.put(residue.number.toLowerCase(), residue);
         residues.put(residue.name.toLowerCase(), residue);
         residueList.add(residue);
+        topologyChanged();
+    }
+
+    private void topologyChanged() {
+        if (molecule != null) {
+            molecule.invalidateAtomArray();
+        }
     }
 
     public void removeResidue(Residue residue) {
@@ -169,6 +176,7 @@ public class Polymer extends Entity {
 
             residueList.remove(residue);
             renumber();
+            topologyChanged();
         }
     }
 
@@ -212,6 +220,7 @@ public class Polymer extends Entity {
             residue.number = newNumber;
             residues.remove(oldNumber);
             residues.put(newNumber, residue);
+            topologyChanged();
             return (0);
         }
     }
@@ -24,14 +24,24 @@
 package org.nmrfx.chemistry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 
 /**
+ * The coordinates, chemical shifts and display state of an atom. Coordinates
+ * are held in the CoordinateStore of the atom's molecule, at the slot of this
+ * set. Until the atom belongs to a molecule they are held in a store of its
+ * own, and they are moved to the molecule's store the next time they are
+ * written.
+ *
  * @author Johnbruc
  */
 public class SpatialSet {
 
+    /**
+     * A copy of the coordinates of one structure.
+     */
     class Coords {
 
         Point3 pt;
@@ -39,31 +49,22 @@ public class SpatialSet {
         float bfactor = 1.0f;
         float order = 1.0f;
 
-        Coords() {
-            pt = new Point3(0.0, 0.0, 0.0);
-        }
-
         Coords(double x, double y, double z, double occupancy, double bfactor) {
             this.pt = new Point3(x, y, z);
             this.occupancy = (float) occupancy;
             this.bfactor = (float) bfactor;
         }
-
-        Coords(Point3 pt) {
-            this.pt = new Point3(pt);
-        }
-
-        void setPoint(Point3 pt) {
-            this.pt = new Point3(pt);
-        }
-
     }
 
     public Atom atom = null;
     public String altPos = null;
     List<PPMv> ppms;
     List<PPMv> refPPMVs = null;
-    List<Coords> coordsList;
+    CoordinateStore store = null;
+    int slot = -1;
+    int nCoords = 0;
+    // the point last returned by getPoint for each structure, reused while the stored coordinates are unchanged
+    private Point3[] points = new Point3[0];
     public boolean[] properties;
     public int selected = 0;
     public int labelStatus = 0;
@@ -74,7 +75,6 @@ public class SpatialSet {
 
     public SpatialSet(Atom atom) {
         this.atom = atom;
-        coordsList = new ArrayList<>();
         ppms = new ArrayList<>();
         properties = new boolean[16];
         PPMv ppmv = new PPMv(0.0);
@@ -135,10 +135,71 @@ public class SpatialSet {
         setOccupancy(0, value);
     }
 
+    private CoordinateStore getMoleculeStore() {
+        if ((atom == null) || (atom.entity == null)) {
+            return null;
+        }
+        MoleculeBase molecule = atom.entity.molecule;
+        if ((molecule == null) && (atom.entity instanceof Residue residue) && (residue.polymer != null)) {
+            molecule = residue.polymer.molecule;
+        }
+        return molecule != null ? molecule.getCoordinateStore() : null;
+    }
+
+    /**
+     * Make sure this set has a slot, in the store of its molecule if it has
+     * one, moving existing coordinates there.
+     *
+     * @return the store holding the coordinates
+     */
+    CoordinateStore attachStore() {
+        CoordinateStore moleculeStore = getMoleculeStore();
+        if (moleculeStore == null) {
+            if (store == null) {
+                store = new CoordinateStore();
+                slot = store.addSlot();
+            }
+        } else if (store != moleculeStore) {
+            int newSlot = moleculeStore.addSlot();
+            if (store != null) {
+                moleculeStore.copySlot(store, slot, newSlot, nCoords);
+                store.freeSlot(slot);
+            }
+            store = moleculeStore;
+            slot = newSlot;
+        }
+        return store;
+    }
+
+    /**
+     * Move the coordinates of this set into a store of its own, freeing its
+     * slot in the store of its molecule for reuse. Called when the atom is
+     * removed from its molecule.
+     */
+    void detachStore() {
+        if (store != null) {
+            CoordinateStore ownStore = new CoordinateStore();
+            int ownSlot = ownStore.addSlot();
+            ownStore.copySlot(store, slot, ownSlot, nCoords);
+            store.freeSlot(slot);
+            store = ownStore;
+            slot = ownSlot;
+        }
+    }
+
+    /**
+     * Get the slot of this set in the coordinate store of its molecule,
+     * adding one if needed.
+     *
+     * @return the slot, or -1 if the atom is not in a molecule
+     */
+    public int getCoordinateSlot() {
+        return attachStore() == getMoleculeStore() ? slot : -1;
+    }
+
     public void setOccupancy(int index, float value) {
         if (getPointValidity(index)) {
-            Coords coords = coordsList.get(index);
-            coords.occupancy = value;
+            store.setOccupancy(index, slot, value);
         }
     }
 
@@ -147,7 +208,7 @@ public class SpatialSet {
     }
 
     public float getOccupancy(int index) {
-        return getPointValidity(index) ? coordsList.get(index).occupancy : 1.0f;
+        return getPointValidity(index) ? store.getOccupancy(index, slot) : 1.0f;
     }
 
     public void setBFactor(float value) {
@@ -156,8 +217,7 @@ public class SpatialSet {
 
     public void setBFactor(int index, float value) {
         if (getPointValidity(index)) {
-            Coords coord = coordsList.get(index);
-            coord.bfactor = value;
+            store.setBFactor(index, slot, value);
         }
     }
 
@@ -166,7 +226,7 @@ public class SpatialSet {
     }
 
     public float getBFactor(int index) {
-        return getPointValidity(index) ? coordsList.get(index).bfactor : 1.0f;
+        return getPointValidity(index) ? store.getBFactor(index, slot) : 1.0f;
     }
 
     public void setOrder(float value) {
@@ -175,8 +235,7 @@ public class SpatialSet {
 
     public void setOrder(int index, float value) {
         if (getPointValidity(index)) {
-            Coords coord = coordsList.get(index);
-            coord.order = value;
+            store.setOrder(index, slot, value);
         }
     }
 
@@ -185,11 +244,11 @@ public class SpatialSet {
     }
 
     public float getOrder(int index) {
-        return getPointValidity(index) ? coordsList.get(index).order : 1.0f;
+        return getPointValidity(index) ? store.getOrder(index, slot) : 1.0f;
     }
 
     public int getPointCount() {
-        return coordsList.size();
+        return nCoords;
     }
 
     public boolean isStereo() {
@@ -209,39 +268,95 @@ public class SpatialSet {
 
     public void addCoords(double x, double y, double z,
                           double occupancy, double bfactor) {
-        Coords coords = new Coords(x, y, z, occupancy, bfactor);
-        coordsList.add(coords);
+        CoordinateStore coordStore = attachStore();
+        int index = nCoords++;
+        coordStore.setXYZ(index, slot, x, y, z);
+        coordStore.setOccupancy(index, slot, (float) occupancy);
+        coordStore.setBFactor(index, slot, (float) bfactor);
     }
 
     public Point3 getPoint() {
         return getPoint(0);
     }
 
+    /**
+     * Get the coordinates of a structure as a point. The point returned by
+     * the previous call for the structure is returned again if the stored
+     * coordinates haven't changed, so repeated calls don't allocate. Callers
+     * that only need the values can use getXYZ.
+     *
+     * @param i the structure number
+     * @return the point or null if the coordinates are not valid
+     */
     public Point3 getPoint(int i) {
-        Point3 gPt = null;
-        if (i < coordsList.size()) {
-            Coords coord = coordsList.get(i);
-            if (coord != null) {
-                gPt = coord.pt;
+        if (!getPointValidity(i)) {
+            return null;
+        }
+        double x = store.getX(i, slot);
+        double y = store.getY(i, slot);
+        double z = store.getZ(i, slot);
+        Point3[] cache = points;
+        Point3 pt = i < cache.length ? cache[i] : null;
+        if ((pt == null) || (pt.getX() != x) || (pt.getY() != y) || (pt.getZ() != z)) {
+            pt = new Point3(x, y, z);
+            if (i >= cache.length) {
+                cache = Arrays.copyOf(cache, Math.max(i + 1, nCoords));
+                points = cache;
             }
+            cache[i] = pt;
         }
-        return gPt;
+        return pt;
+    }
+
+    /**
+     * Copy the coordinates of a structure into an array.
+     *
+     * @param i      the structure number
+     * @param xyz    the array to copy into
+     * @param offset position of the x value in the array
+     * @return true if the coordinates are valid
+     */
+    public boolean getXYZ(int i, double[] xyz, int offset) {
+        return (i < nCoords) && (store != null) && store.getXYZ(i, slot, xyz, offset);
+    }
+
+    /**
+     * Set the coordinates of a structure, making them valid.
+     *
+     * @param i the structure number
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     */
+    public void setXYZ(int i, double x, double y, double z) {
+        CoordinateStore coordStore = attachStore();
+        nCoords = Math.max(nCoords, i + 1);
+        coordStore.setXYZ(i, slot, x, y, z);
+        atom.changed();
     }
 
     public Coords getCoords(int i) {
         Coords coord = null;
-        if (i < coordsList.size()) {
-            coord = coordsList.get(i);
+        if (getPointValidity(i)) {
+            coord = new Coords(store.getX(i, slot), store.getY(i, slot), store.getZ(i, slot),
+                    store.getOccupancy(i, slot), store.getBFactor(i, slot));
+            coord.order = store.getOrder(i, slot);
         }
         return coord;
     }
 
     public void clearCoords() {
-        coordsList.clear();
+        if (store != null) {
+            for (int i = 0; i < nCoords; i++) {
+                store.setValid(i, slot, false);
+            }
+        }
+        nCoords = 0;
+        points = new Point3[0];
     }
 
     public boolean getPointValidity(int i) {
-        return getPoint(i) != null;
+        return (i < nCoords) && (store != null) && store.isValid(i, slot);
     }
 
     public boolean getPointValidity() {
@@ -249,20 +364,12 @@ public class SpatialSet {
     }
 
     public void setPointValidity(int index, boolean validity) {
-
-        if (validity && (coordsList.size() <= index)) {
-            int size = coordsList.size();
-            for (int i = size; i <= index; i++) {
-                coordsList.add(null);
-            }
-        }
         if (validity) {
-            if (coordsList.get(index) == null) {
-                Coords coord = new Coords();
-                coordsList.set(index, coord);
-            }
-        } else if (index < coordsList.size()) {
-            coordsList.set(index, null);
+            CoordinateStore coordStore = attachStore();
+            nCoords = Math.max(nCoords, index + 1);
+            coordStore.setValid(index, slot, true);
+        } else if ((index < nCoords) && (store != null)) {
+            store.setValid(index, slot, false);
         }
         atom.changed();
     }
@@ -273,13 +380,7 @@ public class SpatialSet {
 
     public void setPoint(int index, Point3 ptNew) {
         setPointValidity(index, true);
-        Coords coord = coordsList.get(index);
-        if (coord == null) {
-            coord = new Coords(ptNew);
-        } else {
-            coord.setPoint(ptNew);
-        }
-        coordsList.set(index, coord);
+        store.setXYZ(index, slot, ptNew.getX(), ptNew.getY(), ptNew.getZ());
         atom.changed();
     }
 
@@ -494,7 +595,7 @@ public class SpatialSet {
     }
 
     public int pointCount() {
-        return coordsList.size();
+        return nCoords;
     }
 
     public void setColor(float red, float green, float blue) {
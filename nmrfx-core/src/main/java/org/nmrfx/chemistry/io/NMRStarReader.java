@@ -1209,7 +1209,15 @@ public class NMRStarReader {
             List<String> valColumn = loop.getColumnAsList("Val");
             List<String> valErrColumn = loop.getColumnAsList("Val_err");
             List<String> resColumn = loop.getColumnAsList("Resonance_ID");
-            List<Integer> ambigColumn = loop.getColumnAsIntegerList("Ambiguity_code", -1);
+            int[] ambigColumn = loop.getColumnAsIntArray("Ambiguity_code", -1);
+            double[] values;
+            double[] valueErrs;
+            try {
+                values = loop.getColumnAsDoubleArray("Val", Double.NaN);
+                valueErrs = loop.getColumnAsDoubleArray("Val_err", Double.NaN);
+            } catch (NumberFormatException nFE) {
+                throw new ParseException("Invalid chemical shift value (not double) " + nFE.getMessage());
+            }
             ResonanceFactory resFactory = ProjectBase.activeResonanceFactory();
             for (int i = 0; i < entityAssemblyIDColumn.size(); i++) {
                 String iEntity = entityIDColumn.get(i);
@@ -1257,22 +1265,21 @@ public class NMRStarReader {
                 if (spSet == null) {
                     throw new ParseException("invalid spatial set in assignments saveframe \"" + mapID + "." + atomName + "\"");
                 }
-                try {
-                    if (refMode) {
-                        spSet.setRefPPM(ppmSet, Double.parseDouble(value));
-                        if (!valueErr.equals(".")) {
-                            spSet.setRefError(ppmSet, Double.parseDouble(valueErr));
-                        }
-                    } else {
-                        spSet.setPPM(ppmSet, Double.parseDouble(value), false);
-                        spSet.getPPM(ppmSet).setAmbigCode(ambigColumn.get(i));
-                        if (!valueErr.equals(".")) {
-                            spSet.setPPM(ppmSet, Double.parseDouble(valueErr), true);
-                        }
-                    }
-                } catch (NumberFormatException nFE) {
+                if (LoopColumn.isMissing(value)) {
                     throw new ParseException("Invalid chemical shift value (not double) \"" + value + "\" error \"" + valueErr + "\"");
                 }
+                if (refMode) {
+                    spSet.setRefPPM(ppmSet, values[i]);
+                    if (!LoopColumn.isMissing(valueErr)) {
+                        spSet.setRefError(ppmSet, valueErrs[i]);
+                    }
+                } else {
+                    spSet.setPPM(ppmSet, values[i], false);
+                    spSet.getPPM(ppmSet).setAmbigCode(ambigColumn[i]);
+                    if (!LoopColumn.isMissing(valueErr)) {
+                        spSet.setPPM(ppmSet, valueErrs[i], true);
+                    }
+                }
                 if (!refMode && hasResonances && !resIDStr.equals(".")) {
                     long resID = Long.parseLong(resIDStr);
                     if (resID >= 0) {
@@ -1314,10 +1321,6 @@ public class NMRStarReader {
             }
             String iRes = compIdxIDColumn.get(i);
             String atomName = atomColumn.get(i);
-            String xStr = xColumn.get(i);
-            String yStr = yColumn.get(i);
-            String zStr = zColumn.get(i);
-            String modelStr = modelColumn.get(i);
             if (entityAssemblyID.equals(".")) {
                 entityAssemblyID = "1";
             }
@@ -1335,7 +1338,18 @@ public class NMRStarReader {
                 log.warn("No atom \"{}.{}\"", mapID, atomName);
                 continue;
             }
-            int structureNumber = Integer.parseInt(modelStr);
+            int structureNumber;
+            double x;
+            double y;
+            double z;
+            try {
+                structureNumber = Integer.parseInt(modelColumn.get(i));
+                x = Double.parseDouble(xColumn.get(i));
+                y = Double.parseDouble(yColumn.get(i));
+                z = Double.parseDouble(zColumn.get(i));
+            } catch (NumberFormatException nFE) {
+                throw new ParseException("Invalid coordinate for atom \"" + mapID + "." + atomName + "\" " + nFE.getMessage());
+            }
             Integer intStructure = structureNumber;
             if (intStructure != lastStructure) {
                 molecule.nullCoords(structureNumber);
@@ -1343,9 +1357,6 @@ public class NMRStarReader {
                 molecule.structures.add(intStructure);
             }
             lastStructure = intStructure;
-            double x = Double.parseDouble(xStr);
-            double y = Double.parseDouble(yStr);
-            double z = Double.parseDouble(zStr);
             atom.setPointValidity(structureNumber, true);
             Point3 pt = new Point3(x, y, z);
             atom.setPoint(structureNumber, pt);
@@ -0,0 +1,108 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.datasets;
+
+/**
+ * Walks the points of a vector along one dimension of a block (submatrix)
+ * layout. The points are visited as a series of runs, each run lying within a
+ * single block with a constant stride between points, so storage classes can
+ * transfer a run with one lookup of the block instead of computing the
+ * position of every point from its indices.
+ */
+public class BlockStride {
+    private final int blockSize;
+    private final int blockStep;
+    private final int pointStep;
+    private final int startOffset;
+    private int block;
+    private int offset;
+    private int inBlock;
+
+    /**
+     * Create a stride walker starting at the specified position.
+     *
+     * @param layout the layout of the dataset file
+     * @param point  indices of the vector in the dimensions other than dim
+     * @param dim    the dimension the vector lies along
+     * @param first  index of the first point of the vector along dim
+     */
+    public BlockStride(DatasetLayout layout, int[] point, int dim, int first) {
+        int baseBlock = 0;
+        int baseOffset = 0;
+        for (int iDim = 0; iDim < point.length; iDim++) {
+            if (iDim != dim) {
+                baseBlock += (point[iDim] / layout.blockSize[iDim]) * layout.offsetBlocks[iDim];
+                baseOffset += (point[iDim] % layout.blockSize[iDim]) * layout.offsetPoints[iDim];
+            }
+        }
+        blockSize = layout.blockSize[dim];
+        blockStep = layout.offsetBlocks[dim];
+        pointStep = layout.offsetPoints[dim];
+        startOffset = baseOffset;
+        inBlock = first % blockSize;
+        block = baseBlock + (first / blockSize) * blockStep;
+        offset = baseOffset + inBlock * pointStep;
+    }
+
+    /**
+     * @return the index of the block containing the current point
+     */
+    public int getBlock() {
+        return block;
+    }
+
+    /**
+     * @return the offset, in points, of the current point within its block
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of points between consecutive points of the vector
+     * within a block
+     */
+    public int getPointStep() {
+        return pointStep;
+    }
+
+    /**
+     * @return the number of points, starting at the current one, that lie in
+     * the current block
+     */
+    public int getRunLength() {
+        return blockSize - inBlock;
+    }
+
+    /**
+     * Move forward by the specified number of points, which must not exceed
+     * the run length.
+     *
+     * @param n the number of points to move
+     */
+    public void advance(int n) {
+        inBlock += n;
+        if (inBlock >= blockSize) {
+            inBlock = 0;
+            block += blockStep;
+            offset = startOffset;
+        } else {
+            offset += n * pointStep;
+        }
+    }
+}
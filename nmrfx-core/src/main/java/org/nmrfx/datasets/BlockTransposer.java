@@ -0,0 +1,277 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.datasets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Copies the values of a dataset file into a file with a different block
+ * layout, such as one made with DatasetLayout.createVectorBlockMatrix. Both
+ * files are read and written a whole block at a time. The blocks of the target
+ * are filled in a recursive (cache-oblivious) order, splitting the grid of
+ * blocks in half along its longest side, so that consecutive target blocks
+ * need mostly the same source blocks. Source blocks are kept in a small cache
+ * while they are needed.
+ * <p>
+ * Values are copied as raw 4 byte words, so the byte order and data type of
+ * the files don't matter, but they must be the same for both files. Only the
+ * points inside the sizes of both layouts are copied; the rest of the target
+ * is zero.
+ */
+public class BlockTransposer {
+
+    private static final int BYTES = Float.BYTES;
+
+    private final FileChannel source;
+    private final DatasetLayout sourceLayout;
+    private final FileChannel target;
+    private final DatasetLayout targetLayout;
+    private final int nDim;
+    private final int[] copySizes;
+    private final int maxCachedBlocks;
+    private final Map<Integer, byte[]> sourceBlocks = new LinkedHashMap<>(64, 0.75f, true);
+    private long nSourceReads = 0;
+
+    /**
+     * Create a transposer.
+     *
+     * @param source         channel of the file to read
+     * @param sourceLayout   layout of the file to read
+     * @param target         channel of the file to write
+     * @param targetLayout   layout of the file to write
+     * @param maxCacheBytes  the most bytes of source blocks to keep in memory
+     */
+    public BlockTransposer(FileChannel source, DatasetLayout sourceLayout, FileChannel target,
+                           DatasetLayout targetLayout, long maxCacheBytes) {
+        if (sourceLayout.nDim != targetLayout.nDim) {
+            throw new IllegalArgumentException("Layouts have different numbers of dimensions");
+        }
+        this.source = source;
+        this.sourceLayout = sourceLayout;
+        this.target = target;
+        this.targetLayout = targetLayout;
+        nDim = sourceLayout.nDim;
+        copySizes = new int[nDim];
+        for (int i = 0; i < nDim; i++) {
+            copySizes[i] = Math.min(sourceLayout.getSize(i), targetLayout.getSize(i));
+        }
+        long blockBytes = sourceLayout.getBlockPoints() * BYTES;
+        maxCachedBlocks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxCacheBytes / blockBytes));
+    }
+
+    /**
+     * Get the number of source blocks that were read, for checking how well
+     * the block order reuses source blocks.
+     *
+     * @return the number of reads
+     */
+    public long getSourceReads() {
+        return nSourceReads;
+    }
+
+    /**
+     * Visit each block of a grid in a cache-oblivious order. The grid is split
+     * in half along its longest side, and each half is visited in turn, until
+     * only one block is left.
+     *
+     * @param nBlocks number of blocks along each dimension
+     * @param visitor called with the index of each block along each dimension
+     */
+    public static void visitBlocks(int[] nBlocks, Consumer<int[]> visitor) {
+        int[] lo = new int[nBlocks.length];
+        int[] hi = nBlocks.clone();
+        for (int n : nBlocks) {
+            if (n < 1) {
+                return;
+            }
+        }
+        visitBlocks(lo, hi, visitor);
+    }
+
+    private static void visitBlocks(int[] lo, int[] hi, Consumer<int[]> visitor) {
+        int splitDim = -1;
+        int maxExtent = 1;
+        for (int i = 0; i < lo.length; i++) {
+            int extent = hi[i] - lo[i];
+            if (extent > maxExtent) {
+                maxExtent = extent;
+                splitDim = i;
+            }
+        }
+        if (splitDim < 0) {
+            visitor.accept(lo.clone());
+            return;
+        }
+        int mid = lo[splitDim] + maxExtent / 2;
+        int saveHi = hi[splitDim];
+        hi[splitDim] = mid;
+        visitBlocks(lo, hi, visitor);
+        hi[splitDim] = saveHi;
+        int saveLo = lo[splitDim];
+        lo[splitDim] = mid;
+        visitBlocks(lo, hi, visitor);
+        lo[splitDim] = saveLo;
+    }
+
+    /**
+     * Copy the source file to the target file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void copy() throws IOException {
+        byte[] targetBlock = new byte[(int) (targetLayout.getBlockPoints() * BYTES)];
+        IOException[] error = new IOException[1];
+        visitBlocks(targetLayout.nBlocks, blockIndices -> {
+            if (error[0] == null) {
+                try {
+                    fillBlock(blockIndices, targetBlock);
+                    writeBlock(blockIndices, targetBlock);
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        sourceBlocks.clear();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    private void fillBlock(int[] blockIndices, byte[] targetBlock) throws IOException {
+        Arrays.fill(targetBlock, (byte) 0);
+        int[] start = new int[nDim];
+        int[] end = new int[nDim];
+        for (int i = 0; i < nDim; i++) {
+            start[i] = blockIndices[i] * targetLayout.blockSize[i];
+            end[i] = Math.min(start[i] + targetLayout.blockSize[i], copySizes[i]);
+            if (start[i] >= end[i]) {
+                return;
+            }
+        }
+        // source blocks that overlap the target block
+        int[] firstBlock = new int[nDim];
+        int[] lastBlock = new int[nDim];
+        for (int i = 0; i < nDim; i++) {
+            firstBlock[i] = start[i] / sourceLayout.blockSize[i];
+            lastBlock[i] = (end[i] - 1) / sourceLayout.blockSize[i];
+        }
+        int[] sourceIndices = firstBlock.clone();
+        while (true) {
+            copyOverlap(sourceIndices, start, end, targetBlock);
+            int i = 0;
+            while (i < nDim) {
+                if (sourceIndices[i] < lastBlock[i]) {
+                    sourceIndices[i]++;
+                    break;
+                }
+                sourceIndices[i] = firstBlock[i];
+                i++;
+            }
+            if (i == nDim) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Copy the points that are in both a source block and the target block.
+     * Points are contiguous along the first dimension in both layouts, so they
+     * are copied in runs along that dimension.
+     */
+    private void copyOverlap(int[] sourceIndices, int[] targetStart, int[] targetEnd, byte[] targetBlock) throws IOException {
+        int blockNum = 0;
+        int[] sourceStart = new int[nDim];
+        int[] lo = new int[nDim];
+        int[] hi = new int[nDim];
+        for (int i = 0; i < nDim; i++) {
+            blockNum += sourceIndices[i] * sourceLayout.offsetBlocks[i];
+            sourceStart[i] = sourceIndices[i] * sourceLayout.blockSize[i];
+            lo[i] = Math.max(sourceStart[i], targetStart[i]);
+            hi[i] = Math.min(sourceStart[i] + sourceLayout.blockSize[i], targetEnd[i]);
+        }
+        byte[] sourceBlock = getSourceBlock(blockNum);
+        int runBytes = (hi[0] - lo[0]) * BYTES;
+        int[] point = lo.clone();
+        while (true) {
+            int sourceOffset = 0;
+            int targetOffset = 0;
+            for (int i = 0; i < nDim; i++) {
+                sourceOffset += (point[i] - sourceStart[i]) * sourceLayout.offsetPoints[i];
+                targetOffset += (point[i] - targetStart[i]) * targetLayout.offsetPoints[i];
+            }
+            System.arraycopy(sourceBlock, sourceOffset * BYTES, targetBlock, targetOffset * BYTES, runBytes);
+            int i = 1;
+            while (i < nDim) {
+                if (point[i] < hi[i] - 1) {
+                    point[i]++;
+                    break;
+                }
+                point[i] = lo[i];
+                i++;
+            }
+            if (i >= nDim) {
+                break;
+            }
+        }
+    }
+
+    private byte[] getSourceBlock(int blockNum) throws IOException {
+        byte[] block = sourceBlocks.get(blockNum);
+        if (block == null) {
+            if (sourceBlocks.size() >= maxCachedBlocks) {
+                var iter = sourceBlocks.entrySet().iterator();
+                block = iter.next().getValue();
+                iter.remove();
+                Arrays.fill(block, (byte) 0);
+            } else {
+                block = new byte[(int) (sourceLayout.getBlockPoints() * BYTES)];
+            }
+            long position = blockNum * (sourceLayout.getBlockPoints() * BYTES + sourceLayout.getBlockHeaderSize())
+                    + sourceLayout.getFileHeaderSize();
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            while (buffer.hasRemaining()) {
+                int nRead = source.read(buffer, position + buffer.position());
+                if (nRead < 0) {
+                    break;
+                }
+            }
+            sourceBlocks.put(blockNum, block);
+            nSourceReads++;
+        }
+        return block;
+    }
+
+    private void writeBlock(int[] blockIndices, byte[] targetBlock) throws IOException {
+        long blockNum = 0;
+        for (int i = 0; i < nDim; i++) {
+            blockNum += (long) blockIndices[i] * targetLayout.offsetBlocks[i];
+        }
+        long position = blockNum * (targetLayout.getBlockPoints() * BYTES + targetLayout.getBlockHeaderSize())
+                + targetLayout.getFileHeaderSize();
+        ByteBuffer buffer = ByteBuffer.wrap(targetBlock);
+        while (buffer.hasRemaining()) {
+            target.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -420,6 +420,72 @@ public class DatasetBase {
 
     }
 
+    /**
+     * Read the values of the dataset within a region. Point indices are
+     * specified as in {@link #readPoint(int[], int[])}. Values are stored with
+     * the first dimension of the region varying fastest. Lines along the first
+     * dimension are read with a single call to the storage readVector, rather
+     * than one point at a time, when the axis is not reversed. Either way the
+     * values are divided by the dataset scale, as in readPoint.
+     *
+     * @param pt     first and last indices of the region in each dimension
+     * @param dim    dimension indices that are used for the region values
+     * @param values array in which to store the values. Must be at least as
+     *               big as the region.
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if the region is outside the range of
+     *                                  the dataset or values is too small
+     */
+    public void readRegion(int[][] pt, int[] dim, double[] values) throws IOException, IllegalArgumentException {
+        int nLine = pt[0][1] - pt[0][0] + 1;
+        int nLines = 1;
+        for (int i = 0; i < nDim; i++) {
+            if ((pt[i][0] < 0) || (pt[i][1] >= getSizeReal(dim[i])) || (pt[i][1] < pt[i][0])) {
+                throw new IllegalArgumentException("invalid region " + i + " " + dim[i] + " " + pt[i][0] + " " + pt[i][1]);
+            }
+            if (i > 0) {
+                nLines *= pt[i][1] - pt[i][0] + 1;
+            }
+        }
+        if (values.length < nLine * nLines) {
+            throw new IllegalArgumentException("Cannot store " + (nLine * nLines) + " values in array of size " + values.length);
+        }
+        int[] point = new int[nDim];
+        for (int i = 0; i < nDim; i++) {
+            point[i] = pt[i][0];
+        }
+        boolean bulk = (vecMat == null) && (dataFile != null) && !axisReversed[dim[0]];
+        int mul = complex[dim[0]] ? 2 : 1;
+        VecBase line = bulk ? new VecBase((nLine - 1) * mul + 1) : null;
+        int[] rPt = new int[nDim];
+        for (int iLine = 0, offset = 0; iLine < nLines; iLine++, offset += nLine) {
+            if (bulk) {
+                for (int i = 1; i < nDim; i++) {
+                    rPt[dim[i]] = complex[dim[i]] ? point[i] * 2 : point[i];
+                    if (axisReversed[dim[i]]) {
+                        rPt[dim[i]] = getSizeTotal(dim[i]) - 1 - rPt[dim[i]];
+                    }
+                }
+                dataFile.readVector(pt[0][0] * mul, pt[0][1] * mul, rPt, dim[0], scale, line);
+                for (int j = 0; j < nLine; j++) {
+                    values[offset + j] = line.getReal(j * mul);
+                }
+            } else {
+                for (int j = 0; j < nLine; j++) {
+                    point[0] = pt[0][0] + j;
+                    values[offset + j] = readPoint(point, dim);
+                }
+            }
+            for (int i = 1; i < nDim; i++) {
+                if (point[i] < pt[i][1]) {
+                    point[i]++;
+                    break;
+                }
+                point[i] = pt[i][0];
+            }
+        }
+    }
+
     /**
      * Write a value into the dataset at the specified point
      *
@@ -35,6 +35,7 @@ public class DatasetLayout {
     public long blockElements;
     public long blockPoints;
     public boolean subMatrix = false;
+    int vectorDim = -1;
 
     public DatasetLayout(int nDim) {
         resize(nDim);
@@ -84,6 +85,42 @@ public class DatasetLayout {
         return layout;
     }
 
+    /**
+     * Create a block layout in which each block holds complete vectors along
+     * one dimension, so that reading a vector along that dimension touches a
+     * single block. The remaining points of a block (up to the default block
+     * size) are spread over the other dimensions.
+     *
+     * @param headerSize size of the file header
+     * @param sizes      sizes of the dimensions
+     * @param vectorDim  the dimension whose vectors should each be in one block
+     * @return the layout
+     */
+    public static DatasetLayout createVectorBlockMatrix(int headerSize, int[] sizes, int vectorDim) {
+        DatasetLayout layout = new DatasetLayout(sizes);
+        layout.setFileHeaderSize(headerSize);
+        layout.setBlockHeaderSize(0);
+        layout.vectorDim = vectorDim;
+        int budget = Math.max(1, DEFAULT_BLOCK_SIZE / sizes[vectorDim]);
+        int blockPoints = 1;
+        for (int i = 0; i < sizes.length; i++) {
+            layout.blockSize[i] = i == vectorDim ? sizes[i] : 1;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < sizes.length; i++) {
+                if ((i != vectorDim) && (layout.blockSize[i] * 2 <= sizes[i]) && (blockPoints * 2 <= budget)) {
+                    layout.blockSize[i] *= 2;
+                    blockPoints *= 2;
+                    changed = true;
+                }
+            }
+        }
+        layout.dimDataset();
+        return layout;
+    }
+
     public static DatasetLayout resize(DatasetLayout source, int[] sizes) {
         DatasetLayout layout = new DatasetLayout(sizes);
         layout.setFileHeaderSize(source.getFileHeaderSize());
@@ -98,6 +135,16 @@ public class DatasetLayout {
         return subMatrix;
     }
 
+    /**
+     * Get the dimension whose vectors each lie in a single block, if the
+     * layout was created with createVectorBlockMatrix.
+     *
+     * @return the dimension or -1
+     */
+    public int getVectorDim() {
+        return vectorDim;
+    }
+
     public long getTotalBlocks() {
         return totalBlocks;
     }
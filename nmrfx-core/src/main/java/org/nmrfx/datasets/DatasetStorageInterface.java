@@ -17,7 +17,6 @@
  */
 package org.nmrfx.datasets;
 
-import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.math.VecBase;
 
 import java.io.IOException;
@@ -139,43 +138,48 @@ public interface DatasetStorageInterface {
      */
     public void force();
 
+    /**
+     * Write the values of a vector to the file. Implementations that know the
+     * layout of their storage should override this with a bulk transfer.
+     *
+     * @param first  index of the first point along dim
+     * @param last   index of the last point along dim
+     * @param point  indices of the vector in the other dimensions
+     * @param dim    the dimension the vector lies along
+     * @param scale  vector values are multiplied by this
+     * @param vector the vector to write
+     * @throws IOException if an I/O error occurs
+     */
     public default void writeVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
-        int j = 0;
-        for (int i = first; i <= last; i++) {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        vector.getFileValues(values, first, n, scale);
+        for (int i = first, k = 0; i <= last; i++, k++) {
             point[dim] = i;
-            if (vector.isComplex()) {
-                if ((i % 2) != 0) {
-                    setFloat((float) (vector.getImag(j) * scale), point);
-                    j++;
-                } else {
-                    setFloat((float) (vector.getReal(j) * scale), point);
-                }
-            } else {
-                setFloat((float) (vector.getReal(j) * scale), point);
-                j++;
-            }
+            setFloat(values[k], point);
         }
     }
 
+    /**
+     * Read the values of a vector from the file. Implementations that know
+     * the layout of their storage should override this with a bulk transfer.
+     *
+     * @param first  index of the first point along dim
+     * @param last   index of the last point along dim
+     * @param point  indices of the vector in the other dimensions
+     * @param dim    the dimension the vector lies along
+     * @param scale  file values are divided by this
+     * @param vector the vector to read into
+     * @throws IOException if an I/O error occurs
+     */
     public default void readVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
-
-        double dReal = 0.0;
-        int j = 0;
-        for (int i = first; i <= last; i++) {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        for (int i = first, k = 0; i <= last; i++, k++) {
             point[dim] = i;
-            if (vector.isComplex()) {
-                if ((i % 2) != 0) {
-                    double dImaginary = getFloat(point) / scale;
-                    vector.set(j, new Complex(dReal, dImaginary));
-                    j++;
-                } else {
-                    dReal = getFloat(point) / scale;
-                }
-            } else {
-                vector.set(j, getFloat(point) / scale);
-                j++;
-            }
+            values[k] = getFloat(point);
         }
+        vector.setFileValues(values, first, n, scale);
     }
 
 }
@@ -5,27 +5,38 @@
  */
 package org.nmrfx.datasets;
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Bounded block cache used by SubMatrixFile. Blocks are distributed over a set
+ * of independently locked stripes, each holding an access ordered map with its
+ * share of the total byte budget. Dirty blocks are written back to their file
+ * when they are evicted or when the file is flushed.
+ *
  * @author brucejohnson
  */
 public class StorageCache {
     private static final Logger log = LoggerFactory.getLogger(StorageCache.class);
+    static final long DEFAULT_MAX_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+    static final int DEFAULT_STRIPES = 16;
 
-    Map<DatasetKey, ByteBuffer> buffers;
-    ByteBuffer activeBuffer = null;
-    DatasetKey activeKey = null;
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder writeBacks = new LongAdder();
+    private volatile long maxBytes;
 
     public static class DatasetKey {
 
@@ -75,119 +86,328 @@ public class StorageCache {
         }
     }
 
-    static class TrackingLRUMap<K, V> extends LRUMap<DatasetKey, ByteBuffer> {
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @param hits       number of block lookups satisfied from the cache
+     * @param misses     number of block lookups that required a read from disk
+     * @param evictions  number of blocks removed to stay within the byte budget
+     * @param writeBacks number of dirty blocks written to disk on eviction or flush
+     * @param bytes      bytes currently held in the cache
+     * @param maxBytes   byte budget of the cache
+     */
+    public record CacheStats(long hits, long misses, long evictions, long writeBacks, long bytes, long maxBytes) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    static class CacheEntry {
+        final ByteBuffer buffer;
+        final FloatBuffer floats;
+        boolean dirty = false;
+
+        CacheEntry(ByteBuffer buffer) {
+            this.buffer = buffer;
+            // the view starts at the buffer's position, which a channel read leaves at the end
+            buffer.clear();
+            this.floats = buffer.asFloatBuffer();
+        }
+    }
+
+    class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<DatasetKey, CacheEntry> map = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes = 0;
 
-        TrackingLRUMap(int maxSize) {
-            super(maxSize);
+        long maxBytes() {
+            return Math.max(1, StorageCache.this.maxBytes / stripes.length);
         }
 
-        protected boolean removeLRU(LinkEntry<DatasetKey, ByteBuffer> entry) {
-            //releaseResources(entry.getValue());  // release resources held by entry
-            DatasetKey key = entry.getKey();
+        CacheEntry get(DatasetKey key) throws IOException {
+            CacheEntry entry = map.get(key);
+            if (entry == null) {
+                misses.increment();
+                ByteBuffer buffer = key.file.readBlock(key.blockNum);
+                entry = new CacheEntry(buffer);
+                map.put(key, entry);
+                bytes += buffer.capacity();
+                evict(key);
+            } else {
+                hits.increment();
+            }
+            return entry;
+        }
 
-            if (key.file.writable) {
+        void evict(DatasetKey keep) {
+            long limit = maxBytes();
+            Iterator<Map.Entry<DatasetKey, CacheEntry>> iter = map.entrySet().iterator();
+            while ((bytes > limit) && iter.hasNext()) {
+                Map.Entry<DatasetKey, CacheEntry> mapEntry = iter.next();
+                DatasetKey key = mapEntry.getKey();
+                if (key.equals(keep)) {
+                    continue;
+                }
+                CacheEntry entry = mapEntry.getValue();
                 try {
-                    key.file.writeBlock(key.blockNum, entry.getValue());
+                    writeBack(key, entry);
                 } catch (IOException ex) {
                     log.error(ex.getMessage(), ex);
                 }
+                bytes -= entry.buffer.capacity();
+                iter.remove();
+                evictions.increment();
             }
-            return true;  // actually delete entry
         }
     }
 
     public StorageCache() {
-        TrackingLRUMap lruMap = new TrackingLRUMap(1024);
+        this(DEFAULT_MAX_BYTES, DEFAULT_STRIPES);
+    }
 
-        buffers = new ConcurrentHashMap<DatasetKey, ByteBuffer>(lruMap);
+    /**
+     * Create a cache
+     *
+     * @param maxBytes the total number of bytes of block data the cache may hold
+     * @param nStripes the number of independently locked partitions
+     */
+    public StorageCache(long maxBytes, int nStripes) {
+        if (nStripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        stripes = new Stripe[nStripes];
+        for (int i = 0; i < nStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
 
+    public long getMaxBytes() {
+        return maxBytes;
     }
 
-    public ByteBuffer getBuffer(DatasetKey key) throws IOException {
-        return buffers.get(key);
+    /**
+     * Change the byte budget. Stripes that are over the new budget shrink the
+     * next time they load a block, or immediately if trim is called.
+     *
+     * @param maxBytes the total number of bytes of block data the cache may hold
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
     }
 
-    public void flush(SubMatrixFile file) throws IOException {
-        activeBuffer = null;
-        activeKey = null;
-        Iterator<Entry<DatasetKey, ByteBuffer>> iter = buffers.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<DatasetKey, ByteBuffer> entry = iter.next();
-            if (entry.getKey().file == file) {
-                if (file.writable) {
-                    file.writeBlock(entry.getKey().blockNum, entry.getValue());
-                }
-                iter.remove();
+    public void trim() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.evict(null);
+            } finally {
+                stripe.lock.unlock();
             }
         }
     }
 
-    public synchronized void io(DatasetKey[] vecKeys, int[] offsets, double[] vec, int mode) throws IOException {
-        DatasetKey lastKey = null;
-        ByteBuffer buffer = null;
-        for (int i = 0; i < vec.length; i++) {
-            if ((i == 0) || (vecKeys[i] != vecKeys[i - 1])) {
-                buffer = getABuffer(vecKeys[i]);
-            }
-            if (mode == 1) {
-                vec[i] = buffer.getFloat(offsets[i] * Float.BYTES);
-            } else {
-                buffer.putFloat(offsets[i] * Float.BYTES, (float) vec[i]);
+    public CacheStats getStats() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                bytes += stripe.bytes;
+            } finally {
+                stripe.lock.unlock();
             }
         }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), writeBacks.sum(), bytes, maxBytes);
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        writeBacks.reset();
     }
 
-    ByteBuffer getABuffer(DatasetKey key) throws IOException {
-        ByteBuffer buffer;
-        if (key == activeKey) {
-            buffer = activeBuffer;
-        } else {
-            buffer = buffers.get(key);
+    private Stripe getStripe(DatasetKey key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+
+    private void writeBack(DatasetKey key, CacheEntry entry) throws IOException {
+        if (entry.dirty && key.file.writable) {
+            key.file.writeBlock(key.blockNum, entry.buffer);
+            writeBacks.increment();
         }
-        if (buffer == null) {
-            buffer = key.file.readBlock(key.blockNum);
-            buffers.put(key, buffer);
+        entry.dirty = false;
+    }
+
+    public ByteBuffer getBuffer(DatasetKey key) throws IOException {
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
+        try {
+            CacheEntry entry = stripe.map.get(key);
+            return entry == null ? null : entry.buffer;
+        } finally {
+            stripe.lock.unlock();
         }
-        activeBuffer = buffer;
-        activeKey = key;
-        return buffer;
     }
 
-    public synchronized float io(DatasetKey key, int offset, float v, int mode) throws IOException {
-        float value = 0.0f;
-        switch (mode) {
-            case 0: {
-                ByteBuffer buffer;
-                if (key == activeKey) {
-                    buffer = activeBuffer;
-                } else {
-                    buffer = buffers.get(key);
-                }
-                if (buffer == null) {
-                    buffer = key.file.readBlock(key.blockNum);
-                    buffers.put(key, buffer);
+    /**
+     * Write any dirty blocks of the specified file and remove its blocks from
+     * the cache.
+     *
+     * @param file the file to flush
+     * @throws IOException if an I/O error occurs
+     */
+    public void flush(SubMatrixFile file) throws IOException {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                Iterator<Map.Entry<DatasetKey, CacheEntry>> iter = stripe.map.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<DatasetKey, CacheEntry> mapEntry = iter.next();
+                    if (mapEntry.getKey().file == file) {
+                        CacheEntry entry = mapEntry.getValue();
+                        writeBack(mapEntry.getKey(), entry);
+                        stripe.bytes -= entry.buffer.capacity();
+                        iter.remove();
+                    }
                 }
-                activeBuffer = buffer;
-                activeKey = key;
-                value = buffer.getFloat(offset * Float.BYTES);
+            } finally {
+                stripe.lock.unlock();
             }
-            break;
-            case 1: {
-                ByteBuffer buffer;
-                if (key == activeKey) {
-                    buffer = activeBuffer;
+        }
+    }
+
+    /**
+     * Read or write a set of values. Consecutive values in the same block are
+     * handled with a single lookup while holding the lock of that block's
+     * stripe.
+     *
+     * @param vecKeys the block key for each value
+     * @param offsets the offset within the block for each value
+     * @param vec     the values
+     * @param mode    1 to read values into vec, 0 to write values from vec
+     * @throws IOException if an I/O error occurs
+     */
+    public void io(DatasetKey[] vecKeys, int[] offsets, double[] vec, int mode) throws IOException {
+        int i = 0;
+        while (i < vec.length) {
+            DatasetKey key = vecKeys[i];
+            int end = i + 1;
+            while ((end < vec.length) && (vecKeys[end] == key)) {
+                end++;
+            }
+            Stripe stripe = getStripe(key);
+            stripe.lock.lock();
+            try {
+                CacheEntry entry = stripe.get(key);
+                ByteBuffer buffer = entry.buffer;
+                if (mode == 1) {
+                    for (int j = i; j < end; j++) {
+                        vec[j] = buffer.getFloat(offsets[j] * Float.BYTES);
+                    }
                 } else {
-                    buffer = buffers.get(key);
+                    for (int j = i; j < end; j++) {
+                        buffer.putFloat(offsets[j] * Float.BYTES, (float) vec[j]);
+                    }
+                    entry.dirty = true;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Read a run of values from one block.
+     *
+     * @param key    the block key
+     * @param offset the offset within the block of the first value
+     * @param stride the number of points between consecutive values
+     * @param values array in which to put the values
+     * @param start  position in values of the first value
+     * @param n      the number of values to read
+     * @throws IOException if an I/O error occurs
+     */
+    public void read(DatasetKey key, int offset, int stride, float[] values, int start, int n) throws IOException {
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
+        try {
+            FloatBuffer floats = stripe.get(key).floats;
+            if (stride == 1) {
+                floats.get(offset, values, start, n);
+            } else {
+                for (int i = 0; i < n; i++, offset += stride) {
+                    values[start + i] = floats.get(offset);
                 }
-                if (buffer == null) {
-                    buffer = key.file.readBlock(key.blockNum);
-                    buffers.put(key, buffer);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Write a run of values to one block.
+     *
+     * @param key    the block key
+     * @param offset the offset within the block of the first value
+     * @param stride the number of points between consecutive values
+     * @param values array containing the values
+     * @param start  position in values of the first value
+     * @param n      the number of values to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(DatasetKey key, int offset, int stride, float[] values, int start, int n) throws IOException {
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
+        try {
+            CacheEntry entry = stripe.get(key);
+            FloatBuffer floats = entry.floats;
+            if (stride == 1) {
+                floats.put(offset, values, start, n);
+            } else {
+                for (int i = 0; i < n; i++, offset += stride) {
+                    floats.put(offset, values[start + i]);
                 }
-                activeBuffer = buffer;
-                activeKey = key;
-                buffer.putFloat(offset * Float.BYTES, v);
             }
-            break;
+            entry.dirty = true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Read or write a single value.
+     *
+     * @param key    the block key
+     * @param offset the offset within the block
+     * @param v      the value to write
+     * @param mode   0 to read, 1 to write
+     * @return the value read, or 0 when writing
+     * @throws IOException if an I/O error occurs
+     */
+    public float io(DatasetKey key, int offset, float v, int mode) throws IOException {
+        float value = 0.0f;
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
+        try {
+            CacheEntry entry = stripe.get(key);
+            switch (mode) {
+                case 0:
+                    value = entry.buffer.getFloat(offset * Float.BYTES);
+                    break;
+                case 1:
+                    entry.buffer.putFloat(offset * Float.BYTES, v);
+                    entry.dirty = true;
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            stripe.lock.unlock();
         }
         return value;
     }
@@ -67,6 +67,15 @@ public class SubMatrixFile implements DatasetStorageInterface, Closeable {
         init();
     }
 
+    /**
+     * Returns the block cache shared by all SubMatrixFile instances.
+     *
+     * @return the cache
+     */
+    public static StorageCache getCache() {
+        return cache;
+    }
+
     public DatasetLayout getLayout() {
         return layout;
     }
@@ -207,54 +216,41 @@ public class SubMatrixFile implements DatasetStorageInterface, Closeable {
         cache.io(key, offset, d, 1);
     }
 
-    public synchronized void blockVectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, int mode) throws IOException {
+    /**
+     * Read or write a vector as a series of runs, one for each block the
+     * vector passes through. Values are converted as by VecBase.getFileValues
+     * and setFileValues, as for the other storage classes.
+     *
+     * @param first  index of the first point along dim
+     * @param last   index of the last point along dim
+     * @param point  indices of the vector in the other dimensions
+     * @param dim    the dimension the vector lies along
+     * @param scale  scale factor between vector and file values
+     * @param vector the vector
+     * @param mode   0 to write the vector, 1 to read it
+     * @throws IOException if an I/O error occurs
+     */
+    public void blockVectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, int mode) throws IOException {
         int n = last - first + 1;
-        double[] vec = new double[n];
-        int[] offsets = new int[n];
-        DatasetKey[] vecKeys = new DatasetKey[n];
-        for (int i = first, k = 0; i <= last; i++) {
-            point[dim] = i;
-            int block = getBlockPosition(point);
-            vecKeys[k] = keys[block];
-            offsets[k] = getOffsetInBlock(point);
-            k++;
-        }
-
+        float[] values = new float[n];
         if (mode == 0) {
-            for (int i = first, j = 0, k = 0; i <= last; i++) {
-                if (vector.isComplex()) {
-                    if ((i % 2) != 0) {
-                        vec[k] = vector.getImag(j) * scale;
-                        j++;
-                    } else {
-                        vec[k] = vector.getReal(j) * scale;
-                    }
-                } else {
-                    vec[k] = vector.getReal(j) * scale;
-                    j++;
-                }
-                k++;
-            }
-            cache.io(vecKeys, offsets, vec, 0);
-        } else {
-            cache.io(vecKeys, offsets, vec, 1);
-            double dReal = 0.0;
-            for (int i = first, j = 0, k = 0; i <= last; i++) {
-                if (vector.isComplex()) {
-                    if ((i % 2) != 0) {
-                        double dImaginary = vec[k] / scale;
-                        vector.set(j, new Complex(dReal, dImaginary));
-                        j++;
-                    } else {
-                        dReal = vec[k] / scale;
-                    }
-                } else {
-                    vector.set(j, vec[k]);
-                    j++;
-                }
-                k++;
+            vector.getFileValues(values, first, n, scale);
+        }
+        BlockStride stride = new BlockStride(layout, point, dim, first);
+        int pointStep = stride.getPointStep();
+        for (int k = 0; k < n; ) {
+            int nRun = Math.min(n - k, stride.getRunLength());
+            DatasetKey key = keys[stride.getBlock()];
+            if (mode == 0) {
+                cache.write(key, stride.getOffset(), pointStep, values, k, nRun);
+            } else {
+                cache.read(key, stride.getOffset(), pointStep, values, k, nRun);
             }
-
+            stride.advance(nRun);
+            k += nRun;
+        }
+        if (mode != 0) {
+            vector.setFileValues(values, first, n, scale);
         }
     }
 
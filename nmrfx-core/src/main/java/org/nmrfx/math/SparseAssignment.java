@@ -0,0 +1,405 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.math;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Maximum-weight matching in a sparse bipartite graph. Only the edges that
+ * are added with addEdge are considered, and the matching does not have to
+ * be perfect: a row or column is left unmatched when that gives a larger
+ * total weight. This is the matching that BipartiteMatcher finds when each
+ * row and column is given an extra dummy partner, but memory use is linear in
+ * the number of edges instead of quadratic in the number of nodes.
+ * <p>
+ * The graph is split into connected components, which are solved
+ * independently (and in parallel) with successive shortest augmenting paths,
+ * using Dijkstra's algorithm over reduced costs (a sparse form of the
+ * Jonker-Volgenant method).
+ */
+public class SparseAssignment {
+
+    private final int nRows;
+    private final int nCols;
+    private int nEdges = 0;
+    private int[] edgeRows = new int[16];
+    private int[] edgeCols = new int[16];
+    private double[] edgeWeights = new double[16];
+
+    /**
+     * Create an assignment problem with no edges.
+     *
+     * @param nRows number of rows (the first set of nodes)
+     * @param nCols number of columns (the second set of nodes)
+     */
+    public SparseAssignment(int nRows, int nCols) {
+        if ((nRows < 0) || (nCols < 0)) {
+            throw new IllegalArgumentException("Negative num nodes: " + nRows + " " + nCols);
+        }
+        this.nRows = nRows;
+        this.nCols = nCols;
+    }
+
+    public int getRowCount() {
+        return nRows;
+    }
+
+    public int getColumnCount() {
+        return nCols;
+    }
+
+    public int getEdgeCount() {
+        return nEdges;
+    }
+
+    /**
+     * Add an edge between a row and a column. Each pair should only be added
+     * once.
+     *
+     * @param i      row index
+     * @param j      column index
+     * @param weight weight of the edge, which must be positive and finite
+     */
+    public void addEdge(int i, int j, double weight) {
+        if ((i < 0) || (i >= nRows)) {
+            throw new IllegalArgumentException("i-value out of range: " + i);
+        }
+        if ((j < 0) || (j >= nCols)) {
+            throw new IllegalArgumentException("j-value out of range: " + j);
+        }
+        if (!(weight > 0.0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        }
+        if (nEdges == edgeRows.length) {
+            int newSize = 2 * nEdges;
+            edgeRows = Arrays.copyOf(edgeRows, newSize);
+            edgeCols = Arrays.copyOf(edgeCols, newSize);
+            edgeWeights = Arrays.copyOf(edgeWeights, newSize);
+        }
+        edgeRows[nEdges] = i;
+        edgeCols[nEdges] = j;
+        edgeWeights[nEdges] = weight;
+        nEdges++;
+    }
+
+    /**
+     * Find a maximum-weight matching.
+     *
+     * @return an array with, for each row, the index of the matched column or
+     * -1 if the row is unmatched
+     */
+    public int[] getMatching() {
+        int[] matching = new int[nRows];
+        Arrays.fill(matching, -1);
+        if (nEdges == 0) {
+            return matching;
+        }
+        // union-find over rows (0 to nRows - 1) and columns (nRows onwards)
+        int[] parent = new int[nRows + nCols];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int e = 0; e < nEdges; e++) {
+            int a = find(parent, edgeRows[e]);
+            int b = find(parent, nRows + edgeCols[e]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        // number the components that have at least one edge and give each
+        // node a local index within its component
+        int[] compOf = new int[nRows + nCols];
+        Arrays.fill(compOf, -1);
+        int nComps = 0;
+        int[] rootComp = new int[nRows + nCols];
+        Arrays.fill(rootComp, -1);
+        for (int e = 0; e < nEdges; e++) {
+            int root = find(parent, edgeRows[e]);
+            if (rootComp[root] == -1) {
+                rootComp[root] = nComps++;
+            }
+        }
+        int[] compRows = new int[nComps];
+        int[] compCols = new int[nComps];
+        int[] compEdges = new int[nComps];
+        int[] localIndex = new int[nRows + nCols];
+        for (int node = 0; node < nRows + nCols; node++) {
+            int comp = rootComp[find(parent, node)];
+            compOf[node] = comp;
+            if (comp >= 0) {
+                localIndex[node] = node < nRows ? compRows[comp]++ : compCols[comp]++;
+            }
+        }
+        for (int e = 0; e < nEdges; e++) {
+            compEdges[compOf[edgeRows[e]]]++;
+        }
+
+        Component[] components = new Component[nComps];
+        for (int c = 0; c < nComps; c++) {
+            components[c] = new Component(compRows[c], compCols[c], compEdges[c]);
+        }
+        for (int node = 0; node < nRows + nCols; node++) {
+            int comp = compOf[node];
+            if ((comp >= 0) && (node < nRows)) {
+                components[comp].rowIds[localIndex[node]] = node;
+            } else if (comp >= 0) {
+                components[comp].colIds[localIndex[node]] = node - nRows;
+            }
+        }
+        // compressed sparse rows within each component
+        for (int e = 0; e < nEdges; e++) {
+            Component comp = components[compOf[edgeRows[e]]];
+            comp.rowStart[localIndex[edgeRows[e]] + 1]++;
+        }
+        for (Component comp : components) {
+            for (int i = 0; i < comp.nRows; i++) {
+                comp.rowStart[i + 1] += comp.rowStart[i];
+            }
+        }
+        int[][] fill = new int[nComps][];
+        for (int c = 0; c < nComps; c++) {
+            fill[c] = Arrays.copyOf(components[c].rowStart, components[c].nRows);
+        }
+        double maxWeight = 0.0;
+        for (int e = 0; e < nEdges; e++) {
+            maxWeight = Math.max(maxWeight, edgeWeights[e]);
+        }
+        for (int e = 0; e < nEdges; e++) {
+            int comp = compOf[edgeRows[e]];
+            int k = fill[comp][localIndex[edgeRows[e]]]++;
+            components[comp].edgeCols[k] = localIndex[nRows + edgeCols[e]];
+            // costs are shifted to be non-negative, with an unmatched row costing maxWeight
+            components[comp].edgeCosts[k] = maxWeight - edgeWeights[e];
+        }
+        final double unmatchedCost = maxWeight;
+        IntStream.range(0, nComps).parallel().forEach(c -> {
+            Component comp = components[c];
+            int[] rowMatch = comp.solve(unmatchedCost);
+            for (int i = 0; i < comp.nRows; i++) {
+                if (rowMatch[i] < comp.nCols) {
+                    matching[comp.rowIds[i]] = comp.colIds[rowMatch[i]];
+                }
+            }
+        });
+        return matching;
+    }
+
+    /**
+     * Get the summed weight of the edges in a matching.
+     *
+     * @param matching a matching returned by getMatching
+     * @return the total weight
+     */
+    public double getWeightSum(int[] matching) {
+        double sum = 0.0;
+        for (int e = 0; e < nEdges; e++) {
+            if (matching[edgeRows[e]] == edgeCols[e]) {
+                sum += edgeWeights[e];
+            }
+        }
+        return sum;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * A connected component, with the columns numbered locally from 0 to
+     * nCols - 1 followed by one private "unmatched" column for each row.
+     */
+    private static class Component {
+        final int nRows;
+        final int nCols;
+        final int[] rowIds;
+        final int[] colIds;
+        final int[] rowStart;
+        final int[] edgeCols;
+        final double[] edgeCosts;
+
+        Component(int nRows, int nCols, int nEdges) {
+            this.nRows = nRows;
+            this.nCols = nCols;
+            rowIds = new int[nRows];
+            colIds = new int[nCols];
+            rowStart = new int[nRows + 1];
+            edgeCols = new int[nEdges];
+            edgeCosts = new double[nEdges];
+        }
+
+        int[] solve(double unmatchedCost) {
+            int nAllCols = nCols + nRows;
+            double[] rowPot = new double[nRows];
+            double[] colPot = new double[nAllCols];
+            int[] rowMatch = new int[nRows];
+            int[] colMatch = new int[nAllCols];
+            Arrays.fill(rowMatch, -1);
+            Arrays.fill(colMatch, -1);
+            double[] dist = new double[nAllCols];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            boolean[] done = new boolean[nAllCols];
+            int[] prevRow = new int[nAllCols];
+            int[] touched = new int[nAllCols];
+            int[] doneCols = new int[nAllCols];
+            MinHeap heap = new MinHeap();
+
+            for (int source = 0; source < nRows; source++) {
+                int nTouched = 0;
+                int nDone = 0;
+                heap.clear();
+                int row = source;
+                double rowDist = 0.0;
+                int sink = -1;
+                double sinkDist = 0.0;
+                while (true) {
+                    // relax the edges of the row just reached, including its unmatched column
+                    for (int k = rowStart[row]; k <= rowStart[row + 1]; k++) {
+                        int col;
+                        double cost;
+                        if (k < rowStart[row + 1]) {
+                            col = edgeCols[k];
+                            cost = edgeCosts[k];
+                        } else {
+                            col = nCols + row;
+                            cost = unmatchedCost;
+                        }
+                        if (done[col]) {
+                            continue;
+                        }
+                        double newDist = rowDist + cost + rowPot[row] - colPot[col];
+                        if (newDist < dist[col]) {
+                            if (dist[col] == Double.POSITIVE_INFINITY) {
+                                touched[nTouched++] = col;
+                            }
+                            dist[col] = newDist;
+                            prevRow[col] = row;
+                            heap.add(newDist, col);
+                        }
+                    }
+                    int col;
+                    do {
+                        col = heap.poll();
+                    } while (done[col] || (heap.lastKey > dist[col]));
+                    done[col] = true;
+                    doneCols[nDone++] = col;
+                    if (colMatch[col] == -1) {
+                        sink = col;
+                        sinkDist = dist[col];
+                        break;
+                    }
+                    row = colMatch[col];
+                    rowDist = dist[col];
+                }
+                // update the potentials of the nodes on the shortest path tree
+                rowPot[source] -= sinkDist;
+                for (int i = 0; i < nDone; i++) {
+                    int col = doneCols[i];
+                    double delta = dist[col] - sinkDist;
+                    colPot[col] += delta;
+                    if (colMatch[col] != -1) {
+                        rowPot[colMatch[col]] += delta;
+                    }
+                }
+                // augment along the path
+                int col = sink;
+                while (true) {
+                    int r = prevRow[col];
+                    int next = rowMatch[r];
+                    rowMatch[r] = col;
+                    colMatch[col] = r;
+                    if (r == source) {
+                        break;
+                    }
+                    col = next;
+                }
+                for (int i = 0; i < nTouched; i++) {
+                    dist[touched[i]] = Double.POSITIVE_INFINITY;
+                    done[touched[i]] = false;
+                }
+            }
+            return rowMatch;
+        }
+    }
+
+    /**
+     * Binary heap of column indices keyed by distance. Entries are not
+     * removed when a key decreases, so stale entries are skipped by the
+     * caller.
+     */
+    private static class MinHeap {
+        double[] keys = new double[16];
+        int[] values = new int[16];
+        int size = 0;
+        double lastKey;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(double key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            int i = size++;
+            while (i > 0) {
+                int p = (i - 1) / 2;
+                if (keys[p] <= key) {
+                    break;
+                }
+                keys[i] = keys[p];
+                values[i] = values[p];
+                i = p;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int poll() {
+            lastKey = keys[0];
+            int result = values[0];
+            size--;
+            double key = keys[size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if ((child + 1 < size) && (keys[child + 1] < keys[child])) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return result;
+        }
+    }
+}
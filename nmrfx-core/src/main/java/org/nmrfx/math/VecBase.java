@@ -20,6 +20,7 @@ import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -550,6 +551,58 @@ public class VecBase extends PySequence implements MatrixType, DatasetStorageInt
         this.size = newsize;
     }
 
+    /**
+     * Reset the vector to the state of a newly created vector with the
+     * specified size, complex mode and dataset location. The existing storage
+     * arrays are kept (and zeroed) when they are large enough, so a vector can
+     * be reused instead of allocating a new one.
+     *
+     * @param newSize the size of the vector
+     * @param pt      dataset location, may be null
+     * @param dim     dataset dimensions, may be null
+     * @param complex true if the vector should be complex
+     */
+    public void reset(int newSize, int[][] pt, int[] dim, boolean complex) {
+        dwellTime = 1.0;
+        centerFreq = 1.0;
+        refValue = 0.0;
+        ph0 = 0.0;
+        ph1 = 0.0;
+        zfSize = 0;
+        extFirst = 0;
+        extLast = 0;
+        groupDelay = 0.0;
+        inSignalRegion = null;
+        freqDomain = false;
+        this.pt = null;
+        this.dim = null;
+        isComplex = complex;
+        if (complex && !useApache && (ivec == null)) {
+            useApache = true;
+        }
+        size = 0;
+        resize(newSize);
+        tdSize = newSize;
+        Arrays.fill(rvec, 0, Math.min(newSize, rvec.length), 0.0);
+        if (complex) {
+            if (useApache) {
+                Arrays.fill(cvec, 0, newSize, Complex.ZERO);
+            } else {
+                Arrays.fill(ivec, 0, newSize, 0.0);
+            }
+        }
+        if (pt != null) {
+            this.pt = new int[pt.length][2];
+            for (int i = 0; i < pt.length; i++) {
+                this.pt[i][0] = pt[i][0];
+                this.pt[i][1] = pt[i][1];
+            }
+        }
+        if (dim != null) {
+            this.dim = dim.clone();
+        }
+    }
+
     private void cexpand(int length) {
         Complex[] newarr = new Complex[length];
         if (cvec == null) {
@@ -734,6 +787,85 @@ public class VecBase extends PySequence implements MatrixType, DatasetStorageInt
         }
     }
 
+    /**
+     * Set the values of this vector from values in the order they are stored
+     * in a dataset file, with real and imaginary values interleaved if the
+     * vector is complex. For complex vectors a value is imaginary if its index
+     * along the dimension is odd and real if it's even, counting from the start
+     * of the dimension, so a vector that starts at an odd index starts with an
+     * imaginary value (and a real value of 0), and a real value at the end that
+     * has no imaginary partner isn't used. Complex vectors are switched to
+     * separate real and imaginary arrays so no Complex objects are created.
+     *
+     * @param values the file values
+     * @param first  index along the dimension of the first file value
+     * @param n      the number of file values to use
+     * @param scale  the file values are divided by this
+     * @throws IllegalArgumentException if the vector is too small for the values
+     */
+    public void setFileValues(float[] values, int first, int n, double scale) throws IllegalArgumentException {
+        int nPoints = isComplex ? ((first % 2) + n) / 2 : n;
+        if (nPoints > size) {
+            throw new IllegalArgumentException("Cannot set " + nPoints + " elements in a Vec of size " + size);
+        }
+        if (isComplex) {
+            makeNotApache();
+            int k = 0;
+            int j = 0;
+            if ((first % 2) != 0) {
+                rvec[0] = 0.0;
+                ivec[0] = values[0] / scale;
+                k = 1;
+                j = 1;
+            }
+            for (; k < n - 1; k += 2, j++) {
+                rvec[j] = values[k] / scale;
+                ivec[j] = values[k + 1] / scale;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                rvec[i] = values[i] / scale;
+            }
+        }
+    }
+
+    /**
+     * Get the values of this vector in the order they are stored in a dataset
+     * file, with real and imaginary values interleaved if the vector is
+     * complex. For complex vectors a value is imaginary if its index along the
+     * dimension is odd and real if it's even, counting from the start of the
+     * dimension, as in setFileValues.
+     *
+     * @param values array in which to put the file values
+     * @param first  index along the dimension of the first file value
+     * @param n      the number of file values to get
+     * @param scale  the vector values are multiplied by this
+     * @throws IllegalArgumentException if the vector is too small for the values
+     */
+    public void getFileValues(float[] values, int first, int n, double scale) throws IllegalArgumentException {
+        int offset = first % 2;
+        int nPoints = isComplex ? (offset + n + 1) / 2 : n;
+        if (nPoints > size) {
+            throw new IllegalArgumentException("Cannot get " + nPoints + " elements from a Vec of size " + size);
+        }
+        if (isComplex && useApache) {
+            for (int k = 0; k < n; k++) {
+                int i = k + offset;
+                Complex c = cvec[i / 2];
+                values[k] = (float) (((i % 2) == 0 ? c.getReal() : c.getImaginary()) * scale);
+            }
+        } else if (isComplex) {
+            for (int k = 0; k < n; k++) {
+                int i = k + offset;
+                values[k] = (float) (((i % 2) == 0 ? rvec[i / 2] : ivec[i / 2]) * scale);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                values[i] = (float) (rvec[i] * scale);
+            }
+        }
+    }
+
     /**
      * Return real or imaginary value at specified index. It's preferred to use
      * getReal or getImag unless choice of real or imaginary needs to be made
@@ -1275,6 +1275,19 @@ public class Peak implements Comparable, PeakOrMulti {
 
     public double[] measurePeak(DatasetBase dataset, int[] pdim, int[] planes, Function<RegionData, Double> f, String mode) throws IOException {
         RegionData regionData = Peak.analyzePeakRegion(this, dataset, planes, pdim);
+        return measurePeak(regionData, dataset, f, mode);
+    }
+
+    /**
+     * Measure the peak from an already analyzed region.
+     *
+     * @param regionData the region data of this peak
+     * @param dataset    the dataset the region was analyzed in
+     * @param f          function to get the measured value from the region data
+     * @param mode       measurement mode
+     * @return the value and its error
+     */
+    public double[] measurePeak(RegionData regionData, DatasetBase dataset, Function<RegionData, Double> f, String mode) {
         double value = f.apply(regionData);
         Double noise = dataset.getNoiseLevel();
         double err = 0.0;
@@ -1305,6 +1318,18 @@ public class Peak implements Comparable, PeakOrMulti {
     public void quantifyPeak(DatasetBase dataset, int[] pdim, Function<RegionData, Double> f, String mode) throws IOException, IllegalArgumentException {
         int[] planes = new int[0];
         RegionData regionData = Peak.analyzePeakRegion(this, dataset, planes, pdim);
+        quantifyPeak(regionData, dataset, f, mode);
+    }
+
+    /**
+     * Set the volume or intensity of the peak from an already analyzed region.
+     *
+     * @param regionData the region data of this peak
+     * @param dataset    the dataset the region was analyzed in
+     * @param f          function to get the measured value from the region data
+     * @param mode       measurement mode
+     */
+    public void quantifyPeak(RegionData regionData, DatasetBase dataset, Function<RegionData, Double> f, String mode) {
         double value = f.apply(regionData);
         if (mode.contains("volume")) {
             volume1 = (float) value;
@@ -0,0 +1,468 @@
+package org.nmrfx.peaks;
+
+import java.util.*;
+
+/**
+ * A k-d tree of the chemical shifts of the peaks in a peak list, used to find
+ * peaks in a region, the nearest peaks to a position, or the peaks within a
+ * tolerance of a position, without scanning the whole list.
+ * <p>
+ * The index is kept up to date by the peak list. Peaks that are added, or
+ * whose shifts change, after the tree was built are held in a pending set that
+ * is searched directly, and the tree is rebuilt on the next query once the
+ * pending set is large or peaks have been removed from the list.
+ * Results are the peaks of the list that satisfy the same tests as
+ * {@link Peak#inRegion}, so deleted peaks that have not yet been compressed
+ * out of the list are included.
+ */
+public class PeakIndex {
+    private static final int LEAF_SIZE = 8;
+    private static final int MIN_PENDING = 64;
+    private static final int MAX_FOLD_BOXES = 64;
+
+    private final PeakList peakList;
+    private final Set<Peak> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Peak> members = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Peak[] treePeaks = new Peak[0];
+    private double[][] treeShifts = new double[0][];
+    private double[] treeMin;
+    private double[] treeMax;
+    private int knownSize = 0;
+    private boolean valid = false;
+
+    PeakIndex(PeakList peakList) {
+        this.peakList = peakList;
+    }
+
+    /**
+     * Discard the tree, so it is rebuilt on the next query.
+     */
+    synchronized void invalidate() {
+        valid = false;
+        pending.clear();
+        members.clear();
+    }
+
+    /**
+     * Check that the list holds only peaks known to the index, discarding the
+     * tree if peaks were removed or replaced. Reordering the list doesn't
+     * require a new tree.
+     *
+     * @param peaks the peaks of the list
+     */
+    synchronized void verify(List<Peak> peaks) {
+        if (!valid) {
+            return;
+        }
+        if ((peaks == null) || (peaks.size() != knownSize)) {
+            invalidate();
+            return;
+        }
+        for (Peak peak : peaks) {
+            if (!members.contains(peak) && !pending.contains(peak)) {
+                invalidate();
+                return;
+            }
+        }
+    }
+
+    synchronized void peakAdded(Peak peak) {
+        if (valid) {
+            pending.add(peak);
+            knownSize++;
+        }
+    }
+
+    synchronized void peakChanged(Peak peak) {
+        if (valid) {
+            pending.add(peak);
+        }
+    }
+
+    private void checkValid() {
+        List<Peak> peaks = peakList.peaks();
+        int size = peaks == null ? 0 : peaks.size();
+        if (!valid || (size != knownSize) || (pending.size() > Math.max(MIN_PENDING, treePeaks.length / 8))) {
+            build(peaks == null ? Collections.emptyList() : peaks);
+        }
+    }
+
+    private void build(List<Peak> peaks) {
+        int nDim = peakList.getNDim();
+        int n = peaks.size();
+        treePeaks = peaks.toArray(new Peak[n]);
+        treeShifts = new double[n][];
+        treeMin = new double[nDim];
+        treeMax = new double[nDim];
+        Arrays.fill(treeMin, Double.MAX_VALUE);
+        Arrays.fill(treeMax, -Double.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            treeShifts[i] = getShifts(treePeaks[i]);
+            for (int j = 0; j < nDim; j++) {
+                treeMin[j] = Math.min(treeMin[j], treeShifts[i][j]);
+                treeMax[j] = Math.max(treeMax[j], treeShifts[i][j]);
+            }
+        }
+        buildNode(0, n, 0, nDim);
+        members.clear();
+        members.addAll(Arrays.asList(treePeaks));
+        pending.clear();
+        knownSize = n;
+        valid = true;
+    }
+
+    private void buildNode(int lo, int hi, int depth, int nDim) {
+        if ((hi - lo) <= LEAF_SIZE) {
+            return;
+        }
+        int axis = depth % nDim;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        buildNode(lo, mid, depth + 1, nDim);
+        buildNode(mid + 1, hi, depth + 1, nDim);
+    }
+
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            double pivot = treeShifts[(left + right) >>> 1][axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (treeShifts[i][axis] < pivot) {
+                    i++;
+                }
+                while (treeShifts[j][axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        Peak peak = treePeaks[i];
+        treePeaks[i] = treePeaks[j];
+        treePeaks[j] = peak;
+        double[] shifts = treeShifts[i];
+        treeShifts[i] = treeShifts[j];
+        treeShifts[j] = shifts;
+    }
+
+    private double[] getShifts(Peak peak) {
+        double[] shifts = new double[peakList.getNDim()];
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = peak.peakDims[i].getChemShiftValue();
+        }
+        return shifts;
+    }
+
+    private boolean inList(Peak peak) {
+        List<Peak> peaks = peakList.peaks();
+        int index = peak.getIndex();
+        return (peaks != null) && (index >= 0) && (index < peaks.size()) && (peaks.get(index) == peak);
+    }
+
+    private static boolean inBox(double[] shifts, double[] min, double[] max) {
+        for (int i = 0; i < shifts.length; i++) {
+            if ((shifts[i] < min[i]) || (shifts[i] > max[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void searchBox(int lo, int hi, int depth, double[] min, double[] max, Collection<Peak> result) {
+        if ((hi - lo) <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                if (inBox(treeShifts[i], min, max) && !pending.contains(treePeaks[i])) {
+                    result.add(treePeaks[i]);
+                }
+            }
+            return;
+        }
+        int axis = depth % min.length;
+        int mid = (lo + hi) >>> 1;
+        double split = treeShifts[mid][axis];
+        if (inBox(treeShifts[mid], min, max) && !pending.contains(treePeaks[mid])) {
+            result.add(treePeaks[mid]);
+        }
+        if (min[axis] <= split) {
+            searchBox(lo, mid, depth + 1, min, max, result);
+        }
+        if (max[axis] >= split) {
+            searchBox(mid + 1, hi, depth + 1, min, max, result);
+        }
+    }
+
+    private void findInBox(double[] min, double[] max, Collection<Peak> result) {
+        searchBox(0, treePeaks.length, 0, min, max, result);
+        for (Peak peak : pending) {
+            if (inList(peak) && inBox(getShifts(peak), min, max)) {
+                result.add(peak);
+            }
+        }
+    }
+
+    private double[][] getBox(double[][] limits, int[] dim) {
+        int nDim = peakList.getNDim();
+        double[] min = new double[nDim];
+        double[] max = new double[nDim];
+        Arrays.fill(min, Double.NEGATIVE_INFINITY);
+        Arrays.fill(max, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < limits.length; j++) {
+            if ((dim.length <= j) || (dim[j] == -1) || (dim[j] >= nDim)) {
+                continue;
+            }
+            min[dim[j]] = Math.max(min[dim[j]], Math.min(limits[j][0], limits[j][1]));
+            max[dim[j]] = Math.min(max[dim[j]], Math.max(limits[j][0], limits[j][1]));
+        }
+        return new double[][]{min, max};
+    }
+
+    private static List<Peak> sortByIndex(Collection<Peak> peaks) {
+        List<Peak> result = new ArrayList<>(peaks);
+        result.sort(Comparator.comparingInt(Peak::getIndex));
+        return result;
+    }
+
+    /**
+     * Find the peaks with shifts within a region. Peaks are returned in the
+     * order they have in the peak list.
+     *
+     * @param limits lower and upper shift limits for each search dimension
+     * @param dim    the peak list dimension of each search dimension, or -1 to
+     *               ignore the search dimension
+     * @return the peaks in the region
+     */
+    public synchronized List<Peak> findPeaksInRegion(double[][] limits, int[] dim) {
+        return findPeaksInRegion(limits, null, null, dim);
+    }
+
+    /**
+     * Find the peaks with shifts within a region, after the shifts are folded
+     * into the fold limits as in {@link Peak#inRegion}. Peaks are returned in
+     * the order they have in the peak list.
+     *
+     * @param limits     lower and upper shift limits for each search dimension
+     * @param foldLimits limits into which shifts are folded, for each search
+     *                   dimension. May be null, or contain nulls for
+     *                   dimensions that are not folded.
+     * @param foldAmount the amount shifts are folded by in each search dimension
+     * @param dim        the peak list dimension of each search dimension, or -1
+     *                   to ignore the search dimension
+     * @return the peaks in the region
+     */
+    public synchronized List<Peak> findPeaksInRegion(double[][] limits, double[][] foldLimits, double[] foldAmount, int[] dim) {
+        List<Peak> result = new ArrayList<>();
+        for (Peak peak : findCandidates(limits, foldLimits, foldAmount, dim)) {
+            if (peak.inRegion(limits, foldLimits, foldAmount, dim)) {
+                result.add(peak);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the peaks that may lie within a region. The result includes every
+     * peak that is in the region, but callers must still test each peak.
+     * Peaks are returned in the order they have in the peak list.
+     */
+    synchronized List<Peak> findCandidates(double[][] limits, double[][] foldLimits, double[] foldAmount, int[] dim) {
+        checkValid();
+        double[][] box = getBox(limits, dim);
+        List<double[][]> boxes = foldLimits == null ? Collections.singletonList(box) : getFoldedBoxes(box, foldLimits, foldAmount, dim);
+        if (boxes == null) {
+            return peakList.peaks() == null ? Collections.emptyList() : new ArrayList<>(peakList.peaks());
+        }
+        Set<Peak> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (double[][] foldedBox : boxes) {
+            findInBox(foldedBox[0], foldedBox[1], found);
+        }
+        return sortByIndex(found);
+    }
+
+    /**
+     * Get the boxes, in unfolded shifts, that contain every peak that folds
+     * into the search box.
+     *
+     * @return the boxes, or null if there are too many to search
+     */
+    private List<double[][]> getFoldedBoxes(double[][] box, double[][] foldLimits, double[] foldAmount, int[] dim) {
+        int nDim = peakList.getNDim();
+        double[] dataMin = treeMin.clone();
+        double[] dataMax = treeMax.clone();
+        for (Peak peak : pending) {
+            double[] shifts = getShifts(peak);
+            for (int i = 0; i < nDim; i++) {
+                dataMin[i] = Math.min(dataMin[i], shifts[i]);
+                dataMax[i] = Math.max(dataMax[i], shifts[i]);
+            }
+        }
+        List<double[][]> boxes = new ArrayList<>();
+        boxes.add(new double[][]{box[0].clone(), box[1].clone()});
+        for (int j = 0; j < foldLimits.length; j++) {
+            if ((foldLimits[j] == null) || (dim.length <= j) || (dim[j] == -1) || (dim[j] >= nDim)) {
+                continue;
+            }
+            int iDim = dim[j];
+            double delta = foldAmount[j];
+            if (!(delta > 0.0)) {
+                return null;
+            }
+            double lo = box[0][iDim];
+            double hi = box[1][iDim];
+            long kMin = (long) Math.ceil((dataMin[iDim] - hi) / delta);
+            long kMax = (long) Math.floor((dataMax[iDim] - lo) / delta);
+            if (kMax < kMin) {
+                return Collections.emptyList();
+            }
+            if ((kMax - kMin + 1) * boxes.size() > MAX_FOLD_BOXES) {
+                return null;
+            }
+            List<double[][]> newBoxes = new ArrayList<>();
+            for (double[][] current : boxes) {
+                for (long k = kMin; k <= kMax; k++) {
+                    double[][] newBox = {current[0].clone(), current[1].clone()};
+                    newBox[0][iDim] = lo + k * delta;
+                    newBox[1][iDim] = hi + k * delta;
+                    newBoxes.add(newBox);
+                }
+            }
+            boxes = newBoxes;
+        }
+        return boxes;
+    }
+
+    private static double distance(double[] shifts, double[] ppm, int[] dim, double[] scale) {
+        double sum = 0.0;
+        for (int j = 0; j < ppm.length; j++) {
+            if ((dim.length <= j) || (dim[j] == -1) || (dim[j] >= shifts.length)) {
+                continue;
+            }
+            double delta = (shifts[dim[j]] - ppm[j]) / scale[j];
+            sum += delta * delta;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Find the peaks closest to a position. Distances are calculated from the
+     * shift differences divided by the scale of each search dimension.
+     *
+     * @param ppm   the shift of the position in each search dimension
+     * @param dim   the peak list dimension of each search dimension, or -1 to
+     *              ignore the search dimension
+     * @param scale the scale for each search dimension
+     * @param k     the maximum number of peaks to return
+     * @return the nearest peaks, closest first
+     */
+    public synchronized List<PeakDistance> findNearestPeaks(double[] ppm, int[] dim, double[] scale, int k) {
+        checkValid();
+        PriorityQueue<PeakDistance> queue = new PriorityQueue<>(Comparator.reverseOrder());
+        if (k > 0) {
+            nearest(0, treePeaks.length, 0, ppm, dim, scale, k, queue);
+            for (Peak peak : pending) {
+                if (inList(peak)) {
+                    offer(queue, k, new PeakDistance(peak, distance(getShifts(peak), ppm, dim, scale)));
+                }
+            }
+        }
+        List<PeakDistance> result = new ArrayList<>(queue);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void offer(PriorityQueue<PeakDistance> queue, int k, PeakDistance peakDis) {
+        if (queue.size() < k) {
+            queue.add(peakDis);
+        } else if (peakDis.getDistance() < queue.peek().getDistance()) {
+            queue.poll();
+            queue.add(peakDis);
+        }
+    }
+
+    private void nearest(int lo, int hi, int depth, double[] ppm, int[] dim, double[] scale, int k,
+                         PriorityQueue<PeakDistance> queue) {
+        if ((hi - lo) <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                if (!pending.contains(treePeaks[i])) {
+                    offer(queue, k, new PeakDistance(treePeaks[i], distance(treeShifts[i], ppm, dim, scale)));
+                }
+            }
+            return;
+        }
+        int nDim = treeShifts[lo].length;
+        int axis = depth % nDim;
+        int mid = (lo + hi) >>> 1;
+        if (!pending.contains(treePeaks[mid])) {
+            offer(queue, k, new PeakDistance(treePeaks[mid], distance(treeShifts[mid], ppm, dim, scale)));
+        }
+        int j = -1;
+        for (int i = 0; i < ppm.length; i++) {
+            if ((i < dim.length) && (dim[i] == axis)) {
+                j = i;
+                break;
+            }
+        }
+        if (j == -1) {
+            nearest(lo, mid, depth + 1, ppm, dim, scale, k, queue);
+            nearest(mid + 1, hi, depth + 1, ppm, dim, scale, k, queue);
+            return;
+        }
+        double delta = (ppm[j] - treeShifts[mid][axis]) / scale[j];
+        boolean lowFirst = delta <= 0.0;
+        if (lowFirst) {
+            nearest(lo, mid, depth + 1, ppm, dim, scale, k, queue);
+        } else {
+            nearest(mid + 1, hi, depth + 1, ppm, dim, scale, k, queue);
+        }
+        if ((queue.size() < k) || (Math.abs(delta) <= queue.peek().getDistance())) {
+            if (lowFirst) {
+                nearest(mid + 1, hi, depth + 1, ppm, dim, scale, k, queue);
+            } else {
+                nearest(lo, mid, depth + 1, ppm, dim, scale, k, queue);
+            }
+        }
+    }
+
+    /**
+     * Find the peaks within a tolerance of a position. A peak matches if the
+     * sum over the search dimensions of the squared shift difference divided
+     * by the squared tolerance is not more than one.
+     *
+     * @param ppm the shift of the position in each search dimension
+     * @param dim the peak list dimension of each search dimension, or -1 to
+     *            ignore the search dimension
+     * @param tol the tolerance for each search dimension
+     * @return the matching peaks, closest first
+     */
+    public synchronized List<PeakDistance> findPeaksWithinTolerance(double[] ppm, int[] dim, double[] tol) {
+        double[][] limits = new double[ppm.length][2];
+        for (int j = 0; j < ppm.length; j++) {
+            limits[j][0] = ppm[j] - tol[j];
+            limits[j][1] = ppm[j] + tol[j];
+        }
+        checkValid();
+        double[][] box = getBox(limits, dim);
+        List<Peak> found = new ArrayList<>();
+        findInBox(box[0], box[1], found);
+        List<PeakDistance> result = new ArrayList<>();
+        for (Peak peak : found) {
+            double distance = distance(getShifts(peak), ppm, dim, tol);
+            if (distance <= 1.0) {
+                result.add(new PeakDistance(peak, distance));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
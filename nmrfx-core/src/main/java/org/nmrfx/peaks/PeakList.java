@@ -50,6 +50,7 @@ public class PeakList {
     protected String experimentType = "";
     protected List<Peak> peaks;
     protected final Map<Integer, Peak> indexMap = new HashMap<>();
+    private final PeakIndex peakIndex = new PeakIndex(this);
     boolean slideable = false;
     boolean requireSliderCondition = false;
     protected List<SearchDim> searchDims = new ArrayList<>();
@@ -679,6 +680,9 @@ public class PeakList {
 
     public void peakListUpdated(Object object) {
         changed = true;
+        if (object instanceof Peak peak) {
+            peakIndex.peakChanged(peak);
+        }
         assignmentStatusValid.set(false);
         if (updater != null) {
             updater.update(object);
@@ -845,6 +849,7 @@ public class PeakList {
     public void addPeakWithoutResonance(Peak newPeak) {
         newPeak.setIndex(peaks.size());
         peaks.add(newPeak);
+        peakIndex.peakAdded(newPeak);
         peakListUpdated(peaks);
         clearIndex();
     }
@@ -856,6 +861,7 @@ public class PeakList {
         newPeak.initPeakDimContribs();
         newPeak.setIndex(peaks.size());
         peaks.add(newPeak);
+        peakIndex.peakAdded(newPeak);
         peakListUpdated(peaks);
         clearIndex();
         return newPeak;
@@ -906,6 +912,7 @@ public class PeakList {
             peak.setIndex(i++);
             indexMap.put(peak.getIdNum(), peak);
         }
+        peakIndex.verify(peaks);
         peakListUpdated(this);
     }
 
@@ -1588,10 +1595,21 @@ public class PeakList {
             width[i] = Math.abs(limits[i][0] - limits[i][1]);
         }
 
-        int nPeaks = size();
+        double[][] searchFoldLimits = null;
+        double[] foldAmount = null;
+        if (foldLimits != null) {
+            searchFoldLimits = Arrays.copyOf(foldLimits, nSearchDim);
+            foldAmount = new double[nSearchDim];
+            for (i = 0; i < nSearchDim; i++) {
+                if (searchFoldLimits[i] != null) {
+                    foldAmount[i] = Math.abs(searchFoldLimits[i][0] - searchFoldLimits[i][1]);
+                }
+            }
+        }
+        List<Peak> candidates = peakIndex.findCandidates(Arrays.copyOf(limits, nSearchDim), searchFoldLimits, foldAmount, dim);
 
-        for (i = 0; i < nPeaks; i++) {
-            peak = peaks.get(i);
+        for (Peak candidate : candidates) {
+            peak = candidate;
             boolean ok = true;
 
             double sumDistance = 0.0;
@@ -1634,6 +1652,60 @@ public class PeakList {
         return (sPeaks);
     }
 
+    /**
+     * Find the peaks with shifts within a region, as tested by
+     * {@link Peak#inRegion}, using the spatial index of this list.
+     *
+     * @param limits lower and upper shift limits for each search dimension
+     * @param dim    the peak list dimension of each search dimension, or -1 to
+     *               ignore the search dimension
+     * @return the peaks in the region, in list order
+     */
+    public List<Peak> findPeaksInRegion(double[][] limits, int[] dim) {
+        return peakIndex.findPeaksInRegion(limits, dim);
+    }
+
+    /**
+     * Find the peaks with shifts within a region, after the shifts are folded
+     * as in {@link Peak#inRegion}, using the spatial index of this list.
+     *
+     * @param limits     lower and upper shift limits for each search dimension
+     * @param foldLimits limits into which shifts are folded. May be null.
+     * @param foldAmount the amount shifts are folded by in each search dimension
+     * @param dim        the peak list dimension of each search dimension, or -1
+     *                   to ignore the search dimension
+     * @return the peaks in the region, in list order
+     */
+    public List<Peak> findPeaksInRegion(double[][] limits, double[][] foldLimits, double[] foldAmount, int[] dim) {
+        return peakIndex.findPeaksInRegion(limits, foldLimits, foldAmount, dim);
+    }
+
+    /**
+     * Find the peaks nearest to a position, with the shift differences in each
+     * dimension divided by a scale.
+     *
+     * @param ppm   the position in each search dimension
+     * @param dim   the peak list dimension of each search dimension
+     * @param scale the scale of each search dimension
+     * @param k     the maximum number of peaks to return
+     * @return the nearest peaks and their scaled distances, closest first
+     */
+    public List<PeakDistance> findNearestPeaks(double[] ppm, int[] dim, double[] scale, int k) {
+        return peakIndex.findNearestPeaks(ppm, dim, scale, k);
+    }
+
+    /**
+     * Find the peaks within an elliptical tolerance of a position.
+     *
+     * @param ppm the position in each search dimension
+     * @param dim the peak list dimension of each search dimension
+     * @param tol the tolerance in each search dimension, must be greater than zero
+     * @return the matching peaks and their scaled distances, closest first
+     */
+    public List<PeakDistance> findPeaksWithinTolerance(double[] ppm, int[] dim, double[] tol) {
+        return peakIndex.findPeaksWithinTolerance(ppm, dim, tol);
+    }
+
     /**
      * @return
      */
@@ -1730,6 +1802,7 @@ public class PeakList {
             peaks.clear();
         }
         peaks = null;
+        peakIndex.invalidate();
         if (updater != null) {
             updater.shutdown();
             updater = null;
@@ -29,8 +29,8 @@ import java.util.*;
 public class Loop {
 
     String name = "";
-    ArrayList<String>[] columns = null;
-    final HashMap<String, ArrayList<String>> loopTags = new HashMap<>();
+    LoopColumn[] columns = null;
+    final HashMap<String, LoopColumn> loopTags = new HashMap<>();
     ArrayList<String> tags = new ArrayList();
     private int nTags;
     private int nRows = 0;
@@ -97,6 +97,42 @@ public class Loop {
         return tokenRow;
     }
 
+    /**
+     * Read the next row of the loop and add its values to the columns.
+     *
+     * @param star3 the file being read
+     * @return false if there are no more rows in the loop
+     * @throws ParseException if the row is incomplete
+     */
+    private boolean readLoopRow(STAR3Base star3) throws ParseException {
+        String token = star3.getToken();
+        if (star3 instanceof MMCIF) {
+            if ((token == null) || token.startsWith("_") || token.equals(STAR3Base.LOOP)) {
+                if (token != null) {
+                    star3.unGetToken();
+                }
+                return false;
+            }
+        } else if (token == null) {
+            throw new ParseException("File exhausted before all tokens found in loop of \"" + saveFrame.name + "\"");
+        }
+        if (token.equals(STAR3Base.STOP)) {
+            return false;
+        }
+        columns[0].add(token);
+        for (int i = 1; i < nTags; i++) {
+            token = star3.getToken();
+            if (token == null) {
+                throw new ParseException("File exhausted before all tokens found in row \"" + nRows + "\" in loop of \"" + saveFrame.name + "\"");
+            }
+            if (token.equals(STAR3Base.STOP)) {
+                throw new ParseException("Found stop_ at unexpected position in row \"" + nRows + "\" in loop of \"" + saveFrame.name + "\"");
+            }
+            columns[i].add(token);
+        }
+        return true;
+    }
+
     public ArrayList<String> processLoopTags(STAR3Base star3) throws ParseException {
         ArrayList<String> tokens = new ArrayList();
         boolean firstTag = true;
@@ -124,19 +160,14 @@ public class Loop {
         STAR3Base star3 = saveFrame.getSTAR3();
         tags = processLoopTags(star3);
         nTags = tags.size();
-        columns = new ArrayList[nTags];
+        columns = new LoopColumn[nTags];
         for (int i = 0; i < nTags; i++) {
-            columns[i] = new ArrayList();
+            columns[i] = new LoopColumn();
             String tag = tags.get(i);
             loopTags.put(tag, columns[i]);
         }
         nRows = 0;
-        while (true) {
-            String[] tokenRow = getLoopRow(nTags);
-            if (tokenRow == null) {
-                break;
-            }
-            addRow(tokenRow);
+        while (readLoopRow(star3)) {
             nRows++;
         }
 
@@ -145,10 +176,10 @@ public class Loop {
 
     public void addValues(final List<String> names, final List<String> values) throws ParseException {
         nTags = names.size();
-        columns = new ArrayList[nTags];
+        columns = new LoopColumn[nTags];
         tags = new ArrayList();
         for (int i = 0; i < nTags; i++) {
-            columns[i] = new ArrayList();
+            columns[i] = new LoopColumn();
             String tag = names.get(i);
             loopTags.put(tag, columns[i]);
             tags.add(tag);
@@ -168,14 +199,14 @@ public class Loop {
     public Map<String, String> getRowMap(int loopIndex) throws ParseException {
         Map<String, String> map = new LinkedHashMap<>();
 
-        for (Map.Entry eSet : loopTags.entrySet()) {
-            ArrayList column = (ArrayList) eSet.getValue();
+        for (Map.Entry<String, LoopColumn> eSet : loopTags.entrySet()) {
+            LoopColumn column = eSet.getValue();
             if ((loopIndex < 0) || (loopIndex >= column.size())) {
                 throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
             }
 
-            String value = (String) column.get(loopIndex);
-            String loopTag = (String) eSet.getKey();
+            String value = column.get(loopIndex);
+            String loopTag = eSet.getKey();
             map.put(loopTag, value);
         }
         return map;
@@ -183,18 +214,18 @@ public class Loop {
 
     public String getValueIfPresent(String tag, int loopIndex) throws ParseException {
         String result = null;
-        ArrayList<String> column = (ArrayList) loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         if (column != null) {
             if ((loopIndex < 0) || (loopIndex >= column.size())) {
                 throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
             }
-            result = (String) column.get(loopIndex);
+            result = column.get(loopIndex);
         }
         return result;
     }
 
     public String getValue(String tag, int loopIndex) throws ParseException {
-        ArrayList<String> column = (ArrayList) loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
 
         if (column == null) {
             throw new ParseException("Can't find column \"" + tag + "\"");
@@ -202,7 +233,7 @@ public class Loop {
         if ((loopIndex < 0) || (loopIndex >= column.size())) {
             throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
         }
-        String result = (String) column.get(loopIndex);
+        String result = column.get(loopIndex);
         return result;
     }
 
@@ -212,7 +243,7 @@ public class Loop {
             throw new IllegalArgumentException("Invalid loop index \"" + loopIndex + "\"");
         }
         for (int i = 0; i < columns.length; i++) {
-            result[i] = (String) columns[i].get(loopIndex);
+            result[i] = columns[i].get(loopIndex);
         }
         return result;
     }
@@ -222,85 +253,112 @@ public class Loop {
             throw new ParseException("Invalid loop index \"" + loopIndex + "\"");
         }
         List<String> list = new ArrayList<>();
-        for (ArrayList<String> column : columns) {
+        for (LoopColumn column : columns) {
             list.add(column.get(loopIndex));
         }
         return list;
     }
 
     public List<String> getColumnAsList(String tag) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         if (column == null) {
             throw new ParseException("Can't find column \"" + tag + "\"");
         }
-        return column;
+        return column.asList();
     }
 
     public List<String> getColumnAsList(String tag, String defaultValue) {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         if (column == null) {
-            column = new ArrayList<>();
+            List<String> values = new ArrayList<>();
             for (int i = 0; i < nRows; i++) {
-                column.add(defaultValue);
+                values.add(defaultValue);
             }
+            return values;
         }
-        return column;
+        return column.asList();
     }
 
     public List<Double> getColumnAsDoubleList(String tag, Double defaultValue) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
-        List<Double> values;
+        LoopColumn column = loopTags.get(tag);
+        List<Double> values = new ArrayList<>(nRows);
         if (column == null) {
-            values = new ArrayList<>();
             for (int i = 0; i < nRows; i++) {
                 values.add(defaultValue);
             }
         } else {
-            values = new ArrayList<>();
-            for (String s : column) {
-                switch (s) {
-                    case ".":
-                        values.add(defaultValue);
-                        break;
-                    case "?":
-                        values.add(defaultValue);
-                        break;
-                    default:
-                        values.add(Double.parseDouble(s));
-                        break;
-                }
+            double[] doubles = column.getDoubles();
+            boolean[] missing = column.getMissing();
+            for (int i = 0; i < doubles.length; i++) {
+                values.add(missing[i] ? defaultValue : Double.valueOf(doubles[i]));
             }
         }
         return values;
     }
 
     public List<Integer> getColumnAsIntegerList(String tag, Integer defaultValue) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         List<Integer> values;
         if (column == null) {
             values = Collections.nCopies(nRows, (Integer) null);
         } else {
-            values = new ArrayList<>();
-            for (String s : column) {
-                switch (s) {
-                    case ".":
-                        values.add(defaultValue);
-                        break;
-                    case "?":
-                        values.add(defaultValue);
-                        break;
-                    default:
-                        values.add(Integer.parseInt(s));
-                        break;
-                }
+            int[] ints = column.getInts();
+            boolean[] missing = column.getMissing();
+            values = new ArrayList<>(ints.length);
+            for (int i = 0; i < ints.length; i++) {
+                values.add(missing[i] ? defaultValue : Integer.valueOf(ints[i]));
             }
         }
         return values;
     }
 
+    /**
+     * Get the values of a column parsed as doubles. The column is parsed
+     * once, and later calls reuse the parsed values.
+     *
+     * @param tag          the column tag
+     * @param defaultValue the value to use for missing values, or for all
+     *                     rows if there is no column with the tag
+     * @return the values
+     * @throws NumberFormatException if a value is not missing and not a number
+     */
+    public double[] getColumnAsDoubleArray(String tag, double defaultValue) {
+        LoopColumn column = loopTags.get(tag);
+        if (column == null) {
+            double[] values = new double[nRows];
+            Arrays.fill(values, defaultValue);
+            return values;
+        }
+        return column.getDoubles(defaultValue);
+    }
+
+    /**
+     * Get the values of a column parsed as integers. The column is parsed
+     * once, and later calls reuse the parsed values.
+     *
+     * @param tag          the column tag
+     * @param defaultValue the value to use for missing values, or for all
+     *                     rows if there is no column with the tag
+     * @return the values
+     * @throws NumberFormatException if a value is not missing and not an integer
+     */
+    public int[] getColumnAsIntArray(String tag, int defaultValue) {
+        LoopColumn column = loopTags.get(tag);
+        if (column == null) {
+            int[] values = new int[nRows];
+            Arrays.fill(values, defaultValue);
+            return values;
+        }
+        return column.getInts(defaultValue);
+    }
+
+    public LoopColumn getLoopColumn(String tag) {
+        return loopTags.get(tag);
+    }
+
     public List<String> getColumnAsListIfExists(String tag) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
-        return column;
+        LoopColumn column = loopTags.get(tag);
+        return column == null ? null : column.asList();
     }
 
     public List<String> getTags() throws ParseException {
@@ -315,7 +373,7 @@ public class Loop {
         return loopTags.containsKey(tag);
     }
     public List<String> getColumn(String tag) throws ParseException {
-        ArrayList<String> column = loopTags.get(tag);
+        LoopColumn column = loopTags.get(tag);
         ArrayList<String> list = new ArrayList<>();
         for (int i = 0; i < nRows; i++) {
             String value = column.get(i);
@@ -0,0 +1,189 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2021 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.star;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The values of one tag of a loop. Values are kept as strings, and numeric
+ * values are parsed into primitive arrays the first time they are requested.
+ * The values "." and "?" are treated as missing.
+ */
+public class LoopColumn {
+
+    private String[] values = new String[16];
+    private int size = 0;
+    private boolean[] missing = null;
+    private double[] doubles = null;
+    private int[] ints = null;
+    private final ColumnList list = new ColumnList();
+
+    private class ColumnList extends AbstractList<String> implements RandomAccess {
+
+        @Override
+        public String get(int index) {
+            return LoopColumn.this.get(index);
+        }
+
+        @Override
+        public String set(int index, String value) {
+            return LoopColumn.this.set(index, value);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    void add(String value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+        clearParsed();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    String set(int index, String value) {
+        String current = get(index);
+        values[index] = value;
+        clearParsed();
+        return current;
+    }
+
+    private void clearParsed() {
+        missing = null;
+        doubles = null;
+        ints = null;
+    }
+
+    /**
+     * Get a view of the values as a list.
+     *
+     * @return the list
+     */
+    public List<String> asList() {
+        return list;
+    }
+
+    public static boolean isMissing(String value) {
+        return value.equals(".") || value.equals("?");
+    }
+
+    /**
+     * Get whether each value is missing ("." or "?").
+     *
+     * @return the array of flags. It is shared, so should not be modified.
+     */
+    boolean[] getMissing() {
+        if (missing == null) {
+            boolean[] newMissing = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                newMissing[i] = isMissing(values[i]);
+            }
+            missing = newMissing;
+        }
+        return missing;
+    }
+
+    /**
+     * Get the values parsed as doubles. Missing values are NaN.
+     *
+     * @return the array of values. It is shared, so should not be modified.
+     * @throws NumberFormatException if a value is not missing and not a number
+     */
+    double[] getDoubles() {
+        if (doubles == null) {
+            boolean[] isMissing = getMissing();
+            double[] newDoubles = new double[size];
+            for (int i = 0; i < size; i++) {
+                newDoubles[i] = isMissing[i] ? Double.NaN : Double.parseDouble(values[i]);
+            }
+            doubles = newDoubles;
+        }
+        return doubles;
+    }
+
+    /**
+     * Get the values parsed as integers. Missing values are 0.
+     *
+     * @return the array of values. It is shared, so should not be modified.
+     * @throws NumberFormatException if a value is not missing and not an integer
+     */
+    int[] getInts() {
+        if (ints == null) {
+            boolean[] isMissing = getMissing();
+            int[] newInts = new int[size];
+            for (int i = 0; i < size; i++) {
+                newInts[i] = isMissing[i] ? 0 : Integer.parseInt(values[i]);
+            }
+            ints = newInts;
+        }
+        return ints;
+    }
+
+    /**
+     * Get a copy of the values parsed as doubles.
+     *
+     * @param defaultValue the value to use for missing values
+     * @return the values
+     * @throws NumberFormatException if a value is not missing and not a number
+     */
+    public double[] getDoubles(double defaultValue) {
+        double[] result = getDoubles().clone();
+        boolean[] isMissing = getMissing();
+        for (int i = 0; i < size; i++) {
+            if (isMissing[i]) {
+                result[i] = defaultValue;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of the values parsed as integers.
+     *
+     * @param defaultValue the value to use for missing values
+     * @return the values
+     * @throws NumberFormatException if a value is not missing and not an integer
+     */
+    public int[] getInts(int defaultValue) {
+        int[] result = getInts().clone();
+        boolean[] isMissing = getMissing();
+        for (int i = 0; i < size; i++) {
+            if (isMissing[i]) {
+                result[i] = defaultValue;
+            }
+        }
+        return result;
+    }
+}
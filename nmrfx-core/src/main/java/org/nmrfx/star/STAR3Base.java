@@ -21,11 +21,8 @@ public class STAR3Base {
     public static final String SAVE = "save_";
     public static final String LOOP = "loop_";
     public static final String STOP = "stop_";
-    LineNumberReader lineReader = null;
+    STARTokenizer tokenizer = null;
     PrintWriter out = null;
-    BufferedReader bfR;
-    STAR3.STARTokenizer stTokenizer = null;
-    String string;
     public boolean usePrevious;
     String lastToken = null;
     final String name;
@@ -44,8 +41,7 @@ public class STAR3Base {
         this.name = name;
         this.fileName = fileName;
         try {
-            bfR = new BufferedReader(new FileReader(fileName));
-            lineReader = new LineNumberReader(bfR);
+            tokenizer = new STARTokenizer(new FileReader(fileName));
         } catch (IOException ioe) {
             log.warn("Cannot open the STAR3 file. {}", ioe.getMessage(), ioe);
             return;
@@ -57,13 +53,13 @@ public class STAR3Base {
     public STAR3Base(BufferedReader bfR, final String name) {
         this.name = name;
         this.fileName = "";
-        lineReader = new LineNumberReader(bfR);
+        tokenizer = new STARTokenizer(bfR);
 
         usePrevious = false;
     }
 
     public int getLastLine() {
-        return lineReader.getLineNumber();
+        return tokenizer == null ? 0 : tokenizer.getLineNumber();
     }
 
     public void writeToken(String token) {
@@ -71,15 +67,20 @@ public class STAR3Base {
     }
 
     static public String[] getTokenPair(String token) throws ParseException {
-        // fixme prepare pattern matcher for efficiency, or use indexOf?
         if (token.charAt(0) != '_') {
             throw new ParseException("Incorrect tag format \"" + token + "\"");
         }
-        String[] tokenPair = token.split("\\.");
-        if (tokenPair.length != 2) {
+        // trailing dots are ignored, as they were when the tag was split with a regular expression
+        int end = token.length();
+        while ((end > 0) && (token.charAt(end - 1) == '.')) {
+            end--;
+        }
+        int dot = token.indexOf('.');
+        int nextDot = dot < 0 ? -1 : token.indexOf('.', dot + 1);
+        if ((dot < 0) || (dot >= end) || ((nextDot >= 0) && (nextDot < end))) {
             throw new ParseException("Incorrect tag format \"" + token + "\"");
         }
-        return tokenPair;
+        return new String[]{token.substring(0, dot), token.substring(dot + 1, end)};
     }
 
     void setupTokenizer(StreamTokenizer tokenizer) {
@@ -112,80 +113,6 @@ public class STAR3Base {
         tokenizer.wordChars('=', '=');
     }
 
-    class STARTokenizer {
-
-        String s;
-        int pos;
-        int length = 0;
-
-        void initialize(final String newStr) {
-            pos = 0;
-            s = newStr;
-            if (newStr == null) {
-                length = 0;
-            } else {
-                length = s.length();
-            }
-        }
-
-        String nextToken() {
-            if (pos >= length) {
-                return null;
-            }
-            int fChar;
-            int lChar;
-            boolean gotWS = false;
-            while (pos < length) {
-                if (Character.isWhitespace(s.charAt(pos))) {
-                    gotWS = true;
-                } else {
-                    if (pos == 0) {
-                        gotWS = true;
-                    }
-                    break;
-                }
-                pos++;
-            }
-            if (pos == length) {
-                return null;
-            }
-            fChar = pos;
-            lChar = pos;
-            if (gotWS && (s.charAt(pos) == '\'' || s.charAt(pos) == '"')) {
-                char qChar = s.charAt(pos);
-                pos++;
-                while (pos < length) {
-                    if ((s.charAt(pos) == qChar) && ((pos == length - 1) || Character.isWhitespace(s.charAt(pos + 1)))) {
-                        lChar = pos;
-                        pos++;
-                        break;
-                    }
-                    pos++;
-                }
-            } else {
-                while (pos < length) {
-                    if (Character.isWhitespace(s.charAt(pos))) {
-                        break;
-                    }
-                    lChar = pos;
-                    pos++;
-                }
-            }
-            String token = s.substring(fChar, lChar + 1);
-            token = token.trim();
-            int length = token.length();
-            if (length > 1) {
-                char firstChar = token.charAt(0);
-                char lastChar = token.charAt(length - 1);
-                if ((lastChar == firstChar) && ((firstChar == '\'') || (firstChar == '"'))) {
-                    token = token.substring(1, length - 1);
-                }
-            }
-
-            return token;
-        }
-    }
-
     public void unGetToken() {
         usePrevious = true;
     }
@@ -196,82 +123,31 @@ public class STAR3Base {
     }
 
     String getNextToken() {
-        StringBuffer text = new StringBuffer();
-        boolean inText = false;
-
         if (usePrevious) {
             usePrevious = false;
             return (lastToken);
         }
 
-        usePrevious = false;
-
-        if (stTokenizer != null) {
-            String nextToken = stTokenizer.nextToken();
-            if (nextToken != null) {
-                return nextToken;
-            }
-        }
-
-        while (true) {
-            string = getLine();
-            if (string == null) {
-                lineReader = null;
-                bfR = null;
-                lastToken = null;
-                return lastToken;
-            }
-            if (inText) {
-                if (string.startsWith(";")) {
-                    inText = false;
-                    if (string.length() > 1) {
-                        stTokenizer = new STARTokenizer();
-                        stTokenizer.initialize(string.substring(1));
-                    }
-
-                    lastToken = text.toString();
-                    return lastToken;
-                }
-
-                text.append(string + '\n');
-            } else {
-                if (string.startsWith("#")) {
-                    continue;
-                }
-
-                if (string.startsWith(";")) {
-                    text.setLength(0);
-                    text.append(string.substring(1).trim());
-                    inText = true;
-                } else {
-                    stTokenizer = new STARTokenizer();
-                    stTokenizer.initialize(string);
-                    String nextToken = stTokenizer.nextToken();
-                    if (nextToken == null) {
-                        continue;
-                    } else {
-                        lastToken = nextToken;
-                        return lastToken;
-                    }
-                }
+        lastToken = null;
+        if (tokenizer != null) {
+            try {
+                lastToken = tokenizer.nextToken();
+            } catch (IOException e) {
+                log.warn("Error reading STAR file. {}", e.getMessage(), e);
             }
         }
+        return lastToken;
     }
 
     public String getLine() {
-        string = null;
-
-        if (lineReader == null) {
+        if (tokenizer == null) {
             return (null);
         }
-
         try {
-            string = lineReader.readLine();
+            return tokenizer.nextLine();
         } catch (IOException e) {
-            return (string);
+            return (null);
         }
-
-        return (string);
     }
 
     public static String valueOf(Number number) {
@@ -383,8 +259,7 @@ public class STAR3Base {
     }
 
     public void close() {
-        lineReader = null;
-        bfR = null;
+        tokenizer = null;
     }
 
     public void addLoop(String saveFrameName, String tagGroup, final List<String> names, final List<String> values) throws ParseException {
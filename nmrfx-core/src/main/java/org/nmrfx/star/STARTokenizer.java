@@ -0,0 +1,282 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2021 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.star;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits STAR text into tokens. Characters are read from the reader into a
+ * buffer and lines and tokens are found in place, so no string is made for
+ * each line. Short tokens are looked up in a small cache so that the values
+ * that repeat in a loop (".", atom names, residue names) share one string.
+ * <p>
+ * Lines starting with "#" are comments. A line starting with ";" starts a
+ * text value, which ends at the next line starting with ";". Quoted values
+ * start after whitespace and end at a matching quote followed by whitespace.
+ */
+class STARTokenizer {
+
+    private static final int MAX_CACHED_LENGTH = 16;
+    private static final int CACHE_SIZE = 4096;
+
+    private final Reader reader;
+    private char[] buf = new char[65536];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private int lineNumber = 0;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int segmentStart = 0;
+    private int tokenPos = 0;
+    private boolean inLine = false;
+    private final StringBuilder text = new StringBuilder();
+    private final String[] cache = new String[CACHE_SIZE];
+
+    STARTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Get the next token.
+     *
+     * @return the token or null if the input is exhausted
+     * @throws IOException if the input can't be read
+     */
+    String nextToken() throws IOException {
+        if (inLine) {
+            String token = nextTokenInLine();
+            if (token != null) {
+                return token;
+            }
+            inLine = false;
+        }
+        boolean inText = false;
+        while (findLine()) {
+            int length = lineEnd - lineStart;
+            boolean semicolon = (length > 0) && (buf[lineStart] == ';');
+            if (inText) {
+                if (semicolon) {
+                    if (length > 1) {
+                        startLine(lineStart + 1);
+                    }
+                    return text.toString();
+                }
+                text.append(buf, lineStart, length).append('\n');
+            } else if ((length > 0) && (buf[lineStart] == '#')) {
+                continue;
+            } else if (semicolon) {
+                int start = lineStart + 1;
+                int end = lineEnd;
+                while ((start < end) && (buf[start] <= ' ')) {
+                    start++;
+                }
+                while ((end > start) && (buf[end - 1] <= ' ')) {
+                    end--;
+                }
+                text.setLength(0);
+                text.append(buf, start, end - start);
+                inText = true;
+            } else {
+                startLine(lineStart);
+                String token = nextTokenInLine();
+                if (token != null) {
+                    return token;
+                }
+                inLine = false;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the next line.
+     *
+     * @return the line or null if the input is exhausted
+     * @throws IOException if the input can't be read
+     */
+    String nextLine() throws IOException {
+        inLine = false;
+        if (findLine()) {
+            return new String(buf, lineStart, lineEnd - lineStart);
+        }
+        return null;
+    }
+
+    private void startLine(int start) {
+        segmentStart = start;
+        tokenPos = start;
+        inLine = true;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = reader.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Find the next line in the buffer, splitting lines at "\n", "\r" or
+     * "\r\n".
+     */
+    private boolean findLine() throws IOException {
+        int i = pos;
+        while (true) {
+            while ((i < limit) && (buf[i] != '\n') && (buf[i] != '\r')) {
+                i++;
+            }
+            if (i < limit) {
+                if ((buf[i] == '\r') && (i + 1 == limit) && !eof) {
+                    // need the next character to see if this is "\r\n"
+                    int offset = i - pos;
+                    fill();
+                    i = pos + offset;
+                    continue;
+                }
+                lineStart = pos;
+                lineEnd = i;
+                pos = i + 1;
+                if ((buf[i] == '\r') && (pos < limit) && (buf[pos] == '\n')) {
+                    pos++;
+                }
+                lineNumber++;
+                return true;
+            }
+            int offset = i - pos;
+            if (!fill()) {
+                if (limit > pos) {
+                    lineStart = pos;
+                    lineEnd = limit;
+                    pos = limit;
+                    lineNumber++;
+                    return true;
+                }
+                return false;
+            }
+            i = pos + offset;
+        }
+    }
+
+    private String nextTokenInLine() {
+        if (tokenPos >= lineEnd) {
+            return null;
+        }
+        boolean gotWS = false;
+        while (tokenPos < lineEnd) {
+            if (Character.isWhitespace(buf[tokenPos])) {
+                gotWS = true;
+            } else {
+                if (tokenPos == segmentStart) {
+                    gotWS = true;
+                }
+                break;
+            }
+            tokenPos++;
+        }
+        if (tokenPos == lineEnd) {
+            return null;
+        }
+        int fChar = tokenPos;
+        int lChar = tokenPos;
+        char c = buf[tokenPos];
+        if (gotWS && ((c == '\'') || (c == '"'))) {
+            tokenPos++;
+            while (tokenPos < lineEnd) {
+                if ((buf[tokenPos] == c) && ((tokenPos == lineEnd - 1) || Character.isWhitespace(buf[tokenPos + 1]))) {
+                    lChar = tokenPos;
+                    tokenPos++;
+                    break;
+                }
+                tokenPos++;
+            }
+        } else {
+            while (tokenPos < lineEnd) {
+                if (Character.isWhitespace(buf[tokenPos])) {
+                    break;
+                }
+                lChar = tokenPos;
+                tokenPos++;
+            }
+        }
+        int start = fChar;
+        int end = lChar + 1;
+        while ((start < end) && (buf[start] <= ' ')) {
+            start++;
+        }
+        while ((end > start) && (buf[end - 1] <= ' ')) {
+            end--;
+        }
+        if (end - start > 1) {
+            char firstChar = buf[start];
+            char lastChar = buf[end - 1];
+            if ((lastChar == firstChar) && ((firstChar == '\'') || (firstChar == '"'))) {
+                start++;
+                end--;
+            }
+        }
+        return makeString(start, end);
+    }
+
+    private String makeString(int start, int end) {
+        int length = end - start;
+        if (length > MAX_CACHED_LENGTH) {
+            return new String(buf, start, length);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = cache[index];
+        if ((cached != null) && (cached.length() == length)) {
+            boolean match = true;
+            for (int i = 0; i < length; i++) {
+                if (cached.charAt(i) != buf[start + i]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return cached;
+            }
+        }
+        String token = new String(buf, start, length);
+        cache[index] = token;
+        return token;
+    }
+}
@@ -0,0 +1,121 @@
+package org.nmrfx.chemistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoordinateStoreTest {
+
+    @Test
+    public void testSetAndGet() {
+        CoordinateStore store = new CoordinateStore();
+        int slot0 = store.addSlot();
+        int slot1 = store.addSlot();
+        Assert.assertFalse(store.isValid(0, slot0));
+        store.setXYZ(2, slot1, 1.0, 2.0, 3.0);
+        Assert.assertEquals(3, store.getStructureCount());
+        Assert.assertTrue(store.isValid(2, slot1));
+        Assert.assertFalse(store.isValid(2, slot0));
+        Assert.assertFalse(store.isValid(1, slot1));
+        Assert.assertEquals(2.0, store.getY(2, slot1), 0.0);
+        Assert.assertEquals(1.0f, store.getOccupancy(2, slot1), 0.0f);
+        store.setBFactor(2, slot1, 5.0f);
+        Assert.assertEquals(5.0f, store.getBFactor(2, slot1), 0.0f);
+        store.setValid(2, slot1, false);
+        store.setValid(2, slot1, true);
+        Assert.assertEquals(1.0f, store.getBFactor(2, slot1), 0.0f);
+        Assert.assertEquals(0.0, store.getX(2, slot1), 0.0);
+    }
+
+    @Test
+    public void testGrowth() {
+        CoordinateStore store = new CoordinateStore();
+        int nSlots = 1000;
+        for (int i = 0; i < nSlots; i++) {
+            int slot = store.addSlot();
+            store.setXYZ(0, slot, i, -i, 2 * i);
+        }
+        Assert.assertEquals(nSlots, store.getSlotCount());
+        for (int i = 0; i < nSlots; i++) {
+            Assert.assertEquals(i, store.getX(0, i), 0.0);
+            Assert.assertEquals(-i, store.getY(0, i), 0.0);
+            Assert.assertEquals(2 * i, store.getZ(0, i), 0.0);
+        }
+    }
+
+    @Test
+    public void testGrowthKeepsStructures() {
+        CoordinateStore store = new CoordinateStore();
+        int slot = store.addSlot();
+        store.setXYZ(0, slot, 1.0, 2.0, 3.0);
+        store.setXYZ(3, slot, 4.0, 5.0, 6.0);
+        store.setOrder(3, slot, 0.25f);
+        for (int i = 0; i < 200; i++) {
+            store.addSlot();
+        }
+        Assert.assertEquals(4, store.getStructureCount());
+        Assert.assertEquals(3.0, store.getZ(0, slot), 0.0);
+        Assert.assertEquals(4.0, store.getX(3, slot), 0.0);
+        Assert.assertEquals(0.25f, store.getOrder(3, slot), 0.0f);
+        Assert.assertFalse(store.isValid(1, slot));
+        Assert.assertFalse(store.isValid(3, 200));
+        store.setXYZ(1, 200, 7.0, 8.0, 9.0);
+        Assert.assertEquals(8.0, store.getY(1, 200), 0.0);
+        Assert.assertEquals(4.0, store.getX(3, slot), 0.0);
+    }
+
+    @Test
+    public void testFreeSlot() {
+        CoordinateStore store = new CoordinateStore();
+        int slot0 = store.addSlot();
+        int slot1 = store.addSlot();
+        store.setXYZ(0, slot0, 1.0, 2.0, 3.0);
+        store.setXYZ(2, slot0, 4.0, 5.0, 6.0);
+        store.setXYZ(0, slot1, 7.0, 8.0, 9.0);
+        store.freeSlot(slot0);
+        Assert.assertEquals(1, store.getFreeSlotCount());
+        Assert.assertFalse(store.isValid(0, slot0));
+        Assert.assertFalse(store.isValid(2, slot0));
+        Assert.assertTrue(store.isValid(0, slot1));
+
+        Assert.assertEquals(slot0, store.addSlot());
+        Assert.assertEquals(0, store.getFreeSlotCount());
+        Assert.assertEquals(2, store.getSlotCount());
+        Assert.assertFalse(store.isValid(2, slot0));
+        store.setValid(2, slot0, true);
+        Assert.assertEquals(0.0, store.getX(2, slot0), 0.0);
+        Assert.assertEquals(2, store.addSlot());
+    }
+
+    @Test
+    public void testCopyOutAndIn() {
+        CoordinateStore store = new CoordinateStore();
+        for (int i = 0; i < 4; i++) {
+            store.addSlot();
+        }
+        store.copyIn(1, new int[]{3, 1}, new double[]{1.0, 2.0, 3.0, 4.0, 5.0, 6.0});
+        double[] xyz = new double[9];
+        boolean[] valid = new boolean[3];
+        int nValid = store.copyOut(1, new int[]{1, 2, 3}, xyz, valid);
+        Assert.assertEquals(2, nValid);
+        Assert.assertArrayEquals(new boolean[]{true, false, true}, valid);
+        Assert.assertArrayEquals(new double[]{4.0, 5.0, 6.0, 0.0, 0.0, 0.0, 1.0, 2.0, 3.0}, xyz, 0.0);
+        Assert.assertEquals(0, store.copyOut(0, new int[]{1, 2, 3}, xyz, null));
+    }
+
+    @Test
+    public void testCopySlot() {
+        CoordinateStore source = new CoordinateStore();
+        int sourceSlot = source.addSlot();
+        source.setXYZ(0, sourceSlot, 1.0, 2.0, 3.0);
+        source.setXYZ(2, sourceSlot, 4.0, 5.0, 6.0);
+        source.setOrder(2, sourceSlot, 0.5f);
+        CoordinateStore target = new CoordinateStore();
+        target.addSlot();
+        int targetSlot = target.addSlot();
+        target.copySlot(source, sourceSlot, targetSlot, 3);
+        Assert.assertTrue(target.isValid(0, targetSlot));
+        Assert.assertFalse(target.isValid(1, targetSlot));
+        Assert.assertEquals(6.0, target.getZ(2, targetSlot), 0.0);
+        Assert.assertEquals(0.5f, target.getOrder(2, targetSlot), 0.0f);
+    }
+}
@@ -86,4 +86,95 @@ public class MoleculeTest {
         Assert.assertTrue(matched2y);
     }
 
+    @Test
+    public void testAtomSelection() {
+        AtomSelection selection = AtomSelection.compile("2-3.CA");
+        List<SpatialSet> selected = selection.select(mol);
+        Assert.assertEquals(2, selected.size());
+        Assert.assertEquals("CA", selected.get(0).getAtom().getName());
+        Assert.assertEquals("2", ((Residue) selected.get(0).getAtom().getEntity()).getNumber());
+        Assert.assertEquals("3", ((Residue) selected.get(1).getAtom().getEntity()).getNumber());
+        Assert.assertEquals(selected, selection.select(mol));
+
+        // glycine has no CB
+        Assert.assertEquals(7, AtomSelection.compile("*.CA,CB").select(mol).size());
+
+        List<SpatialSet> heavy = AtomSelection.compile("3.!H*").select(mol);
+        Assert.assertFalse(heavy.isEmpty());
+        boolean foundOG = false;
+        for (SpatialSet spatialSet : heavy) {
+            String name = spatialSet.getAtom().getName();
+            Assert.assertFalse(name.startsWith("H"));
+            foundOG |= name.equals("OG");
+        }
+        Assert.assertTrue(foundOG);
+    }
+
+    @Test
+    public void testFindAtomIndex() {
+        Atom atom = mol.findAtom("1.CB");
+        Assert.assertNotNull(atom);
+        Assert.assertSame(atom, mol.findAtom("1.CB"));
+        Assert.assertNull(mol.findAtom("2.CB"));
+        Assert.assertNull(mol.findAtom("2.CB"));
+        int version = mol.getTopologyVersion();
+        mol.invalidateAtomArray();
+        Assert.assertNotEquals(version, mol.getTopologyVersion());
+        Assert.assertSame(atom, mol.findAtom("1.CB"));
+    }
+
+    @Test
+    public void testGetPointReused() {
+        SpatialSet spatialSet = mol.findAtom("2.CA").getSpatialSet();
+        spatialSet.setXYZ(0, 1.0, 2.0, 3.0);
+        Point3 pt = spatialSet.getPoint(0);
+        Assert.assertSame(pt, spatialSet.getPoint(0));
+        spatialSet.setXYZ(0, 1.0, 2.5, 3.0);
+        Point3 moved = spatialSet.getPoint(0);
+        Assert.assertNotSame(pt, moved);
+        Assert.assertEquals(2.5, moved.getY(), 0.0);
+        double[] xyz = {-1.0, -2.0, -3.0};
+        mol.setCoordinates(0, List.of(spatialSet), xyz);
+        Assert.assertEquals(-2.0, spatialSet.getPoint(0).getY(), 0.0);
+    }
+
+    @Test
+    public void testDetachStoreFreesSlot() {
+        SpatialSet spatialSet = mol.findAtom("4.CB").getSpatialSet();
+        spatialSet.setXYZ(1, 4.0, 5.0, 6.0);
+        CoordinateStore store = mol.getCoordinateStore();
+        int slot = spatialSet.getCoordinateSlot();
+        int nFree = store.getFreeSlotCount();
+        spatialSet.detachStore();
+        Assert.assertEquals(nFree + 1, store.getFreeSlotCount());
+        Assert.assertFalse(store.isValid(1, slot));
+        Assert.assertEquals(5.0, spatialSet.getPoint(1).getY(), 0.0);
+        // the next write moves the coordinates back into the molecule's store, reusing the freed slot
+        Assert.assertEquals(slot, spatialSet.getCoordinateSlot());
+        Assert.assertEquals(nFree, store.getFreeSlotCount());
+        Assert.assertEquals(6.0, store.getZ(1, slot), 0.0);
+    }
+
+    @Test
+    public void testFindAtomAfterRename() {
+        Atom atom = mol.findAtom("3.OG");
+        Assert.assertNotNull(atom);
+        Assert.assertNull(mol.findAtom("3.OGX"));
+        Compound compound = (Compound) atom.getEntity();
+        try {
+            Assert.assertEquals(0, compound.renameAtom("OG", "OGX"));
+            Assert.assertSame(atom, mol.findAtom("3.OGX"));
+            Assert.assertNull(mol.findAtom("3.OG"));
+
+            atom.name = "OG";
+            compound.updateNames();
+            Assert.assertSame(atom, mol.findAtom("3.OG"));
+            Assert.assertNull(mol.findAtom("3.OGX"));
+        } finally {
+            if (compound.getAtom("OG") == null) {
+                compound.renameAtom("OGX", "OG");
+            }
+        }
+    }
+
 }
@@ -0,0 +1,98 @@
+package org.nmrfx.chemistry.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.Point3;
+import org.nmrfx.chemistry.Polymer;
+import org.nmrfx.star.ParseException;
+import org.nmrfx.star.STAR3;
+import org.nmrfx.star.Saveframe;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class NMRStarReaderTest {
+
+    static final String HEADER = """
+            data_test
+            save_conformer
+               _Conformer_family_coord_set.Sf_category   conformer_family_coord_set
+               loop_
+                  _Atom_site.Model_ID
+                  _Atom_site.Label_entity_assembly_ID
+                  _Atom_site.Label_entity_ID
+                  _Atom_site.Label_comp_index_ID
+                  _Atom_site.Label_atom_ID
+                  _Atom_site.Cartn_x
+                  _Atom_site.Cartn_y
+                  _Atom_site.Cartn_z
+            """;
+    static final String FOOTER = """
+               stop_
+            save_
+            """;
+
+    static MoleculeBase makeMolecule() throws MoleculeIOException {
+        MoleculeBase.removeAll();
+        MoleculeBase mol = new Sequence().read("test", Arrays.asList("ALA", "GLY"), null);
+        mol.buildCompoundMap();
+        return mol;
+    }
+
+    static String row(MoleculeBase mol, String model, String res, String atom, String x, String y, String z) {
+        Polymer polymer = mol.getPolymers().get(0);
+        return String.join(" ", "     ", model, String.valueOf(polymer.getIDNum()),
+                String.valueOf(polymer.getIDNum()), res, atom, x, y, z) + "\n";
+    }
+
+    static void readConformer(MoleculeBase mol, String rows) throws ParseException {
+        STAR3 star3 = new STAR3(new BufferedReader(new StringReader(HEADER + rows + FOOTER)), "test");
+        star3.scanFile();
+        Saveframe saveframe = star3.getSaveframe("save_conformer");
+        NMRStarReader reader = new NMRStarReader(null, star3);
+        reader.molecule = mol;
+        reader.processConformer(saveframe);
+    }
+
+    @Test
+    public void testConformer() throws Exception {
+        MoleculeBase mol = makeMolecule();
+        // the row for a residue that isn't in the molecule is skipped without parsing its values
+        String rows = row(mol, "1", "1", "CA", "1.5", "-2.0", "3.25")
+                + row(mol, "1", "2", "CA", "4.0", "5.0", "6.0")
+                + row(mol, ".", "9", "CA", ".", ".", ".");
+        readConformer(mol, rows);
+        Atom atom = mol.findAtom("1.CA");
+        Point3 pt = atom.getPoint(1);
+        Assert.assertNotNull(pt);
+        Assert.assertEquals(1.5, pt.getX(), 1.0e-9);
+        Assert.assertEquals(-2.0, pt.getY(), 1.0e-9);
+        Assert.assertEquals(3.25, pt.getZ(), 1.0e-9);
+        Assert.assertEquals(4.0, mol.findAtom("2.CA").getPoint(1).getX(), 1.0e-9);
+    }
+
+    @Test
+    public void testMissingCoordinate() throws Exception {
+        MoleculeBase mol = makeMolecule();
+        String rows = row(mol, "1", "1", "CA", "1.5", ".", "3.25");
+        try {
+            readConformer(mol, rows);
+            Assert.fail("Expected exception for missing value");
+        } catch (ParseException ignored) {
+        }
+    }
+
+    @Test
+    public void testMissingModel() throws Exception {
+        MoleculeBase mol = makeMolecule();
+        String rows = row(mol, ".", "1", "CA", "1.5", "-2.0", "3.25");
+        try {
+            readConformer(mol, rows);
+            Assert.fail("Expected exception for missing value");
+        } catch (ParseException ignored) {
+        }
+    }
+}
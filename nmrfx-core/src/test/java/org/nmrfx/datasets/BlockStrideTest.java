@@ -0,0 +1,60 @@
+package org.nmrfx.datasets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class BlockStrideTest {
+
+    private long pointPosition(DatasetLayout layout, int[] offsets) {
+        long blockNum = 0;
+        long offsetInBlock = 0;
+        for (int iDim = 0; iDim < offsets.length; iDim++) {
+            blockNum += ((offsets[iDim] / layout.blockSize[iDim]) * layout.offsetBlocks[iDim]);
+            offsetInBlock += ((offsets[iDim] % layout.blockSize[iDim]) * layout.offsetPoints[iDim]);
+        }
+        return blockNum * layout.blockPoints + offsetInBlock;
+    }
+
+    private void checkLayout(int[] sizes, Random random) {
+        DatasetLayout layout = DatasetLayout.createBlockMatrix(0, sizes);
+        for (int iTry = 0; iTry < 100; iTry++) {
+            int dim = random.nextInt(sizes.length);
+            int[] point = new int[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                point[i] = random.nextInt(sizes[i]);
+            }
+            int first = random.nextInt(sizes[dim]);
+            int last = first + random.nextInt(sizes[dim] - first);
+            BlockStride stride = new BlockStride(layout, point, dim, first);
+            for (int i = first; i <= last; ) {
+                int nRun = Math.min(last - i + 1, stride.getRunLength());
+                for (int j = 0; j < nRun; j++) {
+                    point[dim] = i + j;
+                    long position = (long) stride.getBlock() * layout.blockPoints
+                            + stride.getOffset() + (long) j * stride.getPointStep();
+                    Assert.assertEquals(pointPosition(layout, point), position);
+                }
+                stride.advance(nRun);
+                i += nRun;
+            }
+        }
+    }
+
+    @Test
+    public void testStride2D() {
+        checkLayout(new int[]{1024, 128}, new Random(1));
+    }
+
+    @Test
+    public void testStride3D() {
+        checkLayout(new int[]{512, 64, 48}, new Random(2));
+        checkLayout(new int[]{100, 30, 20}, new Random(3));
+    }
+
+    @Test
+    public void testStride4D() {
+        checkLayout(new int[]{64, 64, 64, 8}, new Random(4));
+    }
+}
@@ -0,0 +1,106 @@
+package org.nmrfx.datasets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BlockTransposerTest {
+
+    private long bytePosition(DatasetLayout layout, int[] offsets) {
+        long blockNum = 0;
+        long offsetInBlock = 0;
+        for (int iDim = 0; iDim < offsets.length; iDim++) {
+            blockNum += ((offsets[iDim] / layout.blockSize[iDim]) * layout.offsetBlocks[iDim]);
+            offsetInBlock += ((offsets[iDim] % layout.blockSize[iDim]) * layout.offsetPoints[iDim]);
+        }
+        return blockNum * (layout.blockPoints * Float.BYTES + layout.blockHeaderSize)
+                + offsetInBlock * Float.BYTES + layout.fileHeaderSize;
+    }
+
+    private float value(int[] point, int[] sizes) {
+        int index = 0;
+        for (int i = point.length - 1; i >= 0; i--) {
+            index = index * sizes[i] + point[i];
+        }
+        return index + 1.0f;
+    }
+
+    private boolean next(int[] point, int[] sizes) {
+        for (int i = 0; i < point.length; i++) {
+            if (point[i] < sizes[i] - 1) {
+                point[i]++;
+                return true;
+            }
+            point[i] = 0;
+        }
+        return false;
+    }
+
+    private void checkTranspose(int[] sizes, int vectorDim, long cacheBytes) throws IOException {
+        DatasetLayout sourceLayout = DatasetLayout.createBlockMatrix(2048, sizes);
+        DatasetLayout targetLayout = DatasetLayout.createVectorBlockMatrix(2048, sizes, vectorDim);
+        Assert.assertEquals(1, targetLayout.getNBlocks(vectorDim));
+        Assert.assertEquals(vectorDim, targetLayout.getVectorDim());
+        File sourceFile = File.createTempFile("source", ".nv");
+        File targetFile = File.createTempFile("target", ".nv");
+        try (RandomAccessFile sourceRA = new RandomAccessFile(sourceFile, "rw");
+             RandomAccessFile targetRA = new RandomAccessFile(targetFile, "rw")) {
+            FileChannel source = sourceRA.getChannel();
+            FileChannel target = targetRA.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(Float.BYTES);
+            int[] point = new int[sizes.length];
+            do {
+                buffer.clear();
+                buffer.putFloat(0, value(point, sizes));
+                source.write(buffer, bytePosition(sourceLayout, point));
+            } while (next(point, sizes));
+
+            BlockTransposer transposer = new BlockTransposer(source, sourceLayout, target, targetLayout, cacheBytes);
+            transposer.copy();
+            Assert.assertEquals(targetLayout.getTotalSize(), target.size());
+
+            point = new int[sizes.length];
+            do {
+                buffer.clear();
+                target.read(buffer, bytePosition(targetLayout, point));
+                Assert.assertEquals(value(point, sizes), buffer.getFloat(0), 0.0f);
+            } while (next(point, sizes));
+        } finally {
+            sourceFile.delete();
+            targetFile.delete();
+        }
+    }
+
+    @Test
+    public void testVisitBlocks() {
+        int[] nBlocks = {5, 3, 4};
+        Set<List<Integer>> visited = new HashSet<>();
+        BlockTransposer.visitBlocks(nBlocks, indices -> {
+            for (int i = 0; i < nBlocks.length; i++) {
+                Assert.assertTrue(indices[i] < nBlocks[i]);
+            }
+            Assert.assertTrue(visited.add(List.of(indices[0], indices[1], indices[2])));
+        });
+        Assert.assertEquals(60, visited.size());
+    }
+
+    @Test
+    public void testTranspose2D() throws IOException {
+        checkTranspose(new int[]{512, 96}, 1, 1 << 20);
+        checkTranspose(new int[]{512, 96}, 1, 1);
+    }
+
+    @Test
+    public void testTranspose3D() throws IOException {
+        checkTranspose(new int[]{100, 30, 20}, 2, 1 << 20);
+        checkTranspose(new int[]{128, 64, 40}, 1, 1 << 16);
+    }
+}
@@ -0,0 +1,177 @@
+package org.nmrfx.datasets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class StorageCacheTest {
+    private static final int[] SIZES = {512, 128};
+
+    private SubMatrixFile createFile(File file) throws IOException {
+        DatasetBase dataset = new DatasetBase();
+        dataset.setNDim(SIZES.length);
+        dataset.size = SIZES.clone();
+        DatasetLayout layout = DatasetLayout.createBlockMatrix(0, SIZES);
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        raFile.setLength((long) layout.getTotalBlocks() * layout.getBlockPoints() * Float.BYTES);
+        return new SubMatrixFile(dataset, file, layout, raFile, true);
+    }
+
+    private long blockBytes(SubMatrixFile dataFile) {
+        return (long) dataFile.getLayout().getBlockPoints() * Float.BYTES;
+    }
+
+    private float fileValue(SubMatrixFile dataFile, int blockNum, int offset) throws IOException {
+        return dataFile.readBlock(blockNum).getFloat(offset * Float.BYTES);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File file = File.createTempFile("cache", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            Assert.assertTrue(dataFile.getLayout().getTotalBlocks() >= 4);
+            long blockBytes = blockBytes(dataFile);
+            StorageCache cache = new StorageCache(2 * blockBytes, 1);
+            StorageCache.DatasetKey[] keys = new StorageCache.DatasetKey[4];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new StorageCache.DatasetKey(dataFile, i);
+            }
+            cache.io(keys[0], 0, 0.0f, 0);
+            cache.io(keys[1], 0, 0.0f, 0);
+            cache.io(keys[2], 0, 0.0f, 0);
+            Assert.assertNull(cache.getBuffer(keys[0]));
+            Assert.assertNotNull(cache.getBuffer(keys[1]));
+            Assert.assertNotNull(cache.getBuffer(keys[2]));
+            Assert.assertEquals(2 * blockBytes, cache.getStats().bytes());
+
+            // block 1 is now the most recently used, so block 2 is evicted next
+            cache.io(keys[1], 0, 0.0f, 0);
+            cache.io(keys[3], 0, 0.0f, 0);
+            Assert.assertNotNull(cache.getBuffer(keys[1]));
+            Assert.assertNull(cache.getBuffer(keys[2]));
+            Assert.assertNotNull(cache.getBuffer(keys[3]));
+            Assert.assertEquals(2 * blockBytes, cache.getStats().bytes());
+
+            cache.setMaxBytes(blockBytes);
+            cache.trim();
+            Assert.assertEquals(blockBytes, cache.getStats().bytes());
+            Assert.assertNotNull(cache.getBuffer(keys[3]));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWriteBackOnEviction() throws IOException {
+        File file = File.createTempFile("cache", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            StorageCache cache = new StorageCache(2 * blockBytes(dataFile), 1);
+            StorageCache.DatasetKey key0 = new StorageCache.DatasetKey(dataFile, 0);
+            StorageCache.DatasetKey key1 = new StorageCache.DatasetKey(dataFile, 1);
+            StorageCache.DatasetKey key2 = new StorageCache.DatasetKey(dataFile, 2);
+            cache.io(key0, 7, 5.0f, 1);
+            Assert.assertEquals(5.0f, cache.io(key0, 7, 0.0f, 0), 0.0f);
+            Assert.assertEquals(0.0f, fileValue(dataFile, 0, 7), 0.0f);
+
+            cache.io(key1, 0, 0.0f, 0);
+            Assert.assertEquals(0, cache.getStats().writeBacks());
+            cache.io(key2, 0, 0.0f, 0);
+            Assert.assertNull(cache.getBuffer(key0));
+            Assert.assertEquals(1, cache.getStats().writeBacks());
+            Assert.assertEquals(5.0f, fileValue(dataFile, 0, 7), 0.0f);
+
+            // clean blocks are evicted without being written
+            cache.io(key0, 7, 0.0f, 0);
+            cache.io(key1, 0, 0.0f, 0);
+            Assert.assertEquals(1, cache.getStats().writeBacks());
+            Assert.assertEquals(5.0f, cache.io(key0, 7, 0.0f, 0), 0.0f);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWriteBackOnFlush() throws IOException {
+        File file = File.createTempFile("cache", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            StorageCache cache = new StorageCache(4 * blockBytes(dataFile), 1);
+            StorageCache.DatasetKey key0 = new StorageCache.DatasetKey(dataFile, 0);
+            StorageCache.DatasetKey key1 = new StorageCache.DatasetKey(dataFile, 1);
+            StorageCache.DatasetKey key2 = new StorageCache.DatasetKey(dataFile, 2);
+            float[] values = {1.0f, 2.0f, 3.0f, 4.0f};
+            cache.write(key0, 10, 1, values, 0, values.length);
+            cache.write(key1, 3, 16, values, 0, values.length);
+            cache.io(key2, 0, 0.0f, 0);
+            Assert.assertEquals(0.0f, fileValue(dataFile, 0, 10), 0.0f);
+            Assert.assertEquals(0, cache.getStats().evictions());
+
+            cache.flush(dataFile);
+            StorageCache.CacheStats stats = cache.getStats();
+            Assert.assertEquals(2, stats.writeBacks());
+            Assert.assertEquals(0, stats.evictions());
+            Assert.assertEquals(0, stats.bytes());
+            Assert.assertNull(cache.getBuffer(key0));
+            for (int i = 0; i < values.length; i++) {
+                Assert.assertEquals(values[i], fileValue(dataFile, 0, 10 + i), 0.0f);
+                Assert.assertEquals(values[i], fileValue(dataFile, 1, 3 + 16 * i), 0.0f);
+            }
+
+            float[] readValues = new float[values.length];
+            cache.read(key1, 3, 16, readValues, 0, values.length);
+            Assert.assertArrayEquals(values, readValues, 0.0f);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCounters() throws IOException {
+        File file = File.createTempFile("cache", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            long blockBytes = blockBytes(dataFile);
+            StorageCache cache = new StorageCache(2 * blockBytes, 1);
+            StorageCache.DatasetKey[] keys = new StorageCache.DatasetKey[3];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new StorageCache.DatasetKey(dataFile, i);
+            }
+            StorageCache.CacheStats stats = cache.getStats();
+            Assert.assertEquals(0, stats.hits());
+            Assert.assertEquals(0, stats.misses());
+            Assert.assertEquals(0.0, stats.hitRate(), 0.0);
+
+            cache.io(keys[0], 0, 0.0f, 0);
+            cache.io(keys[0], 1, 0.0f, 0);
+            cache.io(keys[1], 0, 1.0f, 1);
+            cache.io(keys[1], 1, 0.0f, 0);
+            cache.io(keys[0], 2, 0.0f, 0);
+            cache.io(keys[2], 0, 0.0f, 0);
+            cache.io(keys[1], 0, 0.0f, 0);
+
+            stats = cache.getStats();
+            Assert.assertEquals(3, stats.hits());
+            Assert.assertEquals(4, stats.misses());
+            Assert.assertEquals(2, stats.evictions());
+            Assert.assertEquals(1, stats.writeBacks());
+            Assert.assertEquals(2 * blockBytes, stats.bytes());
+            Assert.assertEquals(2 * blockBytes, stats.maxBytes());
+            Assert.assertEquals(3.0 / 7.0, stats.hitRate(), 1.0e-12);
+
+            // a multi value io call does a single lookup per run of values in one block
+            StorageCache.DatasetKey[] vecKeys = {keys[1], keys[1], keys[1], keys[2], keys[2]};
+            int[] offsets = {0, 1, 2, 0, 1};
+            double[] vec = new double[vecKeys.length];
+            cache.resetStats();
+            cache.io(vecKeys, offsets, vec, 1);
+            stats = cache.getStats();
+            Assert.assertEquals(2, stats.hits());
+            Assert.assertEquals(0, stats.misses());
+            Assert.assertEquals(0, stats.evictions());
+            Assert.assertEquals(1.0, vec[0], 0.0);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.nmrfx.datasets;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.math.VecBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class SubMatrixFileTest {
+    private static final int[] SIZES = {512, 128};
+
+    private SubMatrixFile createFile(File file) throws IOException {
+        DatasetBase dataset = new DatasetBase();
+        dataset.setNDim(SIZES.length);
+        dataset.size = SIZES.clone();
+        DatasetLayout layout = DatasetLayout.createBlockMatrix(0, SIZES);
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        raFile.setLength((long) layout.getTotalBlocks() * layout.getBlockPoints() * Float.BYTES);
+        return new SubMatrixFile(dataset, file, layout, raFile, true);
+    }
+
+    private VecBase complexVec(int size) {
+        VecBase vec = new VecBase(size, true);
+        for (int i = 0; i < size; i++) {
+            vec.set(i, i + 1.0, -(i + 1.0) / 4.0);
+        }
+        return vec;
+    }
+
+    @Test
+    public void testComplexEvenFirst() throws IOException {
+        File file = File.createTempFile("submatrix", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            VecBase vec = complexVec(8);
+            int[] point = {0, 5};
+            dataFile.writeVector(4, 19, point, 0, 2.0, vec);
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(2.0 * vec.getReal(i), dataFile.getFloat(4 + 2 * i, 5), 1.0e-6);
+                Assert.assertEquals(2.0 * vec.getImag(i), dataFile.getFloat(5 + 2 * i, 5), 1.0e-6);
+            }
+            VecBase readVec = new VecBase(8, true);
+            dataFile.readVector(4, 19, point, 0, 2.0, readVec);
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(vec.getReal(i), readVec.getReal(i), 1.0e-6);
+                Assert.assertEquals(vec.getImag(i), readVec.getImag(i), 1.0e-6);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testComplexOddFirst() throws IOException {
+        // real and imaginary positions are counted from the start of the dimension, not from first
+        File file = File.createTempFile("submatrix", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            VecBase vec = complexVec(4);
+            int[] point = {0, 3};
+            dataFile.writeVector(1, 7, point, 0, 1.0, vec);
+            Assert.assertEquals(vec.getImag(0), dataFile.getFloat(1, 3), 1.0e-6);
+            for (int i = 1; i < 4; i++) {
+                Assert.assertEquals(vec.getReal(i), dataFile.getFloat(2 * i, 3), 1.0e-6);
+                Assert.assertEquals(vec.getImag(i), dataFile.getFloat(2 * i + 1, 3), 1.0e-6);
+            }
+            Assert.assertEquals(0.0, dataFile.getFloat(0, 3), 0.0);
+            Assert.assertEquals(0.0, dataFile.getFloat(8, 3), 0.0);
+
+            VecBase readVec = new VecBase(4, true);
+            dataFile.readVector(1, 7, point, 0, 1.0, readVec);
+            Assert.assertEquals(0.0, readVec.getReal(0), 0.0);
+            Assert.assertEquals(vec.getImag(0), readVec.getImag(0), 1.0e-6);
+            for (int i = 1; i < 4; i++) {
+                Assert.assertEquals(vec.getReal(i), readVec.getReal(i), 1.0e-6);
+                Assert.assertEquals(vec.getImag(i), readVec.getImag(i), 1.0e-6);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRealScale() throws IOException {
+        // real values are multiplied by scale when written and divided by it when read
+        File file = File.createTempFile("submatrix", ".nv");
+        try (SubMatrixFile dataFile = createFile(file)) {
+            double[] values = {1.0, -2.0, 3.5, 0.25, 7.0};
+            VecBase vec = new VecBase(values);
+            int[] point = {17, 0};
+            dataFile.writeVector(60, 64, point, 1, 2.0, vec);
+            for (int i = 0; i < values.length; i++) {
+                Assert.assertEquals(2.0 * values[i], dataFile.getFloat(17, 60 + i), 1.0e-6);
+            }
+            VecBase readVec = new VecBase(values.length, false);
+            dataFile.readVector(60, 64, point, 1, 2.0, readVec);
+            for (int i = 0; i < values.length; i++) {
+                Assert.assertEquals(values[i], readVec.getReal(i), 1.0e-6);
+                point[1] = 60 + i;
+                Assert.assertEquals(values[i], dataFile.getFloat(point) / 2.0, 1.0e-6);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
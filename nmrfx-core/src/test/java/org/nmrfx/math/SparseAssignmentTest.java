@@ -0,0 +1,88 @@
+package org.nmrfx.math;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SparseAssignmentTest {
+
+    /**
+     * Solve the same problem with BipartiteMatcher, giving each row and
+     * column a dummy partner as PeakListTools used to.
+     */
+    static double denseWeightSum(int nRows, int nCols, double[][] weights) {
+        BipartiteMatcher matcher = new BipartiteMatcher();
+        matcher.reset(nRows + nCols, true);
+        for (int i = 0; i < nRows; i++) {
+            matcher.setWeight(i, nCols + i, -1.0);
+        }
+        for (int j = 0; j < nCols; j++) {
+            matcher.setWeight(nRows + j, j, -1.0);
+        }
+        for (int i = 0; i < nRows; i++) {
+            for (int j = 0; j < nCols; j++) {
+                if (weights[i][j] > 0.0) {
+                    matcher.setWeight(i, j, weights[i][j]);
+                }
+            }
+        }
+        int[] matching = matcher.getMatching();
+        double sum = 0.0;
+        for (int i = 0; i < nRows; i++) {
+            if ((matching[i] >= 0) && (matching[i] < nCols)) {
+                sum += weights[i][matching[i]];
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    public void testSmall() {
+        SparseAssignment assignment = new SparseAssignment(3, 3);
+        assignment.addEdge(0, 0, 1.0);
+        assignment.addEdge(0, 1, 0.9);
+        assignment.addEdge(1, 0, 0.8);
+        assignment.addEdge(2, 2, 0.5);
+        int[] matching = assignment.getMatching();
+        Assert.assertArrayEquals(new int[]{1, 0, 2}, matching);
+        Assert.assertEquals(2.2, assignment.getWeightSum(matching), 1.0e-12);
+    }
+
+    @Test
+    public void testUnmatched() {
+        SparseAssignment assignment = new SparseAssignment(4, 2);
+        assignment.addEdge(0, 0, 0.3);
+        assignment.addEdge(1, 0, 0.7);
+        int[] matching = assignment.getMatching();
+        Assert.assertArrayEquals(new int[]{-1, 0, -1, -1}, matching);
+    }
+
+    @Test
+    public void testAgreesWithBipartiteMatcher() {
+        Random random = new Random(17);
+        for (int trial = 0; trial < 20; trial++) {
+            int nRows = 5 + random.nextInt(30);
+            int nCols = 5 + random.nextInt(30);
+            double[][] weights = new double[nRows][nCols];
+            SparseAssignment assignment = new SparseAssignment(nRows, nCols);
+            for (int i = 0; i < nRows; i++) {
+                for (int j = 0; j < nCols; j++) {
+                    if (random.nextDouble() < 0.15) {
+                        weights[i][j] = Math.exp(-10.0 * random.nextDouble());
+                        assignment.addEdge(i, j, weights[i][j]);
+                    }
+                }
+            }
+            int[] matching = assignment.getMatching();
+            boolean[] used = new boolean[nCols];
+            for (int j : matching) {
+                if (j >= 0) {
+                    Assert.assertFalse(used[j]);
+                    used[j] = true;
+                }
+            }
+            Assert.assertEquals(denseWeightSum(nRows, nCols, weights), assignment.getWeightSum(matching), 1.0e-9);
+        }
+    }
+}
@@ -53,4 +53,59 @@ public class VecBaseTest {
         Assert.assertEquals(0, vec.refToPtD(leftValue), 1.0e-6);
         Assert.assertEquals(size - 1, vec.refToPtD(rightValue), 1.0e-6);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fileValuesComplex() {
+        float[] values = {1.0f, -2.0f, 3.0f, 4.5f, -6.0f, 8.0f};
+        VecBase vec = new VecBase(3, true);
+        vec.setFileValues(values, 0, values.length, 2.0);
+        Assert.assertFalse(vec.useApache());
+        Assert.assertEquals(0.5, vec.getReal(0), 1.0e-9);
+        Assert.assertEquals(-1.0, vec.getImag(0), 1.0e-9);
+        Assert.assertEquals(4.0, vec.getImag(2), 1.0e-9);
+        float[] copy = new float[values.length];
+        vec.getFileValues(copy, 0, copy.length, 2.0);
+        Assert.assertArrayEquals(values, copy, 1.0e-6f);
+        vec.makeApache();
+        vec.getFileValues(copy, 0, copy.length, 2.0);
+        Assert.assertArrayEquals(values, copy, 1.0e-6f);
+    }
+
+    @Test
+    public void fileValuesReal() {
+        float[] values = {1.0f, -2.0f, 3.0f};
+        VecBase vec = new VecBase(4, false);
+        vec.setFileValues(values, 3, values.length, 1.0);
+        Assert.assertEquals(-2.0, vec.getReal(1), 1.0e-9);
+        float[] copy = new float[values.length];
+        vec.getFileValues(copy, 3, copy.length, 1.0);
+        Assert.assertArrayEquals(values, copy, 1.0e-6f);
+    }
+
+    @Test
+    public void fileValuesComplexOddFirst() {
+        // values at odd indices along the dimension are imaginary, counted from the start of the dimension
+        float[] values = {1.0f, -2.0f, 3.0f, 4.5f, -6.0f, 8.0f};
+        VecBase vec = new VecBase(4, true);
+        vec.set(3, 7.0, 7.0);
+        vec.setFileValues(values, 5, values.length, 2.0);
+        Assert.assertEquals(0.0, vec.getReal(0), 0.0);
+        Assert.assertEquals(0.5, vec.getImag(0), 1.0e-9);
+        Assert.assertEquals(-1.0, vec.getReal(1), 1.0e-9);
+        Assert.assertEquals(1.5, vec.getImag(1), 1.0e-9);
+        Assert.assertEquals(-3.0, vec.getReal(2), 1.0e-9);
+        Assert.assertEquals(4.0, vec.getImag(2), 1.0e-9);
+        // the last real value has no imaginary partner, so isn't used
+        Assert.assertEquals(7.0, vec.getReal(3), 0.0);
+
+        float[] copy = new float[values.length - 1];
+        vec.getFileValues(copy, 5, copy.length, 2.0);
+        for (int i = 0; i < copy.length; i++) {
+            Assert.assertEquals(values[i], copy[i], 1.0e-6f);
+        }
+        vec.makeApache();
+        vec.getFileValues(copy, 5, copy.length, 2.0);
+        Assert.assertEquals(values[0], copy[0], 1.0e-6f);
+        Assert.assertEquals(values[4], copy[4], 1.0e-6f);
+    }
+}
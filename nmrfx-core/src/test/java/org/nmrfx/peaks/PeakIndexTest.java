@@ -0,0 +1,136 @@
+package org.nmrfx.peaks;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.project.ProjectBase;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class PeakIndexTest {
+    Random random = new Random(31);
+
+    PeakList makePeakList(int nPeaks) {
+        ProjectBase.getActive().clearAllPeakLists();
+        PeakList peakList = new PeakList("indextest", 3);
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getNewPeak();
+            setShifts(peak);
+        }
+        return peakList;
+    }
+
+    void setShifts(Peak peak) {
+        peak.getPeakDim(0).setChemShiftValue((float) (6.0 + 4.0 * random.nextDouble()));
+        peak.getPeakDim(1).setChemShiftValue((float) (100.0 + 35.0 * random.nextDouble()));
+        peak.getPeakDim(2).setChemShiftValue((float) (40.0 + 30.0 * random.nextDouble()));
+    }
+
+    @After
+    public void clear() {
+        ProjectBase.getActive().clearAllPeakLists();
+    }
+
+    List<Peak> scanRegion(PeakList peakList, double[][] limits, double[][] foldLimits, double[] foldAmount, int[] dim) {
+        return peakList.peaks().stream()
+                .filter(peak -> peak.inRegion(limits, foldLimits, foldAmount, dim))
+                .toList();
+    }
+
+    double distance(Peak peak, double[] ppm, int[] dim, double[] scale) {
+        double sum = 0.0;
+        for (int j = 0; j < ppm.length; j++) {
+            double delta = (peak.getPeakDim(dim[j]).getChemShiftValue() - ppm[j]) / scale[j];
+            sum += delta * delta;
+        }
+        return Math.sqrt(sum);
+    }
+
+    void checkRegions(PeakList peakList) {
+        int[] dim = {0, 1};
+        for (int i = 0; i < 20; i++) {
+            double x = 6.0 + 4.0 * random.nextDouble();
+            double y = 100.0 + 35.0 * random.nextDouble();
+            double[][] limits = {{x - 0.2, x + 0.2}, {y - 2.0, y + 2.0}};
+            Assert.assertEquals(scanRegion(peakList, limits, null, null, dim),
+                    peakList.findPeaksInRegion(limits, dim));
+        }
+    }
+
+    @Test
+    public void testRegion() {
+        PeakList peakList = makePeakList(2000);
+        checkRegions(peakList);
+    }
+
+    @Test
+    public void testRegionAfterChanges() {
+        PeakList peakList = makePeakList(2000);
+        checkRegions(peakList);
+        for (int i = 0; i < 40; i++) {
+            setShifts(peakList.getPeak(random.nextInt(peakList.size())));
+            setShifts(peakList.getNewPeak());
+        }
+        checkRegions(peakList);
+        for (int i = 0; i < 500; i++) {
+            setShifts(peakList.getPeak(random.nextInt(peakList.size())));
+        }
+        peakList.getPeak(7).setStatus(-1);
+        peakList.compress();
+        checkRegions(peakList);
+    }
+
+    @Test
+    public void testFoldedRegion() {
+        PeakList peakList = makePeakList(2000);
+        int[] dim = {0, 1};
+        double[][] foldLimits = {{6.0, 10.0}, {110.0, 125.0}};
+        double[] foldAmount = {4.0, 15.0};
+        for (int i = 0; i < 20; i++) {
+            double x = 6.0 + 4.0 * random.nextDouble();
+            double y = 110.0 + 15.0 * random.nextDouble();
+            double[][] limits = {{x - 0.2, x + 0.2}, {y - 2.0, y + 2.0}};
+            Assert.assertEquals(scanRegion(peakList, limits, foldLimits, foldAmount, dim),
+                    peakList.findPeaksInRegion(limits, foldLimits, foldAmount, dim));
+        }
+    }
+
+    @Test
+    public void testNearest() {
+        PeakList peakList = makePeakList(2000);
+        int[] dim = {0, 1, 2};
+        double[] scale = {0.05, 0.5, 0.5};
+        for (int i = 0; i < 20; i++) {
+            setShifts(peakList.getPeak(random.nextInt(peakList.size())));
+            double[] ppm = {6.0 + 4.0 * random.nextDouble(), 100.0 + 35.0 * random.nextDouble(), 55.0};
+            List<Peak> expected = new ArrayList<>(peakList.peaks());
+            expected.sort(Comparator.comparingDouble(peak -> distance(peak, ppm, dim, scale)));
+            List<PeakDistance> nearest = peakList.findNearestPeaks(ppm, dim, scale, 5);
+            Assert.assertEquals(5, nearest.size());
+            for (int j = 0; j < 5; j++) {
+                Assert.assertEquals(distance(expected.get(j), ppm, dim, scale), nearest.get(j).getDistance(), 1.0e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testTolerance() {
+        PeakList peakList = makePeakList(2000);
+        int[] dim = {0, 1};
+        double[] tol = {0.1, 1.0};
+        for (int i = 0; i < 20; i++) {
+            double[] ppm = {6.0 + 4.0 * random.nextDouble(), 100.0 + 35.0 * random.nextDouble()};
+            long expected = peakList.peaks().stream()
+                    .filter(peak -> distance(peak, ppm, dim, tol) <= 1.0)
+                    .count();
+            List<PeakDistance> found = peakList.findPeaksWithinTolerance(ppm, dim, tol);
+            Assert.assertEquals(expected, found.size());
+            for (PeakDistance peakDis : found) {
+                Assert.assertTrue(peakDis.getDistance() <= 1.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.nmrfx.star;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class STAR3Test {
+
+    static final String TEXT = """
+            data_test
+            # a comment
+            save_shifts
+               _Assigned_chem_shift_list.Sf_category   assigned_chemical_shifts
+               _Assigned_chem_shift_list.Details
+            ;
+            two
+            lines
+            ;
+               _Assigned_chem_shift_list.Name  "a 'quoted' name"
+               loop_
+                  _Atom_chem_shift.ID
+                  _Atom_chem_shift.Atom_ID
+                  _Atom_chem_shift.Val
+                  _Atom_chem_shift.Ambiguity_code
+                  1 H    8.25  1\r
+                  2 'H A' 4.3  .\r
+                  3 CA   ?    2
+               stop_
+            save_
+            """;
+
+    static List<String> tokens(String text) {
+        STAR3 star3 = new STAR3(new BufferedReader(new StringReader(text)), "test");
+        List<String> tokens = new ArrayList<>();
+        String token;
+        while ((token = star3.getNextToken()) != null) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testTokens() {
+        List<String> tokens = tokens(TEXT);
+        Assert.assertEquals("data_test", tokens.get(0));
+        Assert.assertEquals("save_shifts", tokens.get(1));
+        Assert.assertEquals("two\nlines\n", tokens.get(5));
+        Assert.assertEquals("a 'quoted' name", tokens.get(7));
+        Assert.assertEquals("H A", tokens.get(tokens.indexOf("2") + 1));
+        Assert.assertEquals("save_", tokens.get(tokens.size() - 1));
+        Assert.assertEquals(List.of("x'y", "q q", "b"), tokens("x'y 'q q' b"));
+        Assert.assertEquals(List.of("a", "b\n", "c", "d"), tokens("a\n;\nb\n; c\nd"));
+    }
+
+    @Test
+    public void testTokenPair() throws ParseException {
+        Assert.assertArrayEquals(new String[]{"_Atom_chem_shift", "Val"}, STAR3Base.getTokenPair("_Atom_chem_shift.Val"));
+        Assert.assertArrayEquals(new String[]{"_a", "b"}, STAR3Base.getTokenPair("_a.b."));
+        for (String tag : new String[]{"_a.b.c", "_a", "_a.", "a.b"}) {
+            try {
+                STAR3Base.getTokenPair(tag);
+                Assert.fail("Expected exception for " + tag);
+            } catch (ParseException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void testLoop() throws ParseException {
+        STAR3 star3 = new STAR3(new BufferedReader(new StringReader(TEXT)), "test");
+        star3.scanFile();
+        Saveframe saveframe = star3.getSaveframe("save_shifts");
+        Assert.assertEquals("assigned_chemical_shifts", saveframe.getCategoryName());
+        Assert.assertEquals("two\nlines\n", saveframe.getValue("_Assigned_chem_shift_list", "Details"));
+        Loop loop = saveframe.getLoop("_Atom_chem_shift");
+        Assert.assertEquals(3, loop.getNRows());
+        Assert.assertEquals(List.of("H", "H A", "CA"), loop.getColumnAsList("Atom_ID"));
+        Assert.assertArrayEquals(new double[]{8.25, 4.3, -1.0}, loop.getColumnAsDoubleArray("Val", -1.0), 0.0);
+        Assert.assertArrayEquals(new int[]{1, 0, 2}, loop.getColumnAsIntArray("Ambiguity_code", 0));
+        Assert.assertArrayEquals(new int[]{7, 7, 7}, loop.getColumnAsIntArray("Missing", 7));
+        Assert.assertEquals(List.of(1, 5, 2), loop.getColumnAsIntegerList("Ambiguity_code", 5));
+        List<Double> values = loop.getColumnAsDoubleList("Val", null);
+        Assert.assertNull(values.get(2));
+        Assert.assertEquals(8.25, values.get(0), 0.0);
+    }
+}
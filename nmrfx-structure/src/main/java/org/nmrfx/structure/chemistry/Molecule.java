@@ -2020,36 +2020,63 @@ public class Molecule extends MoleculeBase {
 
     // Biophysical Journal 96(8) 3074–3081
     public Map<String, Double> calcContactSum(final int iStruct, boolean useMap) {
-        double r0 = 3.0;
-        double a = 39.3;
         updateAtomArray();
+        double[] contactSums = calcContactSums(atoms, iStruct);
         Map<String, Double> lcmbMap = null;
         if (useMap) {
             lcmbMap = new HashMap<>();
         }
-        for (Atom atom1 : atoms) {
+        for (int i = 0; i < contactSums.length; i++) {
+            Atom atom1 = atoms.get(i);
             SpatialSet sp1 = atom1.spatialSet;
             sp1.setOrder(0.0f);
-            Point3 pt1 = atom1.getPoint(iStruct);
+            if (lcmbMap != null) {
+                lcmbMap.put(atom1.getFullName(), contactSums[i]);
+            }
+            sp1.setOrder((float) contactSums[i]);
+        }
+        return lcmbMap;
+    }
+
+    /**
+     * Calculate the contact sum of each atom in a list without storing it in
+     * the atoms, so it can be called for several structures at the same time.
+     * Atoms without coordinates in the structure get a sum of 0.0.
+     *
+     * @param atomList the atoms
+     * @param iStruct  the structure number
+     * @return the contact sums in the order of the list
+     */
+    public static double[] calcContactSums(List<Atom> atomList, final int iStruct) {
+        double r0 = 3.0;
+        double a = 39.3;
+        int nAtoms = atomList.size();
+        double[] xyz = new double[nAtoms * 3];
+        boolean[] valid = new boolean[nAtoms];
+        for (int i = 0; i < nAtoms; i++) {
+            SpatialSet spatialSet = atomList.get(i).spatialSet;
+            valid[i] = (spatialSet != null) && spatialSet.getXYZ(iStruct, xyz, i * 3);
+        }
+        double[] contactSums = new double[nAtoms];
+        for (int i = 0; i < nAtoms; i++) {
+            if (!valid[i]) {
+                continue;
+            }
             double fSum = 0.0;
-            for (Atom atom2 : atoms) {
-                if (atom1 != atom2) {
-                    Point3 pt2 = atom2.getPoint(iStruct);
-                    if ((pt1 != null) && (pt2 != null)) {
-                        double r = Atom.calcDistance(pt1, pt2);
-                        if (r < 15.0) {
-                            fSum += a * Math.exp(-r / r0);
-                        }
+            for (int j = 0; j < nAtoms; j++) {
+                if ((i != j) && valid[j]) {
+                    double dx = xyz[i * 3] - xyz[j * 3];
+                    double dy = xyz[i * 3 + 1] - xyz[j * 3 + 1];
+                    double dz = xyz[i * 3 + 2] - xyz[j * 3 + 2];
+                    double r = Math.sqrt((dx * dx) + (dy * dy) + (dz * dz));
+                    if (r < 15.0) {
+                        fSum += a * Math.exp(-r / r0);
                     }
                 }
             }
-            double contactSum = fSum;
-            if (lcmbMap != null) {
-                lcmbMap.put(atom1.getFullName(), contactSum);
-            }
-            sp1.setOrder((float) contactSum);
+            contactSums[i] = fSum;
         }
-        return lcmbMap;
+        return contactSums;
     }
 
     public double[] calcDistanceInputMatrixRow(final int iStruct, double distLim, Atom targetAtom) {
@@ -2177,6 +2204,7 @@ public class Molecule extends MoleculeBase {
                 }
             }
         }
+        invalidateAtomArray();
     }
 
     @Override
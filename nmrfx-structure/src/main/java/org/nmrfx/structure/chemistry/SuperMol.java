@@ -18,12 +18,17 @@
 package org.nmrfx.structure.chemistry;
 
 import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.AtomSelection;
+import org.nmrfx.chemistry.CoordinateStore;
 import org.nmrfx.chemistry.MoleculeBase;
-import org.nmrfx.chemistry.Point3;
 import org.nmrfx.chemistry.SpatialSet;
+import org.nmrfx.structure.cluster.StructureClusters;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 public class SuperMol {
 
@@ -44,13 +49,18 @@ public class SuperMol {
     }
 
     public ArrayList<SuperResult> doSuper(int fixMol, int moveMol, boolean changeCoordinates, int[] moveStructures) {
-        int j;
-        SpatialSet spatialSet;
-        Point3 pt1;
-        Point3 pt2;
         List<SpatialSet> selected = molecule.getAtomsByProp(Atom.SUPER);
-        x = new double[selected.size()][3];
-        y = new double[selected.size()][3];
+        CoordinateStore store = molecule.getCoordinateStore();
+        int[] slots = molecule.getCoordinateSlots(selected);
+        int nSelected = selected.size();
+        double[] fixXYZ = new double[nSelected * 3];
+        double[] movXYZ = new double[nSelected * 3];
+        boolean[] fixValid = new boolean[nSelected];
+        boolean[] movValid = new boolean[nSelected];
+        List<SpatialSet> allSets = null;
+        int[] allSlots = null;
+        x = new double[nSelected][3];
+        y = new double[nSelected][3];
         ArrayList<SuperResult> superRMS = new ArrayList<>();
         if (moveStructures == null) {
             moveStructures = molecule.getActiveStructures();
@@ -66,33 +76,19 @@ public class SuperMol {
         }
 
         for (int iFix : fixStructures) {
+            store.copyOut(iFix, slots, fixXYZ, fixValid);
             for (int iMov : moveStructures) {
                 if (iFix == iMov) {
                     continue;
                 }
-                j = 0;
-                for (SpatialSet set : selected) {
-                    spatialSet = set;
-
-                    pt1 = spatialSet.getPoint(iFix);
-
-                    if (pt1 == null) {
-                        continue;
+                store.copyOut(iMov, slots, movXYZ, movValid);
+                int j = 0;
+                for (int i = 0; i < nSelected; i++) {
+                    if (fixValid[i] && movValid[i]) {
+                        System.arraycopy(fixXYZ, i * 3, x[j], 0, 3);
+                        System.arraycopy(movXYZ, i * 3, y[j], 0, 3);
+                        j++;
                     }
-
-                    pt2 = spatialSet.getPoint(iMov);
-
-                    if (pt2 == null) {
-                        continue;
-                    }
-
-                    x[j][0] = pt1.getX();
-                    x[j][1] = pt1.getY();
-                    x[j][2] = pt1.getZ();
-                    y[j][0] = pt2.getX();
-                    y[j][1] = pt2.getY();
-                    y[j][2] = pt2.getZ();
-                    j++;
                 }
 
                 if (j >= 3) {
@@ -100,27 +96,15 @@ public class SuperMol {
                     SuperResult sResult = new SuperResult(iFix, iMov, rms);
                     superRMS.add(sResult);
                     if (changeCoordinates) {
-                        double[] t = new double[3];
-                        double[] s = new double[3];
-                        MoleculeBase.SpatialSetIterator iter = molecule.getSpatialSetIterator();
-                        while (iter.hasNext()) {
-                            SpatialSet sSet = iter.next();
-                            pt2 = sSet.getPoint(iMov);
-                            if (pt2 != null) {
-                                s[0] = pt2.getX();
-                                s[1] = pt2.getY();
-                                s[2] = pt2.getZ();
-                                for (j = 0; j < 3; j++) {
-                                    double temp = 0.0;
-                                    for (int k = 0; k < 3; k++) {
-                                        temp = temp + (rotMatrix[j][k] * (s[k] - yCenter[k]));
-                                    }
-                                    t[j] = temp + xCenter[j];
-                                }
-                                pt2 = new Point3(t[0], t[1], t[2]);
-                                sSet.setPoint(iMov, pt2);
+                        if (allSlots == null) {
+                            allSets = new ArrayList<>();
+                            MoleculeBase.SpatialSetIterator iter = molecule.getSpatialSetIterator();
+                            while (iter.hasNext()) {
+                                allSets.add(iter.next());
                             }
+                            allSlots = molecule.getCoordinateSlots(allSets);
                         }
+                        transform(store, iMov, allSets, allSlots);
                     }
                 }
             }
@@ -128,6 +112,278 @@ public class SuperMol {
         return superRMS;
     }
 
+    /**
+     * Calculate the RMSD between each pair of structures after superposition,
+     * using the atoms with the SUPER property.
+     *
+     * @param structures the structure numbers, or null for the active
+     *                   structures
+     * @return the RMSD matrix, indexed by position in the structure array
+     * @see #calcRMSDMatrix(int[], List)
+     */
+    public double[][] calcRMSDMatrix(int[] structures) {
+        return calcRMSDMatrix(structures, molecule.getAtomsByProp(Atom.SUPER));
+    }
+
+    /**
+     * Calculate the RMSD between each pair of structures after superposition,
+     * using the atoms matching a selection.
+     *
+     * @param structures the structure numbers, or null for the active
+     *                   structures
+     * @param selection  the atoms to superimpose
+     * @return the RMSD matrix, indexed by position in the structure array
+     * @see #calcRMSDMatrix(int[], List)
+     */
+    public double[][] calcRMSDMatrix(int[] structures, AtomSelection selection) {
+        return calcRMSDMatrix(structures, selection.select(molecule));
+    }
+
+    /**
+     * Calculate the RMSD between each pair of structures after superposition.
+     * Only atoms with coordinates in all the structures are used. The
+     * coordinates of each structure are copied once into a centered array and
+     * each pair is then scored with the quaternion characteristic polynomial
+     * method (Theobald, Acta Cryst. A61, 478 (2005)), which gives the RMSD
+     * without finding the rotation. Rows of the matrix are done in parallel.
+     *
+     * @param structures the structure numbers, or null for the active
+     *                   structures
+     * @param selected   the spatial sets of the atoms to superimpose
+     * @return the RMSD matrix, indexed by position in the structure array.
+     * Values off the diagonal are NaN if fewer than 3 atoms can be used.
+     */
+    public double[][] calcRMSDMatrix(int[] structures, List<SpatialSet> selected) {
+        if (structures == null) {
+            structures = molecule.getActiveStructures();
+        }
+        CoordinateStore store = molecule.getCoordinateStore();
+        int[] slots = molecule.getCoordinateSlots(selected);
+        int nStructures = structures.length;
+        int nSelected = slots.length;
+        boolean[] common = new boolean[nSelected];
+        int nCommon = 0;
+        for (int k = 0; k < nSelected; k++) {
+            common[k] = true;
+            for (int iStruct : structures) {
+                if (!store.isValid(iStruct, slots[k])) {
+                    common[k] = false;
+                    break;
+                }
+            }
+            if (common[k]) {
+                nCommon++;
+            }
+        }
+        double[][] rmsdMatrix = new double[nStructures][nStructures];
+        if (nCommon < 3) {
+            for (int i = 0; i < nStructures; i++) {
+                for (int j = 0; j < nStructures; j++) {
+                    rmsdMatrix[i][j] = i == j ? 0.0 : Double.NaN;
+                }
+            }
+            return rmsdMatrix;
+        }
+
+        double[][] centered = new double[nStructures][nCommon * 3];
+        double[] innerProducts = new double[nStructures];
+        double[] xyz = new double[nSelected * 3];
+        for (int i = 0; i < nStructures; i++) {
+            store.copyOut(structures[i], slots, xyz, null);
+            innerProducts[i] = packCentered(xyz, common, nCommon, centered[i]);
+        }
+
+        final int nAtoms = nCommon;
+        AtomicInteger nextRow = new AtomicInteger();
+        int nWorkers = Math.min(nStructures, ForkJoinPool.getCommonPoolParallelism() + 1);
+        IntStream.range(0, nWorkers).parallel().forEach(iWorker -> {
+            int i;
+            while ((i = nextRow.getAndIncrement()) < nStructures) {
+                for (int j = i + 1; j < nStructures; j++) {
+                    double value = calcQCPRMSD(centered[i], centered[j], innerProducts[i], innerProducts[j], nAtoms);
+                    rmsdMatrix[i][j] = value;
+                    rmsdMatrix[j][i] = value;
+                }
+            }
+        });
+        return rmsdMatrix;
+    }
+
+    /**
+     * Cluster structures by the RMSD between them after superposition on the
+     * atoms matching a selection.
+     *
+     * @param structures the structure numbers, or null for the active
+     *                   structures
+     * @param selection  the atoms to superimpose
+     * @param maxRMSD    clusters are only merged while the average RMSD
+     *                   between their members is below this value
+     * @return the clusters
+     */
+    public StructureClusters clusterStructures(int[] structures, AtomSelection selection, double maxRMSD) {
+        if (structures == null) {
+            structures = molecule.getActiveStructures();
+        }
+        double[][] rmsdMatrix = calcRMSDMatrix(structures, selection);
+        StructureClusters clusters = new StructureClusters(structures, rmsdMatrix);
+        clusters.cluster(maxRMSD);
+        return clusters;
+    }
+
+    /**
+     * Copy the coordinates of the used atoms into a packed array, centered on
+     * their average.
+     *
+     * @return the sum of the squares of the centered coordinates
+     */
+    private static double packCentered(double[] xyz, boolean[] use, int nUse, double[] packed) {
+        double[] center = new double[3];
+        int n = 0;
+        for (int k = 0; k < use.length; k++) {
+            if (use[k]) {
+                for (int j = 0; j < 3; j++) {
+                    packed[n * 3 + j] = xyz[k * 3 + j];
+                    center[j] += xyz[k * 3 + j];
+                }
+                n++;
+            }
+        }
+        for (int j = 0; j < 3; j++) {
+            center[j] /= nUse;
+        }
+        double sumSq = 0.0;
+        for (int i = 0; i < nUse * 3; i++) {
+            packed[i] -= center[i % 3];
+            sumSq += packed[i] * packed[i];
+        }
+        return sumSq;
+    }
+
+    /**
+     * Calculate the minimum RMSD between two sets of centered coordinates with
+     * the quaternion characteristic polynomial method. The largest eigenvalue
+     * of the key matrix is found by Newton-Raphson iteration on its
+     * characteristic polynomial, starting from the upper bound (gA + gB) / 2.
+     *
+     * @param a  the packed x, y, z coordinates of the first set
+     * @param b  the packed coordinates of the second set
+     * @param gA the sum of the squares of the first coordinates
+     * @param gB the sum of the squares of the second coordinates
+     * @param n  the number of atoms
+     * @return the RMSD
+     */
+    static double calcQCPRMSD(double[] a, double[] b, double gA, double gB, int n) {
+        double sxx = 0.0;
+        double sxy = 0.0;
+        double sxz = 0.0;
+        double syx = 0.0;
+        double syy = 0.0;
+        double syz = 0.0;
+        double szx = 0.0;
+        double szy = 0.0;
+        double szz = 0.0;
+        for (int i = 0; i < n * 3; i += 3) {
+            double x1 = a[i];
+            double y1 = a[i + 1];
+            double z1 = a[i + 2];
+            double x2 = b[i];
+            double y2 = b[i + 1];
+            double z2 = b[i + 2];
+            sxx += x1 * x2;
+            sxy += x1 * y2;
+            sxz += x1 * z2;
+            syx += y1 * x2;
+            syy += y1 * y2;
+            syz += y1 * z2;
+            szx += z1 * x2;
+            szy += z1 * y2;
+            szz += z1 * z2;
+        }
+        double e0 = (gA + gB) * 0.5;
+
+        double sxx2 = sxx * sxx;
+        double syy2 = syy * syy;
+        double szz2 = szz * szz;
+        double sxy2 = sxy * sxy;
+        double syz2 = syz * syz;
+        double sxz2 = sxz * sxz;
+        double syx2 = syx * syx;
+        double szy2 = szy * szy;
+        double szx2 = szx * szx;
+
+        double syzSzymSyySzz2 = 2.0 * (syz * szy - syy * szz);
+        double sxx2Syy2Szz2Syz2Szy2 = syy2 + szz2 - sxx2 + syz2 + szy2;
+
+        double c2 = -2.0 * (sxx2 + syy2 + szz2 + sxy2 + syx2 + sxz2 + szx2 + syz2 + szy2);
+        double c1 = 8.0 * (sxx * syz * szy + syy * szx * sxz + szz * sxy * syx
+                - sxx * syy * szz - syz * szx * sxy - szy * syx * sxz);
+
+        double sxzpSzx = sxz + szx;
+        double syzpSzy = syz + szy;
+        double sxypSyx = sxy + syx;
+        double syzmSzy = syz - szy;
+        double sxzmSzx = sxz - szx;
+        double sxymSyx = sxy - syx;
+        double sxxpSyy = sxx + syy;
+        double sxxmSyy = sxx - syy;
+        double sxy2Sxz2Syx2Szx2 = sxy2 + sxz2 - syx2 - szx2;
+
+        double c0 = sxy2Sxz2Syx2Szx2 * sxy2Sxz2Syx2Szx2
+                + (sxx2Syy2Szz2Syz2Szy2 + syzSzymSyySzz2) * (sxx2Syy2Szz2Syz2Szy2 - syzSzymSyySzz2)
+                + (-sxzpSzx * syzmSzy + sxymSyx * (sxxmSyy - szz)) * (-sxzmSzx * syzpSzy + sxymSyx * (sxxmSyy + szz))
+                + (-sxzpSzx * syzpSzy - sxypSyx * (sxxpSyy - szz)) * (-sxzmSzx * syzmSzy - sxypSyx * (sxxpSyy + szz))
+                + (sxypSyx * syzpSzy + sxzpSzx * (sxxmSyy + szz)) * (-sxymSyx * syzmSzy + sxzpSzx * (sxxpSyy + szz))
+                + (sxypSyx * syzmSzy + sxzmSzx * (sxxmSyy - szz)) * (-sxymSyx * syzpSzy + sxzmSzx * (sxxpSyy - szz));
+
+        double eigenValue = e0;
+        for (int iter = 0; iter < 50; iter++) {
+            double old = eigenValue;
+            double x2 = eigenValue * eigenValue;
+            double bTerm = (x2 + c2) * eigenValue;
+            double aTerm = bTerm + c1;
+            double delta = (aTerm * eigenValue + c0) / (2.0 * x2 * eigenValue + bTerm + aTerm);
+            eigenValue -= delta;
+            if (Math.abs(eigenValue - old) < Math.abs(1.0e-11 * eigenValue)) {
+                break;
+            }
+        }
+        return Math.sqrt(Math.abs(2.0 * (e0 - eigenValue) / n));
+    }
+
+    /**
+     * Apply the rotation and translation from the last call to cal_super to
+     * the coordinates of a structure, and notify the molecule of each atom
+     * that moved.
+     */
+    private void transform(CoordinateStore store, int iStruct, List<SpatialSet> spatialSets, int[] slots) {
+        double[] xyz = new double[slots.length * 3];
+        boolean[] valid = new boolean[slots.length];
+        int nValid = store.copyOut(iStruct, slots, xyz, valid);
+        int[] validSlots = new int[nValid];
+        double[] validXYZ = new double[nValid * 3];
+        double[] s = new double[3];
+        int n = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (valid[i]) {
+                System.arraycopy(xyz, i * 3, s, 0, 3);
+                for (int j = 0; j < 3; j++) {
+                    double temp = 0.0;
+                    for (int k = 0; k < 3; k++) {
+                        temp = temp + (rotMatrix[j][k] * (s[k] - yCenter[k]));
+                    }
+                    validXYZ[n * 3 + j] = temp + xCenter[j];
+                }
+                validSlots[n++] = slots[i];
+            }
+        }
+        store.copyIn(iStruct, validSlots, validXYZ);
+        for (int i = 0; i < slots.length; i++) {
+            if (valid[i]) {
+                molecule.changed(spatialSets.get(i).atom);
+            }
+        }
+    }
+
     public void cal_super(double[][] x, double[][] y, int n) {
         int i;
         int j;
@@ -0,0 +1,122 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.structure.chemistry.energy;
+
+import java.util.Arrays;
+
+/**
+ * A set of unordered pairs of atom indices, stored in an open addressing hash
+ * table of primitive longs. Used instead of a dense nAtoms x nAtoms matrix
+ * when only a small fraction of the pairs are members.
+ */
+class AtomPairSet {
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int size = 0;
+
+    AtomPairSet() {
+        this(1024);
+    }
+
+    AtomPairSet(int capacity) {
+        int n = Integer.highestOneBit(Math.max(16, capacity * 2) - 1) << 1;
+        keys = new long[n];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private static long key(int i, int j) {
+        return i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    boolean contains(int i, int j) {
+        long key = key(i, j);
+        int mask = keys.length - 1;
+        int pos = hash(key) & mask;
+        while (keys[pos] != EMPTY) {
+            if (keys[pos] == key) {
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Add the pair i,j (the same pair as j,i).
+     *
+     * @param i index of first atom
+     * @param j index of second atom
+     * @return true if the pair was not already in the set
+     */
+    boolean add(int i, int j) {
+        if (2 * (size + 1) > keys.length) {
+            rehash(keys.length * 2);
+        }
+        long key = key(i, j);
+        int mask = keys.length - 1;
+        int pos = hash(key) & mask;
+        while (keys[pos] != EMPTY) {
+            if (keys[pos] == key) {
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        size++;
+        return true;
+    }
+
+    private void rehash(int newLength) {
+        long[] oldKeys = keys;
+        keys = new long[newLength];
+        Arrays.fill(keys, EMPTY);
+        int mask = newLength - 1;
+        for (long key : oldKeys) {
+            if (key != EMPTY) {
+                int pos = hash(key) & mask;
+                while (keys[pos] != EMPTY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Call the visitor with each pair in the set, the lower index first.
+     *
+     * @param visitor the visitor
+     */
+    void forEach(EnergyCoords.PairVisitor visitor) {
+        for (long key : keys) {
+            if (key != EMPTY) {
+                visitor.visit((int) (key >>> 32), (int) key);
+            }
+        }
+    }
+}
@@ -49,10 +49,10 @@ public class EnergyBaseStacking extends EnergyDistancePairs {
     }
 
     @Override
-    public double calcEnergy(boolean calcDeriv, double weight, double eWeight) {
+    double calcEnergy(boolean calcDeriv, double weight, double eWeight, int start, int end) {
         FastVector3D[] vecCoords = eCoords.getVecCoords();
         double sum = 0.0;
-        for (int i = 0; i < nPairs; i++) {
+        for (int i = start; i < end; i++) {
             int iAtom = iAtoms[i];
             int jAtom = jAtoms[i];
             FastVector3D iV = vecCoords[iAtom];
@@ -65,8 +65,7 @@ public class EnergyConstraintPairs extends EnergyDistancePairs {
 
             if (eCoords.fixed != null) {
                 if (isBond) {
-                    eCoords.setFixed(j, i, true);
-                    eCoords.setFixed(i, j, true);
+                    eCoords.setFixed(i, j);
                 }
             } else {
                 log.info("null fixed");
@@ -220,9 +219,22 @@ public class EnergyConstraintPairs extends EnergyDistancePairs {
         }
     }
 
+    @Override
+    int getChunkStart(int iChunk) {
+        int start = super.getChunkStart(iChunk);
+        while ((start < nPairs) && (groupSizes[start] == 0)) {
+            start++;
+        }
+        return start;
+    }
+
     public double calcEnergy(boolean calcDeriv, double weight) {
+        return sumEnergy((start, end) -> calcEnergy(calcDeriv, weight, start, end));
+    }
+
+    double calcEnergy(boolean calcDeriv, double weight, int start, int end) {
         double sum = 0.0;
-        for (int i = 0; i < nPairs; i++) {
+        for (int i = start; i < end; i++) {
             sum += calcEnergy(calcDeriv, weight, i);
             if (groupSizes[i] > 1) {
                 i += groupSizes[i] - 1;
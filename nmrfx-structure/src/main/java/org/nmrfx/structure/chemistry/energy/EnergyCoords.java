@@ -26,6 +26,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +39,9 @@ public class EnergyCoords {
 
     static final double PI32 = Math.PI * Math.sqrt(Math.PI);
     public static final double RSCALE = Math.pow(2.0, -1.0 / 6.0);
+    public static final double STACKING_LIMIT = 6.0;
+    private static final double FIXED_TOLERANCE = 0.2;
+    private static final double DEFAULT_NEIGHBOR_SKIN = 1.0;
 
     private static final int[][] offsets = {{0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0}, {-1, 1, 0}, {0, 0, 1},
             {1, 0, 1}, {1, 1, 1}, {0, 1, 1}, {-1, 1, 1}, {-1, 0, 1},
@@ -63,12 +68,27 @@ public class EnergyCoords {
     double[] cValues = null;
     int[] cellIndex = null;
     int nAtoms = 0;
-    boolean[][] fixed;
+    AtomPairSet fixed;
+    private int fixedVersion = 0;
+    private int fixedNAtoms = 0;
+    private double fixedCutoff = 0.0;
+    private int nRangePairs = -1;
+    private int[] rangeAtoms = null;
+    private double[] rangeMin = null;
+    private double[] rangeMax = null;
+    private double neighborSkin = DEFAULT_NEIGHBOR_SKIN;
+    private boolean parallel = false;
+    private final Map<EnergyPairs, NeighborList> neighborLists = new IdentityHashMap<>();
     Map<Integer, Set<Integer>> kSwap = null;
     boolean setupShifts = false;
 
     private static double hbondDelta = 0.60;
 
+    @FunctionalInterface
+    interface PairVisitor {
+        void visit(int i, int j);
+    }
+
     public EnergyCoords() {
         this.forceWeight = new ForceWeight();
         eDistancePairs = new EnergyDistancePairs(this);
@@ -167,6 +187,35 @@ public class EnergyCoords {
         eConstraintPairs.doSwaps();
     }
 
+    /**
+     * Set whether the pair energies and derivatives are evaluated in
+     * parallel. The pairs are split into fixed size chunks whose partial
+     * sums are combined in a fixed order, so results are reproducible from
+     * run to run, and match the serial evaluation to within rounding.
+     *
+     * @param state true to use parallel evaluation
+     */
+    public void setParallel(boolean state) {
+        parallel = state;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Set the number of pairs in each chunk used by the parallel evaluation.
+     * Tests use a small value so that small molecules are split into several
+     * chunks.
+     *
+     * @param chunkSize the number of pairs per chunk
+     */
+    void setChunkSize(int chunkSize) {
+        for (EnergyPairs ePairs : List.of(eDistancePairs, eConstraintPairs, eShiftPairs, eBaseStackingPairs)) {
+            ePairs.chunkSize = chunkSize;
+        }
+    }
+
     public double calcNOE(boolean calcDeriv, double weight) {
         return eConstraintPairs.calcEnergy(calcDeriv, weight);
     }
@@ -324,20 +373,150 @@ public class EnergyCoords {
         }
     }
 
+    /**
+     * Set the pairs of atoms that are in contact (closer than limit) in the
+     * specified list of pairs, and the base stacking pairs. Candidate pairs
+     * are taken from a Verlet neighbor list that is only rebuilt when an atom
+     * has moved more than half the neighbor skin since the last build, or the
+     * parameters or rotation groups have changed, so repeated calls during a
+     * refinement are linear in the number of atoms.
+     */
     public void setCells(EnergyPairs ePairs, int deltaEnd, double limit,
                          double hardSphere, boolean includeH, double shrinkValue,
                          double shrinkHValue, boolean useFF) {
-        double limit2 = limit * limit;
-        double[][] bounds = getBoundaries();
-        int[] nCells = new int[3];
-
         setRadii(hardSphere, includeH, shrinkValue, shrinkHValue, useFF);
 
         ePairs.clear();
         eBaseStackingPairs.clear();
 
+        boolean stacking = forceWeight.getStacking() > 0.0;
+        NeighborList.Params params = new NeighborList.Params(nAtoms, atoms, deltaEnd, limit, hardSphere, includeH,
+                shrinkValue, shrinkHValue, useFF, stacking, neighborSkin, fixedVersion);
+        NeighborList neighborList = neighborLists.computeIfAbsent(ePairs, k -> new NeighborList());
+        if (neighborList.needsRebuild(params, vecCoords)) {
+            buildNeighborList(neighborList, params);
+        }
+
+        double limit2 = limit * limit;
+        for (int k = 0; k < neighborList.nPairs; k++) {
+            int iAtom = neighborList.iAtoms[k];
+            int jAtom = neighborList.jAtoms[k];
+            double disSq = vecCoords[iAtom].disSq(vecCoords[jAtom]);
+            if (disSq >= neighborList.limit2s[k]) {
+                continue;
+            }
+            int iUnit = neighborList.iUnits[k];
+            int jUnit = neighborList.jUnits[k];
+            boolean inContact = disSq < limit2;
+            if (inContact) {
+                if (useFF) {
+                    ePairs.addPair(iAtom, jAtom, iUnit, jUnit, neighborList.rH[k],
+                            neighborList.aValues[k], neighborList.bValues[k], neighborList.cValues[k]);
+                } else {
+                    ePairs.addPair(iAtom, jAtom, iUnit, jUnit, neighborList.rHAdj[k]);
+                }
+            }
+            int p = 4 * k;
+            if (neighborList.planeAtoms[p] != -1) {
+                double rH = inContact && !useFF ? neighborList.rHAdj[k] : neighborList.rH[k];
+                eBaseStackingPairs.addPair(iAtom, jAtom, iUnit, jUnit, rH,
+                        neighborList.planeAtoms[p], neighborList.planeAtoms[p + 1],
+                        neighborList.planeAtoms[p + 2], neighborList.planeAtoms[p + 3]);
+            }
+        }
+    }
+
+    private void buildNeighborList(NeighborList neighborList, NeighborList.Params params) {
+        neighborList.start(params, vecCoords);
+        double limit = params.limit();
+        double limit2 = limit * limit;
+        double maxLimit = params.stacking() ? Math.max(limit, STACKING_LIMIT) : limit;
+        forEachPairWithin(maxLimit + params.skin(), (iAtom, jAtom) ->
+                addNeighbor(neighborList, iAtom, jAtom, params.deltaEnd(), limit2,
+                        params.includeH(), params.useFF(), params.stacking()));
+    }
+
+    /**
+     * Add a pair to the neighbor list if it can interact. The tests here are
+     * the ones that don't depend on the coordinates, so they are only done
+     * when the list is built.
+     */
+    private void addNeighbor(NeighborList neighborList, int iAtom, int jAtom, int deltaEnd, double limit2,
+                             boolean includeH, boolean useFF, boolean stacking) {
+        Atom atom1 = atoms[iAtom];
+        Atom atom2 = atoms[jAtom];
+        if (!includeH && ((atom1.getAtomicNumber() == 1) || (atom2.getAtomicNumber() == 1))) {
+            return;
+        }
+        int iUnit = NeighborList.getUnit(atom1);
+        int jUnit = NeighborList.getUnit(atom2);
+        if (((iUnit == -1) && (jUnit == -1)) || (iUnit == jUnit)) {
+            return;
+        }
+        int iRes = resNums[iAtom];
+        int jRes = resNums[jAtom];
+        int deltaRes = Math.abs(jRes - iRes);
+        if (deltaRes >= deltaEnd) {
+            return;
+        }
+        boolean interactable = (contactRadii[iAtom] > 1.0e-6) && (contactRadii[jAtom] > 1.0e-6);
+        if (!interactable || getFixed(iAtom, jAtom)) {
+            return;
+        }
+        double adjustClose = 0.0;
+        // fixme could we have invalid jAtom-iAtom-1, if res test inappropriate
+        if ((iRes == jRes) || (deltaRes == 1)) {
+            if (checkCloseAtoms(atom1, atom2)) {
+                adjustClose = 0.2;
+            }
+        }
+        double rH = contactRadii[iAtom] + contactRadii[jAtom];
+        double rHAdj = rH;
+        double a = 0.0;
+        double b = 0.0;
+        double c = 0.0;
+        if (useFF) {
+            a = Math.sqrt(aValues[iAtom] * aValues[jAtom]);
+            b = Math.sqrt(bValues[iAtom] * bValues[jAtom]);
+            c = cValues[iAtom] * cValues[jAtom];
+            c *= 322.0 / 6.0;
+            if (adjustClose > 0.01) {
+                a *= 0.5;
+                b *= 0.5;
+            }
+        } else {
+            if (hBondable[iAtom] * hBondable[jAtom] < 0) {
+                rHAdj -= hbondDelta;
+            }
+            rHAdj -= adjustClose;
+        }
+        boolean stackCheck = stacking && (atom1.getEntity() != atom2.getEntity()) && atom1.getFlag(Atom.RING) && !atom1.getName().contains("'")
+                && atom2.getFlag(Atom.RING) && !atom2.getName().contains("'");
+        Atom[] planeAtoms1 = null;
+        Atom[] planeAtoms2 = null;
+        double pairLimit2 = limit2;
+        if (stackCheck) {
+            pairLimit2 = STACKING_LIMIT * STACKING_LIMIT;
+            planeAtoms1 = atom1.getPlaneAtoms();
+            planeAtoms2 = atom2.getPlaneAtoms();
+        }
+        neighborList.add(iAtom, jAtom, iUnit, jUnit, pairLimit2, rH, rHAdj, a, b, c, planeAtoms1, planeAtoms2);
+    }
+
+    /**
+     * Call the visitor with each pair of atoms (lower index first) that are
+     * closer than the cutoff, using a grid of cells with the size of the
+     * cutoff so only atoms in neighboring cells are compared.
+     *
+     * @param cutoff  the distance cutoff
+     * @param visitor the visitor
+     */
+    void forEachPairWithin(double cutoff, PairVisitor visitor) {
+        double cutoff2 = cutoff * cutoff;
+        double[][] bounds = getBoundaries();
+        int[] nCells = new int[3];
         for (int j = 0; j < 3; j++) {
-            nCells[j] = 1 + (int) Math.floor(bounds[j][1] / limit);
+            nCells[j] = 1 + (int) Math.floor(bounds[j][1] / cutoff);
         }
         int[] strides = {1, nCells[0], nCells[0] * nCells[1]};
         int nCellsTotal = nCells[0] * nCells[1] * nCells[2];
@@ -345,24 +524,18 @@ public class EnergyCoords {
         int[] cellStarts = new int[nCellsTotal];
         for (int i = 0; i < nAtoms; i++) {
             double[] data = vecCoords[i].getValues();
-            int[] idx = new int[3];
+            int index = 0;
             for (int j = 0; j < 3; j++) {
-                idx[j] = (int) Math.floor((data[j] - bounds[j][0]) / limit);
+                index += (int) Math.floor((data[j] - bounds[j][0]) / cutoff) * strides[j];
             }
-            int index = idx[0] + idx[1] * strides[1] + idx[2] * strides[2];
             cellCounts[index]++;
             cellIndex[i] = index;
         }
-        int[] offsets1 = new int[offsets.length];
         int start = 0;
         for (int i = 0; i < nCellsTotal; i++) {
             cellStarts[i] = start;
             start += cellCounts[i];
         }
-        for (int i = 0; i < offsets1.length; i++) {
-            int delta = offsets[i][0] + offsets[i][1] * strides[1] + offsets[i][2] * strides[2];
-            offsets1[i] = delta;
-        }
         int[] atomIndex = new int[nAtoms];
         int[] nAdded = new int[nCellsTotal];
         for (int i = 0; i < nAtoms; i++) {
@@ -376,120 +549,26 @@ public class EnergyCoords {
                     int iCell = ix + iy * strides[1] + iz * strides[2];
                     int iStart = cellStarts[iCell];
                     int iEnd = iStart + cellCounts[iCell];
-                    int jOffset = 0;
-                    for (int iOff = 0; iOff < offsets.length; iOff++) {
-                        int dX = offsets[iOff][0];
-                        int dY = offsets[iOff][1];
-                        int dZ = offsets[iOff][2];
-                        int jx = ix + dX;
-                        int jy = iy + dY;
-                        int jz = iz + dZ;
-                        if ((jx < 0) || (jx >= nCells[0])) {
-                            continue;
-                        }
-                        if ((jy < 0) || (jy >= nCells[1])) {
-                            continue;
-                        }
-                        if ((jz < 0) || (jz >= nCells[2])) {
+                    for (int[] offset : offsets) {
+                        int jx = ix + offset[0];
+                        int jy = iy + offset[1];
+                        int jz = iz + offset[2];
+                        if ((jx < 0) || (jx >= nCells[0]) || (jy < 0) || (jy >= nCells[1])
+                                || (jz < 0) || (jz >= nCells[2])) {
                             continue;
                         }
                         int jCell = jx + jy * strides[1] + jz * strides[2];
-                        int jStart = cellStarts[jCell];
-                        int jEnd = jStart + cellCounts[jCell];
-
+                        int jEnd = cellStarts[jCell] + cellCounts[jCell];
                         for (int i = iStart; i < iEnd; i++) {
                             int ip = atomIndex[i];
-                            if ((atoms[ip].getAtomicNumber() == 1) && !includeH) {
-                                continue;
-                            }
-                            if (iCell == jCell) {
-                                jStart = i + 1;
-                            }
+                            int jStart = iCell == jCell ? i + 1 : cellStarts[jCell];
                             for (int j = jStart; j < jEnd; j++) {
                                 int jp = atomIndex[j];
-                                if ((atoms[jp].getAtomicNumber() == 1) && !includeH) {
-                                    continue;
-                                }
-                                if (ip != jp) {
-                                    int iAtom;
-                                    int jAtom;
+                                if (vecCoords[ip].disSq(vecCoords[jp]) < cutoff2) {
                                     if (ip < jp) {
-                                        iAtom = ip;
-                                        jAtom = jp;
+                                        visitor.visit(ip, jp);
                                     } else {
-                                        iAtom = jp;
-                                        jAtom = ip;
-                                    }
-                                    Atom atom1 = atoms[iAtom];
-                                    Atom atom2 = atoms[jAtom];
-                                    int iUnit = atom1.rotGroup == null ? -1 : atom1.rotGroup.rotUnit;
-                                    int jUnit = atom2.rotGroup == null ? -1 : atom2.rotGroup.rotUnit;
-                                    if (((iUnit != -1) || (jUnit != -1)) && (iUnit != jUnit)) {
-                                        double disSq = vecCoords[iAtom].disSq(vecCoords[jAtom]);
-
-                                        double limit2R = limit2;
-                                        boolean stackCheck = (forceWeight.getStacking() > 0.0) && (atom1.getEntity() != atom2.getEntity()) && atom1.getFlag(Atom.RING) && !atom1.getName().contains("'")
-                                                && atom2.getFlag(Atom.RING) && !atom2.getName().contains("'");
-                                        Atom[] planeAtoms1 = null;
-                                        Atom[] planeAtoms2 = null;
-                                        if (stackCheck) {
-                                            limit2R = 36.0;
-                                            planeAtoms1 = atom1.getPlaneAtoms();
-                                            planeAtoms2 = atom2.getPlaneAtoms();
-                                        }
-                                        if (disSq < limit2R) {
-                                            int iRes = resNums[iAtom];
-                                            int jRes = resNums[jAtom];
-                                            int deltaRes = Math.abs(jRes - iRes);
-                                            if (deltaRes >= deltaEnd) {
-                                                continue;
-                                            }
-                                            boolean notFixed = true;
-                                            double adjustClose = 0.0;
-                                            // fixme could we have invalid jAtom-iAtom-1, if res test inappropriate
-                                            if ((iRes == jRes) || (deltaRes == 1)) {
-                                                if (checkCloseAtoms(atom1, atom2)) {
-                                                    adjustClose = 0.2;
-                                                }
-                                            }
-                                            notFixed = !getFixed(iAtom, jAtom);
-                                            boolean interactable1 = (contactRadii[iAtom] > 1.0e-6) && (contactRadii[jAtom] > 1.0e-6);
-                                            // fixme  this is fast, but could miss interactions for atoms that are not bonded
-                                            // as it doesn't test for an explicit bond between the pairs
-                                            if (notFixed && interactable1) {
-                                                double rH = contactRadii[iAtom] + contactRadii[jAtom];
-                                                if (disSq < limit2) {
-                                                    if (useFF) {
-                                                        double a = Math.sqrt(aValues[iAtom] * aValues[jAtom]);
-                                                        double b = Math.sqrt(bValues[iAtom] * bValues[jAtom]);
-                                                        double c = cValues[iAtom] * cValues[jAtom];
-                                                        c *= 322.0 / 6.0;
-                                                        if (adjustClose > 0.01) {
-                                                            a *= 0.5;
-                                                            b *= 0.5;
-                                                        }
-                                                        ePairs.addPair(iAtom, jAtom, iUnit, jUnit, rH,
-                                                                a, b, c);
-                                                    } else {
-                                                        if (hBondable[iAtom] * hBondable[jAtom] < 0) {
-                                                            rH -= hbondDelta;
-                                                        }
-                                                        rH -= adjustClose;
-                                                        ePairs.addPair(iAtom, jAtom, iUnit, jUnit, rH);
-                                                    }
-                                                }
-                                                if (stackCheck && (planeAtoms1 != null) && (planeAtoms2 != null)) {
-
-                                                    eBaseStackingPairs.addPair(iAtom,
-                                                            jAtom, iUnit, jUnit, rH,
-                                                            planeAtoms1[0].eAtom,
-                                                            planeAtoms1[1].eAtom,
-                                                            planeAtoms2[0].eAtom,
-                                                            planeAtoms2[1].eAtom
-                                                    );
-                                                }
-                                            }
-                                        }
+                                        visitor.visit(jp, ip);
                                     }
                                 }
                             }
@@ -500,79 +579,138 @@ public class EnergyCoords {
         }
     }
 
-    boolean getFixed(int i, int j) {
-        return fixed[i][j];
+    /**
+     * Set the skin distance of the neighbor lists used by setCells. A larger
+     * skin makes the lists longer but they need to be rebuilt less often.
+     *
+     * @param skin the skin distance
+     */
+    public void setNeighborSkin(double skin) {
+        neighborSkin = skin;
     }
 
-    void setFixed(int i, int j, boolean state) {
-        fixed[i][j] = state;
+    public double getNeighborSkin() {
+        return neighborSkin;
     }
 
-    public double[][][] getFixedRange() {
-        double[][][] disRange = new double[2][nAtoms][nAtoms];
-        fixed = new boolean[nAtoms][nAtoms];
-        for (int i = 0; i < nAtoms; i++) {
-            Arrays.fill(disRange[0][i], Double.MAX_VALUE);
-            Arrays.fill(disRange[1][i], Double.NEGATIVE_INFINITY);
+    /**
+     * Number of times the neighbor list of the specified pairs has been
+     * built.
+     *
+     * @param ePairs the pairs
+     * @return the number of builds
+     */
+    public int getNeighborListBuilds(EnergyPairs ePairs) {
+        NeighborList neighborList = neighborLists.get(ePairs);
+        return neighborList == null ? 0 : neighborList.nBuilds;
+    }
 
-        }
-        return disRange;
+    boolean getFixed(int i, int j) {
+        return (fixed != null) && fixed.contains(i, j);
     }
 
-    public void updateRanges(double[][][] disRanges) {
-        for (int i = 0; i < nAtoms; i++) {
-            FastVector3D v1 = vecCoords[i];
-            for (int j = 0; j < nAtoms; j++) {
-                FastVector3D v2 = vecCoords[j];
-                double dis = v1.dis(v2);
-                disRanges[0][i][j] = Math.min(dis, disRanges[0][i][j]);
-                disRanges[1][i][j] = Math.max(dis, disRanges[1][i][j]);
-            }
+    void setFixed(int i, int j) {
+        if (fixed.add(i, j)) {
+            fixedVersion++;
         }
     }
 
-    public void updateFixed(double[][][] disRanges) {
-        double tol = 0.2;
-        int nFixed = 0;
-        for (int i = 0; i < nAtoms; i++) {
-            for (int j = 0; j < nAtoms; j++) {
-                double delta = Math.abs(disRanges[1][i][j] - disRanges[0][i][j]);
-                if (delta < tol) {
-                    setFixed(i, j, true);
-                }
-                if (getFixed(i, j)) {
-                    nFixed++;
+    /**
+     * Start recording the range of distances between pairs of atoms over a
+     * series of conformations generated by the caller, with updateRanges
+     * called for each conformation and then updateFixed. Pairs whose
+     * distance doesn't change are marked as fixed, and are skipped by
+     * setCells. Distance ranges are only recorded for pairs that are closer
+     * than the cutoff in the first conformation, which is sufficient as long
+     * as the cutoff is at least the contact limit used with setCells.
+     *
+     * @param cutoff the distance cutoff
+     */
+    public void initFixedRanges(double cutoff) {
+        fixed = new AtomPairSet();
+        fixedVersion++;
+        fixedNAtoms = nAtoms;
+        fixedCutoff = cutoff;
+        nRangePairs = -1;
+    }
+
+    /**
+     * Update the distance ranges with the current coordinates.
+     */
+    public void updateRanges() {
+        if (nRangePairs < 0) {
+            nRangePairs = 0;
+            rangeAtoms = new int[2 * Math.max(16, nAtoms)];
+            forEachPairWithin(fixedCutoff + FIXED_TOLERANCE, (iAtom, jAtom) -> {
+                if (2 * nRangePairs == rangeAtoms.length) {
+                    rangeAtoms = Arrays.copyOf(rangeAtoms, rangeAtoms.length * 2);
                 }
+                rangeAtoms[2 * nRangePairs] = iAtom;
+                rangeAtoms[2 * nRangePairs + 1] = jAtom;
+                nRangePairs++;
+            });
+            rangeMin = new double[nRangePairs];
+            rangeMax = new double[nRangePairs];
+            Arrays.fill(rangeMin, Double.MAX_VALUE);
+            Arrays.fill(rangeMax, Double.NEGATIVE_INFINITY);
+        }
+        for (int k = 0; k < nRangePairs; k++) {
+            double dis = vecCoords[rangeAtoms[2 * k]].dis(vecCoords[rangeAtoms[2 * k + 1]]);
+            rangeMin[k] = Math.min(dis, rangeMin[k]);
+            rangeMax[k] = Math.max(dis, rangeMax[k]);
+        }
+    }
 
+    /**
+     * Mark the pairs whose distance varied by less than the tolerance as
+     * fixed, and discard the distance ranges.
+     */
+    public void updateFixed() {
+        for (int k = 0; k < nRangePairs; k++) {
+            if (rangeMax[k] - rangeMin[k] < FIXED_TOLERANCE) {
+                fixed.add(rangeAtoms[2 * k], rangeAtoms[2 * k + 1]);
             }
         }
+        fixedVersion++;
+        nRangePairs = -1;
+        rangeAtoms = null;
+        rangeMin = null;
+        rangeMax = null;
     }
 
     public void dumpFixed() {
-        for (int i = 0; i < fixed.length; i++) {
+        if (fixed == null) {
+            return;
+        }
+        fixed.forEach((i, j) -> {
             String name1 = atoms[i].getFullName();
-            for (int j = 0; j < fixed[i].length; j++) {
-
-                if ((i != j) && fixed[i][j]) {
-                    String name2 = atoms[j].getFullName();
-                    if (name1.compareTo(name2) <= 0) {
-                        System.out.println("fix " + name1 + " " + name2);
-                    } else {
-                        System.out.println("fix " + name2 + " " + name1);
-
-                    }
-                }
+            String name2 = atoms[j].getFullName();
+            if (name1.compareTo(name2) <= 0) {
+                System.out.println("fix " + name1 + " " + name2);
+            } else {
+                System.out.println("fix " + name2 + " " + name1);
             }
-        }
+        });
     }
 
     public void resetFixed() {
         fixed = null;
+        fixedVersion++;
     }
 
     public boolean fixedCurrent() {
-        boolean status = (fixed != null) && (fixed.length == nAtoms);
-        return status;
+        return (fixed != null) && (fixedNAtoms == nAtoms);
+    }
+
+    /**
+     * Check whether the fixed pairs are current and were found with a cutoff
+     * that covers the specified contact limit.
+     *
+     * @param limit the contact limit
+     * @return true if the fixed pairs can be used
+     */
+    public boolean fixedCurrent(double limit) {
+        return fixedCurrent() && (fixedCutoff >= limit);
     }
 
     public boolean checkCloseAtoms(Atom atom1, Atom atom2) {
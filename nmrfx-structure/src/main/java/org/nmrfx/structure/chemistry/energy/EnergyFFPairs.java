@@ -61,7 +61,7 @@ public class EnergyFFPairs extends EnergyDistancePairs {
     }
 
     @Override
-    public double calcEnergy(boolean calcDeriv, double weight, double eWeight) {
+    double calcEnergy(boolean calcDeriv, double weight, double eWeight, int start, int end) {
         FastVector3D[] vecCoords = eCoords.getVecCoords();
         double sum = 0.0;
         double cutoffScale = -1.0;
@@ -71,7 +71,7 @@ public class EnergyFFPairs extends EnergyDistancePairs {
         double a12 = a1 * a1;
         double b12 = b1 * b1;
 
-        for (int i = 0; i < nPairs; i++) {
+        for (int i = start; i < end; i++) {
             int iAtom = iAtoms[i];
             int jAtom = jAtoms[i];
             double a = aValues[i];
@@ -157,6 +157,14 @@ public class EnergyLists {
         return shrinkHValue;
     }
 
+    public void setParallel(final boolean value) {
+        molecule.getEnergyCoords().setParallel(value);
+    }
+
+    public boolean getParallel() {
+        return molecule.getEnergyCoords().isParallel();
+    }
+
     public void setSwap(final int value) {
         swapInterval = value;
     }
@@ -459,20 +467,29 @@ public class EnergyLists {
         makeAtomList2();
     }
 
+    /**
+     * Distance within which pairs of atoms are checked for fixed distances.
+     * It has to cover the contact limit and the base stacking limit used when
+     * finding contacts.
+     */
+    private double getFixedRangeLimit() {
+        return Math.max(distanceLimit, EnergyCoords.STACKING_LIMIT);
+    }
+
     public void updateFixed(Dihedral dihedrals) {
         if (dihedrals == null) {
             return;
         }
         dihedrals.saveDihedrals();
         EnergyCoords eCoords = molecule.getEnergyCoords();
-        double[][][] dRange = eCoords.getFixedRange();
+        eCoords.initFixedRanges(getFixedRangeLimit());
         int nUpdates = 10;
         for (int i = 0; i < nUpdates; i++) {
             dihedrals.randomizeAngles();
             molecule.genCoordsFastVec3D(null);
-            eCoords.updateRanges(dRange);
+            eCoords.updateRanges();
         }
-        eCoords.updateFixed(dRange);
+        eCoords.updateFixed();
         dihedrals.restoreDihedrals();
         molecule.genCoordsFastVec3D(null);
     }
@@ -1035,7 +1052,7 @@ public class EnergyLists {
         EnergyCoords eCoords = molecule.getEnergyCoords();
         molecule.updateVecCoords();
         eCoords.eConstraintPairs.clear();
-        if (!eCoords.fixedCurrent()) {
+        if (!eCoords.fixedCurrent(getFixedRangeLimit())) {
             if (molecule.getDihedrals() == null) {
                 return;
             }
@@ -1360,7 +1377,7 @@ public class EnergyLists {
 
     public void makeAtomListFast() {
         EnergyCoords eCoords = molecule.getEnergyCoords();
-        if (!eCoords.fixedCurrent()) {
+        if (!eCoords.fixedCurrent(getFixedRangeLimit())) {
             if (molecule.getDihedrals() == null) {
                 return;
             }
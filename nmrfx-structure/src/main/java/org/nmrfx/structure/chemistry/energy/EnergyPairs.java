@@ -7,11 +7,26 @@ package org.nmrfx.structure.chemistry.energy;
 
 import org.nmrfx.structure.fastlinear.FastVector3D;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 /**
  * @author brucejohnson
  */
 public class EnergyPairs {
 
+    /**
+     * Number of pairs evaluated by one task in the parallel mode. The chunks
+     * don't depend on the number of threads, so the partial results are
+     * always combined in the same order and the results are reproducible.
+     */
+    static final int CHUNK_SIZE = 2048;
+
+    @FunctionalInterface
+    interface RangeEnergy {
+        double calc(int start, int end);
+    }
+
     EnergyCoords eCoords;
     int[] iAtoms;
     int[] jAtoms;
@@ -21,6 +36,9 @@ public class EnergyPairs {
     double[] weights;
     double[] derivs;
     int nPairs;
+    double[] chunkSums = new double[0];
+    double[] chunkDerivs = new double[0];
+    int chunkSize = CHUNK_SIZE;
 
     public EnergyPairs(EnergyCoords eCoords) {
         this.eCoords = eCoords;
@@ -89,14 +107,127 @@ public class EnergyPairs {
         }
     }
 
+    int getNChunks() {
+        return (nPairs + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Index of the first pair of the specified chunk. Subclasses whose pairs
+     * can't be evaluated independently adjust this so groups of pairs don't
+     * span chunks.
+     *
+     * @param iChunk the chunk index
+     * @return the index of the first pair
+     */
+    int getChunkStart(int iChunk) {
+        return Math.min(iChunk * chunkSize, nPairs);
+    }
+
+    boolean useParallel() {
+        return eCoords.isParallel() && (getNChunks() > 1);
+    }
+
+    /**
+     * Evaluate the energy of all pairs. In the parallel mode the pairs are
+     * split into chunks that are evaluated concurrently, and the chunk sums
+     * are added in chunk order.
+     *
+     * @param rangeEnergy calculates the energy of a range of pairs
+     * @return the energy
+     */
+    double sumEnergy(RangeEnergy rangeEnergy) {
+        if (!useParallel()) {
+            return rangeEnergy.calc(0, nPairs);
+        }
+        int nChunks = getNChunks();
+        if (chunkSums.length < nChunks) {
+            chunkSums = new double[nChunks];
+        }
+        IntStream.range(0, nChunks).parallel().forEach(iChunk
+                -> chunkSums[iChunk] = rangeEnergy.calc(getChunkStart(iChunk), getChunkStart(iChunk + 1)));
+        double sum = 0.0;
+        for (int iChunk = 0; iChunk < nChunks; iChunk++) {
+            sum += chunkSums[iChunk];
+        }
+        return sum;
+    }
+
     public void addDerivs(AtomBranch[] branches) {
+        int iMax;
+        if (useParallel()) {
+            iMax = addDerivsParallel(branches);
+        } else {
+            iMax = addDerivs(branches, 0, nPairs, -1);
+        }
+        if ((iMax >= 0) && (Math.abs(derivs[iMax]) > 100000.0)) {
+            System.out.printf("WARNING: Gradient %8.2g ", Math.abs(derivs[iMax]));
+            ViolationStats stats = getError(iMax, 0.1, 1.0, -1.0);
+            if (stats != null) {
+                System.out.print(stats.toString());
+            }
+
+        }
+    }
+
+    /**
+     * Add the derivatives of each chunk of pairs to a buffer for the chunk,
+     * with the six f and g values of each branch, and then add the buffers
+     * to the branches in chunk order.
+     */
+    private int addDerivsParallel(AtomBranch[] branches) {
+        int nChunks = getNChunks();
+        int nValues = 6 * branches.length;
+        if (chunkDerivs.length < nChunks * nValues) {
+            chunkDerivs = new double[nChunks * nValues];
+        }
+        int[] chunkMax = new int[nChunks];
+        IntStream.range(0, nChunks).parallel().forEach(iChunk -> {
+            int offset = iChunk * nValues;
+            Arrays.fill(chunkDerivs, offset, offset + nValues, 0.0);
+            chunkMax[iChunk] = addDerivs(branches, getChunkStart(iChunk), getChunkStart(iChunk + 1), offset);
+        });
+        double[] f = new double[3];
+        double[] g = new double[3];
+        for (int iChunk = 0; iChunk < nChunks; iChunk++) {
+            int offset = iChunk * nValues;
+            for (int iUnit = 0; iUnit < branches.length; iUnit++) {
+                int k = offset + 6 * iUnit;
+                f[0] = chunkDerivs[k];
+                f[1] = chunkDerivs[k + 1];
+                f[2] = chunkDerivs[k + 2];
+                g[0] = chunkDerivs[k + 3];
+                g[1] = chunkDerivs[k + 4];
+                g[2] = chunkDerivs[k + 5];
+                branches[iUnit].addToF(f);
+                branches[iUnit].addToG(g);
+            }
+        }
+        int iMax = -1;
+        double dMax = 0.0;
+        for (int i : chunkMax) {
+            if ((i >= 0) && (Math.abs(derivs[i]) > dMax)) {
+                dMax = Math.abs(derivs[i]);
+                iMax = i;
+            }
+        }
+        return iMax;
+    }
+
+    /**
+     * Add the derivatives of a range of pairs to the branches, or to the
+     * chunk buffer starting at offset if offset isn't negative.
+     *
+     * @return the index of the pair with the largest derivative, or -1 if
+     * all are zero
+     */
+    private int addDerivs(AtomBranch[] branches, int start, int end, int offset) {
         FastVector3D[] vecCoords = eCoords.getVecCoords();
 
         FastVector3D v1 = new FastVector3D();
         FastVector3D v2 = new FastVector3D();
-        int iMax = 0;
+        int iMax = -1;
         double dMax = 0.0;
-        for (int i = 0; i < nPairs; i++) {
+        for (int i = start; i < end; i++) {
             double deriv = derivs[i];
             if (Math.abs(deriv) > dMax) {
                 dMax = Math.abs(deriv);
@@ -119,24 +250,35 @@ public class EnergyPairs {
             int iUnit = iUnits[i];
             int jUnit = jUnits[i];
 
-            if (iUnit >= 0) {
-                branches[iUnit].addToF(v1.getValues());
-                branches[iUnit].addToG(v2.getValues());
+            if (offset < 0) {
+                if (iUnit >= 0) {
+                    branches[iUnit].addToF(v1.getValues());
+                    branches[iUnit].addToG(v2.getValues());
 
-            }
-            if (jUnit >= 0) {
-                branches[jUnit].subtractToF(v1.getValues());
-                branches[jUnit].subtractToG(v2.getValues());
+                }
+                if (jUnit >= 0) {
+                    branches[jUnit].subtractToF(v1.getValues());
+                    branches[jUnit].subtractToG(v2.getValues());
+                }
+            } else {
+                if (iUnit >= 0) {
+                    addToBuffer(offset + 6 * iUnit, v1.getValues(), v2.getValues(), 1.0);
+                }
+                if (jUnit >= 0) {
+                    addToBuffer(offset + 6 * jUnit, v1.getValues(), v2.getValues(), -1.0);
+                }
             }
         }
-        if (dMax > 100000.0) {
-            System.out.printf("WARNING: Gradient %8.2g ", dMax);
-            ViolationStats stats = getError(iMax, 0.1, 1.0, -1.0);
-            if (stats != null) {
-                System.out.print(stats.toString());
-            }
+        return iMax;
+    }
 
-        }
+    private void addToBuffer(int k, double[] f, double[] g, double sign) {
+        chunkDerivs[k] += sign * f[0];
+        chunkDerivs[k + 1] += sign * f[1];
+        chunkDerivs[k + 2] += sign * f[2];
+        chunkDerivs[k + 3] += sign * g[0];
+        chunkDerivs[k + 4] += sign * g[1];
+        chunkDerivs[k + 5] += sign * g[2];
     }
 
     public ViolationStats getError(int i, double limitVal, double weight) {
@@ -12,8 +12,10 @@ import org.nmrfx.structure.chemistry.predict.Predictor;
 import org.nmrfx.structure.chemistry.predict.RNAAttributes;
 import org.nmrfx.structure.fastlinear.FastVector3D;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * @author brucejohnson
@@ -21,6 +23,7 @@ import java.util.List;
 public class EnergyShiftPairs extends EnergyPairs {
 
     HashMap<String, List> allowedSourcesMap = new HashMap<>();
+    double[] chunkShifts = new double[0];
 
     public EnergyShiftPairs(EnergyCoords eCoords) {
         super(eCoords);
@@ -64,44 +67,31 @@ public class EnergyShiftPairs extends EnergyPairs {
         eCoords.setCells(this, 1000, rLim, 0.0, true, 0.0, 0.0, false);
         double[] baseShifts = eCoords.baseShifts;
         double[] refShifts = eCoords.refShifts;
-        int[] shiftClass = eCoords.shiftClass;
         double[] shifts = eCoords.shifts;
         Atom[] atoms = eCoords.atoms;
-        FastVector3D[] vecCoords = eCoords.getVecCoords();
 
         double r2Lim = rLim * rLim;
         System.arraycopy(baseShifts, 0, refShifts, 0, baseShifts.length);
 
-        for (int i = 0; i < nPairs; i++) {
-            int iAtom = iAtoms[i];
-            int jAtom = jAtoms[i];
-
-            if ((baseShifts[iAtom] != 0.0) && shiftClass[jAtom] >= 0) {
-                int alphaClass = getRNAClass(atoms[iAtom]);
-                if (alphaClass >= 0) {
-                    FastVector3D iV = vecCoords[iAtom];
-                    FastVector3D jV = vecCoords[jAtom];
-                    double r2 = iV.disSq(jV);
-                    if (r2 <= r2Lim) {
-                        double r = Math.sqrt(r2);
-                        int alphaIndex = shiftClass[jAtom];
-                        double alpha = Predictor.getAlpha(alphaClass, alphaIndex);
-                        double shiftContrib = alpha / (r * r2);
-                        if (atoms[iAtom].getEntity().getIDNum() == atoms[jAtom].getEntity().getIDNum()) {
-                            shiftContrib *= intraScale;
-
-                        }
-                        refShifts[iAtom] += shiftContrib;
-
-                        if (calcDeriv) {
-                            //  what is needed is actually the derivative/r, therefore
-                            // we divide by r
-                            // fixme problems if r near 0.0 so we add small adjustment.  Is there a better way???
-                            //derivs[i] = -2.0 * weights[i] * weight * dif / (r + RADJ);
-                        }
-                    }
+        if (useParallel()) {
+            int nChunks = getNChunks();
+            int nAtoms = refShifts.length;
+            if (chunkShifts.length < nChunks * nAtoms) {
+                chunkShifts = new double[nChunks * nAtoms];
+            }
+            IntStream.range(0, nChunks).parallel().forEach(iChunk -> {
+                int offset = iChunk * nAtoms;
+                Arrays.fill(chunkShifts, offset, offset + nAtoms, 0.0);
+                addDistShifts(getChunkStart(iChunk), getChunkStart(iChunk + 1), r2Lim, intraScale, chunkShifts, offset);
+            });
+            for (int iChunk = 0; iChunk < nChunks; iChunk++) {
+                int offset = iChunk * nAtoms;
+                for (int i = 0; i < nAtoms; i++) {
+                    refShifts[i] += chunkShifts[offset + i];
                 }
             }
+        } else {
+            addDistShifts(0, nPairs, r2Lim, intraScale, refShifts, 0);
         }
         double[] angleValues = new double[4];
         for (int i = 0; i < baseShifts.length; i++) {
@@ -137,6 +127,41 @@ public class EnergyShiftPairs extends EnergyPairs {
         return sum;
     }
 
+    /**
+     * Add the distance dependent shift contributions of a range of pairs to
+     * the target array, with the shift of atom i at offset + i.
+     */
+    private void addDistShifts(int start, int end, double r2Lim, double intraScale, double[] targetShifts, int offset) {
+        int[] shiftClass = eCoords.shiftClass;
+        double[] baseShifts = eCoords.baseShifts;
+        Atom[] atoms = eCoords.atoms;
+        FastVector3D[] vecCoords = eCoords.getVecCoords();
+        for (int i = start; i < end; i++) {
+            int iAtom = iAtoms[i];
+            int jAtom = jAtoms[i];
+
+            if ((baseShifts[iAtom] != 0.0) && shiftClass[jAtom] >= 0) {
+                int alphaClass = getRNAClass(atoms[iAtom]);
+                if (alphaClass >= 0) {
+                    FastVector3D iV = vecCoords[iAtom];
+                    FastVector3D jV = vecCoords[jAtom];
+                    double r2 = iV.disSq(jV);
+                    if (r2 <= r2Lim) {
+                        double r = Math.sqrt(r2);
+                        int alphaIndex = shiftClass[jAtom];
+                        double alpha = Predictor.getAlpha(alphaClass, alphaIndex);
+                        double shiftContrib = alpha / (r * r2);
+                        if (atoms[iAtom].getEntity().getIDNum() == atoms[jAtom].getEntity().getIDNum()) {
+                            shiftContrib *= intraScale;
+
+                        }
+                        targetShifts[offset + iAtom] += shiftContrib;
+                    }
+                }
+            }
+        }
+    }
+
     double calcChi(Atom atom) {
         Atom[] atoms = ((Residue) atom.getEntity()).getChiAtoms();
         return eCoords.calcDihedral(atoms[0].eAtom, atoms[1].eAtom, atoms[2].eAtom, atoms[3].eAtom);
@@ -0,0 +1,163 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.structure.chemistry.energy;
+
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.structure.fastlinear.FastVector3D;
+
+import java.util.Arrays;
+
+/**
+ * Verlet neighbor list used by EnergyCoords.setCells. The list holds every
+ * pair of atoms that could interact and that were within the interaction
+ * limit plus a skin distance when the list was built, along with the
+ * parameters of each pair that don't depend on the coordinates. The list
+ * stays valid until some atom has moved more than half the skin from its
+ * position at the time the list was built, or the parameters used to build
+ * it change, or the rotation group of some atom changes (as when
+ * Molecule.setupRotGroups is called after rotatable angles are changed).
+ */
+class NeighborList {
+
+    /**
+     * Parameters that determine which pairs are in the list and their
+     * properties. The atoms array is compared by identity.
+     */
+    record Params(int nAtoms, Atom[] atoms, int deltaEnd, double limit, double hardSphere, boolean includeH,
+                  double shrinkValue, double shrinkHValue, boolean useFF, boolean stacking,
+                  double skin, int fixedVersion) {
+    }
+
+    Params params = null;
+    double[] refCoords = new double[0];
+    // rotation unit of each atom when the list was built
+    int[] refUnits = new int[0];
+    int nPairs = 0;
+    int nBuilds = 0;
+    int[] iAtoms = new int[0];
+    int[] jAtoms = new int[0];
+    int[] iUnits = new int[0];
+    int[] jUnits = new int[0];
+    // square of the distance within which the pair is considered
+    double[] limit2s = new double[0];
+    // contact distance, and contact distance with the hydrogen bond and close atom adjustments
+    double[] rH = new double[0];
+    double[] rHAdj = new double[0];
+    double[] aValues = new double[0];
+    double[] bValues = new double[0];
+    double[] cValues = new double[0];
+    // indices of the plane atoms of the two bases, or -1 if the pair isn't a stacking pair
+    int[] planeAtoms = new int[0];
+
+    /**
+     * Get the rotation unit of the group an atom is in.
+     *
+     * @param atom the atom
+     * @return the rotation unit or -1 if the atom isn't in a rotation group
+     */
+    static int getUnit(Atom atom) {
+        return atom.rotGroup == null ? -1 : atom.rotGroup.rotUnit;
+    }
+
+    /**
+     * Check whether the list has to be rebuilt for the current coordinates,
+     * rotation groups and parameters.
+     *
+     * @param newParams the current parameters
+     * @param coords    the current coordinates
+     * @return true if the list must be rebuilt
+     */
+    boolean needsRebuild(Params newParams, FastVector3D[] coords) {
+        if (!newParams.equals(params) || (refCoords.length != 3 * newParams.nAtoms())) {
+            return true;
+        }
+        Atom[] atoms = newParams.atoms();
+        double maxMove2 = newParams.skin() * newParams.skin() / 4.0;
+        for (int i = 0, k = 0; i < newParams.nAtoms(); i++, k += 3) {
+            if (getUnit(atoms[i]) != refUnits[i]) {
+                return true;
+            }
+            double dx = coords[i].getX() - refCoords[k];
+            double dy = coords[i].getY() - refCoords[k + 1];
+            double dz = coords[i].getZ() - refCoords[k + 2];
+            if (dx * dx + dy * dy + dz * dz > maxMove2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void start(Params newParams, FastVector3D[] coords) {
+        params = newParams;
+        nPairs = 0;
+        nBuilds++;
+        int n = newParams.nAtoms();
+        if (refCoords.length != 3 * n) {
+            refCoords = new double[3 * n];
+            refUnits = new int[n];
+        }
+        Atom[] atoms = newParams.atoms();
+        for (int i = 0, k = 0; i < n; i++, k += 3) {
+            refUnits[i] = getUnit(atoms[i]);
+            refCoords[k] = coords[i].getX();
+            refCoords[k + 1] = coords[i].getY();
+            refCoords[k + 2] = coords[i].getZ();
+        }
+    }
+
+    void add(int i, int j, int iUnit, int jUnit, double limit2, double rH, double rHAdj,
+             double a, double b, double c, Atom[] planes1, Atom[] planes2) {
+        if (nPairs == iAtoms.length) {
+            resize(Math.max(4096, nPairs * 3 / 2));
+        }
+        int k = nPairs++;
+        iAtoms[k] = i;
+        jAtoms[k] = j;
+        iUnits[k] = iUnit;
+        jUnits[k] = jUnit;
+        limit2s[k] = limit2;
+        this.rH[k] = rH;
+        this.rHAdj[k] = rHAdj;
+        aValues[k] = a;
+        bValues[k] = b;
+        cValues[k] = c;
+        int p = 4 * k;
+        if ((planes1 != null) && (planes2 != null)) {
+            planeAtoms[p] = planes1[0].eAtom;
+            planeAtoms[p + 1] = planes1[1].eAtom;
+            planeAtoms[p + 2] = planes2[0].eAtom;
+            planeAtoms[p + 3] = planes2[1].eAtom;
+        } else {
+            planeAtoms[p] = -1;
+        }
+    }
+
+    private void resize(int size) {
+        iAtoms = Arrays.copyOf(iAtoms, size);
+        jAtoms = Arrays.copyOf(jAtoms, size);
+        iUnits = Arrays.copyOf(iUnits, size);
+        jUnits = Arrays.copyOf(jUnits, size);
+        limit2s = Arrays.copyOf(limit2s, size);
+        rH = Arrays.copyOf(rH, size);
+        rHAdj = Arrays.copyOf(rHAdj, size);
+        aValues = Arrays.copyOf(aValues, size);
+        bValues = Arrays.copyOf(bValues, size);
+        cValues = Arrays.copyOf(cValues, size);
+        planeAtoms = Arrays.copyOf(planeAtoms, 4 * size);
+    }
+}
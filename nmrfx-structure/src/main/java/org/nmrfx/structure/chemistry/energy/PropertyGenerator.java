@@ -28,6 +28,8 @@ public class PropertyGenerator {
     Map<String, Double> contactMap = null;
     Map<String, Double> valueMap = new HashMap<>();
     private Molecule molecule;
+    private RingCurrentShift ringShifts = null;
+    private int ringShiftStructure = -1;
     String[] residueNames = {"ALA", "ARG", "ASN", "ASP", "CYS", "GLU", "GLN",
             "GLY", "HIS", "ILE", "LEU", "LYS", "MET", "PHE", "PRO", "SER", "THR",
             "TRP", "TYR", "VAL"};
@@ -54,10 +56,27 @@ public class PropertyGenerator {
             System.out.println("no atom " + aname1);
             return 0.0;
         }
-        RingCurrentShift ringShifts = new RingCurrentShift();
-        ringShifts.makeRingList(molecule);
-        double shift = ringShifts.calcRingContributions(spSet, structureNum, 1.0);
-        return shift;
+        return calcRingShift(spSet, structureNum);
+    }
+
+    /**
+     * Calculate the ring current shift at an atom. The rings of the molecule
+     * are found and their planes calculated once per structure.
+     *
+     * @param spSet        the spatial set of the atom
+     * @param structureNum the structure number
+     * @return the shift
+     */
+    public double calcRingShift(SpatialSet spSet, int structureNum) {
+        if (spSet == null) {
+            return 0.0;
+        }
+        if ((ringShifts == null) || (ringShiftStructure != structureNum)) {
+            ringShifts = new RingCurrentShift();
+            ringShifts.makeRingList(molecule);
+            ringShiftStructure = structureNum;
+        }
+        return ringShifts.calcRingContributions(spSet, structureNum, 1.0);
     }
 
     public HydrogenBond calcHBond(String hydrogenAtom, int structureNum) throws InvalidMoleculeException {
@@ -87,7 +106,10 @@ public class PropertyGenerator {
     }
 
     public double calcHBondAngle(Map<String, HydrogenBond> hBondMap, String hydrogenAtom, int structureNum) {
-        Atom atom = molecule.findAtom(hydrogenAtom);
+        return calcHBondAngle(hBondMap, molecule.findAtom(hydrogenAtom), structureNum);
+    }
+
+    public double calcHBondAngle(Map<String, HydrogenBond> hBondMap, Atom atom, int structureNum) {
         double value = 0.0;
         if ((hBondMap != null) && (atom != null)) {
             HydrogenBond hBond = hBondMap.get(atom.getFullName());
@@ -102,7 +124,10 @@ public class PropertyGenerator {
     }
 
     public double calcHBondShift(Map<String, HydrogenBond> hBondMap, String hydrogenAtom, double power, int structureNum) {
-        Atom atom = molecule.findAtom(hydrogenAtom);
+        return calcHBondShift(hBondMap, molecule.findAtom(hydrogenAtom), power, structureNum);
+    }
+
+    public double calcHBondShift(Map<String, HydrogenBond> hBondMap, Atom atom, double power, int structureNum) {
         double shift = 0.0;
         if ((hBondMap != null) && (atom != null)) {
             HydrogenBond hBond = hBondMap.get(atom.getFullName());
@@ -114,7 +139,10 @@ public class PropertyGenerator {
     }
 
     public double calcHBondDistance(Map<String, HydrogenBond> hBondMap, String hydrogenAtom, int structureNum) {
-        Atom atom = molecule.findAtom(hydrogenAtom);
+        return calcHBondDistance(hBondMap, molecule.findAtom(hydrogenAtom), structureNum);
+    }
+
+    public double calcHBondDistance(Map<String, HydrogenBond> hBondMap, Atom atom, int structureNum) {
         double dis = 0.0;
         if ((hBondMap != null) && (atom != null)) {
             HydrogenBond hBond = hBondMap.get(atom.getFullName());
@@ -143,9 +171,11 @@ public class PropertyGenerator {
 
     public double calcEInteractionShift(Map<String, Double> eShiftMap, Atom atom, int structureNum) {
         double shift = 0.0;
-        Double shiftDouble = eShiftMap.get(atom.getFullName());
-        if (shiftDouble != null) {
-            shift = shiftDouble;
+        if ((atom != null) && (eShiftMap != null)) {
+            Double shiftDouble = eShiftMap.get(atom.getFullName());
+            if (shiftDouble != null) {
+                shift = shiftDouble;
+            }
         }
         return shift;
     }
@@ -262,6 +292,15 @@ public class PropertyGenerator {
         return occupancy;
     }
 
+    public double getOccupancy(Atom atom) {
+        SpatialSet spatialSet = atom.getSpatialSet();
+        double occupancy = 0.0;
+        if (spatialSet != null) {
+            occupancy = spatialSet.getOccupancy();
+        }
+        return occupancy;
+    }
+
     public int getFirstRes() {
         Entity entity = molecule.getEntity(molecule.getName());
         Polymer polymer = (Polymer) entity;
@@ -444,13 +483,42 @@ public class PropertyGenerator {
         return Molecule.calcDihedral(atoms, structureNum);
     }
 
-    public void init(Molecule molecule, int iStructure) throws InvalidMoleculeException, IOException {
+    public static synchronized void loadProperties() throws IOException {
         if (properties == null) {
             properties = loadPropertyFile();
         }
-        HashMap<String, TreeMap<Integer, LinkedHashMap<String, String>>> data = new HashMap<String, TreeMap<Integer, LinkedHashMap<String, String>>>();
+    }
+
+    public void init(Molecule molecule, int iStructure) throws InvalidMoleculeException, IOException {
+        init(molecule, iStructure, true);
+    }
+
+    /**
+     * Prepare the contact sums, hydrogen bonds and electrostatic shifts of a
+     * structure.
+     *
+     * @param molecule      the molecule
+     * @param iStructure    the structure number
+     * @param storeContacts if true the contact sums are also stored as the
+     *                      order of each atom. Pass false to initialize
+     *                      generators for several structures at the same time.
+     * @throws InvalidMoleculeException if the molecule isn't valid
+     * @throws IOException              if the property table can't be read
+     */
+    public void init(Molecule molecule, int iStructure, boolean storeContacts) throws InvalidMoleculeException, IOException {
+        loadProperties();
         this.molecule = molecule;
-        contactMap = molecule.calcContactSum(iStructure, true);
+        ringShifts = null;
+        if (storeContacts) {
+            contactMap = molecule.calcContactSum(iStructure, true);
+        } else {
+            List<Atom> atoms = molecule.getAtomArray();
+            double[] contactSums = Molecule.calcContactSums(atoms, iStructure);
+            contactMap = new HashMap<>();
+            for (int i = 0; i < contactSums.length; i++) {
+                contactMap.put(atoms.get(i).getFullName(), contactSums[i]);
+            }
+        }
         hBondMap = new HashMap<>();
         eShiftMap = new HashMap<>();
         String[] hbondAtomNames = {"H", "HA"};
@@ -589,69 +657,28 @@ public class PropertyGenerator {
     public boolean getAtomProperties(Atom atom, int structureNum) {
         String atomName = atom.getName();
         String atomSpec = atom.getFullName();
-        String hAtomSpec = "";
-        if (atomName.equals("N")) {
-            hAtomSpec = atomSpec.substring(0, atomSpec.length() - 1) + "H";
+        Atom hAtom = null;
+        if (atomName.charAt(0) == 'H') {
+            hAtom = atom;
+        } else if (atomName.equals("N") && (atom.getEntity() instanceof Compound compound)) {
+            hAtom = compound.getAtom("H");
         }
         try {
             double contactSum = getContactSum(atomSpec);
             valueMap.put("contacts", contactSum);
             valueMap.put("fRandom", getFRandom(atomName, contactSum));
-            valueMap.put("ring", calcRingShift(atomSpec, structureNum));
-            double eInteractionShift = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                eInteractionShift = calcEInteractionShift(eShiftMap, atomSpec, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                eInteractionShift = calcEInteractionShift(eShiftMap, hAtomSpec, structureNum);
-            }
-            valueMap.put("eshift", eInteractionShift);
-            double hbondShift = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                hbondShift = calcHBondShift(hBondMap, atomSpec, 3.0, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                hbondShift = calcHBondShift(hBondMap, hAtomSpec, 3.0, structureNum);
-            }
-            valueMap.put("hshift", hbondShift);
-            hbondShift = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                hbondShift = calcHBondShift(hBondMap, atomSpec, 1.0, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                hbondShift = calcHBondShift(hBondMap, hAtomSpec, 1.0, structureNum);
-            }
-            valueMap.put("hshift1", hbondShift);
-            hbondShift = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                hbondShift = calcHBondShift(hBondMap, atomSpec, 2.0, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                hbondShift = calcHBondShift(hBondMap, hAtomSpec, 2.0, structureNum);
-            }
-            valueMap.put("hshift2", hbondShift);
-            hbondShift = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                hbondShift = calcHBondShift(hBondMap, atomSpec, 3.0, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                hbondShift = calcHBondShift(hBondMap, hAtomSpec, 3.0, structureNum);
-            }
-            valueMap.put("hshift3", hbondShift);
-
-            double hbondAngle = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                hbondAngle = calcHBondAngle(hBondMap, atomSpec, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                hbondAngle = calcHBondAngle(hBondMap, hAtomSpec, structureNum);
-            }
-            valueMap.put("hbondang", hbondAngle);
-            double hbondDistance = 0.0;
-            if (atomName.charAt(0) == 'H') {
-                hbondDistance = calcHBondDistance(hBondMap, atomSpec, structureNum);
-            } else if (atomName.charAt(0) == 'N') {
-                hbondDistance = calcHBondDistance(hBondMap, hAtomSpec, structureNum);
-            }
-            valueMap.put("hbonddis", hbondDistance);
+            valueMap.put("ring", calcRingShift(atom.getSpatialSet(), structureNum));
+            valueMap.put("eshift", calcEInteractionShift(eShiftMap, hAtom, structureNum));
+            valueMap.put("hshift", calcHBondShift(hBondMap, hAtom, 3.0, structureNum));
+            valueMap.put("hshift1", calcHBondShift(hBondMap, hAtom, 1.0, structureNum));
+            valueMap.put("hshift2", calcHBondShift(hBondMap, hAtom, 2.0, structureNum));
+            valueMap.put("hshift3", calcHBondShift(hBondMap, hAtom, 3.0, structureNum));
+            valueMap.put("hbondang", calcHBondAngle(hBondMap, hAtom, structureNum));
+            valueMap.put("hbonddis", calcHBondDistance(hBondMap, hAtom, structureNum));
             valueMap.put("randoff", 1.0);
             double cs, acs;
-            cs = getPPM(atomSpec);
-            acs = getOccupancy(atomSpec);
+            cs = getPPM(atom);
+            acs = getOccupancy(atom);
             valueMap.put("cs", cs);
             valueMap.put("acscorr", acs);
             double h3 = 0.0;
@@ -319,6 +319,23 @@ public class Predictor {
         proteinPredictor.predict(iRef, iStructure);
     }
 
+    /**
+     * Predict protein shifts for each of a set of structures and store the
+     * average shift of each atom.
+     *
+     * @param mol        the molecule
+     * @param structures the structure numbers
+     * @param iRef       the ppm set, or if negative (-iRef - 1) the reference set
+     * @return the shifts of the atoms in each structure
+     * @throws IOException if the prediction tables can't be read
+     */
+    public ProteinPredictor.EnsembleShifts predictProtein(Molecule mol, int[] structures, int iRef) throws IOException {
+        if (proteinPredictor == null) {
+            proteinPredictor = new ProteinPredictor();
+        }
+        return proteinPredictor.predictStructures(mol, structures, iRef);
+    }
+
     public void predictMolecule(Molecule mol, int iStructure, int iRef, boolean rcMode) throws InvalidMoleculeException, IOException {
 
         boolean hasPeptide = false;
@@ -10,6 +10,7 @@ import org.nmrfx.structure.chemistry.Molecule;
 import org.nmrfx.structure.chemistry.energy.PropertyGenerator;
 import org.tribuo.Example;
 import org.tribuo.Feature;
+import org.tribuo.Model;
 import org.tribuo.Prediction;
 import org.tribuo.impl.ArrayExample;
 import org.tribuo.regression.Regressor;
@@ -20,6 +21,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class ProteinPredictor {
 
@@ -395,14 +398,7 @@ public class ProteinPredictor {
         Map<Atom, Double> refShifts = new HashMap<>();
         BMRBStats.loadAllIfEmpty();
         for (Atom atom : residue.getAtoms()) {
-            Double rShift = predictRandom(residue, atom.getName(), 298.0);
-            if (rShift == null) {
-                Optional<PPMv> ppmVOpt = BMRBStats.getValue(residue.getName(), atom.getName());
-                if (ppmVOpt.isPresent()) {
-                    rShift = ppmVOpt.get().getValue();
-                }
-            }
-            refShifts.put(atom, rShift);
+            refShifts.put(atom, getReferenceShift(residue, atom));
         }
 
         Map<String, Double> valueMap = propertyGenerator.getValues();
@@ -425,21 +421,232 @@ public class ProteinPredictor {
                             double deltaShift = regressor.getValues()[0];
                             finalValue.addAndGet(deltaShift);
                         });
-                        double value = Math.round(finalValue.get() * 100) / 100.0;
-                        double rms = getRMS(atomType);
-                        if (iRef < 0) {
-                            atom.setRefPPM(-iRef - 1, value);
-                            atom.setRefError(-iRef - 1, rms);
-                        } else {
-                            atom.setPPM(iRef, value);
-                            atom.setPPMError(iRef, rms);
-                        }
+                        setShift(atom, iRef, finalValue.get(), getRMS(atomType));
                     }
                 });
             }
         }
     }
 
+    private Double getReferenceShift(Residue residue, Atom atom) throws IOException {
+        Double rShift = predictRandom(residue, atom.getName(), 298.0);
+        if (rShift == null) {
+            Optional<PPMv> ppmVOpt = BMRBStats.getValue(residue.getName(), atom.getName());
+            if (ppmVOpt.isPresent()) {
+                rShift = ppmVOpt.get().getValue();
+            }
+        }
+        return rShift;
+    }
+
+    private static void setShift(Atom atom, int iRef, double shift, double rms) {
+        double value = Math.round(shift * 100) / 100.0;
+        if (iRef < 0) {
+            atom.setRefPPM(-iRef - 1, value);
+            atom.setRefError(-iRef - 1, rms);
+        } else {
+            atom.setPPM(iRef, value);
+            atom.setPPMError(iRef, rms);
+        }
+    }
+
+    /**
+     * Shifts predicted for the atoms of a molecule in a set of structures.
+     * shifts[i][j] is the shift of atom i in structure j, or NaN if the
+     * properties of its residue couldn't be calculated for that structure.
+     *
+     * @param atoms      the predicted atoms
+     * @param structures the structure numbers
+     * @param shifts     the shifts
+     */
+    public record EnsembleShifts(List<Atom> atoms, int[] structures, double[][] shifts) {
+        /**
+         * Get the average of the valid shifts of an atom.
+         *
+         * @param iAtom the index of the atom
+         * @return the average or NaN if the atom has no valid shift
+         */
+        public double mean(int iAtom) {
+            double sum = 0.0;
+            int n = 0;
+            for (double shift : shifts[iAtom]) {
+                if (!Double.isNaN(shift)) {
+                    sum += shift;
+                    n++;
+                }
+            }
+            return n == 0 ? Double.NaN : sum / n;
+        }
+    }
+
+    private record Site(Atom atom, String atomType, double refShift, Model<Regressor> model) {
+    }
+
+    /**
+     * Predict the shifts of the protein atoms of a molecule in each of a set
+     * of structures, such as an NMR ensemble or the frames of a trajectory,
+     * and store the average shift of each atom.
+     *
+     * @param mol        the molecule
+     * @param structures the structure numbers
+     * @param iRef       the ppm set to store the shifts in, or if negative
+     *                   (-iRef - 1) the reference set
+     * @return the shifts in each structure
+     * @throws IOException if the prediction tables can't be read
+     */
+    public EnsembleShifts predictStructures(Molecule mol, int[] structures, int iRef) throws IOException {
+        EnsembleShifts ensembleShifts = predictStructures(mol, structures);
+        List<Atom> atoms = ensembleShifts.atoms();
+        for (int iAtom = 0; iAtom < atoms.size(); iAtom++) {
+            double shift = ensembleShifts.mean(iAtom);
+            if (!Double.isNaN(shift)) {
+                Atom atom = atoms.get(iAtom);
+                double rms = getAtomNameType(atom).map(this::getRMS).orElse(1.0);
+                setShift(atom, iRef, shift, rms);
+            }
+        }
+        return ensembleShifts;
+    }
+
+    /**
+     * Predict the shifts of the protein atoms of a molecule in each of a set
+     * of structures. Structures are processed in blocks. The features of all
+     * atoms are calculated into fixed position arrays with the structures of
+     * a block done in parallel, then each model is applied to all atoms of its
+     * type in the block with one batch prediction. The results are the same
+     * as from predict(Residue, iRef, structureNum) for each structure.
+     *
+     * @param mol        the molecule
+     * @param structures the structure numbers
+     * @return the shifts in each structure
+     * @throws IOException if the prediction tables can't be read
+     */
+    public EnsembleShifts predictStructures(Molecule mol, int[] structures) throws IOException {
+        if (values == null) {
+            loadCoefficients();
+        }
+        BMRBStats.loadAllIfEmpty();
+        PropertyGenerator.loadProperties();
+        molecule = mol;
+        mol.updateAtomArray();
+
+        // Atoms are numbered residue by residue, so the sites of residue i are residueStarts[i] to residueStarts[i + 1]
+        List<Residue> residues = new ArrayList<>();
+        List<Site> sites = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        for (Polymer polymer : mol.getPolymers()) {
+            if (polymer.isPeptide()) {
+                for (Residue residue : polymer.getResidues()) {
+                    residues.add(residue);
+                    starts.add(sites.size());
+                    for (Atom atom : residue.getAtoms()) {
+                        Optional<String> atomTypeOpt = getAtomNameType(atom);
+                        if (atomTypeOpt.isPresent()) {
+                            Double refShift = getReferenceShift(residue, atom);
+                            if (refShift != null) {
+                                String atomType = atomTypeOpt.get();
+                                Model<Regressor> model = Predictor.getTribuoModel(Predictor.PredictionMolType.PROTEIN, atomType).orElse(null);
+                                sites.add(new Site(atom, atomType, refShift, model));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        starts.add(sites.size());
+        int[] residueStarts = starts.stream().mapToInt(Integer::intValue).toArray();
+
+        int nSites = sites.size();
+        double[][] shifts = new double[nSites][structures.length];
+        for (double[] siteShifts : shifts) {
+            Arrays.fill(siteShifts, Double.NaN);
+        }
+        Map<String, List<Integer>> modelSites = new HashMap<>();
+        for (int iSite = 0; iSite < nSites; iSite++) {
+            if (sites.get(iSite).model() != null) {
+                modelSites.computeIfAbsent(sites.get(iSite).atomType(), k -> new ArrayList<>()).add(iSite);
+            }
+        }
+
+        int nFeatures = ProteinPredictorGen.getFeatureCount();
+        int blockSize = 2 * (ForkJoinPool.getCommonPoolParallelism() + 1);
+        for (int blockStart = 0; blockStart < structures.length; blockStart += blockSize) {
+            int nBlock = Math.min(blockSize, structures.length - blockStart);
+            double[][] features = new double[nBlock][nSites * nFeatures];
+            boolean[][] valid = new boolean[nBlock][nSites];
+            final int firstStructure = blockStart;
+            IntStream.range(0, nBlock).parallel().forEach(i ->
+                    calcFeatures(mol, structures[firstStructure + i], residues, residueStarts, sites, features[i], valid[i]));
+
+            for (int i = 0; i < nBlock; i++) {
+                for (int iSite = 0; iSite < nSites; iSite++) {
+                    if (valid[i][iSite] && (sites.get(iSite).model() == null)) {
+                        shifts[iSite][firstStructure + i] = sites.get(iSite).refShift();
+                    }
+                }
+            }
+            modelSites.values().parallelStream().forEach(typeSites ->
+                    predictBlock(sites, typeSites, features, valid, nFeatures, shifts, firstStructure));
+        }
+        List<Atom> atoms = sites.stream().map(Site::atom).toList();
+        return new EnsembleShifts(atoms, structures.clone(), shifts);
+    }
+
+    private static void calcFeatures(Molecule mol, int iStructure, List<Residue> residues, int[] residueStarts,
+                                     List<Site> sites, double[] features, boolean[] valid) {
+        PropertyGenerator generator = new PropertyGenerator();
+        try {
+            generator.init(mol, iStructure, false);
+        } catch (InvalidMoleculeException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        Map<String, Double> valueMap = generator.getValues();
+        ProteinPredictorGen p = new ProteinPredictorGen();
+        int nFeatures = ProteinPredictorGen.getFeatureCount();
+        for (int iRes = 0; iRes < residues.size(); iRes++) {
+            int start = residueStarts[iRes];
+            int end = residueStarts[iRes + 1];
+            if (start == end) {
+                continue;
+            }
+            Residue residue = residues.get(iRes);
+            if (generator.getResidueProperties(residue.getPolymer(), residue, iStructure)) {
+                for (int iSite = start; iSite < end; iSite++) {
+                    generator.getAtomProperties(sites.get(iSite).atom(), iStructure);
+                    p.getValues(valueMap, features, iSite * nFeatures);
+                    valid[iSite] = true;
+                }
+            }
+        }
+    }
+
+    private static void predictBlock(List<Site> sites, List<Integer> typeSites, double[][] features, boolean[][] valid,
+                                     int nFeatures, double[][] shifts, int firstStructure) {
+        String[] featureNames = ProteinPredictorGen.getFeatureNames();
+        List<Example<Regressor>> examples = new ArrayList<>();
+        List<int[]> targets = new ArrayList<>();
+        for (int i = 0; i < features.length; i++) {
+            for (int iSite : typeSites) {
+                if (valid[i][iSite]) {
+                    int offset = iSite * nFeatures;
+                    double[] siteFeatures = Arrays.copyOfRange(features[i], offset, offset + nFeatures);
+                    examples.add(new ArrayExample<>(new Regressor("cs", Double.NaN), featureNames, siteFeatures));
+                    targets.add(new int[]{iSite, firstStructure + i});
+                }
+            }
+        }
+        if (examples.isEmpty()) {
+            return;
+        }
+        Model<Regressor> model = sites.get(typeSites.getFirst()).model();
+        List<Prediction<Regressor>> predictions = model.predict(examples);
+        for (int k = 0; k < predictions.size(); k++) {
+            int[] target = targets.get(k);
+            double deltaShift = predictions.get(k).getOutput().getValues()[0];
+            shifts[target[0]][target[1]] = sites.get(target[0]).refShift() + deltaShift;
+        }
+    }
+
     void dumpResult(ProteinPredictorResult predResult) {
         for (int i = 0; i < predResult.attrs.length; i++) {
             System.out.println(attrNames.get(i) + " " + predResult.coefs[i] + " " + predResult.attrs[i]);
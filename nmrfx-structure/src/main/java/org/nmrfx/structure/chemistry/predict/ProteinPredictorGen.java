@@ -1,6 +1,7 @@
 package org.nmrfx.structure.chemistry.predict;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -1082,6 +1083,37 @@ public class ProteinPredictorGen {
         return values;
     }
 
+    private static final PredProps[] PRED_PROPS = PredProps.values();
+    private static final String[] FEATURE_NAMES = Arrays.stream(PRED_PROPS)
+            .map(predProps -> predProps.functionName).toArray(String[]::new);
+
+    /**
+     * Get the names of the features in the order used by getValues.
+     *
+     * @return the names
+     */
+    public static String[] getFeatureNames() {
+        return FEATURE_NAMES.clone();
+    }
+
+    public static int getFeatureCount() {
+        return FEATURE_NAMES.length;
+    }
+
+    /**
+     * Calculate the features into an array, in the order of getFeatureNames.
+     *
+     * @param valueMap the properties of the residue and atom
+     * @param values   the array to fill
+     * @param offset   the position of the first feature in the array
+     */
+    public void getValues(Map<String, Double> valueMap, double[] values, int offset) {
+        int i = offset;
+        for (PredProps predProps : PRED_PROPS) {
+            values[i++] = predProps.calcValue(valueMap);
+        }
+    }
+
     public Map<String, Double> getValueMap(Map<String, Double> valueMap) {
         Map<String, Double> map = new LinkedHashMap<>();
         int i = 0;
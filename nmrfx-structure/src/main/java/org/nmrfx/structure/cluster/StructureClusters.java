@@ -0,0 +1,215 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.structure.cluster;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Average linkage clustering of structures from a matrix of the distances
+ * (usually the RMSD) between them. Each structure is a Datum whose vector
+ * holds its distances to the other structures. When two clusters merge, the
+ * first datum keeps the average distances of the merged cluster and stays
+ * active, and the members are chained through the next and last fields. After
+ * clustering each datum has its cluster number in group and the index of the
+ * cluster's representative (the member with the smallest summed distance to
+ * the other members) in proto[0].
+ */
+public class StructureClusters {
+
+    private final int[] structures;
+    private final double[][] distances;
+    private final List<Datum> data = new ArrayList<>();
+    private final List<Integer> clusterHeads = new ArrayList<>();
+
+    /**
+     * @param structures the structure numbers
+     * @param distances  the symmetric matrix of distances between the
+     *                   structures, indexed by position in the structure array
+     */
+    public StructureClusters(int[] structures, double[][] distances) {
+        if (distances.length != structures.length) {
+            throw new IllegalArgumentException("Distance matrix size " + distances.length
+                    + " doesn't match number of structures " + structures.length);
+        }
+        this.structures = structures.clone();
+        this.distances = distances;
+    }
+
+    /**
+     * Merge the closest clusters until the average distance between the
+     * members of every pair of clusters is at least maxDistance. Pairs with a
+     * distance of NaN are never merged.
+     *
+     * @param maxDistance the distance limit
+     * @return the number of clusters
+     */
+    public int cluster(double maxDistance) {
+        int n = structures.length;
+        data.clear();
+        clusterHeads.clear();
+        for (int i = 0; i < n; i++) {
+            Datum datum = new Datum(n);
+            datum.setVector(distances[i]);
+            datum.idNum = structures[i];
+            datum.next = -1;
+            datum.last = i;
+            data.add(datum);
+        }
+        int[] nearest = new int[n];
+        for (int i = 0; i < n; i++) {
+            nearest[i] = findNearest(i);
+        }
+        while (true) {
+            int iMin = -1;
+            double minDistance = maxDistance;
+            for (int i = 0; i < n; i++) {
+                if (data.get(i).act && (nearest[i] >= 0)) {
+                    double distance = data.get(i).v[nearest[i]];
+                    if (distance < minDistance) {
+                        minDistance = distance;
+                        iMin = i;
+                    }
+                }
+            }
+            if (iMin < 0) {
+                break;
+            }
+            int jMin = nearest[iMin];
+            merge(iMin, jMin);
+            nearest[iMin] = findNearest(iMin);
+            for (int k = 0; k < n; k++) {
+                if ((k != iMin) && data.get(k).act) {
+                    if ((nearest[k] == iMin) || (nearest[k] == jMin)) {
+                        nearest[k] = findNearest(k);
+                    } else if ((nearest[k] >= 0) && (data.get(k).v[iMin] < data.get(k).v[nearest[k]])) {
+                        nearest[k] = iMin;
+                    }
+                }
+            }
+        }
+        assignGroups();
+        return clusterHeads.size();
+    }
+
+    private int findNearest(int i) {
+        Datum datum = data.get(i);
+        int nearest = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (int k = 0; k < data.size(); k++) {
+            if ((k != i) && data.get(k).act && (datum.v[k] < minDistance)) {
+                minDistance = datum.v[k];
+                nearest = k;
+            }
+        }
+        return nearest;
+    }
+
+    private void merge(int i, int j) {
+        Datum iDatum = data.get(i);
+        Datum jDatum = data.get(j);
+        double nI = iDatum.n;
+        double nJ = jDatum.n;
+        for (int k = 0; k < data.size(); k++) {
+            Datum kDatum = data.get(k);
+            if ((k != i) && (k != j) && kDatum.act) {
+                double distance = (nI * iDatum.v[k] + nJ * jDatum.v[k]) / (nI + nJ);
+                iDatum.v[k] = distance;
+                kDatum.v[i] = distance;
+            }
+        }
+        data.get(iDatum.last).next = j;
+        iDatum.last = jDatum.last;
+        iDatum.n += jDatum.n;
+        jDatum.act = false;
+    }
+
+    private void assignGroups() {
+        for (int i = 0; i < data.size(); i++) {
+            if (data.get(i).act) {
+                clusterHeads.add(i);
+            }
+        }
+        clusterHeads.sort(Comparator.comparingInt(i -> -data.get(i).n));
+        for (int group = 0; group < clusterHeads.size(); group++) {
+            int representative = findRepresentative(clusterHeads.get(group));
+            for (int i = clusterHeads.get(group); i >= 0; i = data.get(i).next) {
+                data.get(i).group = group;
+                data.get(i).proto[0] = representative;
+            }
+        }
+    }
+
+    private int findRepresentative(int head) {
+        int representative = head;
+        double minSum = Double.MAX_VALUE;
+        for (int i = head; i >= 0; i = data.get(i).next) {
+            double sum = 0.0;
+            for (int j = head; j >= 0; j = data.get(j).next) {
+                sum += distances[i][j];
+            }
+            if (sum < minSum) {
+                minSum = sum;
+                representative = i;
+            }
+        }
+        return representative;
+    }
+
+    /**
+     * Get the data, one per structure in the order of the structure array.
+     *
+     * @return the data
+     */
+    public List<Datum> getData() {
+        return data;
+    }
+
+    public int getClusterCount() {
+        return clusterHeads.size();
+    }
+
+    /**
+     * Get the structures in a cluster. Clusters are numbered by decreasing
+     * size.
+     *
+     * @param group the cluster number
+     * @return the structure numbers
+     */
+    public int[] getMembers(int group) {
+        int head = clusterHeads.get(group);
+        int[] members = new int[data.get(head).n];
+        int k = 0;
+        for (int i = head; i >= 0; i = data.get(i).next) {
+            members[k++] = structures[i];
+        }
+        return members;
+    }
+
+    /**
+     * Get the structure that represents a cluster, the member with the
+     * smallest summed distance to the other members.
+     *
+     * @param group the cluster number
+     * @return the structure number
+     */
+    public int getRepresentative(int group) {
+        return structures[data.get(clusterHeads.get(group)).proto[0]];
+    }
+}
@@ -18,6 +18,8 @@ public class AssignmentChromosome<T>
         extends AbstractChromosome<EnumGene<T>>
          {
     private final ISeq<T> validAlleles;
+    // Scored state of the genes, set when the chromosome is first evaluated or by the mutator.
+    private transient volatile MatchState matchState = null;
 
     // Private primary constructor.
     private AssignmentChromosome(
@@ -74,6 +76,14 @@ public class AssignmentChromosome<T>
     }
 
 
+    MatchState getMatchState() {
+        return matchState;
+    }
+
+    void setMatchState(MatchState matchState) {
+        this.matchState = matchState;
+    }
+
     @Override
     public String toString() {
         return _genes.stream()
@@ -7,7 +7,6 @@ import org.apache.commons.math3.random.MersenneTwister;
 import org.nmrfx.structure.seqassign.ResSeqMatcher;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.random.RandomGenerator;
 
@@ -95,21 +94,16 @@ public class ConstrainedSwapMutatorResSeq<
 
     @Override
     protected MutatorResult<Chromosome<G>> mutate(Chromosome<G> chromosome, double mProbability, RandomGenerator random) {
-
-        int nGenes = chromosome.length();
-        int[] sysToRes = new int[nGenes];
-        int[] resToSys = new int[nGenes];
-        Arrays.fill(sysToRes, -1);
-        Arrays.fill(resToSys, -1);
-        for (int i = 0;i<chromosome.length();i++) {
-            int jCurrent = getIndex(chromosome.get(i));
-            resToSys[jCurrent] = i;
-            sysToRes[i] = jCurrent;
+        if (mutatable.isEmpty()) {
+            return new MutatorResult<>(chromosome, 0);
         }
+        // The parent's state is only read until the first swap, then a copy is updated incrementally.
+        MatchState parentState = resSeqMatcher.getMatchState((Chromosome<EnumGene<Integer>>) chromosome);
+        MatchState state = parentState;
         int nSwap = 0;
-        MSeq genes = MSeq.of(chromosome);
+        MSeq genes = null;
         for (int iSite : mutatable) {
-            int iRes = sysToRes[iSite];
+            int iRes = state.allele(iSite);
             if (twister.nextDouble() > probability) {
                 continue;
             }
@@ -120,30 +114,30 @@ public class ConstrainedSwapMutatorResSeq<
                 jRes = 0;
             }
             if (jRes != iRes) {
-                int jSite = resToSys[jRes];
-              //  System.out.println("swap " + iSite + " " + jSite);
+                if (state == parentState) {
+                    state = parentState.copy();
+                    genes = MSeq.of(chromosome);
+                }
+                int jSite = state.site(jRes);
                 if (jSite != -1) {
                     genes.swap(jSite, iSite);
-                    resToSys[iRes] = jSite;
-                    resToSys[jRes] = iSite;
-                    sysToRes[iSite] = jRes;
-                    sysToRes[jSite] = iRes;
+                    state.swap(iSite, jSite);
                 } else {
                     EnumGene<Integer> enumGene1 = ((EnumGene<Integer>) genes.get(iSite));
                     EnumGene<Integer> enumGene = enumGene1.newInstance(jRes);
                     genes.set(iSite, enumGene);
-                    resToSys[jRes] = iSite;
-                    sysToRes[iSite] = jRes;
+                    state.set(iSite, jRes);
                 }
                 nSwap++;
             }
         }
         final MutatorResult<Chromosome<G>> result;
         if (nSwap > 0) {
-            result = new MutatorResult<>(
-                    chromosome.newInstance(genes.toISeq()),
-                    nSwap
-            );
+            Chromosome<G> mutated = chromosome.newInstance(genes.toISeq());
+            if (mutated instanceof AssignmentChromosome<?> assignment) {
+                assignment.setMatchState(state);
+            }
+            result = new MutatorResult<>(mutated, nSwap);
         } else {
             result = new MutatorResult<>(chromosome, nSwap);
         }
@@ -0,0 +1,153 @@
+package org.nmrfx.structure.seqassign;
+
+import java.util.Arrays;
+
+/**
+ * A permutation of spin systems and residues together with its score, which
+ * is updated incrementally as sites are swapped. The score of a matching is a
+ * sum over residue positions (see ResSeqMatcher.positionScore), and a swap
+ * only changes the terms for the two residues involved and the residues before
+ * them, so each swap is scored with a few table lookups instead of rescoring
+ * the whole matching.
+ */
+class MatchState {
+
+    private final ResSeqMatcher resSeqMatcher;
+    private final int[] siteToAllele;
+    private final int[] alleleToSite;
+    private double score;
+    private final int[] touched = new int[4];
+
+    /**
+     * Create a state from a permutation. Sites below the number of spin
+     * systems hold the residue matched to that system, and alleles at or above
+     * the number of residues mean no match.
+     *
+     * @param resSeqMatcher the matcher with the score tables
+     * @param alleles       the allele at each site
+     */
+    MatchState(ResSeqMatcher resSeqMatcher, int[] alleles) {
+        this(resSeqMatcher, alleles, alleles.length);
+    }
+
+    /**
+     * Create a state from an assignment of distinct alleles to sites, where
+     * there may be more alleles than sites so some alleles are held by no
+     * site.
+     *
+     * @param resSeqMatcher the matcher with the score tables
+     * @param alleles       the allele at each site
+     * @param nAlleles      the number of alleles
+     */
+    MatchState(ResSeqMatcher resSeqMatcher, int[] alleles, int nAlleles) {
+        this.resSeqMatcher = resSeqMatcher;
+        siteToAllele = alleles.clone();
+        alleleToSite = new int[nAlleles];
+        Arrays.fill(alleleToSite, -1);
+        for (int site = 0; site < alleles.length; site++) {
+            alleleToSite[alleles[site]] = site;
+        }
+        double sum = 0.0;
+        for (int iRes = 0; iRes < resSeqMatcher.nResidues; iRes++) {
+            sum += resSeqMatcher.positionScore(iRes, alleleToSite);
+        }
+        score = sum;
+    }
+
+    private MatchState(MatchState state) {
+        resSeqMatcher = state.resSeqMatcher;
+        siteToAllele = state.siteToAllele.clone();
+        alleleToSite = state.alleleToSite.clone();
+        score = state.score;
+    }
+
+    MatchState copy() {
+        return new MatchState(this);
+    }
+
+    double score() {
+        return score;
+    }
+
+    int allele(int site) {
+        return siteToAllele[site];
+    }
+
+    /**
+     * Get the site holding an allele.
+     *
+     * @param allele the allele
+     * @return the site or -1 if no site holds the allele
+     */
+    int site(int allele) {
+        return alleleToSite[allele];
+    }
+
+    /**
+     * Swap the alleles of two sites.
+     *
+     * @param iSite the first site
+     * @param jSite the second site
+     */
+    void swap(int iSite, int jSite) {
+        int iAllele = siteToAllele[iSite];
+        int jAllele = siteToAllele[jSite];
+        int nTouched = touch(iAllele, jAllele);
+        score -= sumTouched(nTouched);
+        siteToAllele[iSite] = jAllele;
+        siteToAllele[jSite] = iAllele;
+        alleleToSite[iAllele] = jSite;
+        alleleToSite[jAllele] = iSite;
+        score += sumTouched(nTouched);
+    }
+
+    /**
+     * Give a site an allele that no site holds.
+     *
+     * @param site   the site
+     * @param allele the new allele
+     */
+    void set(int site, int allele) {
+        int oldAllele = siteToAllele[site];
+        int nTouched = touch(oldAllele, allele);
+        score -= sumTouched(nTouched);
+        alleleToSite[oldAllele] = -1;
+        siteToAllele[site] = allele;
+        alleleToSite[allele] = site;
+        score += sumTouched(nTouched);
+    }
+
+    /**
+     * Find the residue positions whose score terms depend on which systems
+     * are at two residues.
+     */
+    private int touch(int iRes, int jRes) {
+        int n = 0;
+        n = addTouched(n, iRes - 1);
+        n = addTouched(n, iRes);
+        n = addTouched(n, jRes - 1);
+        n = addTouched(n, jRes);
+        return n;
+    }
+
+    private int addTouched(int n, int iRes) {
+        if ((iRes < 0) || (iRes >= resSeqMatcher.nResidues)) {
+            return n;
+        }
+        for (int i = 0; i < n; i++) {
+            if (touched[i] == iRes) {
+                return n;
+            }
+        }
+        touched[n] = iRes;
+        return n + 1;
+    }
+
+    private double sumTouched(int nTouched) {
+        double sum = 0.0;
+        for (int i = 0; i < nTouched; i++) {
+            sum += resSeqMatcher.positionScore(touched[i], alleleToSite);
+        }
+        return sum;
+    }
+}
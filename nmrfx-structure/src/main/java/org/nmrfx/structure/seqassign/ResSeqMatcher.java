@@ -9,10 +9,15 @@ import org.nmrfx.chemistry.Polymer;
 import org.nmrfx.chemistry.Residue;
 import org.nmrfx.structure.chemistry.Molecule;
 
+import io.jenetics.Chromosome;
+import io.jenetics.EnumGene;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 public class ResSeqMatcher {
     List<Matching> initMatches = new ArrayList<>();
@@ -35,11 +40,12 @@ public class ResSeqMatcher {
     Map<Residue, Integer> residueIndexMap = new HashMap<>();
     List<Residue> residueList = new ArrayList<>();
     Random random = new Random();
-    PartionedGraph paritionedGraph = null;
-    SeqGeneticAlgorithm seqGeneticAlgorithm;
+    volatile PartionedGraph paritionedGraph = null;
+    volatile SeqGeneticAlgorithm seqGeneticAlgorithm;
     BiConsumer<SeqGeneticAlgorithm.Progress, Integer> updateConsumer;
 
     AtomicBoolean stopWork = new AtomicBoolean(false);
+    int nIslands = ForkJoinPool.getCommonPoolParallelism() + 1;
 
     public void setUpdater(BiConsumer<SeqGeneticAlgorithm.Progress, Integer> consumer) {
         this.updateConsumer = consumer;
@@ -155,11 +161,7 @@ public class ResSeqMatcher {
                 if (nextRes < nResidues) {
                     int nextSys = resToSys[nextRes];
                     if ((nextSys >= 0) && (nextSys < nSys)) {
-                        double adjScore = adjScores[iSys][nextSys];
-                        if (adjScore > 100.0) {
-                            adjScore += 200.0;
-                        }
-                        score += adjScore;
+                        score += adjacentScore(iSys, nextSys);
                     }
                 }
             }
@@ -167,6 +169,67 @@ public class ResSeqMatcher {
         return score;
     }
 
+    private double adjacentScore(int iSys, int nextSys) {
+        double adjScore = adjScores[iSys][nextSys];
+        if (adjScore > 100.0) {
+            adjScore += 200.0;
+        }
+        return adjScore;
+    }
+
+    /**
+     * Get the part of the score of a matching that belongs to one residue: the
+     * score of the system at the residue plus the score of that system being
+     * followed by the system at the next residue. The score of a matching is
+     * the sum of these over all residues.
+     *
+     * @param iRes      the residue index
+     * @param resToSys  the system at each residue, or -1 (or a value not less
+     *                  than the number of systems) if there is none
+     * @return the score
+     */
+    double positionScore(int iRes, int[] resToSys) {
+        int iSys = resToSys[iRes];
+        if ((iSys < 0) || (iSys >= nSys)) {
+            return 0.0;
+        }
+        double score = residueScores[iRes][iSys];
+        int nextRes = iRes + 1;
+        if (nextRes < nResidues) {
+            int nextSys = resToSys[nextRes];
+            if ((nextSys >= 0) && (nextSys < nSys)) {
+                score += adjacentScore(iSys, nextSys);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Get the scored state of a chromosome, computing it the first time it's
+     * needed. States are made incrementally by the mutator for the
+     * chromosomes it creates.
+     *
+     * @param chromosome the chromosome
+     * @return the state
+     */
+    MatchState getMatchState(Chromosome<? extends EnumGene<Integer>> chromosome) {
+        MatchState state = null;
+        if (chromosome instanceof AssignmentChromosome<?> assignment) {
+            state = assignment.getMatchState();
+        }
+        if (state == null) {
+            int[] alleles = new int[chromosome.length()];
+            for (int i = 0; i < alleles.length; i++) {
+                alleles[i] = chromosome.get(i).allele();
+            }
+            state = new MatchState(this, alleles);
+            if (chromosome instanceof AssignmentChromosome<?> assignment) {
+                assignment.setMatchState(state);
+            }
+        }
+        return state;
+    }
+
     public ResidueScore score(Residue residue, int i, int j) {
         int iRes = residueIndexMap.get(residue);
         double resScore = residueScores[iRes][j];
@@ -332,32 +395,61 @@ public class ResSeqMatcher {
     public void stopWork() {
         stopWork.set(true);
     }
+    /**
+     * Set the number of genetic algorithm runs to do at the same time.
+     *
+     * @param nIslands the number of runs
+     */
+    public void setIslands(int nIslands) {
+        this.nIslands = Math.max(1, nIslands);
+    }
+
+    /**
+     * Find the best matching of spin systems to residues with repeated runs of
+     * the genetic algorithm. Runs are done in rounds of up to nIslands parallel
+     * runs. The first five runs start only from graph matchings, and the
+     * later runs also start from the results of all earlier rounds, so the
+     * best matchings migrate between rounds.
+     *
+     * @param nTries           the number of runs
+     * @param seqGenParameters the parameters of the genetic algorithm
+     * @return the score of the best matching
+     */
     public double graphMatch(int nTries, SeqGenParameters seqGenParameters) {
         bestMatching = null;
         List<Matching> matchings = new ArrayList<>();
         stopWork.set(false);
+        initMatches.clear();
 
         List<Matching> currentBestMatchings = new ArrayList<>();
         int nStart = 5;
-        for (int i = 0; i < nStart; i++) {
-            final int iTry = i;
-            Matching matching = runGraphGenetics(seqGenParameters, Collections.emptyList(), (v) -> updateProgress((SeqGeneticAlgorithm.Progress) v, iTry));
-            matchings.add(matching);
-            currentBestMatchings.add(matching);
-            if ((bestMatching == null) || (matching.score < bestMatching.score)) {
-                bestMatching = matching;
+        int iTry = 0;
+        while ((iTry < nStart) || (iTry < nTries)) {
+            int roundEnd = iTry < nStart ? nStart : nTries;
+            int nRound = Math.min(nIslands, roundEnd - iTry);
+            List<Matching> seeds = iTry < nStart ? Collections.emptyList() : List.copyOf(currentBestMatchings);
+            List<Matching> roundInitMatches = List.copyOf(initMatches);
+            List<List<Matching>> islandInitMatches = new ArrayList<>();
+            for (int i = 0; i < nRound; i++) {
+                islandInitMatches.add(new ArrayList<>(roundInitMatches));
             }
-        }
-        for (int i = 0; i < nTries-nStart; i++) {
-           // List<Matching> useTheseMatchings = ((i %2) == 1) ? Collections.emptyList() : currentBestMatchings;
-            final int iTry = i + nStart;
-            Matching matching = runGraphGenetics(seqGenParameters, currentBestMatchings, (v) -> updateProgress((SeqGeneticAlgorithm.Progress) v, iTry));
-            matchings.add(matching);
-            currentBestMatchings.add(matching);
-            if ((bestMatching == null) || (matching.score < bestMatching.score)) {
-                bestMatching = matching;
+            final int firstTry = iTry;
+            Matching[] results = new Matching[nRound];
+            IntStream.range(0, nRound).parallel().forEach(i -> {
+                int islandTry = firstTry + i;
+                results[i] = runGraphGenetics(seqGenParameters, seeds, islandInitMatches.get(i),
+                        (v) -> updateProgress((SeqGeneticAlgorithm.Progress) v, islandTry));
+            });
+            initMatches = islandInitMatches.get(nRound - 1);
+            for (Matching matching : results) {
+                matchings.add(matching);
+                currentBestMatchings.add(matching);
+                if ((bestMatching == null) || (matching.score < bestMatching.score)) {
+                    bestMatching = matching;
+                }
             }
-            if (stopWork.get()) {
+            iTry += nRound;
+            if ((iTry > nStart) && stopWork.get()) {
                 break;
             }
         }
@@ -379,7 +471,11 @@ public class ResSeqMatcher {
     }
 
     public void genInitMatches(int nInitial, int nReplace) {
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> simpleGraph = paritionedGraph.simpleGraph;
+        genInitMatches(paritionedGraph, initMatches, nInitial, nReplace);
+    }
+
+    private void genInitMatches(PartionedGraph graph, List<Matching> initMatches, int nInitial, int nReplace) {
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> simpleGraph = graph.simpleGraph;
         double ranFrac = 0.0;
         List<Integer> replaceList = new ArrayList<>();
         for (int i=0;i<nInitial;i++) {
@@ -391,7 +487,7 @@ public class ResSeqMatcher {
         for (int iTry = 0; iTry < n; iTry++) {
             setGraphWeights(simpleGraph, ranFrac);
             var matcher = new MaximumWeightBipartiteMatching<>(simpleGraph,
-                    paritionedGraph.partition1, paritionedGraph.partition2);
+                    graph.partition1, graph.partition2);
             MatchingAlgorithm.Matching<Integer, DefaultWeightedEdge> matchResult = matcher.getMatching();
             List<Integer> matches = getMatches(matchResult);
             int[] sysToRes = new int[nSys];
@@ -410,20 +506,28 @@ public class ResSeqMatcher {
 
     }
     public Matching runGraphGenetics(SeqGenParameters seqGenParameters, List<Matching> currentBestMatchings, Consumer consumer) {
-        buildGraph();
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> simpleGraph = paritionedGraph.simpleGraph;
+        return runGraphGenetics(seqGenParameters, currentBestMatchings, initMatches, consumer);
+    }
+
+    private Matching runGraphGenetics(SeqGenParameters seqGenParameters, List<Matching> currentBestMatchings,
+                                      List<Matching> initMatches, Consumer consumer) {
+        PartionedGraph graph = buildGraph();
+        paritionedGraph = graph;
         int nInitial = seqGenParameters.populationSize();
         int nReplace = currentBestMatchings.isEmpty() ? nInitial : nInitial / 5;
-        genInitMatches(nInitial, nReplace);
+        genInitMatches(graph, initMatches, nInitial, nReplace);
         int i = 0;
         for (Matching currentBestMatching : currentBestMatchings) {
+            if (i >= initMatches.size()) {
+                break;
+            }
             initMatches.set(i++, currentBestMatching);
         }
 
-        seqGeneticAlgorithm = new SeqGeneticAlgorithm(this, seqGenParameters);
+        SeqGeneticAlgorithm geneticAlgorithm = new SeqGeneticAlgorithm(this, seqGenParameters);
+        seqGeneticAlgorithm = geneticAlgorithm;
         SeqGeneticAlgorithm.seqResMatches = sysResidueList;
-        Matching seqToResMatch = seqGeneticAlgorithm.apply(initMatches, consumer);
-        return seqToResMatch;
+        return geneticAlgorithm.apply(initMatches, consumer);
     }
 
     List<Integer> getMatches(MatchingAlgorithm.Matching<Integer, DefaultWeightedEdge> matchResult) {
@@ -444,7 +548,7 @@ public class ResSeqMatcher {
         return result;
     }
 
-    private void buildGraph() {
+    private PartionedGraph buildGraph() {
         SimpleWeightedGraph<Integer, DefaultWeightedEdge> simpleGraph
                 = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
         Set<Integer> partition1 = new HashSet<>();
@@ -466,7 +570,7 @@ public class ResSeqMatcher {
             DefaultWeightedEdge weightedEdge1 = new DefaultWeightedEdge();
             simpleGraph.addEdge(iSys, nSys + nResidues + iSys, weightedEdge1);
         }
-        paritionedGraph = new PartionedGraph(simpleGraph, partition1, partition2);
+        return new PartionedGraph(simpleGraph, partition1, partition2);
     }
 
     private double getTriScore(int iRes, int iSys) {
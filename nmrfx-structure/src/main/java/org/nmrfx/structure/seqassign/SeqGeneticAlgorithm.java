@@ -33,6 +33,17 @@ public class SeqGeneticAlgorithm {
         return resSeqMatcher.matcher(matching);
     }
 
+    /**
+     * Get the score of a genotype, using the state kept with the chromosome
+     * when the mutator has already scored it.
+     *
+     * @param genotype the genotype
+     * @return the score
+     */
+    double getGenotypeValue(Genotype<EnumGene<Integer>> genotype) {
+        return resSeqMatcher.getMatchState(genotype.chromosome()).score();
+    }
+
     public static InvertibleCodec<int[], EnumGene<Integer>>
     ofPermutation(final int length) {
         Requires.positive(length);
@@ -155,8 +166,8 @@ public class SeqGeneticAlgorithm {
         final int stops = nSys + nRes;
         final Engine<EnumGene<Integer>, Double> engine = Engine
                 .builder(
-                        this::getValue,
-                        SeqGeneticAlgorithm.ofPermutation(stops)
+                        this::getGenotypeValue,
+                        SeqGeneticAlgorithm.ofPermutation(stops).encoding()
                 )
                 .optimize(Optimize.MINIMUM)
                 .maximalPhenotypeAge(seqGenParameters.maximumPhenoTypeAge())
@@ -351,7 +351,7 @@ def createStrictDict(initDict, type):
     if initDict is None:
         initDict = {}
     allowedKeys = {}
-    allowedKeys['param'] = ['coarse', 'useh', 'hardSphere', 'start', 'end', 'shrinkValue', 'shrinkHValue', 'dislim', 'swap','updateAt']
+    allowedKeys['param'] = ['coarse', 'useh', 'hardSphere', 'start', 'end', 'shrinkValue', 'shrinkHValue', 'dislim', 'swap','updateAt','parallel']
     allowedKeys['force'] = ['elec', 'cffnb', 'nbmin', 'repel', 'dis', 'tors', 'dih', 'irp', 'shift', 'bondWt','stack', 'rdc']
     allowedKeys = allowedKeys[type]
 
@@ -591,7 +591,8 @@ class refine:
             'shrinkHValue': self.energyLists.setShrinkHValue,
             'dislim'      : self.energyLists.setDistanceLimit,
             'updateAt'      : self.energyLists.setUpdateAt,
-            'swap'        : self.energyLists.setSwap
+            'swap'        : self.energyLists.setSwap,
+            'parallel'    : self.energyLists.setParallel
         }
         for par,parValue in parsDict.iteritems():
             parFunc = parFuncs.get(par)
@@ -0,0 +1,129 @@
+package org.nmrfx.structure.chemistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.SpatialSet;
+import org.nmrfx.chemistry.io.MoleculeIOException;
+import org.nmrfx.chemistry.io.Sequence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SuperMolTest {
+
+    @Test
+    public void testQCPMatchesSuperposition() {
+        Random random = new Random(7);
+        int n = 40;
+        double[][] x = new double[n][3];
+        double[][] y = new double[n][3];
+        double angle = 1.1;
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 3; j++) {
+                x[i][j] = 10.0 * random.nextDouble();
+            }
+            // rotate about z, translate and add noise
+            y[i][0] = cos * x[i][0] - sin * x[i][1] + 3.0 + 0.3 * random.nextGaussian();
+            y[i][1] = sin * x[i][0] + cos * x[i][1] - 2.0 + 0.3 * random.nextGaussian();
+            y[i][2] = x[i][2] + 5.0 + 0.3 * random.nextGaussian();
+        }
+        double[] a = new double[n * 3];
+        double[] b = new double[n * 3];
+        double[] centerA = new double[3];
+        double[] centerB = new double[3];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 3; j++) {
+                centerA[j] += x[i][j] / n;
+                centerB[j] += y[i][j] / n;
+            }
+        }
+        double gA = 0.0;
+        double gB = 0.0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 3; j++) {
+                a[i * 3 + j] = x[i][j] - centerA[j];
+                b[i * 3 + j] = y[i][j] - centerB[j];
+                gA += a[i * 3 + j] * a[i * 3 + j];
+                gB += b[i * 3 + j] * b[i * 3 + j];
+            }
+        }
+        double qcpRMSD = SuperMol.calcQCPRMSD(a, b, gA, gB, n);
+        SuperMol superMol = new SuperMol((Molecule) null);
+        superMol.cal_super(x, y, n);
+        Assert.assertEquals(superMol.rms, qcpRMSD, 1.0e-3);
+        Assert.assertEquals(0.0, SuperMol.calcQCPRMSD(a, a, gA, gA, n), 1.0e-6);
+    }
+
+    @Test
+    public void testRMSDMatrixMatchesPairwise() throws MoleculeIOException {
+        MoleculeBase.removeAll();
+        MoleculeBase mol = new Sequence().read("ensemble", List.of("ALA", "GLY", "SER", "VAL", "LEU"), null);
+        List<SpatialSet> selected = new ArrayList<>();
+        MoleculeBase.SpatialSetIterator iter = mol.getSpatialSetIterator();
+        while (iter.hasNext()) {
+            selected.add(iter.next());
+        }
+        int nAtoms = selected.size();
+        int[] structures = {0, 1, 2, 3, 4};
+        Random random = new Random(11);
+        double[][] base = new double[nAtoms][3];
+        for (double[] xyz : base) {
+            for (int j = 0; j < 3; j++) {
+                xyz[j] = 15.0 * random.nextDouble();
+            }
+        }
+        // each structure is the base rotated, translated and with noise added
+        for (int iStruct : structures) {
+            double angle = 0.4 * iStruct;
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            double noise = 0.2 * (iStruct + 1);
+            for (int i = 0; i < nAtoms; i++) {
+                double[] xyz = base[i];
+                double xr = cos * xyz[0] - sin * xyz[1];
+                double yr = sin * xyz[0] + cos * xyz[1];
+                double zr = xyz[2];
+                selected.get(i).setXYZ(iStruct,
+                        xr + 2.0 * iStruct + noise * random.nextGaussian(),
+                        cos * yr - sin * zr - iStruct + noise * random.nextGaussian(),
+                        sin * yr + cos * zr + 0.5 * iStruct + noise * random.nextGaussian());
+            }
+        }
+        // an atom missing from one structure is left out of every pair
+        selected.get(2).setPointValidity(3, false);
+
+        double[][] matrix = new SuperMol(mol).calcRMSDMatrix(structures, selected);
+
+        List<SpatialSet> common = new ArrayList<>();
+        for (SpatialSet spatialSet : selected) {
+            boolean valid = true;
+            for (int iStruct : structures) {
+                valid = valid && spatialSet.getPointValidity(iStruct);
+            }
+            if (valid) {
+                common.add(spatialSet);
+            }
+        }
+        Assert.assertEquals(nAtoms - 1, common.size());
+        int n = common.size();
+        SuperMol superMol = new SuperMol(mol);
+        for (int i = 0; i < structures.length; i++) {
+            Assert.assertEquals(0.0, matrix[i][i], 0.0);
+            for (int j = i + 1; j < structures.length; j++) {
+                double[][] x = new double[n][];
+                double[][] y = new double[n][];
+                for (int k = 0; k < n; k++) {
+                    x[k] = common.get(k).getPoint(structures[i]).toArray();
+                    y[k] = common.get(k).getPoint(structures[j]).toArray();
+                }
+                superMol.cal_super(x, y, n);
+                Assert.assertEquals(superMol.rms, matrix[i][j], 1.0e-3);
+                Assert.assertEquals(matrix[i][j], matrix[j][i], 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.nmrfx.structure.chemistry.energy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class AtomPairSetTest {
+
+    @Test
+    public void testUnordered() {
+        AtomPairSet pairs = new AtomPairSet();
+        Assert.assertTrue(pairs.add(5, 2));
+        Assert.assertFalse(pairs.add(2, 5));
+        Assert.assertTrue(pairs.contains(2, 5));
+        Assert.assertTrue(pairs.contains(5, 2));
+        Assert.assertFalse(pairs.contains(5, 3));
+        Assert.assertEquals(1, pairs.size());
+    }
+
+    @Test
+    public void testGrowth() {
+        AtomPairSet pairs = new AtomPairSet(4);
+        int n = 200;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j += 7) {
+                pairs.add(j, i);
+            }
+        }
+        Set<Long> visited = new HashSet<>();
+        pairs.forEach((i, j) -> {
+            Assert.assertTrue(i < j);
+            Assert.assertEquals(0, (j - i - 1) % 7);
+            visited.add(((long) i << 32) | j);
+        });
+        Assert.assertEquals(pairs.size(), visited.size());
+        Assert.assertTrue(pairs.contains(199, 198));
+        Assert.assertFalse(pairs.contains(0, 2));
+    }
+}
@@ -0,0 +1,252 @@
+package org.nmrfx.structure.chemistry.energy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.constraints.MolecularConstraints;
+import org.nmrfx.structure.chemistry.Molecule;
+import org.nmrfx.structure.fastlinear.FastVector3D;
+import org.python.util.PythonInterpreter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class EnergyCoordsTest {
+
+    /**
+     * Build a small peptide and its energy lists the same way a structure
+     * calculation does.
+     */
+    static EnergyLists setupEnergyLists(String sequence) {
+        Molecule.removeAll();
+        try (PythonInterpreter interp = new PythonInterpreter()) {
+            interp.exec("from org.yaml.snakeyaml import Yaml");
+            interp.exec("from refine import *");
+            interp.exec("import osfiles");
+            interp.exec("data = Yaml().load('molecule :\\n  entities :\\n    - sequence : " + sequence
+                    + "\\n      type : nv\\n      ptype : protein\\n')");
+            interp.exec("refiner = refine()");
+            interp.exec("osfiles.setOutFiles(refiner, 'tmp', 0)");
+            interp.exec("refiner.setReportDump(False)");
+            interp.exec("refiner.rootName = 'temp'");
+            interp.exec("refiner.loadFromYaml(data, 0)");
+            return (EnergyLists) interp.eval("refiner.energyLists").__tojava__(EnergyLists.class);
+        }
+    }
+
+    private void setCells(EnergyLists energyLists, EnergyCoords eCoords) {
+        eCoords.setCells(eCoords.eDistancePairs, energyLists.getDeltaEnd(), energyLists.getDistanceLimit(),
+                energyLists.getHardSphere(), energyLists.getIncludeH(), energyLists.getShrinkValue(),
+                energyLists.getShrinkHValue(), false);
+    }
+
+    private Set<Long> getPairs(EnergyCoords eCoords) {
+        EnergyPairs ePairs = eCoords.eDistancePairs;
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 0; i < ePairs.nPairs; i++) {
+            int iAtom = Math.min(ePairs.iAtoms[i], ePairs.jAtoms[i]);
+            int jAtom = Math.max(ePairs.iAtoms[i], ePairs.jAtoms[i]);
+            Assert.assertTrue(pairs.add((long) iAtom * eCoords.nAtoms + jAtom));
+        }
+        return pairs;
+    }
+
+    /**
+     * Find the pairs in contact by testing every pair of atoms, applying the
+     * same selection rules as the neighbor list.
+     */
+    private Set<Long> getBruteForcePairs(EnergyLists energyLists, EnergyCoords eCoords) {
+        FastVector3D[] vecCoords = eCoords.getVecCoords();
+        double limit2 = energyLists.getDistanceLimit() * energyLists.getDistanceLimit();
+        boolean includeH = energyLists.getIncludeH();
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 0; i < eCoords.nAtoms; i++) {
+            Atom atom1 = eCoords.atoms[i];
+            for (int j = i + 1; j < eCoords.nAtoms; j++) {
+                Atom atom2 = eCoords.atoms[j];
+                if (!includeH && ((atom1.getAtomicNumber() == 1) || (atom2.getAtomicNumber() == 1))) {
+                    continue;
+                }
+                int iUnit = atom1.rotGroup == null ? -1 : atom1.rotGroup.rotUnit;
+                int jUnit = atom2.rotGroup == null ? -1 : atom2.rotGroup.rotUnit;
+                if (((iUnit == -1) && (jUnit == -1)) || (iUnit == jUnit)) {
+                    continue;
+                }
+                if (Math.abs(eCoords.resNums[j] - eCoords.resNums[i]) >= energyLists.getDeltaEnd()) {
+                    continue;
+                }
+                if ((eCoords.contactRadii[i] <= 1.0e-6) || (eCoords.contactRadii[j] <= 1.0e-6)
+                        || eCoords.getFixed(i, j)) {
+                    continue;
+                }
+                if (vecCoords[i].disSq(vecCoords[j]) < limit2) {
+                    pairs.add((long) i * eCoords.nAtoms + j);
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private void moveAtom(FastVector3D vec, Random random, double distance) {
+        double dx = random.nextGaussian();
+        double dy = random.nextGaussian();
+        double dz = random.nextGaussian();
+        double scale = distance / Math.sqrt(dx * dx + dy * dy + dz * dz);
+        vec.set(vec.getX() + dx * scale, vec.getY() + dy * scale, vec.getZ() + dz * scale);
+    }
+
+    @Test
+    public void testNeighborListMatchesBruteForce() {
+        EnergyLists energyLists = setupEnergyLists("GPGAST");
+        EnergyCoords eCoords = energyLists.getMolecule().getEnergyCoords();
+        setCells(energyLists, eCoords);
+        Set<Long> pairs = getPairs(eCoords);
+        Assert.assertFalse(pairs.isEmpty());
+        Assert.assertEquals(getBruteForcePairs(energyLists, eCoords), pairs);
+        Molecule.removeAll();
+    }
+
+    @Test
+    public void testNeighborListRebuild() {
+        EnergyLists energyLists = setupEnergyLists("GPGAST");
+        EnergyCoords eCoords = energyLists.getMolecule().getEnergyCoords();
+        double skin = 1.0;
+        eCoords.setNeighborSkin(skin);
+        setCells(energyLists, eCoords);
+        int nBuilds = eCoords.getNeighborListBuilds(eCoords.eDistancePairs);
+        Assert.assertTrue(nBuilds > 0);
+
+        setCells(energyLists, eCoords);
+        Assert.assertEquals(nBuilds, eCoords.getNeighborListBuilds(eCoords.eDistancePairs));
+
+        // every atom moves less than half the skin, so the list is reused but still complete
+        Random random = new Random(11);
+        FastVector3D[] vecCoords = eCoords.getVecCoords();
+        double[][] start = new double[eCoords.nAtoms][];
+        for (int i = 0; i < eCoords.nAtoms; i++) {
+            start[i] = new double[]{vecCoords[i].getX(), vecCoords[i].getY(), vecCoords[i].getZ()};
+            moveAtom(vecCoords[i], random, 0.45 * skin);
+        }
+        setCells(energyLists, eCoords);
+        Assert.assertEquals(nBuilds, eCoords.getNeighborListBuilds(eCoords.eDistancePairs));
+        Assert.assertEquals(getBruteForcePairs(energyLists, eCoords), getPairs(eCoords));
+
+        // one atom moves more than half the skin from where it was when the list was built
+        int iAtom = eCoords.nAtoms / 2;
+        vecCoords[iAtom].set(start[iAtom][0] + 0.6 * skin, start[iAtom][1], start[iAtom][2]);
+        setCells(energyLists, eCoords);
+        Assert.assertEquals(nBuilds + 1, eCoords.getNeighborListBuilds(eCoords.eDistancePairs));
+        Assert.assertEquals(getBruteForcePairs(energyLists, eCoords), getPairs(eCoords));
+        Molecule.removeAll();
+    }
+
+    @Test
+    public void testNeighborListRotGroupChange() {
+        EnergyLists energyLists = setupEnergyLists("GPGAST");
+        Molecule molecule = energyLists.getMolecule();
+        EnergyCoords eCoords = molecule.getEnergyCoords();
+        setCells(energyLists, eCoords);
+        energyLists.energy();
+        int nBuilds = eCoords.getNeighborListBuilds(eCoords.eDistancePairs);
+        Assert.assertTrue(nBuilds > 0);
+        Set<Long> pairs = getPairs(eCoords);
+
+        // freeze every other rotatable angle, so atoms on either side of it join the same rotation group
+        List<Atom> frozen = new ArrayList<>();
+        boolean freeze = false;
+        for (Atom atom : molecule.getAtomArray()) {
+            if ((atom.irpIndex > 0) && atom.rotActive) {
+                if (freeze) {
+                    atom.rotActive = false;
+                    frozen.add(atom);
+                }
+                freeze = !freeze;
+            }
+        }
+        Assert.assertFalse(frozen.isEmpty());
+        molecule.setupRotGroups();
+        setCells(energyLists, eCoords);
+        energyLists.energy();
+        Assert.assertEquals(nBuilds + 1, eCoords.getNeighborListBuilds(eCoords.eDistancePairs));
+        Set<Long> frozenPairs = getPairs(eCoords);
+        Assert.assertEquals(getBruteForcePairs(energyLists, eCoords), frozenPairs);
+        Assert.assertNotEquals(pairs, frozenPairs);
+
+        for (Atom atom : frozen) {
+            atom.rotActive = true;
+        }
+        molecule.setupRotGroups();
+        setCells(energyLists, eCoords);
+        energyLists.energy();
+        Assert.assertEquals(nBuilds + 2, eCoords.getNeighborListBuilds(eCoords.eDistancePairs));
+        Assert.assertEquals(pairs, getPairs(eCoords));
+        Molecule.removeAll();
+    }
+
+    /**
+     * Add ambiguous distance constraints between hydrogens near the two ends
+     * of the peptide, alternating between groups of two and three pairs.
+     */
+    private void addAmbiguousConstraints(Molecule molecule, int nGroups) {
+        List<Atom> hydrogens = new ArrayList<>();
+        for (Atom atom : molecule.getAtomArray()) {
+            if (atom.getAtomicNumber() == 1) {
+                hydrogens.add(atom);
+            }
+        }
+        int nHalf = hydrogens.size() / 2;
+        int k = 0;
+        for (int iGroup = 0; iGroup < nGroups; iGroup++) {
+            int groupSize = 2 + iGroup % 2;
+            List<String> names1 = new ArrayList<>();
+            List<String> names2 = new ArrayList<>();
+            for (int i = 0; i < groupSize; i++, k++) {
+                names1.add(hydrogens.get(k % nHalf).getFullName());
+                names2.add(hydrogens.get(hydrogens.size() - 1 - (k % nHalf)).getFullName());
+            }
+            MolecularConstraints.addDistanceConstraint(names1, names2, 1.8, 3.0, false);
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        EnergyLists energyLists = setupEnergyLists("GPGAST");
+        Molecule molecule = energyLists.getMolecule();
+        EnergyCoords eCoords = molecule.getEnergyCoords();
+        addAmbiguousConstraints(molecule, 12);
+        energyLists.resetConstraints();
+        int chunkSize = 4;
+        eCoords.setChunkSize(chunkSize);
+
+        energyLists.setParallel(false);
+        EnergyDeriv serial = energyLists.energy(true);
+        double[] serialDerivs = serial.getDerivatives().clone();
+        energyLists.setParallel(true);
+        EnergyDeriv parallel = energyLists.energy(true);
+        double[] parallelDerivs = parallel.getDerivatives();
+
+        EnergyConstraintPairs constraintPairs = eCoords.eConstraintPairs;
+        Assert.assertTrue(eCoords.eDistancePairs.getNChunks() > 1);
+        Assert.assertTrue(constraintPairs.getNChunks() > 1);
+        boolean groupSplit = false;
+        for (int iChunk = 1; iChunk < constraintPairs.getNChunks(); iChunk++) {
+            if (constraintPairs.groupSizes[iChunk * chunkSize] == 0) {
+                groupSplit = true;
+                Assert.assertTrue(constraintPairs.getChunkStart(iChunk) > iChunk * chunkSize);
+            }
+        }
+        Assert.assertTrue(groupSplit);
+
+        Assert.assertTrue(serial.getEnergy() > 0.0);
+        Assert.assertEquals(serial.getEnergy(), parallel.getEnergy(), 1.0e-9 * Math.abs(serial.getEnergy()));
+        Assert.assertEquals(serialDerivs.length, parallelDerivs.length);
+        for (int i = 0; i < serialDerivs.length; i++) {
+            Assert.assertEquals(serialDerivs[i], parallelDerivs[i], 1.0e-9 * Math.max(1.0, Math.abs(serialDerivs[i])));
+        }
+        energyLists.setParallel(false);
+        Molecule.removeAll();
+    }
+}
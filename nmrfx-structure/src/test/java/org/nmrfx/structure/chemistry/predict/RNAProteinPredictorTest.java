@@ -4,6 +4,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.nmrfx.chemistry.Atom;
 import org.nmrfx.chemistry.InvalidMoleculeException;
+import org.nmrfx.chemistry.Point3;
 import org.nmrfx.chemistry.Polymer;
 import org.nmrfx.chemistry.Residue;
 import org.nmrfx.chemistry.io.MoleculeIOException;
@@ -14,6 +15,8 @@ import org.nmrfx.structure.chemistry.Molecule;
 
 import java.io.*;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class RNAProteinPredictorTest {
 
@@ -47,6 +50,86 @@ public class RNAProteinPredictorTest {
         Molecule.removeAll();
     }
 
+    @Test
+    public void predictStructures() throws MoleculeIOException, IOException, InvalidMoleculeException {
+        Molecule.removeAll();
+        Sequence sequence = new Sequence();
+        var molecule = (Molecule) sequence.read("A", List.of("gly", "glu", "phe", "glu", "ile", "asn", "ser", "arg"), ".");
+        ProteinPredictor proteinPredictor = new ProteinPredictor();
+        proteinPredictor.init(molecule, 0);
+        proteinPredictor.predict(0, 0);
+        ProteinPredictor.EnsembleShifts ensembleShifts = new ProteinPredictor().predictStructures(molecule, new int[]{0});
+        List<Atom> atoms = ensembleShifts.atoms();
+        Assert.assertFalse(atoms.isEmpty());
+        int nValid = 0;
+        for (int i = 0; i < atoms.size(); i++) {
+            double shift = ensembleShifts.shifts()[i][0];
+            if (!Double.isNaN(shift)) {
+                Assert.assertEquals(atoms.get(i).getPPM(), Math.round(shift * 100) / 100.0, 1.0e-6);
+                nValid++;
+            }
+        }
+        Assert.assertTrue(nValid > 0);
+        Molecule.removeAll();
+    }
+
+    @Test
+    public void predictStructuresEnsemble() throws MoleculeIOException, IOException, InvalidMoleculeException {
+        Molecule.removeAll();
+        Sequence sequence = new Sequence();
+        var molecule = (Molecule) sequence.read("A", List.of("gly", "glu", "phe", "glu", "ile", "asn", "ser", "arg"), ".");
+        // more structures than fit in one block, so the last block is partly filled
+        int blockSize = 2 * (ForkJoinPool.getCommonPoolParallelism() + 1);
+        int[] structures = new int[blockSize + 3];
+        Random random = new Random(7);
+        for (int iStruct = 1; iStruct < structures.length; iStruct++) {
+            structures[iStruct] = iStruct;
+            molecule.copyStructure(0, iStruct);
+            for (Atom atom : molecule.getAtoms()) {
+                Point3 pt = atom.getPoint(iStruct);
+                atom.setPoint(iStruct, new Point3(pt.getX() + 0.3 * random.nextGaussian(),
+                        pt.getY() + 0.3 * random.nextGaussian(), pt.getZ() + 0.3 * random.nextGaussian()));
+            }
+        }
+        ProteinPredictor.EnsembleShifts ensembleShifts = new ProteinPredictor().predictStructures(molecule, structures, -1);
+        List<Atom> atoms = ensembleShifts.atoms();
+        double[][] shifts = ensembleShifts.shifts();
+        Assert.assertFalse(atoms.isEmpty());
+
+        ProteinPredictor proteinPredictor = new ProteinPredictor();
+        int nValid = 0;
+        boolean varies = false;
+        for (int j = 0; j < structures.length; j++) {
+            proteinPredictor.init(molecule, structures[j]);
+            proteinPredictor.predict(0, structures[j]);
+            for (int i = 0; i < atoms.size(); i++) {
+                double shift = shifts[i][j];
+                if (!Double.isNaN(shift)) {
+                    Assert.assertEquals(atoms.get(i).getPPM(), Math.round(shift * 100) / 100.0, 1.0e-6);
+                    varies |= Math.abs(shift - shifts[i][0]) > 1.0e-6;
+                    nValid++;
+                }
+            }
+        }
+        Assert.assertTrue(nValid > 0);
+        Assert.assertTrue(varies);
+
+        for (int i = 0; i < atoms.size(); i++) {
+            double sum = 0.0;
+            int n = 0;
+            for (double shift : shifts[i]) {
+                if (!Double.isNaN(shift)) {
+                    sum += shift;
+                    n++;
+                }
+            }
+            if (n > 0) {
+                Assert.assertEquals(Math.round(sum / n * 100) / 100.0, atoms.get(i).getRefPPM(0).getValue(), 1.0e-6);
+            }
+        }
+        Molecule.removeAll();
+    }
+
     @Test
     public void predictProtein2() throws MoleculeIOException, IOException, InvalidMoleculeException {
         Molecule.removeAll();
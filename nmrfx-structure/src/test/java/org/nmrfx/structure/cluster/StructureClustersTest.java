@@ -0,0 +1,30 @@
+package org.nmrfx.structure.cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class StructureClustersTest {
+
+    @Test
+    public void testTwoGroups() {
+        int[] structures = {0, 1, 2, 3, 4};
+        double[][] rmsd = {
+                {0.0, 0.5, 0.7, 4.0, 4.2},
+                {0.5, 0.0, 0.4, 4.1, 4.0},
+                {0.7, 0.4, 0.0, 3.9, 4.3},
+                {4.0, 4.1, 3.9, 0.0, 0.6},
+                {4.2, 4.0, 4.3, 0.6, 0.0}
+        };
+        StructureClusters clusters = new StructureClusters(structures, rmsd);
+        Assert.assertEquals(2, clusters.cluster(2.0));
+        int[] members = clusters.getMembers(0);
+        Arrays.sort(members);
+        Assert.assertArrayEquals(new int[]{0, 1, 2}, members);
+        Assert.assertEquals(1, clusters.getRepresentative(0));
+        Assert.assertEquals(1, clusters.getData().get(4).group);
+        Assert.assertEquals(5, clusters.cluster(0.1));
+        Assert.assertEquals(1, clusters.cluster(10.0));
+    }
+}
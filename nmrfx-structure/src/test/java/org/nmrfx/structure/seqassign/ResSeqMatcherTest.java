@@ -0,0 +1,124 @@
+package org.nmrfx.structure.seqassign;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ResSeqMatcherTest {
+    private static final int N_SYS = 6;
+    private static final int N_RES = 8;
+
+    /**
+     * Make a matcher where system i fits best at residue i + 1 and is
+     * followed by system i + 1. Each system can also be at the residue before
+     * and after its best one.
+     */
+    private ResSeqMatcher createMatcher() {
+        ResSeqMatcher resSeqMatcher = new ResSeqMatcher();
+        resSeqMatcher.nSys = N_SYS;
+        resSeqMatcher.nResidues = N_RES;
+        resSeqMatcher.possibleResidues = new boolean[N_RES];
+        Arrays.fill(resSeqMatcher.possibleResidues, true);
+        resSeqMatcher.residueScores = new double[N_RES][N_SYS];
+        resSeqMatcher.adjScores = new double[N_SYS][N_SYS];
+        for (int iRes = 0; iRes < N_RES; iRes++) {
+            resSeqMatcher.residueSysList.add(new ArrayList<>());
+            Arrays.fill(resSeqMatcher.residueScores[iRes], 100.0);
+        }
+        for (int iSys = 0; iSys < N_SYS; iSys++) {
+            List<Integer> resList = new ArrayList<>();
+            for (int iRes = iSys; iRes <= iSys + 2; iRes++) {
+                resList.add(iRes);
+                resSeqMatcher.residueSysList.get(iRes).add(iSys);
+                resSeqMatcher.residueScores[iRes][iSys] = iRes == iSys + 1 ? -40.0 : 20.0;
+            }
+            resSeqMatcher.sysResidueList.add(resList);
+            for (int jSys = 0; jSys < N_SYS; jSys++) {
+                if (jSys == iSys + 1) {
+                    resSeqMatcher.adjScores[iSys][jSys] = -20.0;
+                } else if (Math.abs(jSys - iSys) < 3) {
+                    resSeqMatcher.adjScores[iSys][jSys] = 50.0;
+                } else {
+                    resSeqMatcher.adjScores[iSys][jSys] = 1000.0;
+                }
+            }
+        }
+        return resSeqMatcher;
+    }
+
+    private double fullScore(ResSeqMatcher resSeqMatcher, MatchState state) {
+        int[] sysToRes = new int[N_SYS];
+        for (int iSys = 0; iSys < N_SYS; iSys++) {
+            sysToRes[iSys] = state.allele(iSys);
+        }
+        int[] resToSys = new int[N_RES];
+        for (int iRes = 0; iRes < N_RES; iRes++) {
+            resToSys[iRes] = state.site(iRes);
+        }
+        return resSeqMatcher.score(sysToRes, resToSys);
+    }
+
+    @Test
+    public void testMatchStateScore() {
+        ResSeqMatcher resSeqMatcher = createMatcher();
+        Random random = new Random(5);
+        // more alleles than sites, so some alleles are free for set
+        int nSites = N_SYS + N_RES;
+        int nAlleles = nSites + 4;
+        List<Integer> alleleList = new ArrayList<>();
+        for (int i = 0; i < nAlleles; i++) {
+            alleleList.add(i);
+        }
+        Collections.shuffle(alleleList, random);
+        int[] alleles = alleleList.subList(0, nSites).stream().mapToInt(Integer::intValue).toArray();
+        MatchState state = new MatchState(resSeqMatcher, alleles, nAlleles);
+        Assert.assertEquals(fullScore(resSeqMatcher, state), state.score(), 1.0e-9);
+
+        int nSets = 0;
+        for (int iStep = 0; iStep < 2000; iStep++) {
+            int iSite = random.nextInt(nSites);
+            if (random.nextBoolean()) {
+                int jSite = random.nextInt(nSites);
+                state.swap(iSite, jSite);
+            } else {
+                int allele = random.nextInt(nAlleles);
+                if (state.site(allele) != -1) {
+                    continue;
+                }
+                state.set(iSite, allele);
+                nSets++;
+            }
+            Assert.assertEquals(fullScore(resSeqMatcher, state), state.score(), 1.0e-9);
+            MatchState copy = state.copy();
+            Assert.assertEquals(state.score(), copy.score(), 0.0);
+        }
+        Assert.assertTrue(nSets > 0);
+    }
+
+    @Test
+    public void testIslands() {
+        SeqGenParameters seqGenParameters = new SeqGenParameters(100, 200, 0.1, true, 0.1, 20, 50, 30, 0.5);
+        int[] expected = new int[N_SYS];
+        for (int iSys = 0; iSys < N_SYS; iSys++) {
+            expected[iSys] = iSys + 1;
+        }
+
+        ResSeqMatcher serial = createMatcher();
+        serial.setIslands(1);
+        double serialScore = serial.graphMatch(7, seqGenParameters);
+
+        ResSeqMatcher parallel = createMatcher();
+        parallel.setIslands(3);
+        double parallelScore = parallel.graphMatch(7, seqGenParameters);
+
+        Assert.assertEquals(serialScore, parallelScore, 1.0e-9);
+        Assert.assertArrayEquals(expected, Arrays.copyOf(serial.bestMatching.matches(), N_SYS));
+        Assert.assertArrayEquals(expected, Arrays.copyOf(parallel.bestMatching.matches(), N_SYS));
+        Assert.assertEquals(serial.matcher(expected), serialScore, 1.0e-9);
+    }
+}